@@ -0,0 +1,106 @@
+package net.atomcode.bearing.benchmark;
+
+import android.location.Address;
+
+import net.atomcode.bearing.geocoding.AddressStore;
+import net.atomcode.bearing.geocoding.AddressView;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading offline addresses as full {@link Address} objects against reading the
+ * needed field from a view of the mapped store
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AddressStoreBenchmark
+{
+	private static final int CELLS = 10000;
+	private static final double CELL_SIZE = 0.001;
+
+	private File file;
+	private AddressStore store;
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		file = File.createTempFile("bearing", ".addr");
+		file.delete();
+		store = new AddressStore(file, CELL_SIZE, Locale.UK);
+
+		for (int index = 0; index < CELLS; index++)
+		{
+			Address address = new Address(Locale.UK);
+			address.setAddressLine(0, index + " High Street");
+			address.setAddressLine(1, "Cardiff CF10 " + (index % 100));
+			address.setSubThoroughfare(Integer.toString(index));
+			address.setThoroughfare("High Street");
+			address.setLocality("Cardiff");
+			address.setPostalCode("CF10 " + (index % 100));
+			address.setCountryCode("GB");
+			address.setCountryName("United Kingdom");
+			address.setLatitude(latitudeOf(index));
+			address.setLongitude(-3.18);
+			store.put(latitudeOf(index), -3.18, address);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		store.close();
+		file.delete();
+	}
+
+	@Benchmark
+	public String address() throws IOException
+	{
+		return store.get(latitudeOf(nextIndex()), -3.18).getPostalCode();
+	}
+
+	@Benchmark
+	public String view() throws IOException
+	{
+		AddressView view = store.getView(latitudeOf(nextIndex()), -3.18);
+		return view.getPostalCode();
+	}
+
+	@Benchmark
+	public List<Address> searchAddresses() throws IOException
+	{
+		return store.search("high street cf10 42", 50);
+	}
+
+	@Benchmark
+	public List<AddressView> searchViews() throws IOException
+	{
+		return store.searchViews("high street cf10 42", 50);
+	}
+
+	private int nextIndex()
+	{
+		next = (next + 7919) % CELLS;
+		return next;
+	}
+
+	private static double latitudeOf(int index)
+	{
+		return 51.0 + (index + 0.5) * CELL_SIZE;
+	}
+}
@@ -0,0 +1,71 @@
+package net.atomcode.bearing.benchmark;
+
+import android.location.Address;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.geocoding.FixedGeocodingTask;
+import net.atomcode.bearing.geocoding.GeocodingLimiter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of dispatching a geocoding task and waiting for its result, run in place and on Bearing's
+ * worker threads, with and without the geocoding limiter. The lookup itself returns at once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeocodingTaskBenchmark
+{
+	private static final Executor DIRECT = new Executor()
+	{
+		@Override public void execute(Runnable command)
+		{
+			command.run();
+		}
+	};
+
+	@Param({"direct", "workers"})
+	public String executor;
+
+	@Param({"off", "on"})
+	public String limiter;
+
+	private Executor dispatcher;
+	private GeocodingLimiter previousLimiter;
+
+	@Setup
+	public void setup()
+	{
+		MainLooper.install();
+		dispatcher = "workers".equals(executor) ? Bearing.getExecutor() : DIRECT;
+
+		// Never throttle, so only the bookkeeping of the limiter is measured
+		previousLimiter = Bearing.getGeocodingLimiter();
+		Bearing.useGeocodingLimiter("on".equals(limiter) ? new GeocodingLimiter().rate(1e9, 1000000) : null);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Bearing.useGeocodingLimiter(previousLimiter);
+	}
+
+	@Benchmark
+	public List<Address> startAsync() throws Exception
+	{
+		return new FixedGeocodingTask("Bristol").startAsync(dispatcher).get();
+	}
+}
@@ -0,0 +1,127 @@
+package net.atomcode.bearing.benchmark;
+
+import android.location.Location;
+
+import net.atomcode.bearing.geodesy.Geodesy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per distance of consecutive fixes of a track with each geodesy method, against
+ * {@link Location#distanceTo(Location)}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeodesyBenchmark
+{
+	private static final int FIXES = 10000;
+
+	private TrackFixtures track;
+	private Location[] locations;
+	private double[] distances;
+
+	@Setup
+	public void setup()
+	{
+		track = TrackFixtures.drive(FIXES, 42);
+		distances = new double[FIXES];
+
+		locations = new Location[FIXES];
+		for (int index = 0; index < FIXES; index++)
+		{
+			Location location = new Location("gps");
+			location.setLatitude(track.latitudes[index]);
+			location.setLongitude(track.longitudes[index]);
+			locations[index] = location;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES - 1)
+	public double locationDistanceTo()
+	{
+		double total = 0;
+		for (int index = 1; index < FIXES; index++)
+		{
+			total += locations[index].distanceTo(locations[index - 1]);
+		}
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES - 1)
+	public double vincenty()
+	{
+		double total = 0;
+		for (int index = 1; index < FIXES; index++)
+		{
+			total += Geodesy.vincenty(track.latitudes[index - 1], track.longitudes[index - 1], track.latitudes[index], track.longitudes[index]);
+		}
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES - 1)
+	public double haversine()
+	{
+		double total = 0;
+		for (int index = 1; index < FIXES; index++)
+		{
+			total += Geodesy.haversine(track.latitudes[index - 1], track.longitudes[index - 1], track.latitudes[index], track.longitudes[index]);
+		}
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES - 1)
+	public double equirectangular()
+	{
+		double total = 0;
+		for (int index = 1; index < FIXES; index++)
+		{
+			total += Geodesy.equirectangular(track.latitudes[index - 1], track.longitudes[index - 1], track.latitudes[index], track.longitudes[index]);
+		}
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES - 1)
+	public int isWithin()
+	{
+		int within = 0;
+		for (int index = 1; index < FIXES; index++)
+		{
+			if (Geodesy.isWithin(track.latitudes[index - 1], track.longitudes[index - 1], track.latitudes[index], track.longitudes[index], 50))
+			{
+				within++;
+			}
+		}
+		return within;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES)
+	public double[] batchHaversine()
+	{
+		Geodesy.distances(Geodesy.Method.HAVERSINE, track.latitudes[0], track.longitudes[0], track.latitudes, track.longitudes, FIXES, distances);
+		return distances;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES)
+	public double[] batchEquirectangular()
+	{
+		Geodesy.distances(Geodesy.Method.EQUIRECTANGULAR, track.latitudes[0], track.longitudes[0], track.latitudes, track.longitudes, FIXES, distances);
+		return distances;
+	}
+}
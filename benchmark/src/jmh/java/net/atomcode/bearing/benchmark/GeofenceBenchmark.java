@@ -0,0 +1,72 @@
+package net.atomcode.bearing.benchmark;
+
+import net.atomcode.bearing.geofence.CircularGeofence;
+import net.atomcode.bearing.geofence.GeofenceEngine;
+import net.atomcode.bearing.geofence.PolygonGeofence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per fix of evaluating a track against an increasing number of geofences
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeofenceBenchmark
+{
+	private static final int FIXES = 10000;
+
+	@Param({"100", "1000", "10000"})
+	public int fences;
+
+	private TrackFixtures track;
+	private GeofenceEngine engine;
+
+	@Setup
+	public void setup()
+	{
+		track = TrackFixtures.drive(FIXES, 42);
+		engine = new GeofenceEngine();
+
+		// Spread the fences over the area the track covers
+		Random random = new Random(7);
+		for (int index = 0; index < fences; index++)
+		{
+			double latitude = 51.2 + random.nextDouble() * 0.5;
+			double longitude = -2.9 + random.nextDouble() * 0.6;
+
+			if (index % 2 == 0)
+			{
+				engine.add(new CircularGeofence("circle" + index, latitude, longitude, 50 + random.nextDouble() * 450));
+			}
+			else
+			{
+				engine.add(new PolygonGeofence("polygon" + index,
+					new double[]{latitude, latitude + 0.004, latitude + 0.003, latitude - 0.001},
+					new double[]{longitude, longitude + 0.001, longitude + 0.005, longitude + 0.003}));
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES)
+	public GeofenceEngine evaluate()
+	{
+		for (int index = 0; index < FIXES; index++)
+		{
+			engine.update(track.latitudes[index], track.longitudes[index], track.times[index]);
+		}
+		return engine;
+	}
+}
@@ -0,0 +1,53 @@
+package net.atomcode.bearing.benchmark;
+
+import net.atomcode.bearing.location.filter.KalmanLocationFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per fix of smoothing a recorded track with the Kalman filter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KalmanFilterBenchmark
+{
+	private static final int FIXES = 10000;
+
+	private TrackFixtures track;
+	private KalmanLocationFilter filter;
+
+	@Setup
+	public void setup()
+	{
+		track = TrackFixtures.drive(FIXES, 42);
+		filter = new KalmanLocationFilter();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES)
+	public int replay()
+	{
+		filter.reset();
+
+		int accepted = 0;
+		for (int index = 0; index < FIXES; index++)
+		{
+			if (filter.update(track.latitudes[index], track.longitudes[index], track.accuracies[index], track.times[index]))
+			{
+				accepted++;
+			}
+		}
+
+		return accepted;
+	}
+}
@@ -0,0 +1,76 @@
+package net.atomcode.bearing.benchmark;
+
+import android.location.Location;
+
+import net.atomcode.bearing.location.LocationListener;
+import net.atomcode.bearing.location.LocationProviderRequest;
+import net.atomcode.bearing.location.provider.SimulatedLocationProvider;
+import net.atomcode.bearing.location.provider.VirtualClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of issuing and cancelling a request through a provider, against the simulated backend
+ * so only the bookkeeping of the provider is measured
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LocationProviderBenchmark
+{
+	private static final LocationListener LISTENER = new LocationListener()
+	{
+		@Override public void onUpdate(Location location) {}
+	};
+
+	private VirtualClock clock;
+	private SimulatedLocationProvider provider;
+	private LocationProviderRequest request;
+
+	@Setup
+	public void setup()
+	{
+		clock = new VirtualClock();
+		provider = new SimulatedLocationProvider(TrackFixtures.drive(1000, 42).toSimulatedTrack(), clock)
+			.loop(true)
+			.latency(1000, 1000);
+
+		request = new LocationProviderRequest();
+		request.useCache = false;
+		request.trackingRate = 1000;
+	}
+
+	@Benchmark
+	public String singleRequest()
+	{
+		String requestId = provider.requestSingleLocationUpdate(request, LISTENER);
+		provider.cancelUpdates(requestId);
+		flush();
+		return requestId;
+	}
+
+	@Benchmark
+	public String recurringRequest()
+	{
+		String requestId = provider.requestRecurringLocationUpdates(request, LISTENER);
+		provider.cancelUpdates(requestId);
+		flush();
+		return requestId;
+	}
+
+	/**
+	 * Run the clock past the cancelled actions, so they do not pile up between invocations
+	 */
+	private void flush()
+	{
+		clock.advance(1000);
+	}
+}
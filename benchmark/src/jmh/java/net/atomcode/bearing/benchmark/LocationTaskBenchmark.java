@@ -0,0 +1,56 @@
+package net.atomcode.bearing.benchmark;
+
+import net.atomcode.bearing.location.CurrentLocationTask;
+import net.atomcode.bearing.location.LocationProviderRequest;
+import net.atomcode.bearing.location.provider.SimulatedLocationProvider;
+import net.atomcode.bearing.location.provider.VirtualClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of starting and cancelling a location task, without a timeout and with its timeout
+ * scheduled on Bearing's scheduler
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LocationTaskBenchmark
+{
+	@Param({"0", "10000"})
+	public long timeout;
+
+	private VirtualClock clock;
+	private SimulatedLocationProvider provider;
+
+	@Setup
+	public void setup()
+	{
+		clock = new VirtualClock();
+		provider = new SimulatedLocationProvider(TrackFixtures.drive(1000, 42).toSimulatedTrack(), clock)
+			.loop(true)
+			.latency(1000, 1000);
+	}
+
+	@Benchmark
+	public boolean startCancel()
+	{
+		CurrentLocationTask task = new CurrentLocationTask(provider);
+		task.cache(false, 0);
+		task.fallback(LocationProviderRequest.FALLBACK_NONE, timeout);
+		task.start();
+		task.cancel();
+
+		// Run the clock past the cancelled request, so they do not pile up between invocations
+		clock.advance(1000);
+		return task.isRunning();
+	}
+}
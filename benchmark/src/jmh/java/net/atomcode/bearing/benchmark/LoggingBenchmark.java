@@ -0,0 +1,73 @@
+package net.atomcode.bearing.benchmark;
+
+import android.location.Location;
+
+import net.atomcode.bearing.Bearing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a debug log call, with logging off and with a logger formatting lines as
+ * {@link Bearing#LOGCAT} does, short of writing them to logcat
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LoggingBenchmark
+{
+	private static final String REQUEST_ID = "16466c99-1683-4f4c-ae0e-4d88067a041d";
+
+	@Param({"off", "on"})
+	public String logging;
+
+	private Location location;
+
+	@Setup
+	public void setup(final Blackhole blackhole)
+	{
+		location = new Location("gps");
+		location.setLatitude(51.4545);
+		location.setLongitude(-2.5879);
+		location.setAccuracy(12);
+
+		Bearing.useLogger("on".equals(logging) ? new Bearing.Logger()
+		{
+			@Override public void log(String requestId, String message)
+			{
+				blackhole.consume("[" + requestId + "] " + message);
+			}
+		} : null);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Bearing.useLogger(null);
+	}
+
+	@Benchmark
+	public void constant()
+	{
+		Bearing.log(REQUEST_ID, "Cancel task due to timeout");
+	}
+
+	/**
+	 * A line describing an update, built at the call site as the providers do
+	 */
+	@Benchmark
+	public void update()
+	{
+		Bearing.log(REQUEST_ID, "Got location: " + location);
+	}
+}
@@ -0,0 +1,47 @@
+package net.atomcode.bearing.benchmark;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import java.lang.reflect.Field;
+
+/**
+ * Stand in for the main looper, which a plain JVM does not have, so framework classes that bind
+ * to it when created (e.g. AsyncTask) can be. Nothing can be run on it.
+ */
+public final class MainLooper
+{
+	private MainLooper() {}
+
+	public static synchronized void install()
+	{
+		if (Looper.getMainLooper() != null)
+		{
+			return;
+		}
+
+		try
+		{
+			// The real constructors need the native message queue
+			Field theUnsafe = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			sun.misc.Unsafe unsafe = (sun.misc.Unsafe)theUnsafe.get(null);
+
+			Looper looper = (Looper)unsafe.allocateInstance(Looper.class);
+			set(Looper.class, looper, "mQueue", unsafe.allocateInstance(MessageQueue.class));
+			set(Looper.class, looper, "mThread", Thread.currentThread());
+			set(Looper.class, null, "sMainLooper", looper);
+		}
+		catch (ReflectiveOperationException ex)
+		{
+			throw new IllegalStateException("Unable to stand in for the main looper", ex);
+		}
+	}
+
+	private static void set(Class<?> type, Object target, String name, Object value) throws ReflectiveOperationException
+	{
+		Field field = type.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+}
@@ -0,0 +1,191 @@
+package net.atomcode.bearing.benchmark;
+
+import android.location.Location;
+
+import net.atomcode.bearing.geodesy.Geodesy;
+import net.atomcode.bearing.index.Neighbours;
+import net.atomcode.bearing.index.PointIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per query of finding the nearest points to fixes of a track, with a point index against
+ * a linear scan of {@link Location#distanceTo(Location)}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PointIndexBenchmark
+{
+	private static final int QUERIES = 1000;
+	private static final int NEAREST = 10;
+	private static final double RADIUS = 1000;
+
+	@Param({"1000", "50000"})
+	public int points;
+
+	private Location[] queries;
+	private Location[] pointLocations;
+	private double[] latitudes;
+	private double[] longitudes;
+
+	private PointIndex index;
+	private PointIndex mapped;
+	private File file;
+
+	private final Neighbours neighbours = new Neighbours(NEAREST);
+	private final int[] scanIds = new int[NEAREST];
+	private final double[] scanDistances = new double[NEAREST];
+
+	@Setup
+	public void setup() throws IOException
+	{
+		TrackFixtures track = TrackFixtures.drive(QUERIES, 42);
+		queries = new Location[QUERIES];
+		for (int query = 0; query < QUERIES; query++)
+		{
+			queries[query] = new Location("gps");
+			queries[query].setLatitude(track.latitudes[query]);
+			queries[query].setLongitude(track.longitudes[query]);
+		}
+
+		// Spread the points over the area the track covers
+		Random random = new Random(7);
+		latitudes = new double[points];
+		longitudes = new double[points];
+		pointLocations = new Location[points];
+		for (int point = 0; point < points; point++)
+		{
+			latitudes[point] = 51.2 + random.nextDouble() * 0.5;
+			longitudes[point] = -2.9 + random.nextDouble() * 0.6;
+			pointLocations[point] = new Location("poi");
+			pointLocations[point].setLatitude(latitudes[point]);
+			pointLocations[point].setLongitude(longitudes[point]);
+		}
+
+		index = new PointIndex.Builder().addAll(latitudes, longitudes).build();
+
+		file = File.createTempFile("points", ".idx");
+		index.write(file);
+		mapped = PointIndex.map(file);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int scanDistanceTo()
+	{
+		int found = 0;
+		for (int query = 0; query < QUERIES; query++)
+		{
+			int count = 0;
+			for (int point = 0; point < points; point++)
+			{
+				count = insert(point, queries[query].distanceTo(pointLocations[point]), count);
+			}
+			found += scanIds[0];
+		}
+		return found;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int scanGeodesy()
+	{
+		int found = 0;
+		for (int query = 0; query < QUERIES; query++)
+		{
+			double latitude = queries[query].getLatitude();
+			double longitude = queries[query].getLongitude();
+
+			int count = 0;
+			for (int point = 0; point < points; point++)
+			{
+				count = insert(point, Geodesy.equirectangular(latitude, longitude, latitudes[point], longitudes[point]), count);
+			}
+			found += scanIds[0];
+		}
+		return found;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int indexNearest()
+	{
+		int found = 0;
+		for (int query = 0; query < QUERIES; query++)
+		{
+			index.nearest(queries[query].getLatitude(), queries[query].getLongitude(), NEAREST, neighbours);
+			found += neighbours.getId(0);
+		}
+		return found;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int mappedNearest()
+	{
+		int found = 0;
+		for (int query = 0; query < QUERIES; query++)
+		{
+			mapped.nearest(queries[query].getLatitude(), queries[query].getLongitude(), NEAREST, neighbours);
+			found += neighbours.getId(0);
+		}
+		return found;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int indexWithin()
+	{
+		int found = 0;
+		for (int query = 0; query < QUERIES; query++)
+		{
+			index.within(queries[query].getLatitude(), queries[query].getLongitude(), RADIUS, neighbours);
+			found += neighbours.size();
+		}
+		return found;
+	}
+
+	/**
+	 * Insert a point into the sorted nearest points found by a scan
+	 * @return The new number of points found
+	 */
+	private int insert(int point, double distance, int count)
+	{
+		if (count == NEAREST && distance >= scanDistances[NEAREST - 1])
+		{
+			return count;
+		}
+
+		int position = Math.min(count, NEAREST - 1);
+		while (position > 0 && scanDistances[position - 1] > distance)
+		{
+			scanIds[position] = scanIds[position - 1];
+			scanDistances[position] = scanDistances[position - 1];
+			position--;
+		}
+		scanIds[position] = point;
+		scanDistances[position] = distance;
+		return Math.min(count + 1, NEAREST);
+	}
+}
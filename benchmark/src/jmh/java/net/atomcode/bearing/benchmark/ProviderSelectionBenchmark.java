@@ -0,0 +1,114 @@
+package net.atomcode.bearing.benchmark;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.location.CurrentLocationTask;
+import net.atomcode.bearing.location.LocationProvider;
+import net.atomcode.bearing.location.LocationProviderFactory;
+import net.atomcode.bearing.location.provider.SimulatedLocationProvider;
+import net.atomcode.bearing.location.provider.VirtualClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per request of getting a provider, resolved once and cached, and resolved again for
+ * each request as tasks used to. Resolving also asks each factory whether its provider is
+ * available, which for Play services is an IPC not measured here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProviderSelectionBenchmark
+{
+	private Context context;
+	private Bearing bearing;
+	private CurrentLocationTask task;
+
+	@Setup
+	public void setup()
+	{
+		context = new ContextWrapper(null)
+		{
+			@Override public Context getApplicationContext()
+			{
+				return this;
+			}
+		};
+
+		final LocationProvider provider = new SimulatedLocationProvider(TrackFixtures.drive(10, 42).toSimulatedTrack(), new VirtualClock());
+		Bearing.registerLocationProvider(new LocationProviderFactory()
+		{
+			@Override public int getPriority()
+			{
+				return 100;
+			}
+
+			@Override public boolean isAvailable(Context context)
+			{
+				return true;
+			}
+
+			@Override public String getPackageName()
+			{
+				return null;
+			}
+
+			@Override public LocationProvider getProvider()
+			{
+				return provider;
+			}
+		});
+
+		bearing = Bearing.with(context);
+		task = new CurrentLocationTask(context);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		bearing.shutdown();
+	}
+
+	@Benchmark
+	public LocationProvider cached()
+	{
+		return bearing.getLocationProvider();
+	}
+
+	@Benchmark
+	public LocationProvider resolved()
+	{
+		bearing.invalidateLocationProvider();
+		return bearing.getLocationProvider();
+	}
+
+	/**
+	 * A new task for each request, on the cached provider
+	 */
+	@Benchmark
+	public CurrentLocationTask newTask()
+	{
+		return new CurrentLocationTask(context);
+	}
+
+	/**
+	 * The same task reused for each request
+	 */
+	@Benchmark
+	public CurrentLocationTask pooledTask()
+	{
+		task.reset();
+		return task;
+	}
+}
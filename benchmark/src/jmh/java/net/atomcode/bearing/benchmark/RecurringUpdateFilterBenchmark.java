@@ -0,0 +1,77 @@
+package net.atomcode.bearing.benchmark;
+
+import android.location.Location;
+
+import net.atomcode.bearing.location.LocationListener;
+import net.atomcode.bearing.location.LocationProviderRequest;
+import net.atomcode.bearing.location.provider.SimulatedLocationProvider;
+import net.atomcode.bearing.location.provider.VirtualClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per fix of a recurring request with the displacement and fallback checks applied to its
+ * updates, played back from a simulated provider once a second. Without a displacement only
+ * the fallback time is checked, so the difference between the two is the displacement check.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RecurringUpdateFilterBenchmark
+{
+	private static final int FIXES = 10000;
+	private static final long RATE = 1000;
+
+	@Param({"-1", "50"})
+	public float displacement;
+
+	private VirtualClock clock;
+	private SimulatedLocationProvider provider;
+	private String requestId;
+	private int reported = 0;
+
+	@Setup
+	public void setup()
+	{
+		clock = new VirtualClock();
+		provider = new SimulatedLocationProvider(TrackFixtures.drive(FIXES, 42).toSimulatedTrack(), clock)
+			.loop(true);
+
+		LocationProviderRequest request = new LocationProviderRequest();
+		request.trackingRate = RATE;
+		request.trackingDisplacement = displacement;
+
+		requestId = provider.requestRecurringLocationUpdates(request, new LocationListener()
+		{
+			@Override public void onUpdate(Location location)
+			{
+				reported++;
+			}
+		});
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		provider.cancelUpdates(requestId);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES)
+	public int displacementGate()
+	{
+		clock.advance(FIXES * RATE);
+		return reported;
+	}
+}
@@ -0,0 +1,145 @@
+package net.atomcode.bearing.benchmark;
+
+import net.atomcode.bearing.geofence.PolygonGeofence;
+import net.atomcode.bearing.region.Region;
+import net.atomcode.bearing.region.RegionIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per lookup of resolving the region of random coordinates, with a region index against
+ * testing each region's polygon in turn
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RegionIndexBenchmark
+{
+	private static final int QUERIES = 1000;
+	private static final int ROWS = 8;
+	private static final int COLUMNS = 16;
+
+	@Param({"100", "1000"})
+	public int vertices;
+
+	private double[] latitudes;
+	private double[] longitudes;
+
+	private RegionIndex index;
+	private RegionIndex mapped;
+	private PolygonGeofence[] polygons;
+	private File file;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		// Jagged regions spread over the globe, with gaps between them as seas
+		Random random = new Random(7);
+		RegionIndex.Builder builder = new RegionIndex.Builder();
+		polygons = new PolygonGeofence[ROWS * COLUMNS];
+		for (int row = 0; row < ROWS; row++)
+		{
+			for (int column = 0; column < COLUMNS; column++)
+			{
+				double centreLatitude = -70 + row * 18;
+				double centreLongitude = -170 + column * 22;
+
+				double[] ringLatitudes = new double[vertices];
+				double[] ringLongitudes = new double[vertices];
+				for (int vertex = 0; vertex < vertices; vertex++)
+				{
+					double angle = 2 * Math.PI * vertex / vertices;
+					double radius = 6 + 2 * Math.sin(7 * angle) + random.nextDouble();
+					ringLatitudes[vertex] = centreLatitude + radius * Math.sin(angle);
+					ringLongitudes[vertex] = centreLongitude + radius * 1.3 * Math.cos(angle);
+				}
+
+				int region = row * COLUMNS + column;
+				builder.add(new Region("R" + region, null, null, "UTC"), ringLatitudes, ringLongitudes);
+				polygons[region] = new PolygonGeofence("R" + region, ringLatitudes, ringLongitudes);
+			}
+		}
+
+		index = builder.build();
+		file = File.createTempFile("regions", ".idx");
+		index.write(file);
+		mapped = RegionIndex.map(file);
+
+		latitudes = new double[QUERIES];
+		longitudes = new double[QUERIES];
+		for (int query = 0; query < QUERIES; query++)
+		{
+			latitudes[query] = random.nextDouble() * 160 - 80;
+			longitudes[query] = random.nextDouble() * 360 - 180;
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int index()
+	{
+		int found = 0;
+		for (int query = 0; query < QUERIES; query++)
+		{
+			if (index.resolve(latitudes[query], longitudes[query]) != null)
+			{
+				found++;
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int mappedIndex()
+	{
+		int found = 0;
+		for (int query = 0; query < QUERIES; query++)
+		{
+			if (mapped.resolve(latitudes[query], longitudes[query]) != null)
+			{
+				found++;
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int polygonScan()
+	{
+		int found = 0;
+		for (int query = 0; query < QUERIES; query++)
+		{
+			for (PolygonGeofence polygon : polygons)
+			{
+				if (polygon.contains(latitudes[query], longitudes[query]))
+				{
+					found++;
+					break;
+				}
+			}
+		}
+		return found;
+	}
+}
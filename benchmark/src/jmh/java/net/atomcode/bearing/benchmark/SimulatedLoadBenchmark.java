@@ -0,0 +1,86 @@
+package net.atomcode.bearing.benchmark;
+
+import android.location.Location;
+
+import net.atomcode.bearing.location.LocationListener;
+import net.atomcode.bearing.location.LocationProviderRequest;
+import net.atomcode.bearing.location.provider.SimulatedLocationProvider;
+import net.atomcode.bearing.location.provider.VirtualClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for the simulated provider to deliver a second of fixes to many concurrent recurring
+ * requests, with latency and dropouts injected. Each second is sampled, so JMH reports the
+ * tail percentiles of a second under load as well as its mean.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimulatedLoadBenchmark
+{
+	private static final long RATE = 1000;
+
+	@Param({"100", "1000"})
+	public int requests;
+
+	private VirtualClock clock;
+	private SimulatedLocationProvider provider;
+	private List<String> requestIds = new ArrayList<>();
+	private long delivered = 0;
+
+	@Setup
+	public void setup()
+	{
+		clock = new VirtualClock();
+		provider = new SimulatedLocationProvider(TrackFixtures.drive(10000, 42).toSimulatedTrack(), clock)
+			.loop(true)
+			.latency(0, 500)
+			.dropouts(0.05)
+			.seed(42);
+
+		LocationProviderRequest request = new LocationProviderRequest();
+		request.trackingRate = RATE;
+
+		LocationListener listener = new LocationListener()
+		{
+			@Override public void onUpdate(Location location)
+			{
+				delivered++;
+			}
+		};
+
+		for (int index = 0; index < requests; index++)
+		{
+			requestIds.add(provider.requestRecurringLocationUpdates(request, listener));
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		for (String requestId : requestIds)
+		{
+			provider.cancelUpdates(requestId);
+		}
+	}
+
+	@Benchmark
+	public long second()
+	{
+		clock.advance(RATE);
+		return delivered;
+	}
+}
@@ -0,0 +1,81 @@
+package net.atomcode.bearing.benchmark;
+
+import net.atomcode.bearing.trace.TraceRecorder;
+import net.atomcode.bearing.trace.Tracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a traced section around a request stage, with tracing off and with a recorder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TracingBenchmark
+{
+	private static final String REQUEST_ID = "16466c99-1683-4f4c-ae0e-4d88067a041d";
+
+	@Param({"off", "recorder"})
+	public String tracer;
+
+	private TraceRecorder recorder;
+	private int sections = 0;
+	private long value = 17;
+
+	@Setup
+	public void setup()
+	{
+		recorder = new TraceRecorder();
+		Tracing.use("recorder".equals(tracer) ? recorder : null);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		Tracing.use(null);
+	}
+
+	@Benchmark
+	public long untraced()
+	{
+		return stage();
+	}
+
+	@Benchmark
+	public long traced()
+	{
+		Tracing.begin("update", REQUEST_ID);
+		try
+		{
+			return stage();
+		}
+		finally
+		{
+			Tracing.end("update", REQUEST_ID);
+			if (++sections == 10000)
+			{
+				sections = 0;
+				recorder.clear();
+			}
+		}
+	}
+
+	/**
+	 * Stand in for the work of a stage
+	 */
+	private long stage()
+	{
+		value = value * 6364136223846793005L + 1442695040888963407L;
+		return value;
+	}
+}
@@ -0,0 +1,63 @@
+package net.atomcode.bearing.benchmark;
+
+import net.atomcode.bearing.location.track.TrackBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per sample of appending to and iterating over a full track buffer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrackBufferBenchmark
+{
+	private static final int CAPACITY = 4096;
+	private static final int FIXES = 10000;
+
+	private TrackFixtures track;
+	private TrackBuffer buffer;
+	private TrackBuffer.Cursor cursor;
+
+	@Setup
+	public void setup()
+	{
+		track = TrackFixtures.drive(FIXES, 42);
+		buffer = new TrackBuffer(CAPACITY);
+		cursor = buffer.cursor();
+		append();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES)
+	public int append()
+	{
+		for (int index = 0; index < FIXES; index++)
+		{
+			buffer.append(track.latitudes[index], track.longitudes[index], track.times[index], track.accuracies[index], track.speeds[index], track.bearings[index]);
+		}
+		return buffer.size();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CAPACITY)
+	public double iterate()
+	{
+		double sum = 0;
+		cursor.reset();
+		while (cursor.moveToNext())
+		{
+			sum += cursor.getLatitude() + cursor.getLongitude();
+		}
+		return sum;
+	}
+}
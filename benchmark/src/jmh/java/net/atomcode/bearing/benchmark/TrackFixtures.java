@@ -0,0 +1,153 @@
+package net.atomcode.bearing.benchmark;
+
+import net.atomcode.bearing.location.provider.SimulatedTrack;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic tracks shaped like recorded ones: a vehicle moving at varying speed
+ * and heading, with GPS noise and an occasional large jump, optionally stopping on the way.
+ */
+public final class TrackFixtures
+{
+	private static final double METRES_PER_DEGREE = 111319.49079327358;
+
+	public final double[] latitudes;
+	public final double[] longitudes;
+	public final long[] times;
+	public final float[] accuracies;
+	public final float[] speeds;
+	public final float[] bearings;
+
+	private TrackFixtures(int size)
+	{
+		latitudes = new double[size];
+		longitudes = new double[size];
+		times = new long[size];
+		accuracies = new float[size];
+		speeds = new float[size];
+		bearings = new float[size];
+	}
+
+	public int size()
+	{
+		return times.length;
+	}
+
+	/**
+	 * @return The track to play back with a simulated location provider
+	 */
+	public SimulatedTrack toSimulatedTrack()
+	{
+		StringBuilder csv = new StringBuilder();
+		for (int index = 0; index < times.length; index++)
+		{
+			csv.append(times[index]).append(',')
+				.append(latitudes[index]).append(',')
+				.append(longitudes[index]).append(',')
+				.append(accuracies[index]).append(',')
+				.append(speeds[index]).append(',')
+				.append(bearings[index]).append('\n');
+		}
+
+		try
+		{
+			return SimulatedTrack.fromCsv(new StringReader(csv.toString()));
+		}
+		catch (IOException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Generate a track of the given number of fixes, one per second
+	 */
+	public static TrackFixtures drive(int size, long seed)
+	{
+		Random random = new Random(seed);
+		TrackFixtures track = new TrackFixtures(size);
+
+		double latitude = 51.4545;
+		double longitude = -2.5879;
+		double heading = random.nextDouble() * 360;
+		double speed = 10;
+		long time = 1500000000000L;
+
+		for (int index = 0; index < size; index++)
+		{
+			heading = (heading + random.nextGaussian() * 5 + 360) % 360;
+			speed = Math.max(0, Math.min(35, speed + random.nextGaussian()));
+
+			latitude += speed * Math.cos(Math.toRadians(heading)) / METRES_PER_DEGREE;
+			longitude += speed * Math.sin(Math.toRadians(heading)) / (METRES_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+			time += 1000;
+
+			float accuracy = (float)(5 + random.nextDouble() * 15);
+			double noise = accuracy / METRES_PER_DEGREE;
+			boolean jump = random.nextInt(200) == 0;
+
+			track.latitudes[index] = latitude + random.nextGaussian() * noise + (jump ? 0.01 : 0);
+			track.longitudes[index] = longitude + random.nextGaussian() * noise;
+			track.times[index] = time;
+			track.accuracies[index] = accuracy;
+			track.speeds[index] = (float)speed;
+			track.bearings[index] = (float)heading;
+		}
+
+		return track;
+	}
+
+	/**
+	 * Generate a track of the given number of fixes, one per second, alternating between
+	 * driving for 5 to 30 minutes and stopping for 5 to 60 minutes
+	 */
+	public static TrackFixtures commute(int size, long seed)
+	{
+		Random random = new Random(seed);
+		TrackFixtures track = new TrackFixtures(size);
+
+		double latitude = 51.4545;
+		double longitude = -2.5879;
+		double heading = random.nextDouble() * 360;
+		double speed = 0;
+		long time = 1500000000000L;
+
+		boolean driving = true;
+		int remaining = 0;
+
+		for (int index = 0; index < size; index++)
+		{
+			if (remaining-- == 0)
+			{
+				driving = !driving;
+				remaining = driving ? 300 + random.nextInt(1500) : 300 + random.nextInt(3300);
+				speed = driving ? 10 : 0;
+			}
+
+			if (driving)
+			{
+				heading = (heading + random.nextGaussian() * 5 + 360) % 360;
+				speed = Math.max(2, Math.min(35, speed + random.nextGaussian()));
+
+				latitude += speed * Math.cos(Math.toRadians(heading)) / METRES_PER_DEGREE;
+				longitude += speed * Math.sin(Math.toRadians(heading)) / (METRES_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+			}
+			time += 1000;
+
+			float accuracy = (float)(5 + random.nextDouble() * 15);
+			double noise = accuracy / METRES_PER_DEGREE;
+
+			track.latitudes[index] = latitude + random.nextGaussian() * noise;
+			track.longitudes[index] = longitude + random.nextGaussian() * noise;
+			track.times[index] = time;
+			track.accuracies[index] = accuracy;
+			track.speeds[index] = (float)speed;
+			track.bearings[index] = (float)heading;
+		}
+
+		return track;
+	}
+}
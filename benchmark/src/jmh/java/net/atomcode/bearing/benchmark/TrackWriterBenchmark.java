@@ -0,0 +1,58 @@
+package net.atomcode.bearing.benchmark;
+
+import net.atomcode.bearing.location.track.TrackWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per sample on the calling thread of recording a track to file
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrackWriterBenchmark
+{
+	private static final int FIXES = 10000;
+
+	private TrackFixtures track;
+	private File file;
+	private TrackWriter writer;
+
+	@Setup(Level.Iteration)
+	public void setup() throws IOException
+	{
+		track = TrackFixtures.drive(FIXES, 42);
+		file = File.createTempFile("bearing", ".btrk");
+		writer = new TrackWriter(file);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException
+	{
+		writer.close();
+		file.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FIXES)
+	public void write()
+	{
+		for (int index = 0; index < FIXES; index++)
+		{
+			writer.write(track.latitudes[index], track.longitudes[index], track.times[index], track.accuracies[index], track.speeds[index], track.bearings[index]);
+		}
+	}
+}
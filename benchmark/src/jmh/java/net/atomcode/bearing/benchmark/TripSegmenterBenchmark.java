@@ -0,0 +1,93 @@
+package net.atomcode.bearing.benchmark;
+
+import net.atomcode.bearing.trip.TripSegmenter;
+import net.atomcode.bearing.trip.TripSummary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per fix of segmenting commutes into trips and stops, streamed one fix at a time and as
+ * a set of recorded tracks split across threads
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TripSegmenterBenchmark
+{
+	private static final int TRACKS = 8;
+	private static final int FIXES = 250000;
+
+	@Param({"1", "4"})
+	public int threads;
+
+	private double[][] latitudes = new double[TRACKS][];
+	private double[][] longitudes = new double[TRACKS][];
+	private long[][] times = new long[TRACKS][];
+
+	private TripSegmenter segmenter;
+	private ExecutorService executor;
+
+	@Setup
+	public void setup()
+	{
+		for (int track = 0; track < TRACKS; track++)
+		{
+			TrackFixtures fixtures = TrackFixtures.commute(FIXES, track);
+			latitudes[track] = fixtures.latitudes;
+			longitudes[track] = fixtures.longitudes;
+			times[track] = fixtures.times;
+		}
+
+		segmenter = new TripSegmenter();
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		executor.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TRACKS * FIXES)
+	public int stream()
+	{
+		int trips = 0;
+		for (int track = 0; track < TRACKS; track++)
+		{
+			segmenter.reset();
+			for (int index = 0; index < FIXES; index++)
+			{
+				segmenter.update(latitudes[track][index], longitudes[track][index], times[track][index], 10);
+			}
+			segmenter.finish();
+			trips += segmenter.getSummary().getTripCount();
+		}
+		return trips;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TRACKS * FIXES)
+	public int parallel() throws InterruptedException
+	{
+		TripSummary total = new TripSummary();
+		for (TripSummary summary : segmenter.segment(latitudes, longitudes, times, executor, threads))
+		{
+			total.merge(summary);
+		}
+		return total.getTripCount();
+	}
+}
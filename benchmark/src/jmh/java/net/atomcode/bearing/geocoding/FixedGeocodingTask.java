@@ -0,0 +1,43 @@
+package net.atomcode.bearing.geocoding;
+
+import android.location.Address;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Geocoding task answering every lookup with the same addresses, through the geocoding limiter
+ * like a real lookup, so only the dispatch of the task is measured
+ */
+public class FixedGeocodingTask extends GeocodingTask<String>
+{
+	private static final List<Address> ADDRESSES = Collections.singletonList(new Address(Locale.UK));
+
+	private static final Lookup LOOKUP = new Lookup()
+	{
+		@Override public List<Address> run()
+		{
+			return ADDRESSES;
+		}
+	};
+
+	public FixedGeocodingTask(String query)
+	{
+		super(null, new String[]{query}, Locale.UK);
+	}
+
+	@Override protected List<Address> doInBackground(String... params)
+	{
+		try
+		{
+			return lookup(LOOKUP);
+		}
+		catch (IOException ex)
+		{
+			failure = ex;
+			return null;
+		}
+	}
+}
@@ -0,0 +1,3 @@
+# The factory is only referenced from its service entry
+-keep class net.atomcode.bearing.location.provider.GMSLocationProviderFactory { <init>(); }
+-keepnames class net.atomcode.bearing.location.LocationProviderFactory
@@ -3,6 +3,7 @@ package net.atomcode.bearing.location.provider;
 import android.content.Context;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
@@ -12,9 +13,11 @@ import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationServices;
 
 import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.geodesy.Geodesy;
 import net.atomcode.bearing.location.LocationListener;
 import net.atomcode.bearing.location.LocationProvider;
 import net.atomcode.bearing.location.LocationProviderRequest;
+import net.atomcode.bearing.trace.Tracing;
 
 import java.util.HashMap;
 import java.util.Iterator;
@@ -29,7 +32,7 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 {
 	private static GMSLocationProvider instance;
 
-	public static GMSLocationProvider getInstance()
+	public static synchronized GMSLocationProvider getInstance()
 	{
 		if (instance == null)
 		{
@@ -42,10 +45,13 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 
 	private Map<String, Runnable> pendingRequests = new ConcurrentHashMap<>();
 	private Map<String, com.google.android.gms.location.LocationListener> runningRequests = new HashMap<>();
+	private Map<String, com.google.android.gms.location.LocationListener> escalatedRequests = new HashMap<>();
+	private Map<String, Runnable> passiveEscalations = new HashMap<>();
+	private Handler handler = new Handler(Looper.getMainLooper());
 	private Location lastLocation;
 
 	@Override
-	public void create(Context context)
+	public synchronized void create(Context context)
 	{
 		if (apiClient == null)
 		{
@@ -58,20 +64,39 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 	}
 
 	@Override
-	public void destroy()
+	public synchronized void destroy()
 	{
 		pendingRequests.clear();
 
-		if (apiClient.isConnected() )
+		for (Runnable escalation : passiveEscalations.values())
 		{
-			for (com.google.android.gms.location.LocationListener runningRequest : runningRequests.values())
+			handler.removeCallbacks(escalation);
+		}
+		passiveEscalations.clear();
+
+		if (apiClient != null)
+		{
+			if (apiClient.isConnected())
 			{
-				LocationServices.FusedLocationApi.removeLocationUpdates(apiClient, runningRequest);
+				for (com.google.android.gms.location.LocationListener runningRequest : runningRequests.values())
+				{
+					LocationServices.FusedLocationApi.removeLocationUpdates(apiClient, runningRequest);
+				}
+				for (com.google.android.gms.location.LocationListener escalatedRequest : escalatedRequests.values())
+				{
+					LocationServices.FusedLocationApi.removeLocationUpdates(apiClient, escalatedRequest);
+				}
 			}
-			runningRequests.clear();
 
+			apiClient.unregisterConnectionCallbacks(this);
+			apiClient.unregisterConnectionFailedListener(this);
 			apiClient.disconnect();
+			apiClient = null;
 		}
+
+		runningRequests.clear();
+		escalatedRequests.clear();
+		lastLocation = null;
 	}
 
 	@Override
@@ -83,6 +108,16 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 	@Override
 	public String requestSingleLocationUpdate(final LocationProviderRequest request, final LocationListener listener)
 	{
+		if (apiClient == null)
+		{
+			Bearing.log("pending", "GMS: Request made after provider was destroyed");
+			if (listener != null)
+			{
+				listener.onFailure();
+			}
+			return null;
+		}
+
 		final String requestId = UUID.randomUUID().toString();
 		internalRequestSingleUpdate(requestId, request, listener);
 		return requestId;
@@ -91,6 +126,16 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 	@Override
 	public String requestRecurringLocationUpdates(final LocationProviderRequest request, final LocationListener listener)
 	{
+		if (apiClient == null)
+		{
+			Bearing.log("pending", "GMS: Request made after provider was destroyed");
+			if (listener != null)
+			{
+				listener.onFailure();
+			}
+			return null;
+		}
+
 		final String requestId = UUID.randomUUID().toString();
 		internalRequestRecurringUpdates(requestId, request, listener);
 		return requestId;
@@ -99,17 +144,31 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 	@Override
 	public void cancelUpdates(String requestId)
 	{
-		if (apiClient.isConnected())
+		Runnable escalation = passiveEscalations.remove(requestId);
+		if (escalation != null)
+		{
+			handler.removeCallbacks(escalation);
+		}
+		com.google.android.gms.location.LocationListener escalatedRequest = escalatedRequests.remove(requestId);
+
+		// A request waiting for the connection must not be started once it connects
+		if (pendingRequests.remove(requestId) != null)
+		{
+			Tracing.endAsync("connect", requestId);
+		}
+
+		if (apiClient != null && apiClient.isConnected())
 		{
-			if (pendingRequests.containsKey(requestId))
+			if (escalatedRequest != null)
 			{
-				pendingRequests.remove(requestId);
+				LocationServices.FusedLocationApi.removeLocationUpdates(apiClient, escalatedRequest);
 			}
 
 			if (runningRequests.containsKey(requestId))
 			{
 				LocationServices.FusedLocationApi.removeLocationUpdates(apiClient, runningRequests.get(requestId));
 				runningRequests.remove(requestId);
+				Tracing.endAsync("request", requestId);
 
 				if (runningRequests.size() == 0)
 				{
@@ -126,7 +185,7 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 	{
 		if (apiClient.isConnected())
 		{
-			final LocationRequest gmsRequest = getRecurringLocationRequestForBearingRequest(request);
+			final LocationRequest gmsRequest = getRecurringLocationRequestForBearingRequest(request, request.passive);
 
 			runningRequests.put(requestId, new com.google.android.gms.location.LocationListener()
 			{
@@ -135,6 +194,35 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 
 				@Override public void onLocationChanged(Location location)
 				{
+					Tracing.begin("update", requestId);
+					try
+					{
+						handleLocation(location);
+					}
+					finally
+					{
+						Tracing.end("update", requestId);
+					}
+				}
+
+				private void handleLocation(Location location)
+				{
+					if (request.passive)
+					{
+						// Got a fix, push back the escalation
+						schedulePassiveEscalation(requestId, request, this, true);
+					}
+
+					if (request.trackingFilter != null)
+					{
+						location = request.trackingFilter.filter(location);
+						if (location == null)
+						{
+							Bearing.log(requestId, "Location rejected by filter");
+							return;
+						}
+					}
+
 					long currentTimestamp = System.currentTimeMillis() / 1000;
 					long timeSinceLastReport = currentTimestamp - lastReportedTimestamp;
 
@@ -154,7 +242,7 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 						return;
 					}
 
-					if (request.trackingDisplacement != -1 && location.distanceTo(lastReportedLocation) > request.trackingDisplacement)
+					if (request.trackingDisplacement != -1 && !Geodesy.isWithin(location.getLatitude(), location.getLongitude(), lastReportedLocation.getLatitude(), lastReportedLocation.getLongitude(), request.trackingDisplacement))
 					{
 						lastReportedLocation = location;
 						lastReportedTimestamp = currentTimestamp;
@@ -167,14 +255,22 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 				}
 			});
 
+			Tracing.beginAsync("request", requestId);
 			LocationServices.FusedLocationApi.requestLocationUpdates(apiClient, gmsRequest, runningRequests.get(requestId), Looper.getMainLooper());
+
+			if (request.passive)
+			{
+				schedulePassiveEscalation(requestId, request, runningRequests.get(requestId), true);
+			}
 		}
 		else
 		{
+			Tracing.beginAsync("connect", requestId);
 			pendingRequests.put(requestId, new Runnable()
 			{
 				@Override public void run()
 				{
+					Tracing.endAsync("connect", requestId);
 					internalRequestRecurringUpdates(requestId, request, listener);
 				}
 			});
@@ -185,7 +281,7 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 	/**
 	 * Convert bearing request to GMS location request
 	 */
-	private LocationRequest getRecurringLocationRequestForBearingRequest(LocationProviderRequest request)
+	private LocationRequest getRecurringLocationRequestForBearingRequest(LocationProviderRequest request, boolean passive)
 	{
 		LocationRequest gmsRequest = new LocationRequest();
 
@@ -201,6 +297,10 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 			case HIGH:
 				priority = LocationRequest.PRIORITY_HIGH_ACCURACY;
 		}
+		if (passive)
+		{
+			priority = LocationRequest.PRIORITY_NO_POWER;
+		}
 		gmsRequest.setPriority(priority);
 
 		gmsRequest.setFastestInterval(request.trackingRate);
@@ -219,24 +319,27 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 			if (request.useCache)
 			{
 				Bearing.log("pending", "GMS: Checking for cached locations...");
+				Tracing.begin("cache", requestId);
 				Location lastKnownUserLocation = getLastKnownLocation(request);
 
 				// Check if last known location is valid
-				if (lastKnownUserLocation != null && System.currentTimeMillis() - lastKnownUserLocation.getTime() < request.cacheExpiry)
+				boolean valid = lastKnownUserLocation != null
+					&& System.currentTimeMillis() - lastKnownUserLocation.getTime() < request.cacheExpiry
+					&& lastKnownUserLocation.getAccuracy() < request.accuracy.value;
+				Tracing.end("cache", requestId);
+
+				if (valid)
 				{
-					if (lastKnownUserLocation.getAccuracy() < request.accuracy.value)
+					if (listener != null)
 					{
-						if (listener != null)
-						{
-							listener.onUpdate(lastKnownUserLocation);
-							return;
-						}
-						Bearing.log("pending", "GMS: Got cached location: " + lastKnownUserLocation);
+						listener.onUpdate(lastKnownUserLocation);
+						return;
 					}
+					Bearing.log("pending", "GMS: Got cached location: " + lastKnownUserLocation);
 				}
 			}
 
-			LocationRequest gmsRequest = getSingleLocationRequestForBearingRequest(request);
+			LocationRequest gmsRequest = getSingleLocationRequestForBearingRequest(request, request.passive);
 
 			runningRequests.put(requestId, new com.google.android.gms.location.LocationListener()
 			{
@@ -244,9 +347,17 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 				{
 					Bearing.log(requestId, "GMS: Location changed to " + location);
 
-					if (listener != null)
+					Tracing.begin("update", requestId);
+					try
 					{
-						listener.onUpdate(location);
+						if (listener != null)
+						{
+							listener.onUpdate(location);
+						}
+					}
+					finally
+					{
+						Tracing.end("update", requestId);
 					}
 
 					cancelUpdates(requestId);
@@ -254,14 +365,22 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 			});
 
 			Bearing.log(requestId, "GMS: Request location update within " + request.fallbackTimeout + "ms");
+			Tracing.beginAsync("request", requestId);
 			LocationServices.FusedLocationApi.requestLocationUpdates(apiClient, gmsRequest, runningRequests.get(requestId), Looper.getMainLooper());
+
+			if (request.passive)
+			{
+				schedulePassiveEscalation(requestId, request, runningRequests.get(requestId), false);
+			}
 		}
 		else
 		{
+			Tracing.beginAsync("connect", requestId);
 			pendingRequests.put(requestId, new Runnable()
 			{
 				@Override public void run()
 				{
+					Tracing.endAsync("connect", requestId);
 					internalRequestSingleUpdate(requestId, request, listener);
 				}
 			});
@@ -272,11 +391,11 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 	/**
 	 * Convert bearing request to GMS Location request
 	 */
-	private LocationRequest getSingleLocationRequestForBearingRequest(LocationProviderRequest request)
+	private LocationRequest getSingleLocationRequestForBearingRequest(LocationProviderRequest request, boolean passive)
 	{
 		LocationRequest gmsRequest = new LocationRequest();
 		gmsRequest.setNumUpdates(1); // Single update
-		gmsRequest.setExpirationDuration(request.fallbackTimeout);
+		gmsRequest.setExpirationDuration(passive ? request.passiveTimeout + request.fallbackTimeout : request.fallbackTimeout);
 		gmsRequest.setInterval(0);
 		int priority = LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
 		switch (request.accuracy)
@@ -290,10 +409,81 @@ public class GMSLocationProvider implements LocationProvider, GoogleApiClient.Co
 			case HIGH:
 				priority = LocationRequest.PRIORITY_HIGH_ACCURACY;
 		}
+		if (passive)
+		{
+			priority = LocationRequest.PRIORITY_NO_POWER;
+		}
 		gmsRequest.setPriority(priority);
 		return gmsRequest;
 	}
 
+	/**
+	 * Make a single active request on behalf of a passive request if no passive location
+	 * arrives within the request's passive timeout. The active location is delivered to
+	 * the passive request's listener.
+	 * @param repeat Whether to keep escalating each time the timeout passes without a location
+	 */
+	private void schedulePassiveEscalation(final String requestId, final LocationProviderRequest request, final com.google.android.gms.location.LocationListener target, final boolean repeat)
+	{
+		Runnable previous = passiveEscalations.remove(requestId);
+		if (previous != null)
+		{
+			handler.removeCallbacks(previous);
+		}
+
+		Runnable escalation = new Runnable()
+		{
+			@Override public void run()
+			{
+				passiveEscalations.remove(requestId);
+
+				if (runningRequests.get(requestId) != target || !apiClient.isConnected())
+				{
+					return;
+				}
+
+				Bearing.log(requestId, "GMS: No passive location within " + request.passiveTimeout + "ms, escalating to active request");
+
+				// Periodic requests have no fallback timeout, so expire by the passive timeout instead
+				LocationRequest activeRequest = getSingleLocationRequestForBearingRequest(request, false);
+				activeRequest.setExpirationDuration(request.fallbackTimeout > 0 ? request.fallbackTimeout : request.passiveTimeout);
+
+				com.google.android.gms.location.LocationListener escalatedRequest = new com.google.android.gms.location.LocationListener()
+				{
+					@Override public void onLocationChanged(Location location)
+					{
+						LocationServices.FusedLocationApi.removeLocationUpdates(apiClient, this);
+						if (escalatedRequests.get(requestId) == this)
+						{
+							escalatedRequests.remove(requestId);
+						}
+
+						if (runningRequests.get(requestId) == target)
+						{
+							target.onLocationChanged(location);
+						}
+					}
+				};
+
+				com.google.android.gms.location.LocationListener previousRequest = escalatedRequests.put(requestId, escalatedRequest);
+				if (previousRequest != null)
+				{
+					LocationServices.FusedLocationApi.removeLocationUpdates(apiClient, previousRequest);
+				}
+
+				LocationServices.FusedLocationApi.requestLocationUpdates(apiClient, activeRequest, escalatedRequest, Looper.getMainLooper());
+
+				if (repeat)
+				{
+					schedulePassiveEscalation(requestId, request, target, true);
+				}
+			}
+		};
+
+		passiveEscalations.put(requestId, escalation);
+		handler.postDelayed(escalation, request.passiveTimeout);
+	}
+
 	/*
 	 * ========================================================
 	 * LocationListener and GooglePlayServicesClient callbacks
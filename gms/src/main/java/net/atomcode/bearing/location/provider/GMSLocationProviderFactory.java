@@ -0,0 +1,54 @@
+package net.atomcode.bearing.location.provider;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GooglePlayServicesUtil;
+
+import net.atomcode.bearing.location.LocationProvider;
+import net.atomcode.bearing.location.LocationProviderFactory;
+
+/**
+ * Offers the {@link GMSLocationProvider} wherever Google Play services is available. Found by
+ * Bearing through this module's service entry.
+ */
+public class GMSLocationProviderFactory implements LocationProviderFactory
+{
+	private static final int PRIORITY = 100;
+
+	/**
+	 * Play services package, a constant so reading it does not load the Play services classes
+	 */
+	private static final String PACKAGE_NAME = GooglePlayServicesUtil.GOOGLE_PLAY_SERVICES_PACKAGE;
+
+	@Override public int getPriority()
+	{
+		return PRIORITY;
+	}
+
+	@Override public boolean isAvailable(Context context)
+	{
+		// Devices without Play services, e.g. Fire devices, never load the client library
+		try
+		{
+			context.getPackageManager().getPackageInfo(PACKAGE_NAME, 0);
+		}
+		catch (PackageManager.NameNotFoundException ex)
+		{
+			return false;
+		}
+
+		return GooglePlayServicesUtil.isGooglePlayServicesAvailable(context) == ConnectionResult.SUCCESS;
+	}
+
+	@Override public String getPackageName()
+	{
+		return PACKAGE_NAME;
+	}
+
+	@Override public LocationProvider getProvider()
+	{
+		return GMSLocationProvider.getInstance();
+	}
+}
@@ -1,16 +1,47 @@
 package net.atomcode.bearing;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.location.Address;
 import android.location.Location;
 import android.location.LocationManager;
 import android.util.Log;
 
+import net.atomcode.bearing.geocoding.AddressCache;
+import net.atomcode.bearing.geocoding.AddressStore;
+import net.atomcode.bearing.geocoding.GeocodeSearch;
+import net.atomcode.bearing.geocoding.GeocodingLimiter;
 import net.atomcode.bearing.geocoding.GeocodingTask;
 import net.atomcode.bearing.geocoding.QueryGeocodingTask;
 import net.atomcode.bearing.geocoding.ReverseGeocodingTask;
 import net.atomcode.bearing.location.CurrentLocationTask;
+import net.atomcode.bearing.location.LocationProvider;
+import net.atomcode.bearing.location.LocationProviderFactory;
+import net.atomcode.bearing.location.LocationProviderRequest;
 import net.atomcode.bearing.location.PeriodicLocationTask;
+import net.atomcode.bearing.location.PowerBudget;
+import net.atomcode.bearing.location.provider.LegacyLocationProvider;
+import net.atomcode.bearing.region.Region;
+import net.atomcode.bearing.region.RegionIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Entry class for Bearing library.
@@ -46,6 +77,16 @@ public class Bearing
 	 */
 	static Bearing singleton = null;
 
+	/**
+	 * Shared worker for task timeouts, created on first use and stopped on {@link #shutdown()}
+	 */
+	private static ScheduledExecutorService scheduler = null;
+
+	/**
+	 * Shared background workers, created on first use and stopped on {@link #shutdown()}
+	 */
+	private static ExecutorService executor = null;
+
 	public static boolean isLocationServicesAvailable(Context context)
 	{
 		if (context == null)
@@ -81,36 +122,494 @@ public class Bearing
 		return false;
 	}
 
-	private static final boolean LOG = false;
+	/**
+	 * Provider to use for all tasks instead of the best available one, if set
+	 */
+	static LocationProvider providerOverride = null;
+
+	/**
+	 * Use the given location provider for all new location tasks instead of the best available
+	 * provider on the device, e.g. a {@link net.atomcode.bearing.location.provider.SimulatedLocationProvider}
+	 * for load and replay testing.
+	 * @param provider The provider to use, or null to go back to the best available provider
+	 */
+	public static void useLocationProvider(LocationProvider provider)
+	{
+		providerOverride = provider;
+	}
+
+	/**
+	 * @return The provider set with {@link #useLocationProvider(LocationProvider)}, or null
+	 */
+	public static LocationProvider getLocationProviderOverride()
+	{
+		return providerOverride;
+	}
+
+	/**
+	 * Factories of the providers to choose from, highest priority first, loaded when first needed
+	 */
+	private static List<LocationProviderFactory> providerFactories = null;
+
+	/**
+	 * Offer the provider of the given factory when choosing the best available provider, as well as
+	 * those found on the classpath. The provider is chosen again for the next task.
+	 */
+	public static void registerLocationProvider(LocationProviderFactory factory)
+	{
+		Bearing instance;
+		synchronized (Bearing.class)
+		{
+			List<LocationProviderFactory> factories = new ArrayList<>(getLocationProviderFactories());
+			factories.add(factory);
+			sortByPriority(factories);
+			providerFactories = factories;
+			instance = singleton;
+		}
+
+		if (instance != null)
+		{
+			instance.invalidateLocationProvider();
+		}
+	}
+
+	/**
+	 * Get the factories of the providers to choose from, highest priority first. Factories listed
+	 * in {@code META-INF/services}, e.g. by the bearing-gms module, are loaded on first use.
+	 */
+	public static synchronized List<LocationProviderFactory> getLocationProviderFactories()
+	{
+		if (providerFactories == null)
+		{
+			List<LocationProviderFactory> factories = new ArrayList<>();
+			Iterator<LocationProviderFactory> services = ServiceLoader.load(LocationProviderFactory.class, Bearing.class.getClassLoader()).iterator();
+			while (true)
+			{
+				try
+				{
+					if (!services.hasNext())
+					{
+						break;
+					}
+					factories.add(services.next());
+				}
+				catch (ServiceConfigurationError ex)
+				{
+					Log.w("Bearing", "Unable to load location provider: " + ex.getMessage());
+				}
+			}
+
+			sortByPriority(factories);
+			providerFactories = factories;
+		}
+
+		return Collections.unmodifiableList(providerFactories);
+	}
+
+	private static void sortByPriority(List<LocationProviderFactory> factories)
+	{
+		Collections.sort(factories, new Comparator<LocationProviderFactory>()
+		{
+			@Override public int compare(LocationProviderFactory first, LocationProviderFactory second)
+			{
+				return second.getPriority() < first.getPriority() ? -1 : (second.getPriority() == first.getPriority() ? 0 : 1);
+			}
+		});
+	}
+
+	/**
+	 * Energy budget shared by all location tasks, if set
+	 */
+	static PowerBudget powerBudget = null;
+
+	/**
+	 * Share the given energy budget between all location tasks started from now on, so they
+	 * are granted, downgraded or deferred according to what is left of it
+	 * @param budget The budget to use, or null to let tasks run unchecked
+	 */
+	public static void usePowerBudget(PowerBudget budget)
+	{
+		powerBudget = budget;
+	}
+
+	/**
+	 * @return The budget set with {@link #usePowerBudget(PowerBudget)}, or null
+	 */
+	public static PowerBudget getPowerBudget()
+	{
+		return powerBudget;
+	}
+
+	/**
+	 * Limit on the geocoder lookups of all geocoding tasks and downloads
+	 */
+	static volatile GeocodingLimiter geocodingLimiter = new GeocodingLimiter();
+
+	/**
+	 * Limit geocoder lookups with the given limiter instead of the default one, e.g. to tune it
+	 * to the geocoder's quota
+	 * @param limiter The limiter to use, or null to let lookups run unchecked
+	 */
+	public static void useGeocodingLimiter(GeocodingLimiter limiter)
+	{
+		geocodingLimiter = limiter;
+	}
+
+	/**
+	 * @return The limiter in front of geocoder lookups, to monitor, or null if unchecked
+	 */
+	public static GeocodingLimiter getGeocodingLimiter()
+	{
+		return geocodingLimiter;
+	}
+
+	/**
+	 * Receives Bearing's debug log, see {@link #useLogger(Logger)}
+	 */
+	public interface Logger
+	{
+		public void log(String requestId, String message);
+	}
+
+	/**
+	 * Logs to logcat under the tag "Bearing"
+	 */
+	public static final Logger LOGCAT = new Logger()
+	{
+		@Override public void log(String requestId, String message)
+		{
+			Log.d("Bearing", "[" + requestId + "] " +  message);
+		}
+	};
+
+	private static volatile Logger logger = null;
+
+	/**
+	 * Send Bearing's debug log to the given logger, e.g. {@link #LOGCAT}. With no logger set, as
+	 * by default, each log call is a single volatile read.
+	 * @param logger The logger, or null to stop logging
+	 */
+	public static void useLogger(Logger logger)
+	{
+		Bearing.logger = logger;
+	}
 
 	public static void log(String requestId, String s)
 	{
-		if (LOG)
+		Logger current = logger;
+		if (current != null)
 		{
-			Log.d("Bearing", "[" + requestId + "] " +  s);
+			current.log(requestId, s);
 		}
 	}
 
 	/**
-	 * Get the default {@link Bearing} instance
+	 * Get the default {@link Bearing} instance. The instance is bound to the application
+	 * context, so any context of the app may be passed.
 	 * @param context The context in which to make requests
 	 */
-	public static Bearing with(Context context)
+	public static synchronized Bearing with(Context context)
 	{
+		if (context == null)
+		{
+			throw new IllegalArgumentException("Context cannot be null!");
+		}
+
 		if (singleton == null)
 		{
-			singleton = new Bearing(context);
+			Context applicationContext = context.getApplicationContext();
+			singleton = new Bearing(applicationContext != null ? applicationContext : context);
 		}
 		return singleton;
 	}
 
+	/**
+	 * Get the shared worker used to time out tasks
+	 */
+	public static synchronized ScheduledExecutorService getScheduler()
+	{
+		if (scheduler == null)
+		{
+			scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+			{
+				@Override public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "Bearing-Scheduler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return scheduler;
+	}
+
 	final Context context;
 
+	/**
+	 * The resolved best available provider, null until first needed or after invalidation
+	 */
+	private LocationProvider locationProvider;
+
+	/**
+	 * The provider last invalidated, destroyed once another replaces it
+	 */
+	private LocationProvider invalidatedProvider;
+	private BroadcastReceiver packageReceiver;
+
+	private AddressCache addressCache;
+	private AddressStore addressStore;
+	private RegionIndex regionIndex;
+	private boolean prefillRegions;
+
 	Bearing(Context context)
 	{
 		this.context = context;
 	}
 
+	/**
+	 * Get the location provider new tasks should use. The best available provider is resolved
+	 * once, falling back to the platform's location manager, and reused until a package a
+	 * provider depends on, e.g. Google Play services, is installed, updated or removed.
+	 */
+	public LocationProvider getLocationProvider()
+	{
+		LocationProvider override = providerOverride;
+		if (override != null)
+		{
+			return override;
+		}
+
+		synchronized (this)
+		{
+			if (locationProvider == null)
+			{
+				List<LocationProviderFactory> factories = getLocationProviderFactories();
+				for (LocationProviderFactory factory : factories)
+				{
+					if (factory.isAvailable(context))
+					{
+						locationProvider = factory.getProvider();
+						break;
+					}
+				}
+
+				if (locationProvider == null)
+				{
+					locationProvider = LegacyLocationProvider.getInstance();
+				}
+
+				// Providers are shared instances, so the invalidated one may still be the best
+				if (locationProvider != invalidatedProvider)
+				{
+					if (invalidatedProvider != null)
+					{
+						invalidatedProvider.destroy();
+					}
+					locationProvider.create(context);
+				}
+				invalidatedProvider = null;
+
+				watchPackages(factories);
+			}
+
+			return locationProvider;
+		}
+	}
+
+	/**
+	 * Get the shared pool of background workers used to deliver to slow consumers and run
+	 * blocking work off the main thread. Idle workers are released after a minute.
+	 */
+	public static synchronized ExecutorService getExecutor()
+	{
+		if (executor == null)
+		{
+			executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory()
+			{
+				@Override public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "Bearing-Worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Release everything held by this instance: running location requests are stopped, the
+	 * provider disconnects from location services and the worker threads are stopped.
+	 * The next call to {@link #with(Context)} creates a new instance.
+	 */
+	public void shutdown()
+	{
+		synchronized (Bearing.class)
+		{
+			if (singleton == this)
+			{
+				singleton = null;
+			}
+
+			if (scheduler != null)
+			{
+				scheduler.shutdownNow();
+				scheduler = null;
+			}
+
+			if (executor != null)
+			{
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+
+		synchronized (this)
+		{
+			if (packageReceiver != null)
+			{
+				context.unregisterReceiver(packageReceiver);
+				packageReceiver = null;
+			}
+
+			if (locationProvider != null)
+			{
+				locationProvider.destroy();
+				locationProvider = null;
+			}
+
+			if (invalidatedProvider != null)
+			{
+				invalidatedProvider.destroy();
+				invalidatedProvider = null;
+			}
+		}
+	}
+
+	/**
+	 * Get the cache of reverse geocoded addresses shared by this instance's geocoding stages
+	 */
+	public synchronized AddressCache getAddressCache()
+	{
+		if (addressCache == null)
+		{
+			addressCache = new AddressCache();
+		}
+		return addressCache;
+	}
+
+	/**
+	 * Consult the given store of downloaded addresses before the device geocoder, so geocoding
+	 * works without coverage in downloaded regions
+	 * @param store The store to use, or null to stop using a store
+	 */
+	public synchronized void useAddressStore(AddressStore store)
+	{
+		this.addressStore = store;
+	}
+
+	/**
+	 * @return The store set with {@link #useAddressStore(AddressStore)}, or null
+	 */
+	public synchronized AddressStore getAddressStore()
+	{
+		return addressStore;
+	}
+
+	/**
+	 * Resolve regions offline with the given index
+	 * @param index The index to use, or null to stop using an index
+	 * @param prefill Whether reverse geocoding fills in the country and admin area of addresses
+	 * from the index where the geocoder left them out, and returns the region alone when the
+	 * geocoder cannot be reached
+	 */
+	public synchronized void useRegionIndex(RegionIndex index, boolean prefill)
+	{
+		this.regionIndex = index;
+		this.prefillRegions = prefill;
+	}
+
+	/**
+	 * @return The index set with {@link #useRegionIndex(RegionIndex, boolean)}, or null
+	 */
+	public synchronized RegionIndex getRegionIndex()
+	{
+		return regionIndex;
+	}
+
+	/**
+	 * @return Whether reverse geocoding fills in addresses from the region index
+	 */
+	public synchronized boolean isPrefillingRegions()
+	{
+		return regionIndex != null && prefillRegions;
+	}
+
+	/**
+	 * Get the country, admin region and time zone of the given coordinate from the region index,
+	 * without a geocoder round trip
+	 * @return The region, or null if no index is set or the coordinate is in no region
+	 */
+	public Region region(double latitude, double longitude)
+	{
+		RegionIndex index = getRegionIndex();
+		return index != null ? index.resolve(latitude, longitude) : null;
+	}
+
+	/**
+	 * Forget the resolved location provider so it is resolved again for the next task. If
+	 * another provider is resolved, the forgotten one is destroyed first, stopping the requests
+	 * still running on it.
+	 */
+	public synchronized void invalidateLocationProvider()
+	{
+		if (locationProvider != null)
+		{
+			invalidatedProvider = locationProvider;
+			locationProvider = null;
+		}
+	}
+
+	/**
+	 * Invalidate the resolved provider whenever a package the given providers depend on changes
+	 */
+	private void watchPackages(List<LocationProviderFactory> factories)
+	{
+		final Set<String> packageNames = new HashSet<>();
+		for (LocationProviderFactory factory : factories)
+		{
+			if (factory.getPackageName() != null)
+			{
+				packageNames.add(factory.getPackageName());
+			}
+		}
+
+		if (packageReceiver != null || packageNames.isEmpty())
+		{
+			return;
+		}
+
+		packageReceiver = new BroadcastReceiver()
+		{
+			@Override public void onReceive(Context context, Intent intent)
+			{
+				if (intent.getData() != null && packageNames.contains(intent.getData().getSchemeSpecificPart()))
+				{
+					log("bearing", intent.getData().getSchemeSpecificPart() + " changed, invalidating location provider");
+					invalidateLocationProvider();
+				}
+			}
+		};
+
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+		filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+		filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+		filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+		filter.addDataScheme("package");
+		context.registerReceiver(packageReceiver, filter);
+	}
+
 	/**
 	 * Geocode the given query into a list of possible resulting lat,lng pairs
 	 * @param query The query to check
@@ -152,13 +651,23 @@ public class Bearing
 		return new ReverseGeocodingTask(context, new Double[]{latitude, longitude});
 	}
 
+	/**
+	 * Start a session geocoding a search box as the user types
+	 * @param listener The listener for the results of the latest query
+	 * @return The session to feed the typed text to
+	 */
+	public GeocodeSearch search(GeocodeSearch.Listener listener)
+	{
+		return new GeocodeSearch(context, listener);
+	}
+
 	/**
 	 * Gets the last known location available from the available location provider
 	 * @return The location or null
 	 */
 	public Location getLastLocation()
 	{
-		return new CurrentLocationTask(context).getLastLocation();
+		return getLocationProvider().getLastKnownLocation(new LocationProviderRequest());
 	}
 
 	/**
@@ -167,7 +676,34 @@ public class Bearing
 	 */
 	public CurrentLocationTask locate()
 	{
-		return new CurrentLocationTask(context);
+		return new CurrentLocationTask(getLocationProvider());
+	}
+
+	/**
+	 * Locate the current user with the default task configuration
+	 * @return A future completed on Bearing's worker threads
+	 */
+	public BearingFuture<Location> locateAsync()
+	{
+		return locate().startAsync();
+	}
+
+	/**
+	 * Geocode the given query into a list of possible resulting lat,lng pairs
+	 * @return A future completed on Bearing's worker threads
+	 */
+	public BearingFuture<List<Address>> geocodeAsync(String query)
+	{
+		return new QueryGeocodingTask(context, new String[]{query}).startAsync();
+	}
+
+	/**
+	 * Geocode the given location into a list of possible addresses
+	 * @return A future completed on Bearing's worker threads
+	 */
+	public BearingFuture<List<Address>> geocodeAsync(Location location)
+	{
+		return new ReverseGeocodingTask(context, new Double[]{location.getLatitude(), location.getLongitude()}).startAsync();
 	}
 
 	/**
@@ -176,7 +712,7 @@ public class Bearing
 	 */
 	public PeriodicLocationTask track()
 	{
-		return new PeriodicLocationTask(context);
+		return new PeriodicLocationTask(getLocationProvider());
 	}
 
 }
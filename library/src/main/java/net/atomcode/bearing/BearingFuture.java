@@ -0,0 +1,390 @@
+package net.atomcode.bearing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous Bearing task that can be chained without nesting listeners.
+ *
+ * Callbacks and chained steps run on the executor given when the future was created, never on
+ * the completing thread, so a chain such as locate, reverse geocode then upload does not hop
+ * through the main thread. Cancelling a future, or letting it time out, stops the task that
+ * produces it, and cancelling a chained future cancels the step it is waiting on.
+ */
+public class BearingFuture<T> implements Future<T>
+{
+	/**
+	 * Called once the future completes
+	 */
+	public interface Callback<T>
+	{
+		public void onSuccess(T value);
+		public void onFailure(Throwable error);
+	}
+
+	/**
+	 * Maps the value of a future into the value of the next step
+	 */
+	public interface Transform<T, R>
+	{
+		public R apply(T value) throws Exception;
+	}
+
+	/**
+	 * Maps the value of a future into the next asynchronous step
+	 */
+	public interface Compose<T, R>
+	{
+		public BearingFuture<R> apply(T value) throws Exception;
+	}
+
+	private static final int PENDING = 0;
+	private static final int SUCCEEDED = 1;
+	private static final int FAILED = 2;
+	private static final int CANCELLED = 3;
+
+	private final Executor executor;
+
+	/*
+	 * Guarded by this
+	 */
+	private int state = PENDING;
+	private T value;
+	private Throwable error;
+	private List<Callback<? super T>> callbacks = new ArrayList<>();
+	private List<Runnable> cancelActions = new ArrayList<>();
+	private ScheduledFuture<?> timeoutFuture;
+
+	/**
+	 * @param executor The executor to run callbacks and chained steps on
+	 */
+	public BearingFuture(Executor executor)
+	{
+		if (executor == null)
+		{
+			throw new IllegalArgumentException("Executor cannot be null!");
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * Complete the future with the given value
+	 * @return {@code true} if the future was completed by this call
+	 */
+	public boolean complete(T value)
+	{
+		return finish(SUCCEEDED, value, null);
+	}
+
+	/**
+	 * Complete the future with the given error
+	 * @return {@code true} if the future was completed by this call
+	 */
+	public boolean fail(Throwable error)
+	{
+		return finish(FAILED, null, error);
+	}
+
+	/**
+	 * Cancel the future and the task producing it
+	 */
+	@Override public boolean cancel(boolean mayInterruptIfRunning)
+	{
+		return finish(CANCELLED, null, new CancellationException());
+	}
+
+	/**
+	 * Run the given action if the future is cancelled or times out, to stop the task producing it.
+	 * Runs immediately if that has already happened.
+	 */
+	public BearingFuture<T> onCancel(Runnable action)
+	{
+		synchronized (this)
+		{
+			if (state == PENDING)
+			{
+				cancelActions.add(action);
+				return this;
+			}
+
+			if (!(error instanceof CancellationException || error instanceof TimeoutException))
+			{
+				return this;
+			}
+		}
+
+		action.run();
+		return this;
+	}
+
+	/**
+	 * Fail the future with a {@link TimeoutException}, stopping the task producing it, if it has
+	 * not completed within the given time
+	 */
+	public BearingFuture<T> timeout(long timeout, TimeUnit unit)
+	{
+		ScheduledFuture<?> future = Bearing.getScheduler().schedule(new Runnable()
+		{
+			@Override public void run()
+			{
+				finish(FAILED, null, new TimeoutException());
+			}
+		}, timeout, unit);
+
+		synchronized (this)
+		{
+			if (state != PENDING)
+			{
+				future.cancel(false);
+				return this;
+			}
+
+			if (timeoutFuture != null)
+			{
+				timeoutFuture.cancel(false);
+			}
+			timeoutFuture = future;
+		}
+		return this;
+	}
+
+	/**
+	 * Call the given callback once the future completes, or straight away if it already has
+	 */
+	public BearingFuture<T> whenComplete(Callback<? super T> callback)
+	{
+		synchronized (this)
+		{
+			if (state == PENDING)
+			{
+				callbacks.add(callback);
+				return this;
+			}
+		}
+
+		dispatch(callback);
+		return this;
+	}
+
+	/**
+	 * Chain a step transforming the value of this future
+	 */
+	public <R> BearingFuture<R> then(final Transform<? super T, ? extends R> transform)
+	{
+		final BearingFuture<R> next = new BearingFuture<>(executor);
+		next.onCancel(new Runnable()
+		{
+			@Override public void run()
+			{
+				cancel(false);
+			}
+		});
+
+		whenComplete(new Callback<T>()
+		{
+			@Override public void onSuccess(T value)
+			{
+				try
+				{
+					next.complete(transform.apply(value));
+				}
+				catch (Exception ex)
+				{
+					next.fail(ex);
+				}
+			}
+
+			@Override public void onFailure(Throwable error)
+			{
+				next.fail(error);
+			}
+		});
+		return next;
+	}
+
+	/**
+	 * Chain an asynchronous step started with the value of this future
+	 */
+	public <R> BearingFuture<R> thenCompose(final Compose<? super T, R> compose)
+	{
+		final BearingFuture<R> next = new BearingFuture<>(executor);
+		next.onCancel(new Runnable()
+		{
+			@Override public void run()
+			{
+				cancel(false);
+			}
+		});
+
+		whenComplete(new Callback<T>()
+		{
+			@Override public void onSuccess(T value)
+			{
+				final BearingFuture<R> step;
+				try
+				{
+					step = compose.apply(value);
+				}
+				catch (Exception ex)
+				{
+					next.fail(ex);
+					return;
+				}
+
+				next.onCancel(new Runnable()
+				{
+					@Override public void run()
+					{
+						step.cancel(false);
+					}
+				});
+
+				step.whenComplete(new Callback<R>()
+				{
+					@Override public void onSuccess(R value)
+					{
+						next.complete(value);
+					}
+
+					@Override public void onFailure(Throwable error)
+					{
+						next.fail(error);
+					}
+				});
+			}
+
+			@Override public void onFailure(Throwable error)
+			{
+				next.fail(error);
+			}
+		});
+		return next;
+	}
+
+	@Override public synchronized boolean isCancelled()
+	{
+		return state == CANCELLED;
+	}
+
+	@Override public synchronized boolean isDone()
+	{
+		return state != PENDING;
+	}
+
+	@Override public synchronized T get() throws InterruptedException, ExecutionException
+	{
+		while (state == PENDING)
+		{
+			wait();
+		}
+		return result();
+	}
+
+	@Override public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (state == PENDING)
+		{
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+			{
+				throw new TimeoutException();
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return result();
+	}
+
+	private T result() throws ExecutionException
+	{
+		if (state == CANCELLED)
+		{
+			throw (CancellationException)error;
+		}
+		if (state == FAILED)
+		{
+			throw new ExecutionException(error);
+		}
+		return value;
+	}
+
+	private boolean finish(int state, T value, Throwable error)
+	{
+		List<Callback<? super T>> completedCallbacks;
+		List<Runnable> completedCancelActions;
+
+		synchronized (this)
+		{
+			if (this.state != PENDING)
+			{
+				return false;
+			}
+
+			this.state = state;
+			this.value = value;
+			this.error = error;
+
+			completedCallbacks = callbacks;
+			completedCancelActions = cancelActions;
+			callbacks = null;
+			cancelActions = null;
+
+			if (timeoutFuture != null)
+			{
+				timeoutFuture.cancel(false);
+				timeoutFuture = null;
+			}
+
+			notifyAll();
+		}
+
+		if (error instanceof CancellationException || error instanceof TimeoutException)
+		{
+			for (Runnable action : completedCancelActions)
+			{
+				action.run();
+			}
+		}
+
+		for (Callback<? super T> callback : completedCallbacks)
+		{
+			dispatch(callback);
+		}
+		return true;
+	}
+
+	private void dispatch(final Callback<? super T> callback)
+	{
+		final int state;
+		final T value;
+		final Throwable error;
+		synchronized (this)
+		{
+			state = this.state;
+			value = this.value;
+			error = this.error;
+		}
+
+		executor.execute(new Runnable()
+		{
+			@Override public void run()
+			{
+				if (state == SUCCEEDED)
+				{
+					callback.onSuccess(value);
+				}
+				else
+				{
+					callback.onFailure(error);
+				}
+			}
+		});
+	}
+}
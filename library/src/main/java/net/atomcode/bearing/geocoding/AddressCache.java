@@ -0,0 +1,139 @@
+package net.atomcode.bearing.geocoding;
+
+import android.location.Address;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of reverse geocoded addresses, keyed by grid cell so that any
+ * coordinate in a cell shares the address resolved for that cell.
+ *
+ * The cache is thread safe.
+ */
+public class AddressCache
+{
+	/**
+	 * Default cell size, roughly 100m
+	 */
+	public static final double DEFAULT_CELL_SIZE = 0.001;
+
+	private static final int DEFAULT_CAPACITY = 256;
+
+	private final double cellSize;
+	private final Map<Long, Address> addresses;
+
+	private long hitCount = 0;
+	private long missCount = 0;
+
+	public AddressCache()
+	{
+		this(DEFAULT_CELL_SIZE, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param cellSize The size of the cells in degrees
+	 * @param capacity The maximum number of cells to keep
+	 */
+	public AddressCache(double cellSize, final int capacity)
+	{
+		if (cellSize <= 0 || capacity <= 0)
+		{
+			throw new IllegalArgumentException("Cell size and capacity must be positive");
+		}
+
+		this.cellSize = cellSize;
+		this.addresses = new LinkedHashMap<Long, Address>(16, 0.75f, true)
+		{
+			@Override protected boolean removeEldestEntry(Map.Entry<Long, Address> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return The size of the cells in degrees
+	 */
+	public double getCellSize()
+	{
+		return cellSize;
+	}
+
+	/**
+	 * Get the key of the cell containing the given coordinate
+	 */
+	public long cellOf(double latitude, double longitude)
+	{
+		long latitudeCell = (long)Math.floor(latitude / cellSize);
+		long longitudeCell = (long)Math.floor(longitude / cellSize);
+		return (latitudeCell << 32) | (longitudeCell & 0xffffffffL);
+	}
+
+	/**
+	 * Get the cached address of the cell containing the given coordinate
+	 * @return The address or null
+	 */
+	public synchronized Address get(double latitude, double longitude)
+	{
+		Address address = addresses.get(cellOf(latitude, longitude));
+		if (address != null)
+		{
+			hitCount++;
+		}
+		else
+		{
+			missCount++;
+		}
+		return address;
+	}
+
+	/**
+	 * Check if the cell containing the given coordinate has an address, without affecting its
+	 * position in the cache
+	 */
+	public synchronized boolean contains(double latitude, double longitude)
+	{
+		return addresses.containsKey(cellOf(latitude, longitude));
+	}
+
+	/**
+	 * Cache the address of the cell containing the given coordinate
+	 */
+	public synchronized void put(double latitude, double longitude, Address address)
+	{
+		addresses.put(cellOf(latitude, longitude), address);
+	}
+
+	/**
+	 * Remove all cached addresses
+	 */
+	public synchronized void clear()
+	{
+		addresses.clear();
+	}
+
+	/**
+	 * @return The number of cached cells
+	 */
+	public synchronized int size()
+	{
+		return addresses.size();
+	}
+
+	/**
+	 * @return The number of lookups answered from the cache
+	 */
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	/**
+	 * @return The number of lookups not in the cache
+	 */
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+}
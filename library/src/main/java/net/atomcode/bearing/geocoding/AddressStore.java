@@ -0,0 +1,425 @@
+package net.atomcode.bearing.geocoding;
+
+import android.location.Address;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Local file of reverse geocoded addresses, one per grid cell, consulted by the geocoding tasks
+ * before the device geocoder so lookups keep working without coverage. Filled by a
+ * {@link RegionDownload}, see {@link net.atomcode.bearing.Bearing#useAddressStore(AddressStore)}.
+ *
+ * The file is a header followed by appended records, each a length, a CRC32 and a payload of
+ * the cell key, a flag and the address encoded as described in {@link AddressView}. Cells
+ * found to have no address are stored too, so they are not looked up again. An in memory hash
+ * index from cell to record offset is built when the file is opened, discarding any torn
+ * record at the end. Records are read through a memory mapping of the file, so
+ * {@link #getView(double, double)} and {@link #searchViews(String, int)} return addresses
+ * without copying them.
+ *
+ * The store is thread safe.
+ */
+public class AddressStore implements Closeable
+{
+	private static final int MAGIC = 0x42414452; // BADR
+	private static final short VERSION = 1;
+
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+	private static final int FLAG_ADDRESS = 0x1;
+
+	private final RandomAccessFile file;
+	private final double cellSize;
+	private final Locale locale;
+
+	/**
+	 * Read only mapping of the file, remapped as records are appended
+	 */
+	private MappedByteBuffer mapped;
+
+	/*
+	 * Open addressing index of cell key to record offset, an offset of 0 marks an empty slot
+	 */
+	private long[] keys = new long[64];
+	private long[] offsets = new long[64];
+	private int size = 0;
+
+	/**
+	 * Open or create a store using the default cell size of {@link AddressCache#DEFAULT_CELL_SIZE}
+	 */
+	public AddressStore(File file) throws IOException
+	{
+		this(file, AddressCache.DEFAULT_CELL_SIZE, Locale.getDefault());
+	}
+
+	/**
+	 * Open the given store, or create it with the given cell size and locale. The cell size and
+	 * locale of an existing store are kept.
+	 * @param cellSize The size of the cells in degrees
+	 * @param locale The locale the addresses are looked up in
+	 */
+	public AddressStore(File file, double cellSize, Locale locale) throws IOException
+	{
+		this.file = new RandomAccessFile(file, "rw");
+
+		if (this.file.length() == 0)
+		{
+			this.file.writeInt(MAGIC);
+			this.file.writeShort(VERSION);
+			this.file.writeShort(0);
+			this.file.writeDouble(cellSize);
+			this.file.writeUTF(locale.getLanguage() + "_" + locale.getCountry());
+			this.cellSize = cellSize;
+			this.locale = locale;
+			return;
+		}
+
+		if (this.file.readInt() != MAGIC || this.file.readShort() != VERSION)
+		{
+			this.file.close();
+			throw new IOException("Not a Bearing address store: " + file);
+		}
+		this.file.readShort();
+		this.cellSize = this.file.readDouble();
+
+		String[] tag = this.file.readUTF().split("_", -1);
+		this.locale = new Locale(tag[0], tag.length > 1 ? tag[1] : "");
+
+		buildIndex();
+	}
+
+	/**
+	 * @return The size of the cells in degrees
+	 */
+	public double getCellSize()
+	{
+		return cellSize;
+	}
+
+	/**
+	 * @return The locale the addresses were looked up in
+	 */
+	public Locale getLocale()
+	{
+		return locale;
+	}
+
+	/**
+	 * @return The number of cells in the store, with or without an address
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get the key of the cell containing the given coordinate
+	 */
+	public long cellOf(double latitude, double longitude)
+	{
+		long latitudeCell = (long)Math.floor(latitude / cellSize);
+		long longitudeCell = (long)Math.floor(longitude / cellSize);
+		return (latitudeCell << 32) | (longitudeCell & 0xffffffffL);
+	}
+
+	/**
+	 * Check if the cell containing the given coordinate has been stored, with or without an address
+	 */
+	public synchronized boolean contains(double latitude, double longitude)
+	{
+		return find(cellOf(latitude, longitude)) != -1;
+	}
+
+	/**
+	 * Get the stored address of the cell containing the given coordinate
+	 * @return The address, or null if the cell is not stored or has no address
+	 */
+	public Address get(double latitude, double longitude) throws IOException
+	{
+		AddressView view = getView(latitude, longitude);
+		return view != null ? view.toAddress() : null;
+	}
+
+	/**
+	 * Get a view of the stored address of the cell containing the given coordinate, read
+	 * straight from the mapped file without building an {@link Address}
+	 * @return The view, or null if the cell is not stored or has no address
+	 */
+	public synchronized AddressView getView(double latitude, double longitude) throws IOException
+	{
+		int slot = find(cellOf(latitude, longitude));
+		if (slot == -1)
+		{
+			return null;
+		}
+
+		return view(offsets[slot]);
+	}
+
+	/**
+	 * Store the address of the cell containing the given coordinate, replacing any stored address
+	 * @param address The address, or null to record that the cell has no address
+	 */
+	public synchronized void put(double latitude, double longitude, Address address) throws IOException
+	{
+		long cell = cellOf(latitude, longitude);
+		byte[] payload = encode(cell, address);
+
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		long offset = file.length();
+		file.seek(offset);
+		file.writeInt(payload.length);
+		file.writeInt((int)crc.getValue());
+		file.write(payload);
+
+		index(cell, offset);
+	}
+
+	/**
+	 * Find stored addresses containing every word of the given query, for geocoding queries
+	 * without coverage. Scans the whole store.
+	 */
+	public List<Address> search(String query, int maxResults) throws IOException
+	{
+		List<AddressView> views = searchViews(query, maxResults);
+		List<Address> results = new ArrayList<>(views.size());
+		for (int index = 0; index < views.size(); index++)
+		{
+			results.add(views.get(index).toAddress());
+		}
+		return results;
+	}
+
+	/**
+	 * Find stored addresses containing every word of the given query, as views read straight
+	 * from the mapped file. Scans the whole store.
+	 */
+	public synchronized List<AddressView> searchViews(String query, int maxResults) throws IOException
+	{
+		List<AddressView> results = new ArrayList<>();
+
+		String[] words = query.toLowerCase(locale).trim().split("[\\s,]+");
+		if (words.length == 0 || words[0].length() == 0)
+		{
+			return results;
+		}
+
+		if (mapped == null || mapped.limit() < file.length())
+		{
+			remap();
+		}
+
+		boolean[] found = new boolean[words.length];
+		char[] chars = new char[256];
+		for (int slot = 0; slot < keys.length && results.size() < maxResults; slot++)
+		{
+			if (offsets[slot] == 0)
+			{
+				continue;
+			}
+
+			int payload = (int)offsets[slot] + RECORD_HEADER_SIZE;
+			if ((mapped.get(payload + 8) & FLAG_ADDRESS) != 0 && AddressView.matches(mapped, payload + 9, words, found, chars))
+			{
+				results.add(new AddressView(mapped, payload + 9, locale));
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Force all stored addresses to disk
+	 */
+	public synchronized void flush() throws IOException
+	{
+		file.getFD().sync();
+	}
+
+	@Override public synchronized void close() throws IOException
+	{
+		mapped = null;
+		file.close();
+	}
+
+	private void buildIndex() throws IOException
+	{
+		long offset = file.getFilePointer();
+		long length = file.length();
+		CRC32 crc = new CRC32();
+
+		while (offset + RECORD_HEADER_SIZE <= length)
+		{
+			file.seek(offset);
+			int payloadLength = file.readInt();
+			int checksum = file.readInt();
+
+			if (payloadLength < 9 || payloadLength > MAX_RECORD_SIZE || offset + RECORD_HEADER_SIZE + payloadLength > length)
+			{
+				break;
+			}
+
+			byte[] payload = new byte[payloadLength];
+			file.readFully(payload);
+
+			crc.reset();
+			crc.update(payload);
+			if ((int)crc.getValue() != checksum)
+			{
+				break;
+			}
+
+			long cell = 0;
+			for (int index = 0; index < 8; index++)
+			{
+				cell = (cell << 8) | (payload[index] & 0xff);
+			}
+
+			index(cell, offset);
+			offset += RECORD_HEADER_SIZE + payloadLength;
+		}
+
+		if (offset < length)
+		{
+			Log.w("Bearing", "Discarding " + (length - offset) + " bytes of torn address store records");
+			file.setLength(offset);
+		}
+	}
+
+	/**
+	 * Get a view of the address of the record at the given offset, mapping any part of the file
+	 * written since it was last mapped
+	 * @return The view, or null if the record has no address
+	 */
+	private AddressView view(long offset) throws IOException
+	{
+		if (mapped == null || offset + RECORD_HEADER_SIZE > mapped.limit())
+		{
+			remap();
+		}
+
+		int payloadLength = mapped.getInt((int)offset);
+		int payload = (int)offset + RECORD_HEADER_SIZE;
+		if (payload + payloadLength > mapped.limit())
+		{
+			remap();
+		}
+
+		if ((mapped.get(payload + 8) & FLAG_ADDRESS) == 0)
+		{
+			return null;
+		}
+
+		return new AddressView(mapped, payload + 9, locale);
+	}
+
+	private void remap() throws IOException
+	{
+		long length = file.length();
+		if (length > Integer.MAX_VALUE)
+		{
+			throw new IOException("Address store too large to map");
+		}
+		mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+	}
+
+	private byte[] encode(long cell, Address address) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeLong(cell);
+		out.writeByte(address != null ? FLAG_ADDRESS : 0);
+		if (address != null)
+		{
+			AddressView.encode(address, out);
+		}
+
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private int find(long cell)
+	{
+		int mask = keys.length - 1;
+		for (int slot = hash(cell) & mask; offsets[slot] != 0; slot = (slot + 1) & mask)
+		{
+			if (keys[slot] == cell)
+			{
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	private void index(long cell, long offset)
+	{
+		int slot = find(cell);
+		if (slot != -1)
+		{
+			offsets[slot] = offset;
+			return;
+		}
+
+		if ((size + 1) * 2 > keys.length)
+		{
+			rehash(keys.length * 2);
+		}
+
+		int mask = keys.length - 1;
+		slot = hash(cell) & mask;
+		while (offsets[slot] != 0)
+		{
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = cell;
+		offsets[slot] = offset;
+		size++;
+	}
+
+	private void rehash(int capacity)
+	{
+		long[] oldKeys = keys;
+		long[] oldOffsets = offsets;
+
+		keys = new long[capacity];
+		offsets = new long[capacity];
+
+		int mask = capacity - 1;
+		for (int index = 0; index < oldKeys.length; index++)
+		{
+			if (oldOffsets[index] != 0)
+			{
+				int slot = hash(oldKeys[index]) & mask;
+				while (offsets[slot] != 0)
+				{
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[index];
+				offsets[slot] = oldOffsets[index];
+			}
+		}
+	}
+
+	private static int hash(long key)
+	{
+		key *= 0x9E3779B97F4A7C15L;
+		return (int)(key ^ (key >>> 32));
+	}
+}
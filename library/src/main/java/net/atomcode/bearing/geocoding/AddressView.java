@@ -0,0 +1,415 @@
+package net.atomcode.bearing.geocoding;
+
+import android.location.Address;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Immutable, lightweight view of an encoded address, e.g. a record of an {@link AddressStore}
+ * read straight from its memory mapped file. Fields are decoded when asked for, and a full
+ * {@link Address}, with its map of lines and extras, is only built by {@link #toAddress()}.
+ *
+ * The encoding is the latitude and longitude as doubles, NaN if unknown, followed by the non
+ * empty fields as a field id byte and a modified UTF-8 string, ended by a 0 byte.
+ */
+public final class AddressView
+{
+	/*
+	 * Field ids, lines are stored as FIELD_LINE + index
+	 */
+	static final int FIELD_END = 0;
+	static final int FIELD_FEATURE_NAME = 1;
+	static final int FIELD_PREMISES = 2;
+	static final int FIELD_SUB_THOROUGHFARE = 3;
+	static final int FIELD_THOROUGHFARE = 4;
+	static final int FIELD_SUB_LOCALITY = 5;
+	static final int FIELD_LOCALITY = 6;
+	static final int FIELD_SUB_ADMIN_AREA = 7;
+	static final int FIELD_ADMIN_AREA = 8;
+	static final int FIELD_POSTAL_CODE = 9;
+	static final int FIELD_COUNTRY_CODE = 10;
+	static final int FIELD_COUNTRY_NAME = 11;
+	static final int FIELD_LINE = 64;
+
+	private static final int FIELDS_OFFSET = 16;
+
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final Locale locale;
+
+	/**
+	 * @param buffer The buffer holding the encoded address, which is not copied. Only absolute
+	 * reads are made, so the buffer may be shared.
+	 * @param offset The position of the encoded address in the buffer
+	 */
+	AddressView(ByteBuffer buffer, int offset, Locale locale)
+	{
+		this.buffer = buffer;
+		this.offset = offset;
+		this.locale = locale;
+	}
+
+	/**
+	 * Encode the given address into a view held on the heap
+	 */
+	public static AddressView of(Address address)
+	{
+		return new AddressView(ByteBuffer.wrap(encode(address)), 0, address.getLocale());
+	}
+
+	public Locale getLocale()
+	{
+		return locale;
+	}
+
+	public boolean hasLatitude()
+	{
+		return !Double.isNaN(getLatitude());
+	}
+
+	public double getLatitude()
+	{
+		return buffer.getDouble(offset);
+	}
+
+	public boolean hasLongitude()
+	{
+		return !Double.isNaN(getLongitude());
+	}
+
+	public double getLongitude()
+	{
+		return buffer.getDouble(offset + 8);
+	}
+
+	public String getFeatureName()
+	{
+		return field(FIELD_FEATURE_NAME);
+	}
+
+	public String getPremises()
+	{
+		return field(FIELD_PREMISES);
+	}
+
+	public String getSubThoroughfare()
+	{
+		return field(FIELD_SUB_THOROUGHFARE);
+	}
+
+	public String getThoroughfare()
+	{
+		return field(FIELD_THOROUGHFARE);
+	}
+
+	public String getSubLocality()
+	{
+		return field(FIELD_SUB_LOCALITY);
+	}
+
+	public String getLocality()
+	{
+		return field(FIELD_LOCALITY);
+	}
+
+	public String getSubAdminArea()
+	{
+		return field(FIELD_SUB_ADMIN_AREA);
+	}
+
+	public String getAdminArea()
+	{
+		return field(FIELD_ADMIN_AREA);
+	}
+
+	public String getPostalCode()
+	{
+		return field(FIELD_POSTAL_CODE);
+	}
+
+	public String getCountryCode()
+	{
+		return field(FIELD_COUNTRY_CODE);
+	}
+
+	public String getCountryName()
+	{
+		return field(FIELD_COUNTRY_NAME);
+	}
+
+	/**
+	 * @return The given address line, or null
+	 */
+	public String getAddressLine(int index)
+	{
+		return index < 0 || index > 255 - FIELD_LINE ? null : field(FIELD_LINE + index);
+	}
+
+	/**
+	 * @return The largest index of the address lines, -1 if there are none
+	 */
+	public int getMaxAddressLineIndex()
+	{
+		int max = -1;
+		int position = offset + FIELDS_OFFSET;
+		int field;
+		while ((field = buffer.get(position) & 0xff) != FIELD_END)
+		{
+			if (field >= FIELD_LINE)
+			{
+				max = Math.max(max, field - FIELD_LINE);
+			}
+			position += 3 + (buffer.getShort(position + 1) & 0xffff);
+		}
+		return max;
+	}
+
+	/**
+	 * Check if every one of the given lower case words appears in the lines, feature name,
+	 * thoroughfare, locality or postal code of the address
+	 */
+	public boolean matches(String[] words)
+	{
+		return matches(buffer, offset, words, new boolean[words.length], new char[64]);
+	}
+
+	/**
+	 * Check if every one of the given lower case words appears in the searchable fields of the
+	 * address encoded at the given offset. Fields are compared in place, without decoding them
+	 * into strings or creating a view.
+	 * @param found Scratch space the length of the words
+	 * @param chars Scratch space for decoding fields, replaced if too short
+	 */
+	static boolean matches(ByteBuffer buffer, int offset, String[] words, boolean[] found, char[] chars)
+	{
+		Arrays.fill(found, false);
+		int remaining = words.length;
+
+		int position = offset + FIELDS_OFFSET;
+		int field;
+		while (remaining > 0 && (field = buffer.get(position) & 0xff) != FIELD_END)
+		{
+			int length = buffer.getShort(position + 1) & 0xffff;
+			if (field >= FIELD_LINE || field == FIELD_FEATURE_NAME || field == FIELD_THOROUGHFARE || field == FIELD_LOCALITY || field == FIELD_POSTAL_CODE)
+			{
+				if (chars.length < length)
+				{
+					chars = new char[length];
+				}
+
+				int count = decode(buffer, position + 1, chars);
+				for (int index = 0; index < count; index++)
+				{
+					chars[index] = Character.toLowerCase(chars[index]);
+				}
+
+				for (int word = 0; word < words.length; word++)
+				{
+					if (!found[word] && contains(chars, count, words[word]))
+					{
+						found[word] = true;
+						remaining--;
+					}
+				}
+			}
+			position += 3 + length;
+		}
+
+		return remaining == 0;
+	}
+
+	/**
+	 * Build a full {@link Address} from the view
+	 */
+	public Address toAddress()
+	{
+		Address address = new Address(locale);
+
+		if (hasLatitude())
+		{
+			address.setLatitude(getLatitude());
+		}
+		if (hasLongitude())
+		{
+			address.setLongitude(getLongitude());
+		}
+
+		int position = offset + FIELDS_OFFSET;
+		int field;
+		while ((field = buffer.get(position) & 0xff) != FIELD_END)
+		{
+			String value = readUtf(position + 1);
+			switch (field)
+			{
+				case FIELD_FEATURE_NAME: address.setFeatureName(value); break;
+				case FIELD_PREMISES: address.setPremises(value); break;
+				case FIELD_SUB_THOROUGHFARE: address.setSubThoroughfare(value); break;
+				case FIELD_THOROUGHFARE: address.setThoroughfare(value); break;
+				case FIELD_SUB_LOCALITY: address.setSubLocality(value); break;
+				case FIELD_LOCALITY: address.setLocality(value); break;
+				case FIELD_SUB_ADMIN_AREA: address.setSubAdminArea(value); break;
+				case FIELD_ADMIN_AREA: address.setAdminArea(value); break;
+				case FIELD_POSTAL_CODE: address.setPostalCode(value); break;
+				case FIELD_COUNTRY_CODE: address.setCountryCode(value); break;
+				case FIELD_COUNTRY_NAME: address.setCountryName(value); break;
+				default:
+					if (field >= FIELD_LINE)
+					{
+						address.setAddressLine(field - FIELD_LINE, value);
+					}
+			}
+			position += 3 + (buffer.getShort(position + 1) & 0xffff);
+		}
+
+		return address;
+	}
+
+	@Override public String toString()
+	{
+		String line = getAddressLine(0);
+		return "AddressView[" + (line != null ? line : getThoroughfare() + ", " + getLocality()) + "]";
+	}
+
+	/**
+	 * Find and decode the given field
+	 * @return The value or null
+	 */
+	private String field(int id)
+	{
+		int position = offset + FIELDS_OFFSET;
+		int field;
+		while ((field = buffer.get(position) & 0xff) != FIELD_END)
+		{
+			if (field == id)
+			{
+				return readUtf(position + 1);
+			}
+			position += 3 + (buffer.getShort(position + 1) & 0xffff);
+		}
+		return null;
+	}
+
+	/**
+	 * Decode the length prefixed modified UTF-8 string at the given position
+	 */
+	private String readUtf(int position)
+	{
+		char[] chars = new char[buffer.getShort(position) & 0xffff];
+		return new String(chars, 0, decode(buffer, position, chars));
+	}
+
+	/**
+	 * Decode the length prefixed modified UTF-8 string at the given position into the given
+	 * array, which must be at least as long as the encoded string
+	 * @return The number of chars decoded
+	 */
+	private static int decode(ByteBuffer buffer, int position, char[] chars)
+	{
+		int length = buffer.getShort(position) & 0xffff;
+		int count = 0;
+
+		int end = position + 2 + length;
+		for (int index = position + 2; index < end; )
+		{
+			int first = buffer.get(index) & 0xff;
+			if (first < 0x80)
+			{
+				chars[count++] = (char)first;
+				index++;
+			}
+			else if ((first & 0xe0) == 0xc0)
+			{
+				chars[count++] = (char)(((first & 0x1f) << 6) | (buffer.get(index + 1) & 0x3f));
+				index += 2;
+			}
+			else
+			{
+				chars[count++] = (char)(((first & 0x0f) << 12) | ((buffer.get(index + 1) & 0x3f) << 6) | (buffer.get(index + 2) & 0x3f));
+				index += 3;
+			}
+		}
+
+		return count;
+	}
+
+	private static boolean contains(char[] chars, int count, String word)
+	{
+		int length = word.length();
+		for (int start = 0; start <= count - length; start++)
+		{
+			int index = 0;
+			while (index < length && chars[start + index] == word.charAt(index))
+			{
+				index++;
+			}
+
+			if (index == length)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Encode the given address
+	 */
+	static byte[] encode(Address address)
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+			DataOutputStream out = new DataOutputStream(bytes);
+			encode(address, out);
+			out.flush();
+			return bytes.toByteArray();
+		}
+		catch (IOException ex)
+		{
+			// Not thrown writing to memory
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Encode the given address to the given stream
+	 */
+	static void encode(Address address, DataOutputStream out) throws IOException
+	{
+		out.writeDouble(address.hasLatitude() ? address.getLatitude() : Double.NaN);
+		out.writeDouble(address.hasLongitude() ? address.getLongitude() : Double.NaN);
+
+		writeField(out, FIELD_FEATURE_NAME, address.getFeatureName());
+		writeField(out, FIELD_PREMISES, address.getPremises());
+		writeField(out, FIELD_SUB_THOROUGHFARE, address.getSubThoroughfare());
+		writeField(out, FIELD_THOROUGHFARE, address.getThoroughfare());
+		writeField(out, FIELD_SUB_LOCALITY, address.getSubLocality());
+		writeField(out, FIELD_LOCALITY, address.getLocality());
+		writeField(out, FIELD_SUB_ADMIN_AREA, address.getSubAdminArea());
+		writeField(out, FIELD_ADMIN_AREA, address.getAdminArea());
+		writeField(out, FIELD_POSTAL_CODE, address.getPostalCode());
+		writeField(out, FIELD_COUNTRY_CODE, address.getCountryCode());
+		writeField(out, FIELD_COUNTRY_NAME, address.getCountryName());
+
+		int lines = Math.min(address.getMaxAddressLineIndex() + 1, 256 - FIELD_LINE);
+		for (int line = 0; line < lines; line++)
+		{
+			writeField(out, FIELD_LINE + line, address.getAddressLine(line));
+		}
+		out.writeByte(FIELD_END);
+	}
+
+	private static void writeField(DataOutputStream out, int field, String value) throws IOException
+	{
+		if (value != null && value.length() > 0)
+		{
+			out.writeByte(field);
+			out.writeUTF(value);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package net.atomcode.bearing.geocoding;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Location;
+import android.os.Process;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.BearingFuture;
+import net.atomcode.bearing.geodesy.Geodesy;
+import net.atomcode.bearing.location.LocationListener;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms the address cache along the predicted path of a tracked user, so a
+ * {@link TrackingGeocoder} finds the address already cached on arrival rather than lagging
+ * behind a fast moving vehicle.
+ *
+ * The path is extrapolated from the heading and speed of each update, taken from the update
+ * or derived from the previous one. Cells along it that are not yet cached are reverse geocoded
+ * one at a time on a background priority thread. Lookups are limited to a budget per period,
+ * and nothing is prefetched below the minimum speed.
+ *
+ * Must be fed from a single thread, e.g. with
+ * {@link net.atomcode.bearing.location.PeriodicLocationTask#prefetch(GeocodePrefetcher)}.
+ */
+public class GeocodePrefetcher extends LocationListener
+{
+	private static final long DEFAULT_LOOKAHEAD = 60 * 1000; // 1 min
+	private static final int DEFAULT_BUDGET = 10;
+	private static final long DEFAULT_BUDGET_PERIOD = 60 * 1000; // 1 min
+	private static final float DEFAULT_MIN_SPEED = 3.0f; // ~10 km/h
+
+	private final Context context;
+	private final ThreadPoolExecutor executor;
+
+	private AddressCache cache;
+	private long lookahead = DEFAULT_LOOKAHEAD;
+	private float minSpeed = DEFAULT_MIN_SPEED;
+	private long budgetPeriod = DEFAULT_BUDGET_PERIOD;
+
+	/**
+	 * Times of the most recent lookups, as a ring the size of the budget
+	 */
+	private long[] lookupTimes = new long[DEFAULT_BUDGET];
+	private int lookupIndex = 0;
+	private int lookupCount = 0;
+
+	/**
+	 * Cells with a lookup queued or running
+	 */
+	private final Set<Long> pendingCells = new HashSet<>();
+
+	private Location lastLocation;
+	private int prefetchCount = 0;
+
+	/**
+	 * Prefetch into the shared address cache of the given context
+	 */
+	public GeocodePrefetcher(Context context)
+	{
+		this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+		this.cache = Bearing.with(context).getAddressCache();
+
+		executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+		{
+			@Override public Thread newThread(final Runnable runnable)
+			{
+				Thread thread = new Thread(new Runnable()
+				{
+					@Override public void run()
+					{
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, "Bearing-Prefetch");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Set how far ahead, in milliseconds of travel, to prefetch
+	 */
+	public GeocodePrefetcher lookahead(long time)
+	{
+		this.lookahead = time;
+		return this;
+	}
+
+	/**
+	 * Limit prefetching to the given number of lookups per period
+	 * @param lookups The maximum number of lookups
+	 * @param period The period in milliseconds
+	 */
+	public GeocodePrefetcher budget(int lookups, long period)
+	{
+		if (lookups <= 0)
+		{
+			throw new IllegalArgumentException("Budget must be positive");
+		}
+
+		this.lookupTimes = new long[lookups];
+		this.lookupIndex = 0;
+		this.lookupCount = 0;
+		this.budgetPeriod = period;
+		return this;
+	}
+
+	/**
+	 * Set the speed in metres per second below which nothing is prefetched
+	 */
+	public GeocodePrefetcher minSpeed(float speed)
+	{
+		this.minSpeed = speed;
+		return this;
+	}
+
+	/**
+	 * Prefetch into the given address cache instead of the shared one
+	 */
+	public GeocodePrefetcher cache(AddressCache cache)
+	{
+		this.cache = cache;
+		return this;
+	}
+
+	/**
+	 * @return The number of lookups started
+	 */
+	public int getPrefetchCount()
+	{
+		return prefetchCount;
+	}
+
+	/**
+	 * Drop all queued lookups. A running lookup is left to complete.
+	 */
+	public void cancel()
+	{
+		executor.getQueue().clear();
+		synchronized (pendingCells)
+		{
+			pendingCells.clear();
+		}
+		lastLocation = null;
+	}
+
+	@Override public void onUpdate(Location location)
+	{
+		Location previous = lastLocation;
+		lastLocation = location;
+
+		float speed;
+		float bearing;
+		if (location.hasSpeed() && location.hasBearing())
+		{
+			speed = location.getSpeed();
+			bearing = location.getBearing();
+		}
+		else if (previous != null && location.getTime() > previous.getTime())
+		{
+			speed = (float)Geodesy.equirectangular(previous.getLatitude(), previous.getLongitude(), location.getLatitude(), location.getLongitude()) * 1000f / (location.getTime() - previous.getTime());
+			bearing = previous.bearingTo(location);
+		}
+		else
+		{
+			return;
+		}
+
+		if (speed < minSpeed)
+		{
+			return;
+		}
+
+		prefetchPath(location.getLatitude(), location.getLongitude(), bearing, speed * lookahead / 1000.0, location.getTime());
+	}
+
+	/**
+	 * Queue lookups for the uncached cells along the given path, nearest first
+	 */
+	private void prefetchPath(double latitude, double longitude, float bearing, double distance, long time)
+	{
+		double radians = Math.toRadians(bearing);
+		double northStep = Math.cos(radians);
+		double eastStep = Math.sin(radians) / Math.cos(Math.toRadians(latitude));
+
+		// Sample at half a cell so no cell on the path is skipped
+		double step = cache.getCellSize() * Geodesy.METRES_PER_DEGREE / 2;
+		long lastCell = cache.cellOf(latitude, longitude);
+
+		for (double travelled = step; travelled <= distance; travelled += step)
+		{
+			double degrees = Geodesy.latitudeSpan(travelled);
+			double pathLatitude = latitude + northStep * degrees;
+			double pathLongitude = longitude + eastStep * degrees;
+
+			long cell = cache.cellOf(pathLatitude, pathLongitude);
+			if (cell == lastCell)
+			{
+				continue;
+			}
+			lastCell = cell;
+
+			if (cache.contains(pathLatitude, pathLongitude))
+			{
+				continue;
+			}
+
+			synchronized (pendingCells)
+			{
+				if (pendingCells.contains(cell))
+				{
+					continue;
+				}
+			}
+
+			if (!takeBudget(time))
+			{
+				return;
+			}
+
+			prefetch(cell, pathLatitude, pathLongitude);
+		}
+	}
+
+	private boolean takeBudget(long time)
+	{
+		if (lookupCount == lookupTimes.length && time - lookupTimes[lookupIndex] < budgetPeriod)
+		{
+			return false;
+		}
+
+		lookupCount = Math.min(lookupCount + 1, lookupTimes.length);
+		lookupTimes[lookupIndex] = time;
+		lookupIndex = (lookupIndex + 1) % lookupTimes.length;
+		return true;
+	}
+
+	private void prefetch(final long cell, final double latitude, final double longitude)
+	{
+		synchronized (pendingCells)
+		{
+			pendingCells.add(cell);
+		}
+		prefetchCount++;
+
+		ReverseGeocodingTask task = new ReverseGeocodingTask(context, new Double[]{latitude, longitude});
+		task.results(1);
+		// Prefetching is only worth doing while the geocoder is idle
+		task.deadline(0);
+		task.startAsync(executor).whenComplete(new BearingFuture.Callback<List<Address>>()
+		{
+			@Override public void onSuccess(List<Address> addresses)
+			{
+				if (!addresses.isEmpty())
+				{
+					cache.put(latitude, longitude, addresses.get(0));
+				}
+				done();
+			}
+
+			@Override public void onFailure(Throwable error)
+			{
+				done();
+			}
+
+			private void done()
+			{
+				synchronized (pendingCells)
+				{
+					pendingCells.remove(cell);
+				}
+			}
+		});
+	}
+}
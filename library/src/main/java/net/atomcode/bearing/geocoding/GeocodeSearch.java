@@ -0,0 +1,353 @@
+package net.atomcode.bearing.geocoding;
+
+import android.content.Context;
+import android.location.Address;
+import android.os.Handler;
+import android.os.Looper;
+
+import net.atomcode.bearing.BearingFuture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Session for geocoding a search box as the user types, see
+ * {@link net.atomcode.bearing.Bearing#search(Listener)}.
+ *
+ * Input is debounced, so a lookup is only made once the user pauses. Typing again cancels the
+ * running lookup, before it reaches the geocoder if it is still waiting on the
+ * {@link GeocodingLimiter}. Results are cached by query, so deleting back to an earlier query
+ * does not look it up again. While a query extending an earlier one waits for its lookup, the
+ * earlier results still matching it are reported, then replaced by the lookup's. Only results
+ * for the latest query are reported.
+ *
+ * Must be used from the main thread, which results are reported on.
+ */
+public class GeocodeSearch
+{
+	private static final long DEFAULT_DEBOUNCE = 300; // ms
+	private static final int DEFAULT_MIN_LENGTH = 3;
+	private static final int DEFAULT_RESULT_COUNT = 5;
+	private static final int DEFAULT_CACHE_SIZE = 32;
+
+	public interface Listener
+	{
+		/**
+		 * @param query The query as typed
+		 * @param addresses The matching addresses, empty for queries shorter than the minimum length.
+		 * May be reported twice for a query, filtered from an earlier query's then from its own lookup.
+		 */
+		public void onResults(String query, List<Address> addresses);
+		public void onFailure(String query);
+	}
+
+	private final Context context;
+	private final Listener listener;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Locale locale;
+
+	private long debounce = DEFAULT_DEBOUNCE;
+	private int minLength = DEFAULT_MIN_LENGTH;
+	private int resultCount = DEFAULT_RESULT_COUNT;
+
+	private final Map<String, List<Address>> results = new LinkedHashMap<String, List<Address>>(16, 0.75f, true)
+	{
+		@Override protected boolean removeEldestEntry(Map.Entry<String, List<Address>> eldest)
+		{
+			return size() > DEFAULT_CACHE_SIZE;
+		}
+	};
+
+	private String query;
+	private String key;
+	private Runnable scheduled;
+	private BearingFuture<List<Address>> pending;
+
+	private int lookupCount = 0;
+	private int cancelCount = 0;
+	private int cacheHitCount = 0;
+
+	public GeocodeSearch(Context context, Listener listener)
+	{
+		this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+		this.listener = listener;
+		this.locale = Locale.getDefault();
+	}
+
+	/**
+	 * Set the time in milliseconds the user must stop typing for before a lookup is made
+	 */
+	public GeocodeSearch debounce(long debounce)
+	{
+		this.debounce = debounce;
+		return this;
+	}
+
+	/**
+	 * Set the number of characters a query needs before it is looked up
+	 */
+	public GeocodeSearch minLength(int minLength)
+	{
+		this.minLength = minLength;
+		return this;
+	}
+
+	/**
+	 * Set the desired number of results for each query. Clears the cached results.
+	 */
+	public GeocodeSearch results(int resultCount)
+	{
+		if (resultCount != this.resultCount)
+		{
+			results.clear();
+		}
+		this.resultCount = resultCount;
+		return this;
+	}
+
+	/**
+	 * @return The number of geocoder lookups started
+	 */
+	public int getLookupCount()
+	{
+		return lookupCount;
+	}
+
+	/**
+	 * @return The number of lookups cancelled because the query changed
+	 */
+	public int getCancelCount()
+	{
+		return cancelCount;
+	}
+
+	/**
+	 * @return The number of queries answered from the cache
+	 */
+	public int getCacheHitCount()
+	{
+		return cacheHitCount;
+	}
+
+	/**
+	 * Search for the given text, e.g. from a text watcher. Supersedes the previous query.
+	 */
+	public void query(String text)
+	{
+		String newKey = normalise(text);
+		if (newKey.equals(key))
+		{
+			// Only whitespace or case changed
+			query = text;
+			return;
+		}
+
+		cancel();
+		query = text;
+		key = newKey;
+
+		if (newKey.length() < minLength)
+		{
+			listener.onResults(text, Collections.<Address>emptyList());
+			return;
+		}
+
+		List<Address> cached = results.get(newKey);
+		if (cached != null)
+		{
+			cacheHitCount++;
+			listener.onResults(text, cached);
+			return;
+		}
+
+		// Narrow the shown results while the user types, until the lookup replaces them
+		List<Address> provisional = getProvisionalResults(newKey);
+		if (provisional != null)
+		{
+			listener.onResults(text, provisional);
+		}
+
+		final String lookupKey = newKey;
+		scheduled = new Runnable()
+		{
+			@Override public void run()
+			{
+				scheduled = null;
+				lookup(lookupKey);
+			}
+		};
+		handler.postDelayed(scheduled, debounce);
+	}
+
+	/**
+	 * Stop any scheduled or running lookup, e.g. when the search box is closed
+	 */
+	public void cancel()
+	{
+		if (scheduled != null)
+		{
+			handler.removeCallbacks(scheduled);
+			scheduled = null;
+		}
+		if (pending != null)
+		{
+			cancelCount++;
+			pending.cancel(true);
+			pending = null;
+		}
+	}
+
+	private void lookup(final String lookupKey)
+	{
+		lookupCount++;
+
+		final String lookupQuery = query;
+		QueryGeocodingTask task = new QueryGeocodingTask(context, new String[]{lookupQuery.trim()});
+		task.results(resultCount);
+
+		final BearingFuture<List<Address>> lookup = task.startAsync();
+		pending = lookup;
+		lookup.whenComplete(new BearingFuture.Callback<List<Address>>()
+		{
+			@Override public void onSuccess(final List<Address> addresses)
+			{
+				handler.post(new Runnable()
+				{
+					@Override public void run()
+					{
+						results.put(lookupKey, addresses);
+						if (pending == lookup)
+						{
+							pending = null;
+							listener.onResults(lookupQuery, addresses);
+						}
+					}
+				});
+			}
+
+			@Override public void onFailure(Throwable error)
+			{
+				handler.post(new Runnable()
+				{
+					@Override public void run()
+					{
+						if (pending == lookup)
+						{
+							pending = null;
+							listener.onFailure(lookupQuery);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * @return The results of the longest cached query the given one extends, filtered to those
+	 * still matching it, or null if there are none
+	 */
+	private List<Address> getProvisionalResults(String key)
+	{
+		for (int length = key.length() - 1; length >= minLength; length--)
+		{
+			List<Address> prefixResults = results.get(key.substring(0, length));
+			if (prefixResults != null)
+			{
+				List<Address> filtered = filter(prefixResults, key.split(" "));
+				return filtered.isEmpty() ? null : filtered;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The addresses with a word starting with each of the given terms
+	 */
+	private List<Address> filter(List<Address> addresses, String[] terms)
+	{
+		List<Address> filtered = new ArrayList<>(addresses.size());
+		for (Address address : addresses)
+		{
+			String[] words = normalise(describe(address)).split(" ");
+
+			boolean matches = true;
+			for (int i = 0; i < terms.length && matches; i++)
+			{
+				matches = false;
+				for (String word : words)
+				{
+					if (word.startsWith(terms[i]))
+					{
+						matches = true;
+						break;
+					}
+				}
+			}
+
+			if (matches)
+			{
+				filtered.add(address);
+			}
+		}
+		return filtered;
+	}
+
+	private static String describe(Address address)
+	{
+		StringBuilder description = new StringBuilder();
+		for (int i = 0; i <= address.getMaxAddressLineIndex(); i++)
+		{
+			append(description, address.getAddressLine(i));
+		}
+		append(description, address.getFeatureName());
+		append(description, address.getLocality());
+		append(description, address.getAdminArea());
+		append(description, address.getPostalCode());
+		append(description, address.getCountryName());
+		return description.toString();
+	}
+
+	private static void append(StringBuilder description, String field)
+	{
+		if (field != null)
+		{
+			description.append(field).append(' ');
+		}
+	}
+
+	/**
+	 * @return The text in lower case, split into words by single spaces
+	 */
+	private String normalise(String text)
+	{
+		if (text == null)
+		{
+			return "";
+		}
+
+		StringBuilder normalised = new StringBuilder(text.length());
+		boolean space = false;
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (Character.isLetterOrDigit(c))
+			{
+				if (space && normalised.length() > 0)
+				{
+					normalised.append(' ');
+				}
+				normalised.append(c);
+				space = false;
+			}
+			else
+			{
+				space = true;
+			}
+		}
+		return normalised.toString().toLowerCase(locale);
+	}
+}
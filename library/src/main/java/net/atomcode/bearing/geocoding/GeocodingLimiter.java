@@ -0,0 +1,319 @@
+package net.atomcode.bearing.geocoding;
+
+import java.io.IOException;
+
+/**
+ * Adaptive limit on the geocoder lookups made at once, shared by all geocoding tasks, so a
+ * burst of lookups backs off when the geocoder starts throttling rather than piling on more,
+ * see {@link net.atomcode.bearing.Bearing#useGeocodingLimiter(GeocodingLimiter)}.
+ *
+ * The number of lookups in flight is limited with additive increase, multiplicative decrease:
+ * each lookup that succeeds within the latency target while at least half the limit is in use
+ * raises it by one over the limit, so by about one per limit's worth of lookups, and a lookup
+ * that fails with an {@link IOException} or takes longer than the target halves it. Lookups
+ * that were already in flight when the limit was cut do not cut it again. Lookups are also
+ * capped to a rate by a token bucket.
+ *
+ * Lookups over the limit wait for up to their deadline, or are rejected at once if the
+ * queue is full or the deadline is 0.
+ */
+public class GeocodingLimiter
+{
+	private static final int DEFAULT_INITIAL_LIMIT = 4;
+	private static final int DEFAULT_MAX_LIMIT = 16;
+	private static final long DEFAULT_LATENCY = 3000;
+	private static final double DEFAULT_RATE = 10;
+	private static final int DEFAULT_BURST = 10;
+	private static final int DEFAULT_MAX_QUEUED = 64;
+
+	private static final double BACKOFF = 0.5;
+
+	/**
+	 * Thrown when a lookup is not let through before its deadline
+	 */
+	public static class RejectedException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		public RejectedException(String message)
+		{
+			super(message);
+		}
+	}
+
+	/**
+	 * A lookup let through the limiter. Report how it went with {@link #success()} or
+	 * {@link #dropped()}, and always {@link #release()} it.
+	 */
+	public class Permit
+	{
+		private final long start = System.nanoTime();
+		private boolean released = false;
+
+		private Permit()
+		{
+		}
+
+		/**
+		 * The lookup completed, raising the limit if it was within the latency target
+		 */
+		public void success()
+		{
+			complete(this, false);
+		}
+
+		/**
+		 * The lookup failed with an error the geocoder gives under load, lowering the limit
+		 */
+		public void dropped()
+		{
+			complete(this, true);
+		}
+
+		/**
+		 * Give back the permit without affecting the limit, unless it was already reported
+		 */
+		public void release()
+		{
+			synchronized (GeocodingLimiter.this)
+			{
+				if (!released)
+				{
+					released = true;
+					inFlight--;
+					GeocodingLimiter.this.notifyAll();
+				}
+			}
+		}
+	}
+
+	private final int minLimit = 1;
+	private int maxLimit = DEFAULT_MAX_LIMIT;
+	private long latency = DEFAULT_LATENCY;
+	private int maxQueued = DEFAULT_MAX_QUEUED;
+
+	private double rate = DEFAULT_RATE;
+	private int burst = DEFAULT_BURST;
+	private double tokens = DEFAULT_BURST;
+	private long refillTime = System.nanoTime();
+
+	private double limit = DEFAULT_INITIAL_LIMIT;
+	private long lastBackoff = System.nanoTime() - 1;
+	private int inFlight = 0;
+	private int queued = 0;
+
+	private long acquiredCount = 0;
+	private long rejectedCount = 0;
+	private long droppedCount = 0;
+	private long slowCount = 0;
+
+	/**
+	 * Set the highest the limit can grow to
+	 */
+	public synchronized GeocodingLimiter maxLimit(int maxLimit)
+	{
+		if (maxLimit < minLimit)
+		{
+			throw new IllegalArgumentException("Limit must be positive");
+		}
+
+		this.maxLimit = maxLimit;
+		this.limit = Math.min(limit, maxLimit);
+		return this;
+	}
+
+	/**
+	 * Set the time in milliseconds a lookup may take before it counts against the limit
+	 */
+	public synchronized GeocodingLimiter latency(long latency)
+	{
+		this.latency = latency;
+		return this;
+	}
+
+	/**
+	 * Cap lookups to the given rate
+	 * @param perSecond The number of lookups per second allowed on average
+	 * @param burst The number of lookups allowed at once after a quiet period
+	 */
+	public synchronized GeocodingLimiter rate(double perSecond, int burst)
+	{
+		if (perSecond <= 0 || burst <= 0)
+		{
+			throw new IllegalArgumentException("Rate must be positive");
+		}
+
+		this.rate = perSecond;
+		this.burst = burst;
+		this.tokens = Math.min(tokens, burst);
+		return this;
+	}
+
+	/**
+	 * Set the number of lookups that may wait for a permit, beyond which they are rejected at once
+	 */
+	public synchronized GeocodingLimiter maxQueued(int maxQueued)
+	{
+		this.maxQueued = maxQueued;
+		return this;
+	}
+
+	/**
+	 * Wait for a permit to make a lookup
+	 * @param timeout The time in milliseconds to wait at most, 0 to fail at once if none is free
+	 * @throws RejectedException If no permit was free in time
+	 */
+	public synchronized Permit acquire(long timeout) throws RejectedException, InterruptedException
+	{
+		long now = System.nanoTime();
+		long deadline = now + timeout * 1000000L;
+
+		if (canAcquire(now))
+		{
+			return grant();
+		}
+
+		if (timeout <= 0 || queued >= maxQueued)
+		{
+			rejectedCount++;
+			throw new RejectedException("Geocoding limit reached");
+		}
+
+		queued++;
+		try
+		{
+			while (true)
+			{
+				// Sleep until a permit is released or a token is due, whichever is first
+				long wait = deadline - now;
+				if (inFlight < (int)limit)
+				{
+					wait = Math.min(wait, (long)Math.ceil((1 - tokens) / rate * 1000000000L));
+				}
+				if (wait <= 0)
+				{
+					rejectedCount++;
+					throw new RejectedException("Geocoding limit reached");
+				}
+
+				wait(wait / 1000000L, (int)(wait % 1000000L));
+
+				now = System.nanoTime();
+				if (canAcquire(now))
+				{
+					return grant();
+				}
+			}
+		}
+		finally
+		{
+			queued--;
+		}
+	}
+
+	/**
+	 * @return The number of lookups currently allowed in flight
+	 */
+	public synchronized int getLimit()
+	{
+		return (int)limit;
+	}
+
+	/**
+	 * @return The number of lookups in flight
+	 */
+	public synchronized int getInFlight()
+	{
+		return inFlight;
+	}
+
+	/**
+	 * @return The number of lookups waiting for a permit
+	 */
+	public synchronized int getQueued()
+	{
+		return queued;
+	}
+
+	/**
+	 * @return The number of permits given out
+	 */
+	public synchronized long getAcquiredCount()
+	{
+		return acquiredCount;
+	}
+
+	/**
+	 * @return The number of lookups rejected for want of a permit
+	 */
+	public synchronized long getRejectedCount()
+	{
+		return rejectedCount;
+	}
+
+	/**
+	 * @return The number of lookups reported dropped by the geocoder
+	 */
+	public synchronized long getDroppedCount()
+	{
+		return droppedCount;
+	}
+
+	/**
+	 * @return The number of lookups that succeeded over the latency target
+	 */
+	public synchronized long getSlowCount()
+	{
+		return slowCount;
+	}
+
+	private boolean canAcquire(long now)
+	{
+		tokens = Math.min(burst, tokens + (now - refillTime) * rate / 1000000000L);
+		refillTime = now;
+		return inFlight < (int)limit && tokens >= 1;
+	}
+
+	private Permit grant()
+	{
+		tokens--;
+		inFlight++;
+		acquiredCount++;
+		return new Permit();
+	}
+
+	private synchronized void complete(Permit permit, boolean dropped)
+	{
+		if (permit.released)
+		{
+			return;
+		}
+
+		boolean slow = !dropped && System.nanoTime() - permit.start > latency * 1000000L;
+		if (dropped)
+		{
+			droppedCount++;
+		}
+		else if (slow)
+		{
+			slowCount++;
+		}
+
+		if (dropped || slow)
+		{
+			// Lookups started before the last cut were part of the load that caused it
+			if (permit.start - lastBackoff > 0)
+			{
+				limit = Math.max(minLimit, limit * BACKOFF);
+				lastBackoff = System.nanoTime();
+			}
+		}
+		else if (inFlight * 2 >= limit)
+		{
+			// Only grow a limit that is in use, so it holds what the geocoder has shown it can take
+			limit = Math.min(maxLimit, limit + 1 / limit);
+		}
+
+		permit.release();
+	}
+}
@@ -5,8 +5,18 @@ import android.location.Address;
 import android.location.Geocoder;
 import android.os.AsyncTask;
 
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.BearingFuture;
+import net.atomcode.bearing.region.Region;
+import net.atomcode.bearing.trace.Tracing;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base Geocoding task, supplies listener and other definitions
@@ -14,6 +24,9 @@ import java.util.Locale;
 public abstract class GeocodingTask<T> extends AsyncTask<T, Void, List<Address>>
 {
 	private static final int DEFAULT_RESULT_COUNT = 10;
+	private static final long DEFAULT_DEADLINE = 10 * 1000; // 10 seconds
+
+	private static final AtomicInteger requestCount = new AtomicInteger();
 
 	public interface Listener
 	{
@@ -21,15 +34,35 @@ public abstract class GeocodingTask<T> extends AsyncTask<T, Void, List<Address>>
 		public void onFailure();
 	}
 
+	/**
+	 * A call to the device geocoder
+	 */
+	interface Lookup
+	{
+		public List<Address> run() throws IOException;
+	}
+
 	protected Context context;
 	protected Locale locale;
 
 	protected Listener listener;
 
+	/**
+	 * Id the stages of the lookup are traced under
+	 */
+	protected final String requestId = "geocode-" + requestCount.incrementAndGet();
+
 	private T[] params;
 
 	protected int resultCount;
 
+	protected long deadline = DEFAULT_DEADLINE;
+
+	/**
+	 * Why the geocoder could not be used, if it failed
+	 */
+	protected volatile IOException failure;
+
 	GeocodingTask(Context context, T[] params)
 	{
 		this(context, params, context.getResources().getConfiguration().locale);
@@ -66,28 +99,122 @@ public abstract class GeocodingTask<T> extends AsyncTask<T, Void, List<Address>>
 		return this;
 	}
 
+	/**
+	 * Set the time in milliseconds to wait for the geocoding limiter to let the lookup through,
+	 * 0 to fail at once if the geocoder is busy
+	 */
+	@SuppressWarnings("unused")
+	public GeocodingTask<T> deadline(long deadline)
+	{
+		this.deadline = deadline;
+		return this;
+	}
+
 	/**
 	 * Begin the task execution. Returns the task for future cancellation if required
 	 */
 	@SuppressWarnings("unused, unchecked")
 	public GeocodingTask start()
 	{
+		Tracing.beginAsync("geocode", requestId);
 		execute(params);
 		return this;
 	}
 
+	/**
+	 * Run the lookup on Bearing's worker threads, completing the returned future there without
+	 * going through the main thread. The listener is not called.
+	 */
+	@SuppressWarnings("unused")
+	public BearingFuture<List<Address>> startAsync()
+	{
+		return startAsync(Bearing.getExecutor());
+	}
+
+	/**
+	 * Run the lookup on the given executor, completing the returned future there without going
+	 * through the main thread. Cancelling the future interrupts the lookup. The listener is not called.
+	 */
+	public BearingFuture<List<Address>> startAsync(Executor executor)
+	{
+		final BearingFuture<List<Address>> future = new BearingFuture<>(executor);
+
+		final FutureTask<Void> lookup = new FutureTask<>(new Runnable()
+		{
+			@Override public void run()
+			{
+				if (future.isDone())
+				{
+					return;
+				}
+
+				List<Address> addresses;
+				try
+				{
+					addresses = doInBackground(params);
+				}
+				catch (RuntimeException ex)
+				{
+					finish(future.fail(ex));
+					return;
+				}
+
+				if (addresses != null)
+				{
+					finish(future.complete(addresses));
+				}
+				else if (failure != null)
+				{
+					// e.g. a GeocodingLimiter.RejectedException when throttled
+					finish(future.fail(failure));
+				}
+				else
+				{
+					finish(future.fail(new IllegalArgumentException("Invalid geocoding request")));
+				}
+			}
+
+			/**
+			 * End the trace unless the future was cancelled first, which ended it already
+			 */
+			private void finish(boolean finished)
+			{
+				if (finished)
+				{
+					Tracing.endAsync("geocode", requestId);
+				}
+			}
+		}, null);
+
+		future.onCancel(new Runnable()
+		{
+			@Override public void run()
+			{
+				lookup.cancel(true);
+				Tracing.endAsync("geocode", requestId);
+			}
+		});
+
+		Tracing.beginAsync("geocode", requestId);
+		executor.execute(lookup);
+		return future;
+	}
+
 	/**
 	 * Simple listener callbacks to check for valid return values
 	 */
 	@Override protected void onPostExecute(List<Address> address)
 	{
 		super.onPostExecute(address);
+		Tracing.endAsync("geocode", requestId);
+		if (listener == null)
+		{
+			return;
+		}
+
 		if (address != null)
 		{
-			if (listener != null)
-			{
-				listener.onSuccess(address);
-			}
+			listener.onSuccess(address);
 		}
 		else
 		{
@@ -95,6 +222,87 @@ public abstract class GeocodingTask<T> extends AsyncTask<T, Void, List<Address>>
 		}
 	}
 
+	@Override protected void onCancelled()
+	{
+		super.onCancelled();
+		Tracing.endAsync("geocode", requestId);
+	}
+
+	/**
+	 * Make the given lookup once the shared {@link GeocodingLimiter} lets it through, and report
+	 * how it went back to the limiter
+	 */
+	List<Address> lookup(Lookup lookup) throws IOException
+	{
+		return lookup(lookup, deadline);
+	}
+
+	/**
+	 * Make the given lookup once the shared {@link GeocodingLimiter} lets it through, and report
+	 * how it went back to the limiter. A lookup interrupted while waiting or running is not
+	 * charged to the limiter.
+	 * @param timeout The time in milliseconds to wait at most for the limiter
+	 * @throws InterruptedIOException If interrupted, with the interrupt status kept
+	 */
+	static List<Address> lookup(Lookup lookup, long timeout) throws IOException
+	{
+		GeocodingLimiter limiter = Bearing.getGeocodingLimiter();
+		if (limiter == null)
+		{
+			return lookup.run();
+		}
+
+		GeocodingLimiter.Permit permit;
+		try
+		{
+			permit = limiter.acquire(timeout);
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for the geocoding limiter");
+		}
+
+		try
+		{
+			List<Address> addresses = lookup.run();
+			permit.success();
+			return addresses;
+		}
+		catch (InterruptedIOException ex)
+		{
+			// Cancelled, not the geocoder's doing
+			throw ex;
+		}
+		catch (IOException ex)
+		{
+			permit.dropped();
+			throw ex;
+		}
+		finally
+		{
+			permit.release();
+		}
+	}
+
+	/**
+	 * @return The store of downloaded addresses to consult, or null
+	 */
+	protected AddressStore getAddressStore()
+	{
+		return Bearing.with(context).getAddressStore();
+	}
+
+	/**
+	 * @return The region of the given coordinate to fill in addresses with, or null if regions
+	 * are not prefilled or the coordinate is in none
+	 */
+	protected Region getPrefillRegion(double latitude, double longitude)
+	{
+		Bearing bearing = Bearing.with(context);
+		return bearing.isPrefillingRegions() ? bearing.region(latitude, longitude) : null;
+	}
+
 	/**
 	 * Check to see if the device has native geocoding capability.
 	 * @return {@code true} if ability present, {@code false} otherwise.
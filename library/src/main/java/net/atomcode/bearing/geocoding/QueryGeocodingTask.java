@@ -3,8 +3,12 @@ package net.atomcode.bearing.geocoding;
 import android.content.Context;
 import android.location.Address;
 import android.location.Geocoder;
+import android.util.Log;
+
+import net.atomcode.bearing.trace.Tracing;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Collections;
 import java.util.List;
 
@@ -45,12 +49,48 @@ public class QueryGeocodingTask extends GeocodingTask<String>
 					return nativeGeocodingResults;
 				}
 			}
+			catch (InterruptedIOException ex)
+			{
+				// Cancelled, nothing is waiting for the results
+				return null;
+			}
 			catch (IOException ex)
 			{
-				// continue and try to use the remote geocoder
+				// continue and try to use the downloaded addresses
+				failure = ex;
 			}
 		}
 
+		// Without coverage, search the downloaded addresses instead
+		AddressStore store = getAddressStore();
+		if (store != null)
+		{
+			Tracing.begin("store", requestId);
+			try
+			{
+				List<Address> storedAddresses = store.search(query, resultCount);
+				if (failure == null || !storedAddresses.isEmpty())
+				{
+					return storedAddresses;
+				}
+			}
+			catch (IOException ex)
+			{
+				Log.w("Bearing", "Unable to read address store: " + ex.getMessage());
+			}
+			finally
+			{
+				Tracing.end("store", requestId);
+			}
+		}
+
+		// Report the failure rather than no results, so callers do not retry into a throttled geocoder
+		if (failure != null)
+		{
+			Log.w("Bearing", "Geocoding failed: " + failure.getMessage());
+			return null;
+		}
+
 		return Collections.emptyList();
 	}
 
@@ -66,9 +106,23 @@ public class QueryGeocodingTask extends GeocodingTask<String>
 	 * @param query The query to geocode
 	 * @return The geocoded locations
 	 */
-	private List<Address> addressForNativeGeocodedQuery(String query) throws IOException
+	private List<Address> addressForNativeGeocodedQuery(final String query) throws IOException
 	{
-		Geocoder geocoder = new Geocoder(context, locale);
-		return geocoder.getFromLocationName(query, resultCount);
+		Tracing.begin("geocoder", requestId);
+		try
+		{
+			return lookup(new Lookup()
+			{
+				@Override public List<Address> run() throws IOException
+				{
+					Geocoder geocoder = new Geocoder(context, locale);
+					return geocoder.getFromLocationName(query, resultCount);
+				}
+			});
+		}
+		finally
+		{
+			Tracing.end("geocoder", requestId);
+		}
 	}
 }
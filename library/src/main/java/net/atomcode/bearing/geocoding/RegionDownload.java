@@ -0,0 +1,412 @@
+package net.atomcode.bearing.geocoding;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Geocoder;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.geofence.Geofence;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sweeps a region with reverse geocoding lookups, one per cell of an {@link AddressStore},
+ * so addresses in the region can be looked up later without coverage.
+ *
+ * Lookups go through the device geocoder, at most one per interval and within the shared
+ * {@link GeocodingLimiter}, so a download backs off with everything else when the geocoder
+ * starts throttling. Cells already in the store are skipped, so a download that was cancelled
+ * or failed resumes where it stopped when started again. A lookup that fails is retried with
+ * backoff before the download fails.
+ *
+ * The listener is called on the main thread. Progress is reported at most once per main thread
+ * pass, with the latest count, so a quick sweep over stored cells does not flood the main thread.
+ */
+public class RegionDownload
+{
+	private static final long DEFAULT_INTERVAL = 250;
+	private static final int MAX_RETRIES = 3;
+	private static final long RETRY_DELAY = 2000;
+
+	public interface Listener
+	{
+		public void onProgress(int completed, int total);
+		public void onComplete();
+		public void onFailure();
+	}
+
+	private final Context context;
+	private final AddressStore store;
+	private final Geofence region;
+	private final double minLatitude;
+	private final double minLongitude;
+	private final double maxLatitude;
+	private final double maxLongitude;
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	private long interval = DEFAULT_INTERVAL;
+	private Listener listener;
+
+	private volatile boolean running = false;
+	private volatile int sweep = 0;
+	private volatile int lookupCount = 0;
+	private Sweep worker;
+
+	private final AtomicBoolean progressPosted = new AtomicBoolean(false);
+	private volatile int progressCompleted;
+	private volatile int progressTotal;
+
+	/**
+	 * Download the cells whose centre falls inside the given region
+	 */
+	public RegionDownload(Context context, AddressStore store, Geofence region)
+	{
+		this(context, store, region, region.getMinLatitude(), region.getMinLongitude(), region.getMaxLatitude(), region.getMaxLongitude());
+	}
+
+	/**
+	 * Download all cells of the given bounding box
+	 */
+	public RegionDownload(Context context, AddressStore store, double minLatitude, double minLongitude, double maxLatitude, double maxLongitude)
+	{
+		this(context, store, null, minLatitude, minLongitude, maxLatitude, maxLongitude);
+	}
+
+	private RegionDownload(Context context, AddressStore store, Geofence region, double minLatitude, double minLongitude, double maxLatitude, double maxLongitude)
+	{
+		this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+		this.store = store;
+		this.region = region;
+		this.minLatitude = minLatitude;
+		this.minLongitude = minLongitude;
+		this.maxLatitude = maxLatitude;
+		this.maxLongitude = maxLongitude;
+	}
+
+	/**
+	 * Set the minimum time between lookups in milliseconds, to stay within the geocoder's limits
+	 */
+	public RegionDownload interval(long interval)
+	{
+		this.interval = interval;
+		return this;
+	}
+
+	/**
+	 * Listen for the progress of the download
+	 */
+	public RegionDownload listen(Listener listener)
+	{
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * @return The number of geocoder lookups made by this download
+	 */
+	public int getLookupCount()
+	{
+		return lookupCount;
+	}
+
+	/**
+	 * Begin the download on Bearing's worker threads. Returns the task for cancellation if required.
+	 */
+	public synchronized RegionDownload start()
+	{
+		if (running)
+		{
+			return this;
+		}
+
+		running = true;
+		final int current = ++sweep;
+		final Sweep previous = worker;
+		final Sweep next = new Sweep();
+		worker = next;
+		next.future = Bearing.getExecutor().submit(new Runnable()
+		{
+			@Override public void run()
+			{
+				if (!next.started.compareAndSet(false, true))
+				{
+					return;
+				}
+
+				try
+				{
+					sweep(previous, current);
+				}
+				finally
+				{
+					next.finished.countDown();
+				}
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Stop the download, interrupting a lookup waiting on the limiter or backing off. Cells
+	 * downloaded so far are kept.
+	 */
+	public synchronized void cancel()
+	{
+		running = false;
+		if (worker != null)
+		{
+			worker.future.cancel(true);
+		}
+	}
+
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	private void sweep(Sweep previous, int current)
+	{
+		try
+		{
+			// A cancelled sweep may still be in a geocoder call, wait for it rather than look up alongside it
+			if (previous != null)
+			{
+				previous.await();
+			}
+			download(current);
+			store.flush();
+		}
+		catch (InterruptedIOException ex)
+		{
+			// Cancelled
+			finish(current);
+			return;
+		}
+		catch (IOException ex)
+				{
+			Log.w("Bearing", "Region download failed: " + ex.getMessage());
+			if (finish(current))
+			{
+				notifyFailure();
+			}
+			return;
+		}
+		catch (InterruptedException ex)
+		{
+			finish(current);
+			return;
+		}
+
+		if (finish(current))
+		{
+			notifyComplete();
+		}
+	}
+
+	/**
+	 * @return True if the given sweep is the running one
+	 */
+	private boolean isCurrent(int current)
+	{
+		return running && sweep == current;
+	}
+
+	/**
+	 * Stop the given sweep if it is still the running one
+	 * @return True if it was, and so should report how it ended
+	 */
+	private synchronized boolean finish(int current)
+	{
+		if (!isCurrent(current))
+		{
+			return false;
+		}
+
+		running = false;
+		return true;
+	}
+
+	private void download(int current) throws IOException, InterruptedException
+	{
+		if (!Geocoder.isPresent())
+		{
+			throw new IOException("No geocoder available");
+		}
+
+		Geocoder geocoder = new Geocoder(context, store.getLocale());
+		double cellSize = store.getCellSize();
+
+		long minLatitudeCell = (long)Math.floor(minLatitude / cellSize);
+		long maxLatitudeCell = (long)Math.floor(maxLatitude / cellSize);
+		long minLongitudeCell = (long)Math.floor(minLongitude / cellSize);
+		long maxLongitudeCell = (long)Math.floor(maxLongitude / cellSize);
+
+		int total = 0;
+		for (long latitudeCell = minLatitudeCell; latitudeCell <= maxLatitudeCell; latitudeCell++)
+		{
+			for (long longitudeCell = minLongitudeCell; longitudeCell <= maxLongitudeCell; longitudeCell++)
+			{
+				if (region == null || region.contains((latitudeCell + 0.5) * cellSize, (longitudeCell + 0.5) * cellSize))
+				{
+					total++;
+				}
+			}
+		}
+
+		int completed = 0;
+		long lastLookup = 0;
+		for (long latitudeCell = minLatitudeCell; latitudeCell <= maxLatitudeCell && isCurrent(current); latitudeCell++)
+		{
+			for (long longitudeCell = minLongitudeCell; longitudeCell <= maxLongitudeCell && isCurrent(current); longitudeCell++)
+			{
+				double latitude = (latitudeCell + 0.5) * cellSize;
+				double longitude = (longitudeCell + 0.5) * cellSize;
+
+				if (region != null && !region.contains(latitude, longitude))
+				{
+					continue;
+				}
+
+				if (!store.contains(latitude, longitude))
+				{
+					long wait = lastLookup + interval - System.currentTimeMillis();
+					if (wait > 0)
+					{
+						Thread.sleep(wait);
+					}
+					lastLookup = System.currentTimeMillis();
+
+					List<Address> addresses = lookup(current, geocoder, latitude, longitude);
+					store.put(latitude, longitude, addresses.isEmpty() ? null : addresses.get(0));
+				}
+
+				notifyProgress(++completed, total);
+			}
+		}
+	}
+
+	private List<Address> lookup(int current, Geocoder geocoder, double latitude, double longitude) throws IOException, InterruptedException
+	{
+		for (int attempt = 0; ; attempt++)
+		{
+			try
+			{
+				List<Address> addresses = limitedLookup(geocoder, latitude, longitude);
+				if (addresses == null)
+				{
+					throw new IOException("Geocoder returned no response");
+				}
+				return addresses;
+			}
+			catch (IOException ex)
+			{
+				if (ex instanceof InterruptedIOException || attempt == MAX_RETRIES || !isCurrent(current))
+				{
+					throw ex;
+				}
+				Thread.sleep(RETRY_DELAY << attempt);
+			}
+		}
+	}
+
+	private List<Address> limitedLookup(final Geocoder geocoder, final double latitude, final double longitude) throws IOException
+	{
+		// Wait as long as it takes, a download has no caller waiting on each lookup
+		return GeocodingTask.lookup(new GeocodingTask.Lookup()
+		{
+			@Override public List<Address> run() throws IOException
+			{
+				lookupCount++;
+				return geocoder.getFromLocation(latitude, longitude, 1);
+			}
+		}, Long.MAX_VALUE / 1000000L);
+	}
+
+	private void notifyProgress(int completed, int total)
+	{
+		if (listener == null)
+		{
+			return;
+		}
+
+		progressTotal = total;
+		progressCompleted = completed;
+
+		// Only post when nothing is pending, the pending report picks up the latest count
+		if (!progressPosted.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		handler.post(new Runnable()
+		{
+			@Override public void run()
+			{
+				progressPosted.set(false);
+				listener.onProgress(progressCompleted, progressTotal);
+			}
+		});
+	}
+
+	private void notifyComplete()
+	{
+		if (listener == null)
+		{
+			return;
+		}
+
+		handler.post(new Runnable()
+		{
+			@Override public void run()
+			{
+				listener.onComplete();
+			}
+		});
+	}
+
+	private void notifyFailure()
+	{
+		if (listener == null)
+		{
+			return;
+		}
+
+		handler.post(new Runnable()
+		{
+			@Override public void run()
+			{
+				listener.onFailure();
+			}
+		});
+	}
+
+	/**
+	 * A run of the download on a worker thread
+	 */
+	private static class Sweep
+	{
+		final AtomicBoolean started = new AtomicBoolean(false);
+		final CountDownLatch finished = new CountDownLatch(1);
+		Future<?> future;
+
+		/**
+		 * Wait for the sweep to stop, or stop it from starting if it has not yet
+		 */
+		void await() throws InterruptedException
+		{
+			if (!started.compareAndSet(false, true))
+			{
+				finished.await();
+			}
+		}
+	}
+}
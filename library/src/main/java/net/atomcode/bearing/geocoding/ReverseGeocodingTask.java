@@ -5,6 +5,9 @@ import android.location.Address;
 import android.location.Geocoder;
 import android.util.Log;
 
+import net.atomcode.bearing.region.Region;
+import net.atomcode.bearing.trace.Tracing;
+
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
@@ -44,6 +47,70 @@ public class ReverseGeocodingTask extends GeocodingTask<Double>
 		Double lat = params[0];
 		Double lng = params[1];
 
+		List<Address> addresses = reverseGeocode(lat, lng);
+
+		Tracing.begin("region", requestId);
+		try
+		{
+			Region region = getPrefillRegion(lat, lng);
+			if (region == null)
+			{
+				return addresses;
+			}
+
+			if (addresses == null || addresses.isEmpty())
+			{
+				// The region alone still answers what country or state the coordinate is in
+				failure = null;
+				return Collections.singletonList(region.toAddress(locale, lat, lng));
+			}
+
+			for (Address address : addresses)
+			{
+				region.fill(address);
+			}
+			return addresses;
+		}
+		finally
+		{
+			Tracing.end("region", requestId);
+		}
+	}
+
+	/**
+	 * Look up the address of the coordinate in the address store, then the device geocoder
+	 */
+	private List<Address> reverseGeocode(Double lat, Double lng)
+	{
+		// Downloaded addresses work without coverage, and save a lookup
+		AddressStore store = getAddressStore();
+		if (store != null)
+		{
+			Tracing.begin("store", requestId);
+			try
+			{
+				Address storedAddress = store.get(lat, lng);
+				if (storedAddress != null)
+				{
+					return Collections.singletonList(storedAddress);
+				}
+
+				if (store.contains(lat, lng))
+				{
+					// The cell was looked up before and has no address, the geocoder would not find one either
+					return Collections.emptyList();
+				}
+			}
+			catch (IOException ex)
+			{
+				Log.w("Bearing", "Unable to read address store: " + ex.getMessage());
+			}
+			finally
+			{
+				Tracing.end("store", requestId);
+			}
+		}
+
 		// Attempt to use the native geocoder if the device supports it
 		// Native geocoding is sometimes spotty and will fail, so if it doesn't return anything then use the remote geocoder
 		if (deviceHasNativeGeocoding())
@@ -58,7 +125,10 @@ public class ReverseGeocodingTask extends GeocodingTask<Double>
 			}
 			catch (IOException ex)
 			{
-				// continue
+				// Report the failure rather than no results, so callers do not retry into a throttled geocoder
+				Log.w("Bearing", "Reverse geocoding failed: " + ex.getMessage());
+				failure = ex;
+				return null;
 			}
 		}
 
@@ -78,9 +148,23 @@ public class ReverseGeocodingTask extends GeocodingTask<Double>
 	 * @param longitude The longitude of the location to reverse geocode
 	 * @return The geocoded location
 	 */
-	private List<Address> addressForNativeGeocodedQuery(Double latitude, Double longitude) throws IOException
+	private List<Address> addressForNativeGeocodedQuery(final Double latitude, final Double longitude) throws IOException
 	{
-		Geocoder geocoder = new Geocoder(context, locale);
-		return geocoder.getFromLocation(latitude, longitude, resultCount);
+		Tracing.begin("geocoder", requestId);
+		try
+		{
+			return lookup(new Lookup()
+			{
+				@Override public List<Address> run() throws IOException
+				{
+					Geocoder geocoder = new Geocoder(context, locale);
+					return geocoder.getFromLocation(latitude, longitude, resultCount);
+				}
+			});
+		}
+		finally
+		{
+			Tracing.end("geocoder", requestId);
+		}
 	}
 }
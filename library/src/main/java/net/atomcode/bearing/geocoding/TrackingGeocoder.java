@@ -0,0 +1,193 @@
+package net.atomcode.bearing.geocoding;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.BearingFuture;
+import net.atomcode.bearing.geodesy.Geodesy;
+import net.atomcode.bearing.location.LocationListener;
+
+import java.util.List;
+
+/**
+ * Pipeline stage attaching an address to the updates of a tracking task, see
+ * {@link net.atomcode.bearing.location.PeriodicLocationTask#geocode(TrackingGeocoder)}.
+ *
+ * An update is only reverse geocoded if it is further than the displacement threshold from the
+ * last geocoded location and its cell is not already in the address cache. Otherwise the
+ * previous or cached address is reused, so a track only costs a geocoder call every few hundred
+ * metres rather than on every update.
+ *
+ * Updates are reported straight away with the best known address, which is null until the first
+ * lookup completes. When a lookup completes the latest update is reported again with the new
+ * address, or null if there is none there. Only one lookup runs at a time. Must be fed from the main thread, which all updates
+ * are reported on.
+ */
+public class TrackingGeocoder extends LocationListener
+{
+	private static final float DEFAULT_DISPLACEMENT = 100.0f;
+
+	public interface Listener
+	{
+		public void onUpdate(Location location, Address address);
+	}
+
+	private final Context context;
+	private final Listener listener;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	private AddressCache cache;
+	private float displacement = DEFAULT_DISPLACEMENT;
+
+	private Location lastLocation;
+	private Location geocodedLocation;
+	private Address address;
+	private BearingFuture<List<Address>> pending;
+
+	private int geocodeCount = 0;
+	private int updateCount = 0;
+
+	/**
+	 * Geocode using the shared address cache of the given context
+	 */
+	public TrackingGeocoder(Context context, Listener listener)
+	{
+		this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+		this.listener = listener;
+		this.cache = Bearing.with(context).getAddressCache();
+	}
+
+	/**
+	 * Set the distance in metres the user must move from the last geocoded location before
+	 * geocoding again
+	 */
+	public TrackingGeocoder displacement(float metres)
+	{
+		this.displacement = metres;
+		return this;
+	}
+
+	/**
+	 * Use the given address cache instead of the shared one
+	 */
+	public TrackingGeocoder cache(AddressCache cache)
+	{
+		this.cache = cache;
+		return this;
+	}
+
+	/**
+	 * @return The number of reverse geocoder lookups made
+	 */
+	public int getGeocodeCount()
+	{
+		return geocodeCount;
+	}
+
+	/**
+	 * @return The number of updates received
+	 */
+	public int getUpdateCount()
+	{
+		return updateCount;
+	}
+
+	/**
+	 * Stop any running lookup and forget the current address
+	 */
+	public void reset()
+	{
+		if (pending != null)
+		{
+			pending.cancel(false);
+			pending = null;
+		}
+		lastLocation = null;
+		geocodedLocation = null;
+		address = null;
+	}
+
+	@Override public void onUpdate(Location location)
+	{
+		updateCount++;
+		lastLocation = location;
+
+		if (geocodedLocation == null || !Geodesy.isWithin(location.getLatitude(), location.getLongitude(), geocodedLocation.getLatitude(), geocodedLocation.getLongitude(), displacement))
+		{
+			Address cached = cache.get(location.getLatitude(), location.getLongitude());
+			if (cached != null)
+			{
+				geocodedLocation = location;
+				address = cached;
+			}
+			else if (pending == null)
+			{
+				geocode(location);
+			}
+		}
+
+		listener.onUpdate(location, address);
+	}
+
+	private void geocode(final Location location)
+	{
+		geocodeCount++;
+
+		ReverseGeocodingTask task = new ReverseGeocodingTask(context, new Double[]{location.getLatitude(), location.getLongitude()});
+		task.results(1);
+
+		final BearingFuture<List<Address>> lookup = task.startAsync();
+		pending = lookup;
+		lookup.whenComplete(new BearingFuture.Callback<List<Address>>()
+		{
+			@Override public void onSuccess(final List<Address> addresses)
+			{
+				handler.post(new Runnable()
+				{
+					@Override public void run()
+					{
+						if (pending != lookup)
+						{
+							return;
+						}
+						pending = null;
+
+						// Do not retry until the user has moved on
+						geocodedLocation = location;
+						if (addresses.isEmpty())
+						{
+							// The last area's address no longer applies
+							address = null;
+						}
+						else
+						{
+							address = addresses.get(0);
+							cache.put(location.getLatitude(), location.getLongitude(), address);
+						}
+
+						listener.onUpdate(lastLocation, address);
+					}
+				});
+			}
+
+			@Override public void onFailure(Throwable error)
+			{
+				handler.post(new Runnable()
+				{
+					@Override public void run()
+					{
+						if (pending == lookup)
+						{
+							pending = null;
+							geocodedLocation = location;
+						}
+					}
+				});
+			}
+		});
+	}
+}
@@ -0,0 +1,292 @@
+package net.atomcode.bearing.geodesy;
+
+/**
+ * Distance calculations on primitive coordinates, for hot paths that would otherwise create
+ * {@link android.location.Location} objects to call {@code distanceTo}, which always runs the
+ * full iterative ellipsoid solution.
+ *
+ * Three methods of increasing cost and accuracy are offered:
+ * <ul>
+ *     <li>{@link Method#EQUIRECTANGULAR}, a flat projection around the mid latitude. As close
+ *     as haversine up to tens of kilometres, which covers displacement gates, filters and
+ *     fences.</li>
+ *     <li>{@link Method#HAVERSINE}, the great circle distance on a sphere of the mean earth
+ *     radius. Within 0.5% of the ellipsoid distance at any distance.</li>
+ *     <li>{@link Method#VINCENTY}, the inverse solution on the WGS84 ellipsoid, as used by
+ *     {@code Location.distanceTo}. Accurate to millimetres.</li>
+ * </ul>
+ * All distances are in metres and all coordinates in degrees.
+ */
+public final class Geodesy
+{
+	/**
+	 * Distance calculation method
+	 */
+	public enum Method
+	{
+		EQUIRECTANGULAR,
+		HAVERSINE,
+		VINCENTY
+	}
+
+	/**
+	 * Mean radius of the earth in metres
+	 */
+	public static final double EARTH_RADIUS = 6371008.8;
+
+	/**
+	 * Metres per degree of latitude, or of longitude at the equator, on the mean radius sphere
+	 */
+	public static final double METRES_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+	/*
+	 * WGS84 ellipsoid
+	 */
+	private static final double WGS84_A = 6378137.0;
+	private static final double WGS84_F = 1 / 298.257223563;
+	private static final double WGS84_B = WGS84_A * (1 - WGS84_F);
+
+	private static final int VINCENTY_ITERATIONS = 20;
+	private static final double VINCENTY_TOLERANCE = 1e-12;
+
+	private Geodesy() {}
+
+	/**
+	 * Distance between two coordinates with the given method
+	 */
+	public static double distance(Method method, double latitude1, double longitude1, double latitude2, double longitude2)
+	{
+		switch (method)
+		{
+			case EQUIRECTANGULAR:
+				return equirectangular(latitude1, longitude1, latitude2, longitude2);
+			case HAVERSINE:
+				return haversine(latitude1, longitude1, latitude2, longitude2);
+			default:
+				return vincenty(latitude1, longitude1, latitude2, longitude2);
+		}
+	}
+
+	/**
+	 * Distance between two coordinates on a flat projection around their mid latitude
+	 */
+	public static double equirectangular(double latitude1, double longitude1, double latitude2, double longitude2)
+	{
+		double north = latitude2 - latitude1;
+		double east = longitudeDelta(longitude1, longitude2) * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+		return Math.sqrt(north * north + east * east) * METRES_PER_DEGREE;
+	}
+
+	/**
+	 * Great circle distance between two coordinates on a sphere of the mean earth radius
+	 */
+	public static double haversine(double latitude1, double longitude1, double latitude2, double longitude2)
+	{
+		double phi1 = Math.toRadians(latitude1);
+		double phi2 = Math.toRadians(latitude2);
+		double sinLatitude = Math.sin((phi2 - phi1) / 2);
+		double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+
+		double h = sinLatitude * sinLatitude + Math.cos(phi1) * Math.cos(phi2) * sinLongitude * sinLongitude;
+		return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1, h)));
+	}
+
+	/**
+	 * Distance between two coordinates on the WGS84 ellipsoid. Falls back to the haversine
+	 * distance for nearly antipodal coordinates, where the solution does not converge.
+	 */
+	public static double vincenty(double latitude1, double longitude1, double latitude2, double longitude2)
+	{
+		double l = Math.toRadians(longitudeDelta(longitude1, longitude2));
+		double u1 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(latitude1)));
+		double u2 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(latitude2)));
+		double sinU1 = Math.sin(u1);
+		double cosU1 = Math.cos(u1);
+		double sinU2 = Math.sin(u2);
+		double cosU2 = Math.cos(u2);
+
+		double lambda = l;
+		double sinSigma;
+		double cosSigma;
+		double sigma;
+		double cosSquaredAlpha;
+		double cos2SigmaM;
+
+		int iteration = 0;
+		while (true)
+		{
+			double sinLambda = Math.sin(lambda);
+			double cosLambda = Math.cos(lambda);
+
+			double a = cosU2 * sinLambda;
+			double b = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+			sinSigma = Math.sqrt(a * a + b * b);
+			if (sinSigma == 0)
+			{
+				// Coincident points
+				return 0;
+			}
+
+			cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+			sigma = Math.atan2(sinSigma, cosSigma);
+
+			double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+			cosSquaredAlpha = 1 - sinAlpha * sinAlpha;
+			cos2SigmaM = cosSquaredAlpha != 0 ? cosSigma - 2 * sinU1 * sinU2 / cosSquaredAlpha : 0;
+
+			double c = WGS84_F / 16 * cosSquaredAlpha * (4 + WGS84_F * (4 - 3 * cosSquaredAlpha));
+			double previous = lambda;
+			lambda = l + (1 - c) * WGS84_F * sinAlpha * (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+
+			if (Math.abs(lambda - previous) < VINCENTY_TOLERANCE)
+			{
+				break;
+			}
+
+			if (++iteration == VINCENTY_ITERATIONS)
+			{
+				return haversine(latitude1, longitude1, latitude2, longitude2);
+			}
+		}
+
+		double uSquared = cosSquaredAlpha * (WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+		double a = 1 + uSquared / 16384 * (4096 + uSquared * (-768 + uSquared * (320 - 175 * uSquared)));
+		double b = uSquared / 1024 * (256 + uSquared * (-128 + uSquared * (74 - 47 * uSquared)));
+		double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)
+			- b / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+
+		return WGS84_B * a * (sigma - deltaSigma);
+	}
+
+	/**
+	 * Distances from one coordinate to each of the given coordinates. The equirectangular
+	 * method projects around the origin rather than each mid latitude, so is intended for
+	 * batches of nearby coordinates.
+	 * @param latitudes The latitudes of the coordinates to measure to
+	 * @param longitudes The longitudes of the coordinates to measure to
+	 * @param count The number of coordinates to measure to
+	 * @param distances Receives the distances, at least count long
+	 */
+	public static void distances(Method method, double latitude, double longitude, double[] latitudes, double[] longitudes, int count, double[] distances)
+	{
+		switch (method)
+		{
+			case EQUIRECTANGULAR:
+			{
+				// Project around the origin once for the whole batch
+				double scale = Math.cos(Math.toRadians(latitude));
+				for (int index = 0; index < count; index++)
+				{
+					double north = latitudes[index] - latitude;
+					double east = longitudeDelta(longitude, longitudes[index]) * scale;
+					distances[index] = Math.sqrt(north * north + east * east) * METRES_PER_DEGREE;
+				}
+				break;
+			}
+			case HAVERSINE:
+			{
+				double phi = Math.toRadians(latitude);
+				double cosPhi = Math.cos(phi);
+				for (int index = 0; index < count; index++)
+				{
+					double phi2 = Math.toRadians(latitudes[index]);
+					double sinLatitude = Math.sin((phi2 - phi) / 2);
+					double sinLongitude = Math.sin(Math.toRadians(longitudes[index] - longitude) / 2);
+					double h = sinLatitude * sinLatitude + cosPhi * Math.cos(phi2) * sinLongitude * sinLongitude;
+					distances[index] = 2 * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1, h)));
+				}
+				break;
+			}
+			default:
+			{
+				for (int index = 0; index < count; index++)
+				{
+					distances[index] = vincenty(latitude, longitude, latitudes[index], longitudes[index]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check if two coordinates are within the given distance of each other, rejecting distant
+	 * coordinates by bounding box before measuring. Uses the equirectangular distance, so is
+	 * intended for distances up to tens of kilometres.
+	 */
+	public static boolean isWithin(double latitude1, double longitude1, double latitude2, double longitude2, double metres)
+	{
+		double limit = metres / METRES_PER_DEGREE;
+		double north = latitude2 - latitude1;
+		if (north > limit || north < -limit)
+		{
+			return false;
+		}
+
+		double east = longitudeDelta(longitude1, longitude2) * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+		return north * north + east * east <= limit * limit;
+	}
+
+	/**
+	 * Get the bounding box containing every coordinate within the given distance of a coordinate
+	 * @param box Receives the minimum latitude, minimum longitude, maximum latitude and maximum
+	 * longitude. The longitudes are not wrapped, so may extend past 180.
+	 */
+	public static void boundingBox(double latitude, double longitude, double metres, double[] box)
+	{
+		double latitudeSpan = latitudeSpan(metres);
+		double longitudeSpan = longitudeSpan(latitude, metres);
+		box[0] = latitude - latitudeSpan;
+		box[1] = longitude - longitudeSpan;
+		box[2] = latitude + latitudeSpan;
+		box[3] = longitude + longitudeSpan;
+	}
+
+	/**
+	 * @return The degrees of latitude covering the given distance
+	 */
+	public static double latitudeSpan(double metres)
+	{
+		return metres / METRES_PER_DEGREE;
+	}
+
+	/**
+	 * @return The degrees of longitude covering the given distance at any point within that
+	 * distance of the given latitude, i.e. measured at the latitude nearest the pole
+	 */
+	public static double longitudeSpan(double latitude, double metres)
+	{
+		double latitudeSpan = latitudeSpan(metres);
+		double cos = Math.cos(Math.toRadians(Math.min(Math.abs(latitude) + latitudeSpan, 90)));
+		return Math.min(360, metres / (METRES_PER_DEGREE * Math.max(cos, 1e-6)));
+	}
+
+	/**
+	 * @return The given longitude wrapped to -180 to 180
+	 */
+	public static double wrapLongitude(double longitude)
+	{
+		if (longitude >= -180 && longitude <= 180)
+		{
+			return longitude;
+		}
+
+		double wrapped = (longitude + 180) % 360;
+		return wrapped < 0 ? wrapped + 180 : wrapped - 180;
+	}
+
+	/**
+	 * @return The difference between two longitudes, wrapped to -180 to 180
+	 */
+	public static double longitudeDelta(double longitude1, double longitude2)
+	{
+		double delta = longitude2 - longitude1;
+		if (delta > 180)
+		{
+			delta -= 360;
+		}
+		else if (delta < -180)
+		{
+			delta += 360;
+		}
+		return delta;
+	}
+}
@@ -0,0 +1,68 @@
+package net.atomcode.bearing.geofence;
+
+import net.atomcode.bearing.geodesy.Geodesy;
+
+/**
+ * Geofence covering a radius around a centre coordinate
+ */
+public class CircularGeofence extends Geofence
+{
+	private final double latitude;
+	private final double longitude;
+	private final double radius;
+
+	/**
+	 * @param id The identifier reported in geofence events
+	 * @param latitude The latitude of the centre
+	 * @param longitude The longitude of the centre
+	 * @param radius The radius in metres
+	 */
+	public CircularGeofence(String id, double latitude, double longitude, double radius)
+	{
+		super(id);
+
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.radius = radius;
+
+		double latitudeSpan = Geodesy.latitudeSpan(radius);
+		double longitudeSpan = Geodesy.longitudeSpan(latitude, radius);
+
+		minLatitude = latitude - latitudeSpan;
+		maxLatitude = latitude + latitudeSpan;
+		minLongitude = longitude - longitudeSpan;
+		maxLongitude = longitude + longitudeSpan;
+	}
+
+	@Override
+	public boolean contains(double latitude, double longitude)
+	{
+		return centreDistance(latitude, longitude) <= radius;
+	}
+
+	@Override
+	public double distanceTo(double latitude, double longitude)
+	{
+		return Math.max(0, centreDistance(latitude, longitude) - radius);
+	}
+
+	public double getLatitude()
+	{
+		return latitude;
+	}
+
+	public double getLongitude()
+	{
+		return longitude;
+	}
+
+	public double getRadius()
+	{
+		return radius;
+	}
+
+	private double centreDistance(double latitude, double longitude)
+	{
+		return Geodesy.equirectangular(this.latitude, this.longitude, latitude, longitude);
+	}
+}
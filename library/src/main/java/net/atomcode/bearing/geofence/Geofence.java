@@ -0,0 +1,67 @@
+package net.atomcode.bearing.geofence;
+
+/**
+ * Base geofence, a named area tested against location updates by a {@link GeofenceEngine}
+ */
+public abstract class Geofence
+{
+	protected final String id;
+
+	/*
+	 * Bounding box, used to place the fence in the engine index
+	 */
+	protected double minLatitude;
+	protected double maxLatitude;
+	protected double minLongitude;
+	protected double maxLongitude;
+
+	Geofence(String id)
+	{
+		if (id == null)
+		{
+			throw new IllegalArgumentException("Geofence id cannot be null!");
+		}
+		this.id = id;
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	/**
+	 * Check if the given coordinate is inside the fence
+	 */
+	public abstract boolean contains(double latitude, double longitude);
+
+	/**
+	 * Get the distance from the given coordinate to the boundary of the fence in metres,
+	 * or 0 if the coordinate is inside the fence
+	 */
+	public abstract double distanceTo(double latitude, double longitude);
+
+	public double getMinLatitude()
+	{
+		return minLatitude;
+	}
+
+	public double getMaxLatitude()
+	{
+		return maxLatitude;
+	}
+
+	public double getMinLongitude()
+	{
+		return minLongitude;
+	}
+
+	public double getMaxLongitude()
+	{
+		return maxLongitude;
+	}
+
+	@Override public String toString()
+	{
+		return getClass().getSimpleName() + "[" + id + "]";
+	}
+}
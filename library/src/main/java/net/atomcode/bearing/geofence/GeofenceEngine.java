@@ -0,0 +1,429 @@
+package net.atomcode.bearing.geofence;
+
+import android.location.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a set of geofences against location updates and reports enter, exit and dwell
+ * transitions.
+ *
+ * Fences are indexed in a uniform grid by bounding box, so an update only tests the fences
+ * overlapping its grid cell plus the fences it is currently inside, regardless of the total
+ * number of fences. Fences spanning more than {@link #MAX_FENCE_CELLS} cells are tested on
+ * every update instead. Bounding boxes past the antimeridian are indexed on the cells at the
+ * other end of the grid as well.
+ *
+ * A fence is entered as soon as an update falls inside it, but only exited once an update is
+ * further than the hysteresis distance outside it, so jitter along a boundary does not cause a
+ * stream of transitions.
+ *
+ * The engine is not thread safe and should be used from the thread delivering updates.
+ */
+public class GeofenceEngine
+{
+	/**
+	 * Default grid cell size, roughly 1km
+	 */
+	private static final double DEFAULT_CELL_SIZE = 0.01;
+
+	private static final double DEFAULT_HYSTERESIS = 25.0;
+	private static final long DEFAULT_DWELL_TIME = 5 * 60 * 1000; // 5 mins
+
+	static final int MAX_FENCE_CELLS = 1024;
+
+	private final GeofenceGrid grid;
+
+	private double hysteresis = DEFAULT_HYSTERESIS;
+	private long dwellTime = DEFAULT_DWELL_TIME;
+
+	private final List<GeofenceListener> listeners = new ArrayList<>();
+
+	private final List<Geofence> fences = new ArrayList<>();
+	private final Map<String, Integer> fenceIndices = new HashMap<>();
+
+	/*
+	 * Indices of removed fences, reused by the next fences added
+	 */
+	private int[] freeIndices = new int[4];
+	private int freeCount = 0;
+
+	/*
+	 * Per fence state, indexed as fences
+	 */
+	private boolean[] inside = new boolean[16];
+	private boolean[] dwelled = new boolean[16];
+	private long[] enteredAt = new long[16];
+	private int[] evaluated = new int[16];
+
+	private int[] insideFences = new int[16];
+	private int insideCount = 0;
+
+	private int[] oversizedFences = new int[4];
+	private int oversizedCount = 0;
+
+	private int evaluation = 0;
+
+	public GeofenceEngine()
+	{
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param cellSize The size of the index grid cells in degrees. Should be around the size
+	 * of a typical fence.
+	 */
+	public GeofenceEngine(double cellSize)
+	{
+		if (cellSize <= 0)
+		{
+			throw new IllegalArgumentException("Cell size must be positive");
+		}
+		grid = new GeofenceGrid(cellSize);
+	}
+
+	/**
+	 * Set the distance in metres an update must be outside a fence before it is exited
+	 */
+	public GeofenceEngine hysteresis(double metres)
+	{
+		this.hysteresis = metres;
+		return this;
+	}
+
+	/**
+	 * Set the time in milliseconds an update must stay inside a fence before it dwells
+	 */
+	public GeofenceEngine dwell(long time)
+	{
+		this.dwellTime = time;
+		return this;
+	}
+
+	/**
+	 * Listen for geofence transitions
+	 */
+	public GeofenceEngine listen(GeofenceListener listener)
+	{
+		listeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Add the given fence, replacing any existing fence with the same id
+	 */
+	public GeofenceEngine add(Geofence fence)
+	{
+		remove(fence.getId());
+
+		int index;
+		if (freeCount > 0)
+		{
+			index = freeIndices[--freeCount];
+			fences.set(index, fence);
+			evaluated[index] = 0;
+		}
+		else
+		{
+			index = fences.size();
+			fences.add(fence);
+			ensureCapacity(index + 1);
+		}
+		fenceIndices.put(fence.getId(), index);
+
+		double[] longitudes = longitudeRanges(fence);
+		if (longitudes == null || cellCount(fence, longitudes) > MAX_FENCE_CELLS)
+		{
+			oversizedFences = append(oversizedFences, oversizedCount++, index);
+			return this;
+		}
+
+		index(fence, longitudes, index, true);
+		return this;
+	}
+
+	/**
+	 * Remove the fence with the given id. No exit is reported for it.
+	 */
+	public GeofenceEngine remove(String id)
+	{
+		Integer boxedIndex = fenceIndices.remove(id);
+		if (boxedIndex == null)
+		{
+			return this;
+		}
+
+		int index = boxedIndex;
+		Geofence fence = fences.get(index);
+		fences.set(index, null);
+		freeIndices = append(freeIndices, freeCount++, index);
+
+		if (inside[index])
+		{
+			inside[index] = false;
+			insideCount = removeValue(insideFences, insideCount, index);
+		}
+
+		int oversized = removeValue(oversizedFences, oversizedCount, index);
+		if (oversized != oversizedCount)
+		{
+			oversizedCount = oversized;
+			return this;
+		}
+
+		index(fence, longitudeRanges(fence), index, false);
+		return this;
+	}
+
+	/**
+	 * Remove all fences
+	 */
+	public void clear()
+	{
+		fences.clear();
+		fenceIndices.clear();
+		freeCount = 0;
+		grid.clear();
+		Arrays.fill(inside, false);
+		insideCount = 0;
+		oversizedCount = 0;
+	}
+
+	/**
+	 * @return The number of fences in the engine
+	 */
+	public int size()
+	{
+		return fenceIndices.size();
+	}
+
+	/**
+	 * Check if the last update was inside the fence with the given id
+	 */
+	public boolean isInside(String id)
+	{
+		Integer index = fenceIndices.get(id);
+		return index != null && inside[index];
+	}
+
+	/**
+	 * Evaluate the given location update against the fences
+	 */
+	public void update(Location location)
+	{
+		update(location.getLatitude(), location.getLongitude(), location.getTime());
+	}
+
+	/**
+	 * Evaluate the given coordinate against the fences
+	 * @param time The time of the update in milliseconds
+	 */
+	public void update(double latitude, double longitude, long time)
+	{
+		evaluation++;
+
+		// Fences we are currently inside, check for exit and dwell
+		for (int position = insideCount - 1; position >= 0; position--)
+		{
+			int index = insideFences[position];
+			Geofence fence = fences.get(index);
+			evaluated[index] = evaluation;
+
+			if (!fence.contains(latitude, longitude) && fence.distanceTo(latitude, longitude) > hysteresis)
+			{
+				inside[index] = false;
+				insideFences[position] = insideFences[--insideCount];
+				notifyExit(fence, time);
+			}
+			else if (!dwelled[index] && time - enteredAt[index] >= dwellTime)
+			{
+				dwelled[index] = true;
+				notifyDwell(fence, time);
+			}
+		}
+
+		// Candidate fences for entry
+		int slot = grid.find(GeofenceGrid.key(grid.cellOf(latitude), grid.cellOf(longitude)));
+		if (slot != -1)
+		{
+			int[] cell = grid.fences(slot);
+			int count = grid.count(slot);
+			for (int position = 0; position < count; position++)
+			{
+				checkEnter(cell[position], latitude, longitude, time);
+			}
+		}
+
+		for (int position = 0; position < oversizedCount; position++)
+		{
+			checkEnter(oversizedFences[position], latitude, longitude, time);
+		}
+	}
+
+	/**
+	 * @return The longitude ranges of the fence's bounding box as min, max pairs, split in two
+	 * where the box crosses the antimeridian, or null if it covers every longitude
+	 */
+	private static double[] longitudeRanges(Geofence fence)
+	{
+		double minLongitude = fence.getMinLongitude();
+		double maxLongitude = fence.getMaxLongitude();
+
+		if (maxLongitude - minLongitude >= 360)
+		{
+			return null;
+		}
+		if (minLongitude < -180)
+		{
+			return new double[]{minLongitude + 360, 180, -180, maxLongitude};
+		}
+		if (maxLongitude > 180)
+		{
+			return new double[]{minLongitude, 180, -180, maxLongitude - 360};
+		}
+		return new double[]{minLongitude, maxLongitude};
+	}
+
+	private long cellCount(Geofence fence, double[] longitudes)
+	{
+		long longitudeCells = 0;
+		for (int range = 0; range < longitudes.length; range += 2)
+		{
+			longitudeCells += grid.cellOf(longitudes[range + 1]) - grid.cellOf(longitudes[range]) + 1;
+		}
+		return (long)(grid.cellOf(fence.getMaxLatitude()) - grid.cellOf(fence.getMinLatitude()) + 1) * longitudeCells;
+	}
+
+	/**
+	 * Add the fence to, or remove it from, every cell of its bounding box
+	 */
+	private void index(Geofence fence, double[] longitudes, int index, boolean add)
+	{
+		int minLatitudeCell = grid.cellOf(fence.getMinLatitude());
+		int maxLatitudeCell = grid.cellOf(fence.getMaxLatitude());
+
+		for (int range = 0; range < longitudes.length; range += 2)
+		{
+			int minLongitudeCell = grid.cellOf(longitudes[range]);
+			int maxLongitudeCell = grid.cellOf(longitudes[range + 1]);
+
+			for (int latitudeCell = minLatitudeCell; latitudeCell <= maxLatitudeCell; latitudeCell++)
+			{
+				for (int longitudeCell = minLongitudeCell; longitudeCell <= maxLongitudeCell; longitudeCell++)
+				{
+					long key = GeofenceGrid.key(latitudeCell, longitudeCell);
+					if (add)
+					{
+						grid.add(key, index);
+					}
+					else
+					{
+						grid.remove(key, index);
+					}
+				}
+			}
+		}
+	}
+
+	private void checkEnter(int index, double latitude, double longitude, long time)
+	{
+		if (evaluated[index] == evaluation)
+		{
+			return;
+		}
+		evaluated[index] = evaluation;
+
+		Geofence fence = fences.get(index);
+		if (fence.contains(latitude, longitude))
+		{
+			inside[index] = true;
+			dwelled[index] = false;
+			enteredAt[index] = time;
+			insideFences = append(insideFences, insideCount++, index);
+			notifyEnter(fence, time);
+		}
+	}
+
+	private void notifyEnter(Geofence fence, long time)
+	{
+		for (int index = 0; index < listeners.size(); index++)
+		{
+			listeners.get(index).onEnter(fence, time);
+		}
+	}
+
+	private void notifyExit(Geofence fence, long time)
+	{
+		for (int index = 0; index < listeners.size(); index++)
+		{
+			listeners.get(index).onExit(fence, time);
+		}
+	}
+
+	private void notifyDwell(Geofence fence, long time)
+	{
+		for (int index = 0; index < listeners.size(); index++)
+		{
+			listeners.get(index).onDwell(fence, time);
+		}
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity <= inside.length)
+		{
+			return;
+		}
+
+		int grown = Math.max(capacity, inside.length * 2);
+
+		boolean[] newInside = new boolean[grown];
+		System.arraycopy(inside, 0, newInside, 0, inside.length);
+		inside = newInside;
+
+		boolean[] newDwelled = new boolean[grown];
+		System.arraycopy(dwelled, 0, newDwelled, 0, dwelled.length);
+		dwelled = newDwelled;
+
+		long[] newEnteredAt = new long[grown];
+		System.arraycopy(enteredAt, 0, newEnteredAt, 0, enteredAt.length);
+		enteredAt = newEnteredAt;
+
+		int[] newEvaluated = new int[grown];
+		System.arraycopy(evaluated, 0, newEvaluated, 0, evaluated.length);
+		evaluated = newEvaluated;
+	}
+
+	private static int[] append(int[] array, int position, int value)
+	{
+		if (position == array.length)
+		{
+			int[] grown = new int[array.length * 2];
+			System.arraycopy(array, 0, grown, 0, array.length);
+			array = grown;
+		}
+		array[position] = value;
+		return array;
+	}
+
+	/**
+	 * Remove the given value from the first count elements of the array by swapping in the last
+	 * @return The new count
+	 */
+	private static int removeValue(int[] array, int count, int value)
+	{
+		for (int position = 0; position < count; position++)
+		{
+			if (array[position] == value)
+			{
+				array[position] = array[count - 1];
+				return count - 1;
+			}
+		}
+		return count;
+	}
+}
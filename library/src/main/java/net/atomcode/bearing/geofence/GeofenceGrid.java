@@ -0,0 +1,164 @@
+package net.atomcode.bearing.geofence;
+
+/**
+ * Uniform grid over latitude/longitude mapping each cell to the indices of the fences whose
+ * bounding box overlaps it.
+ *
+ * Cells are held in an open addressing table keyed on the packed cell coordinates, with the
+ * fence indices of each cell in a growable int array, so lookups do not allocate.
+ */
+class GeofenceGrid
+{
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private final double cellSize;
+
+	private long[] keys;
+	private int[][] cells;
+	private int[] counts;
+	private int occupied = 0;
+
+	GeofenceGrid(double cellSize)
+	{
+		this.cellSize = cellSize;
+		allocate(64);
+	}
+
+	int cellOf(double degrees)
+	{
+		return (int)Math.floor(degrees / cellSize);
+	}
+
+	static long key(int latitudeCell, int longitudeCell)
+	{
+		return ((long)latitudeCell << 32) | (longitudeCell & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Find the slot for the given cell
+	 * @return The slot, or -1 if the cell has no fences
+	 */
+	int find(long key)
+	{
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != EMPTY)
+		{
+			if (keys[slot] == key)
+			{
+				return counts[slot] > 0 ? slot : -1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	int[] fences(int slot)
+	{
+		return cells[slot];
+	}
+
+	int count(int slot)
+	{
+		return counts[slot];
+	}
+
+	void add(long key, int fence)
+	{
+		if ((occupied + 1) * 2 > keys.length)
+		{
+			rehash();
+		}
+
+		int slot = slotFor(key);
+		if (keys[slot] == EMPTY)
+		{
+			keys[slot] = key;
+			cells[slot] = new int[4];
+			occupied++;
+		}
+		else if (counts[slot] == cells[slot].length)
+		{
+			int[] grown = new int[cells[slot].length * 2];
+			System.arraycopy(cells[slot], 0, grown, 0, counts[slot]);
+			cells[slot] = grown;
+		}
+
+		cells[slot][counts[slot]++] = fence;
+	}
+
+	void remove(long key, int fence)
+	{
+		int slot = find(key);
+		if (slot == -1)
+		{
+			return;
+		}
+
+		int[] cell = cells[slot];
+		for (int index = 0; index < counts[slot]; index++)
+		{
+			if (cell[index] == fence)
+			{
+				cell[index] = cell[--counts[slot]];
+				return;
+			}
+		}
+	}
+
+	void clear()
+	{
+		allocate(64);
+	}
+
+	private int slotFor(long key)
+	{
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash()
+	{
+		long[] oldKeys = keys;
+		int[][] oldCells = cells;
+		int[] oldCounts = counts;
+
+		allocate(oldKeys.length * 2);
+
+		for (int index = 0; index < oldKeys.length; index++)
+		{
+			if (oldKeys[index] != EMPTY && oldCounts[index] > 0)
+			{
+				int slot = slotFor(oldKeys[index]);
+				keys[slot] = oldKeys[index];
+				cells[slot] = oldCells[index];
+				counts[slot] = oldCounts[index];
+				occupied++;
+			}
+		}
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		cells = new int[capacity][];
+		counts = new int[capacity];
+		occupied = 0;
+
+		for (int index = 0; index < capacity; index++)
+		{
+			keys[index] = EMPTY;
+		}
+	}
+
+	private static int hash(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+}
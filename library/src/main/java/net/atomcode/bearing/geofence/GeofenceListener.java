@@ -0,0 +1,25 @@
+package net.atomcode.bearing.geofence;
+
+/**
+ * Listener for geofence transitions
+ */
+public abstract class GeofenceListener
+{
+	/**
+	 * The location moved inside the given fence
+	 * @param time The time of the location update that caused the transition
+	 */
+	public void onEnter(Geofence fence, long time) {}
+
+	/**
+	 * The location moved outside the given fence, by more than the engine hysteresis
+	 * @param time The time of the location update that caused the transition
+	 */
+	public void onExit(Geofence fence, long time) {}
+
+	/**
+	 * The location has stayed inside the given fence for at least the engine dwell time
+	 * @param time The time of the location update that caused the transition
+	 */
+	public void onDwell(Geofence fence, long time) {}
+}
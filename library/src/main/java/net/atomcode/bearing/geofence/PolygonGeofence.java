@@ -0,0 +1,99 @@
+package net.atomcode.bearing.geofence;
+
+import net.atomcode.bearing.geodesy.Geodesy;
+
+/**
+ * Geofence covering a simple polygon. The polygon is closed implicitly and edges are
+ * treated as straight lines in latitude/longitude space.
+ */
+public class PolygonGeofence extends Geofence
+{
+	private final double[] latitudes;
+	private final double[] longitudes;
+
+	/**
+	 * @param id The identifier reported in geofence events
+	 * @param latitudes The latitudes of the polygon vertices
+	 * @param longitudes The longitudes of the polygon vertices
+	 */
+	public PolygonGeofence(String id, double[] latitudes, double[] longitudes)
+	{
+		super(id);
+
+		if (latitudes.length != longitudes.length || latitudes.length < 3)
+		{
+			throw new IllegalArgumentException("A polygon needs at least 3 vertices with matching latitudes and longitudes");
+		}
+
+		this.latitudes = latitudes.clone();
+		this.longitudes = longitudes.clone();
+
+		minLatitude = Double.MAX_VALUE;
+		maxLatitude = -Double.MAX_VALUE;
+		minLongitude = Double.MAX_VALUE;
+		maxLongitude = -Double.MAX_VALUE;
+
+		for (int index = 0; index < latitudes.length; index++)
+		{
+			minLatitude = Math.min(minLatitude, latitudes[index]);
+			maxLatitude = Math.max(maxLatitude, latitudes[index]);
+			minLongitude = Math.min(minLongitude, longitudes[index]);
+			maxLongitude = Math.max(maxLongitude, longitudes[index]);
+		}
+	}
+
+	@Override
+	public boolean contains(double latitude, double longitude)
+	{
+		if (latitude < minLatitude || latitude > maxLatitude || longitude < minLongitude || longitude > maxLongitude)
+		{
+			return false;
+		}
+
+		boolean inside = false;
+		int count = latitudes.length;
+		for (int i = 0, j = count - 1; i < count; j = i++)
+		{
+			if ((latitudes[i] > latitude) != (latitudes[j] > latitude)
+				&& longitude < (longitudes[j] - longitudes[i]) * (latitude - latitudes[i]) / (latitudes[j] - latitudes[i]) + longitudes[i])
+			{
+				inside = !inside;
+			}
+		}
+
+		return inside;
+	}
+
+	@Override
+	public double distanceTo(double latitude, double longitude)
+	{
+		if (contains(latitude, longitude))
+		{
+			return 0;
+		}
+
+		// Project the vertices onto a local plane around the coordinate
+		double scale = Math.cos(Math.toRadians(latitude));
+		double best = Double.MAX_VALUE;
+		int count = latitudes.length;
+
+		for (int i = 0, j = count - 1; i < count; j = i++)
+		{
+			double ay = (latitudes[j] - latitude) * Geodesy.METRES_PER_DEGREE;
+			double ax = (longitudes[j] - longitude) * Geodesy.METRES_PER_DEGREE * scale;
+			double by = (latitudes[i] - latitude) * Geodesy.METRES_PER_DEGREE;
+			double bx = (longitudes[i] - longitude) * Geodesy.METRES_PER_DEGREE * scale;
+
+			double dx = bx - ax;
+			double dy = by - ay;
+			double lengthSquared = dx * dx + dy * dy;
+			double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lengthSquared));
+
+			double px = ax + t * dx;
+			double py = ay + t * dy;
+			best = Math.min(best, px * px + py * py);
+		}
+
+		return Math.sqrt(best);
+	}
+}
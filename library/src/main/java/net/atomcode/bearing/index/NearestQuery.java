@@ -0,0 +1,62 @@
+package net.atomcode.bearing.index;
+
+import android.location.Location;
+
+import net.atomcode.bearing.location.LocationListener;
+
+/**
+ * Pipeline stage querying a {@link PointIndex} with each location a task delivers, see
+ * {@link net.atomcode.bearing.location.CurrentLocationTask#nearest(NearestQuery)} and
+ * {@link net.atomcode.bearing.location.PeriodicLocationTask#nearest(NearestQuery)}.
+ *
+ * Queries take microseconds so are run inline, and the listener is called on the thread the
+ * update is delivered on. The same {@link Neighbours} is reused for every update, so copy out
+ * anything needed after the listener returns.
+ */
+public class NearestQuery extends LocationListener
+{
+	public interface Listener
+	{
+		public void onNearest(Location location, Neighbours neighbours);
+	}
+
+	private final PointIndex index;
+	private final int count;
+	private final Listener listener;
+	private final Neighbours neighbours;
+
+	private double radius = Double.NaN;
+
+	/**
+	 * Find the given number of points nearest each update
+	 */
+	public NearestQuery(PointIndex index, int count, Listener listener)
+	{
+		this.index = index;
+		this.count = count;
+		this.listener = listener;
+		this.neighbours = new Neighbours(count);
+	}
+
+	/**
+	 * Only find points within the given distance in metres
+	 */
+	public NearestQuery radius(double metres)
+	{
+		this.radius = metres;
+		return this;
+	}
+
+	@Override public void onUpdate(Location location)
+	{
+		if (Double.isNaN(radius))
+		{
+			index.nearest(location.getLatitude(), location.getLongitude(), count, neighbours);
+		}
+		else
+		{
+			index.nearest(location.getLatitude(), location.getLongitude(), count, radius, neighbours);
+		}
+		listener.onNearest(location, neighbours);
+	}
+}
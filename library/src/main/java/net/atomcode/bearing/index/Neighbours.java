@@ -0,0 +1,185 @@
+package net.atomcode.bearing.index;
+
+import net.atomcode.bearing.geodesy.Geodesy;
+
+/**
+ * Reusable results of a {@link PointIndex} query, the ids and distances of the points found,
+ * nearest first. Reuse one instance per thread to query without allocating.
+ */
+public final class Neighbours
+{
+	private int[] ids;
+	private double[] distances;
+	private int size = 0;
+	private int limit = 0;
+
+	/**
+	 * Scratch space for the query vector
+	 */
+	final double[] query = new double[3];
+
+	public Neighbours()
+	{
+		this(16);
+	}
+
+	/**
+	 * @param capacity The number of results to allocate space for up front
+	 */
+	public Neighbours(int capacity)
+	{
+		ids = new int[Math.max(1, capacity)];
+		distances = new double[ids.length];
+	}
+
+	/**
+	 * @return The number of points found
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The id of the point at the given position, 0 being the nearest
+	 */
+	public int getId(int index)
+	{
+		checkIndex(index);
+		return ids[index];
+	}
+
+	/**
+	 * @return The distance in metres of the point at the given position, 0 being the nearest
+	 */
+	public double getDistance(int index)
+	{
+		checkIndex(index);
+		return distances[index];
+	}
+
+	/**
+	 * @return A copy of the ids of the points found, nearest first
+	 */
+	public int[] toIdArray()
+	{
+		int[] copy = new int[size];
+		System.arraycopy(ids, 0, copy, 0, size);
+		return copy;
+	}
+
+	/**
+	 * Clear the results before a query keeping at most the given number of points
+	 */
+	void reset(int limit)
+	{
+		this.size = 0;
+		this.limit = limit;
+	}
+
+	/**
+	 * @return The squared chord distance a point must be nearer than to be kept
+	 */
+	double worst()
+	{
+		return size < limit ? Double.POSITIVE_INFINITY : distances[0];
+	}
+
+	/**
+	 * Offer a point at the given squared chord distance. Until {@link #finish()} the results are
+	 * a max heap on distance, so the furthest point is dropped first.
+	 */
+	void offer(int id, double distance)
+	{
+		if (size < limit)
+		{
+			if (size == ids.length)
+			{
+				grow();
+			}
+
+			// Sift up from the end
+			int child = size++;
+			while (child > 0)
+			{
+				int parent = (child - 1) >>> 1;
+				if (distances[parent] >= distance)
+				{
+					break;
+				}
+				ids[child] = ids[parent];
+				distances[child] = distances[parent];
+				child = parent;
+			}
+			ids[child] = id;
+			distances[child] = distance;
+		}
+		else if (distance < distances[0])
+		{
+			siftDown(id, distance, size);
+		}
+	}
+
+	/**
+	 * Sort the heap nearest first and convert the distances to metres
+	 */
+	void finish()
+	{
+		for (int end = size - 1; end > 0; end--)
+		{
+			int id = ids[end];
+			double distance = distances[end];
+			ids[end] = ids[0];
+			distances[end] = distances[0];
+			siftDown(id, distance, end);
+		}
+
+		for (int index = 0; index < size; index++)
+		{
+			distances[index] = 2 * Geodesy.EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(distances[index]) / 2));
+		}
+	}
+
+	/**
+	 * Place the given point at the root of the heap of the given size and sift it down
+	 */
+	private void siftDown(int id, double distance, int heapSize)
+	{
+		int parent = 0;
+		int child;
+		while ((child = parent * 2 + 1) < heapSize)
+		{
+			if (child + 1 < heapSize && distances[child + 1] > distances[child])
+			{
+				child++;
+			}
+			if (distances[child] <= distance)
+			{
+				break;
+			}
+			ids[parent] = ids[child];
+			distances[parent] = distances[child];
+			parent = child;
+		}
+		ids[parent] = id;
+		distances[parent] = distance;
+	}
+
+	private void grow()
+	{
+		int[] newIds = new int[ids.length * 2];
+		double[] newDistances = new double[newIds.length];
+		System.arraycopy(ids, 0, newIds, 0, size);
+		System.arraycopy(distances, 0, newDistances, 0, size);
+		ids = newIds;
+		distances = newDistances;
+	}
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index " + index + " of " + size + " neighbours");
+		}
+	}
+}
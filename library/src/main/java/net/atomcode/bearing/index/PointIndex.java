@@ -0,0 +1,409 @@
+package net.atomcode.bearing.index;
+
+import net.atomcode.bearing.geodesy.Geodesy;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Static spatial index of user supplied points, e.g. stores or depots, answering nearest
+ * neighbour and radius queries without scanning every point.
+ *
+ * The index is a k-d tree over the points as unit vectors on the sphere, laid out implicitly
+ * in flat primitive arrays: the median of each range, split on x, y and z in turn, sits at its
+ * centre. The straight line distance between unit vectors orders points exactly as the great
+ * circle distance does, so pruning is exact at any latitude and across the antimeridian.
+ * Distances are reported in metres on the mean radius sphere, as {@link Geodesy#haversine}.
+ *
+ * An index is bulk loaded with a {@link Builder}, and can be written to a file and memory
+ * mapped back without loading it onto the heap. It is immutable and so thread safe, with
+ * each caller passing its own {@link Neighbours} to receive results.
+ */
+public final class PointIndex
+{
+	private static final int MAGIC = 0x42504958; // BPIX
+	private static final short VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+
+	/**
+	 * Ranges of at most this many points are scanned rather than split
+	 */
+	private static final int LEAF_SIZE = 8;
+
+	/**
+	 * Interleaved x, y and z of each point, in tree order
+	 */
+	private final DoubleBuffer coordinates;
+	private final IntBuffer ids;
+	private final int size;
+
+	private PointIndex(DoubleBuffer coordinates, IntBuffer ids, int size)
+	{
+		this.coordinates = coordinates;
+		this.ids = ids;
+		this.size = size;
+	}
+
+	/**
+	 * Collects points to bulk load into an index
+	 */
+	public static class Builder
+	{
+		private double[] latitudes = new double[64];
+		private double[] longitudes = new double[64];
+		private int[] ids = new int[64];
+		private int size = 0;
+
+		/**
+		 * Add a point
+		 * @param id The id reported for the point, e.g. its position in the caller's list
+		 */
+		public Builder add(int id, double latitude, double longitude)
+		{
+			if (size == ids.length)
+			{
+				int capacity = size * 2;
+				latitudes = copy(latitudes, capacity);
+				longitudes = copy(longitudes, capacity);
+				int[] newIds = new int[capacity];
+				System.arraycopy(ids, 0, newIds, 0, size);
+				ids = newIds;
+			}
+
+			latitudes[size] = latitude;
+			longitudes[size] = longitude;
+			ids[size] = id;
+			size++;
+			return this;
+		}
+
+		/**
+		 * Add the given points, with their positions in the arrays as ids
+		 */
+		public Builder addAll(double[] latitudes, double[] longitudes)
+		{
+			for (int index = 0; index < latitudes.length; index++)
+			{
+				add(index, latitudes[index], longitudes[index]);
+			}
+			return this;
+		}
+
+		public PointIndex build()
+		{
+			double[] coordinates = new double[size * 3];
+			int[] tree = new int[size];
+			for (int index = 0; index < size; index++)
+			{
+				toVector(latitudes[index], longitudes[index], coordinates, index * 3);
+				tree[index] = ids[index];
+			}
+
+			sort(coordinates, tree, 0, size - 1, 0);
+			return new PointIndex(DoubleBuffer.wrap(coordinates), IntBuffer.wrap(tree), size);
+		}
+
+		private static double[] copy(double[] array, int capacity)
+		{
+			double[] copy = new double[capacity];
+			System.arraycopy(array, 0, copy, 0, array.length);
+			return copy;
+		}
+	}
+
+	/**
+	 * Memory map an index written with {@link #write(File)}
+	 */
+	public static PointIndex map(File file) throws IOException
+	{
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try
+		{
+			if (input.length() < HEADER_SIZE || input.readInt() != MAGIC || input.readShort() != VERSION)
+			{
+				throw new IOException("Not a Bearing point index: " + file);
+			}
+			input.readShort();
+			int size = input.readInt();
+
+			long length = HEADER_SIZE + size * 28L;
+			if (size < 0 || input.length() < length)
+			{
+				throw new IOException("Truncated point index: " + file);
+			}
+			if (length > Integer.MAX_VALUE)
+			{
+				throw new IOException("Point index too large to map: " + file);
+			}
+
+			MappedByteBuffer mapped = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+			mapped.position(HEADER_SIZE);
+			DoubleBuffer coordinates = mapped.slice().asDoubleBuffer();
+			mapped.position(HEADER_SIZE + size * 24);
+			IntBuffer ids = mapped.slice().asIntBuffer();
+
+			// The mapping stays valid once the file is closed
+			return new PointIndex(coordinates, ids, size);
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+
+	/**
+	 * Write the index to the given file, to be mapped with {@link #map(File)}
+	 */
+	public void write(File file) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(0);
+			out.writeInt(size);
+			out.writeInt(0);
+
+			for (int index = 0; index < size * 3; index++)
+			{
+				out.writeDouble(coordinates.get(index));
+			}
+			for (int index = 0; index < size; index++)
+			{
+				out.writeInt(ids.get(index));
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * @return The number of points in the index
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Find the points nearest the given coordinate
+	 * @param count The maximum number of points to find
+	 * @param results Receives the points, nearest first
+	 */
+	public void nearest(double latitude, double longitude, int count, Neighbours results)
+	{
+		results.reset(count);
+		if (count <= 0 || size == 0)
+		{
+			return;
+		}
+
+		double[] query = results.query;
+		toVector(latitude, longitude, query, 0);
+		search(query[0], query[1], query[2], Double.POSITIVE_INFINITY, 0, size - 1, 0, results);
+		results.finish();
+	}
+
+	/**
+	 * Find the points nearest the given coordinate, within the given distance
+	 * @param count The maximum number of points to find
+	 * @param results Receives the points, nearest first
+	 */
+	public void nearest(double latitude, double longitude, int count, double metres, Neighbours results)
+	{
+		results.reset(count);
+		if (count <= 0 || size == 0)
+		{
+			return;
+		}
+
+		double chord = chord(metres);
+
+		double[] query = results.query;
+		toVector(latitude, longitude, query, 0);
+		search(query[0], query[1], query[2], chord * chord, 0, size - 1, 0, results);
+		results.finish();
+	}
+
+	/**
+	 * Find every point within the given distance of the given coordinate
+	 * @param results Receives the points, nearest first
+	 */
+	public void within(double latitude, double longitude, double metres, Neighbours results)
+	{
+		results.reset(Integer.MAX_VALUE);
+		if (size == 0)
+		{
+			return;
+		}
+
+		double chord = chord(metres);
+
+		double[] query = results.query;
+		toVector(latitude, longitude, query, 0);
+		search(query[0], query[1], query[2], chord * chord, 0, size - 1, 0, results);
+		results.finish();
+	}
+
+	/**
+	 * Offer the points of the given range within the limit to the results, skipping subtrees
+	 * that cannot hold a point nearer than the limit or the furthest result kept
+	 */
+	private void search(double x, double y, double z, double limit, int low, int high, int axis, Neighbours results)
+	{
+		if (high - low < LEAF_SIZE)
+		{
+			for (int index = low; index <= high; index++)
+			{
+				offer(x, y, z, limit, index, results);
+			}
+			return;
+		}
+
+		int middle = (low + high) >>> 1;
+		offer(x, y, z, limit, middle, results);
+
+		double delta = (axis == 0 ? x : axis == 1 ? y : z) - coordinates.get(middle * 3 + axis);
+		int next = (axis + 1) % 3;
+
+		// Search the side containing the query first, then the other if it could hold a nearer point
+		if (delta < 0)
+		{
+			search(x, y, z, limit, low, middle - 1, next, results);
+			if (delta * delta <= Math.min(limit, results.worst()))
+			{
+				search(x, y, z, limit, middle + 1, high, next, results);
+			}
+		}
+		else
+		{
+			search(x, y, z, limit, middle + 1, high, next, results);
+			if (delta * delta <= Math.min(limit, results.worst()))
+			{
+				search(x, y, z, limit, low, middle - 1, next, results);
+			}
+		}
+	}
+
+	private void offer(double x, double y, double z, double limit, int index, Neighbours results)
+	{
+		int offset = index * 3;
+		double dx = x - coordinates.get(offset);
+		double dy = y - coordinates.get(offset + 1);
+		double dz = z - coordinates.get(offset + 2);
+
+		double distance = dx * dx + dy * dy + dz * dz;
+		if (distance <= limit)
+		{
+			results.offer(ids.get(index), distance);
+		}
+	}
+
+	/**
+	 * @return The straight line distance between unit vectors the given distance apart
+	 */
+	private static double chord(double metres)
+	{
+		return 2 * Math.sin(Math.min(Math.PI, metres / Geodesy.EARTH_RADIUS) / 2);
+	}
+
+	/**
+	 * Convert a coordinate into a unit vector
+	 */
+	static void toVector(double latitude, double longitude, double[] vector, int offset)
+	{
+		double phi = Math.toRadians(latitude);
+		double lambda = Math.toRadians(longitude);
+		double cosPhi = Math.cos(phi);
+		vector[offset] = cosPhi * Math.cos(lambda);
+		vector[offset + 1] = cosPhi * Math.sin(lambda);
+		vector[offset + 2] = Math.sin(phi);
+	}
+
+	/**
+	 * Arrange the given range into tree order, with the median on the axis at the centre
+	 */
+	private static void sort(double[] coordinates, int[] ids, int low, int high, int axis)
+	{
+		if (high - low < LEAF_SIZE)
+		{
+			return;
+		}
+
+		int middle = (low + high) >>> 1;
+		select(coordinates, ids, low, high, middle, axis);
+
+		int next = (axis + 1) % 3;
+		sort(coordinates, ids, low, middle - 1, next);
+		sort(coordinates, ids, middle + 1, high, next);
+	}
+
+	/**
+	 * Partially sort the range on the given axis so the kth point is in place, with no larger
+	 * point before it and no smaller point after it
+	 */
+	private static void select(double[] coordinates, int[] ids, int low, int high, int k, int axis)
+	{
+		while (high > low)
+		{
+			double pivot = coordinates[((low + high) >>> 1) * 3 + axis];
+			int left = low;
+			int right = high;
+
+			while (left <= right)
+			{
+				while (coordinates[left * 3 + axis] < pivot)
+				{
+					left++;
+				}
+				while (coordinates[right * 3 + axis] > pivot)
+				{
+					right--;
+				}
+				if (left <= right)
+				{
+					swap(coordinates, ids, left++, right--);
+				}
+			}
+
+			if (k <= right)
+			{
+				high = right;
+			}
+			else if (k >= left)
+			{
+				low = left;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+	private static void swap(double[] coordinates, int[] ids, int first, int second)
+	{
+		for (int axis = 0; axis < 3; axis++)
+		{
+			double coordinate = coordinates[first * 3 + axis];
+			coordinates[first * 3 + axis] = coordinates[second * 3 + axis];
+			coordinates[second * 3 + axis] = coordinate;
+		}
+
+		int id = ids[first];
+		ids[first] = ids[second];
+		ids[second] = id;
+	}
+}
@@ -0,0 +1,112 @@
+package net.atomcode.bearing.location;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.SystemClock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schedules samples with alarms, as windows on API 19 and up so the system can batch each
+ * wakeup with those of other apps. Alarms wake the device, and are received on the main thread
+ * by a receiver registered while the process runs, so nothing is declared in the manifest.
+ */
+public class AlarmSampleScheduler implements SampleScheduler
+{
+	private static final String ACTION = "net.atomcode.bearing.SAMPLE";
+	private static final String EXTRA_ID = "net.atomcode.bearing.SAMPLE_ID";
+
+	private static final AtomicInteger alarmCount = new AtomicInteger();
+
+	private final Context context;
+	private final AlarmManager alarmManager;
+	private final String action;
+
+	private final Map<Integer, Runnable> actions = new ConcurrentHashMap<>();
+	private BroadcastReceiver receiver;
+
+	public AlarmSampleScheduler(Context context)
+	{
+		this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+		this.alarmManager = (AlarmManager)this.context.getSystemService(Context.ALARM_SERVICE);
+		this.action = ACTION + "." + this.context.getPackageName();
+	}
+
+	@Override public synchronized Object schedule(Runnable action, long delay, long flex)
+	{
+		if (receiver == null)
+		{
+			receiver = new BroadcastReceiver()
+			{
+				@Override public void onReceive(Context context, Intent intent)
+				{
+					Runnable action = actions.remove(intent.getIntExtra(EXTRA_ID, -1));
+					if (action != null)
+					{
+						action.run();
+					}
+					releaseReceiver();
+				}
+			};
+			context.registerReceiver(receiver, new IntentFilter(this.action));
+		}
+
+		int id = alarmCount.incrementAndGet();
+		actions.put(id, action);
+
+		long trigger = SystemClock.elapsedRealtime() + Math.max(0, delay);
+		PendingIntent intent = PendingIntent.getBroadcast(context, id, createIntent(id), PendingIntent.FLAG_UPDATE_CURRENT);
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+		{
+			alarmManager.setWindow(AlarmManager.ELAPSED_REALTIME_WAKEUP, trigger, Math.max(0, flex), intent);
+		}
+		else
+		{
+			alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, trigger, intent);
+		}
+
+		return id;
+	}
+
+	@Override public synchronized void cancel(Object token)
+	{
+		if (!(token instanceof Integer) || actions.remove(token) == null)
+		{
+			return;
+		}
+
+		int id = (Integer)token;
+		PendingIntent intent = PendingIntent.getBroadcast(context, id, createIntent(id), PendingIntent.FLAG_NO_CREATE);
+		if (intent != null)
+		{
+			alarmManager.cancel(intent);
+			intent.cancel();
+		}
+
+		releaseReceiver();
+	}
+
+	/**
+	 * Stop receiving alarms once none are scheduled
+	 */
+	private synchronized void releaseReceiver()
+	{
+		if (actions.isEmpty() && receiver != null)
+		{
+			context.unregisterReceiver(receiver);
+			receiver = null;
+		}
+	}
+
+	private Intent createIntent(int id)
+	{
+		return new Intent(action).setPackage(context.getPackageName()).putExtra(EXTRA_ID, id);
+	}
+}
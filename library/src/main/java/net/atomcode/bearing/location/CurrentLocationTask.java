@@ -3,6 +3,13 @@ package net.atomcode.bearing.location;
 import android.content.Context;
 import android.location.Location;
 
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.BearingFuture;
+import net.atomcode.bearing.index.NearestQuery;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
 /**
  * Gets the users current location using the best available service
  */
@@ -13,6 +20,11 @@ public class CurrentLocationTask extends LocationTask
 		super(context);
 	}
 
+	public CurrentLocationTask(LocationProvider locationProvider)
+	{
+		super(locationProvider);
+	}
+
 	/**
 	 * Begin the lookup task using the set configuration.
 	 * Returns the task for cancellation if required.
@@ -21,7 +33,12 @@ public class CurrentLocationTask extends LocationTask
 	public CurrentLocationTask start()
 	{
 		super.start();
+		return this;
+	}
 
+	@Override
+	protected void requestUpdates()
+	{
 		this.taskId = locationProvider.requestSingleLocationUpdate(request, new LocationListener()
 		{
 			@Override public void onUpdate(Location location)
@@ -30,23 +47,96 @@ public class CurrentLocationTask extends LocationTask
 				{
 					// Cancel current task
 					running = false;
-                    if (listener != null)
-                    {
-					    listener.onUpdate(location);
-                    }
+					cancelTimeout();
+					releaseBudget();
+					dispatchUpdate(location);
 				}
 			}
 
 			@Override public void onFailure()
 			{
-				listener.onFailure();
+				if (listener != null)
+				{
+					listener.onFailure();
+				}
 			}
 
 			@Override public void onTimeout()
 			{
-				listener.onTimeout();
+				if (listener != null)
+				{
+					listener.onTimeout();
+				}
 			}
 		});
+	}
+
+	@Override
+	protected long getExpectedDuration()
+	{
+		return request.fallbackTimeout;
+	}
+
+	/**
+	 * Find the points of the given query's index nearest the location found
+	 */
+	@SuppressWarnings("unused")
+	public CurrentLocationTask nearest(NearestQuery query)
+	{
+		feed(query);
 		return this;
 	}
+
+	/**
+	 * Begin the lookup task, completing the returned future on Bearing's worker threads.
+	 * Replaces any listener set on the task.
+	 */
+	@SuppressWarnings("unused")
+	public BearingFuture<Location> startAsync()
+	{
+		return startAsync(Bearing.getExecutor());
+	}
+
+	/**
+	 * Begin the lookup task, completing the returned future on the given executor. Cancelling
+	 * the future cancels the request with the location provider. Replaces any listener set on
+	 * the task.
+	 */
+	public BearingFuture<Location> startAsync(Executor executor)
+	{
+		final BearingFuture<Location> future = new BearingFuture<>(executor);
+
+		listen(new LocationListener()
+		{
+			@Override public void onUpdate(Location location)
+			{
+				future.complete(location);
+			}
+
+			@Override public void onFailure()
+			{
+				future.fail(new IllegalStateException("Unable to get location"));
+			}
+
+			@Override public void onTimeout()
+			{
+				// The cache fallback reports an update or failure after the timeout
+				if (request.fallback != LocationProviderRequest.FALLBACK_CACHE)
+				{
+					future.fail(new TimeoutException());
+				}
+			}
+		});
+
+		future.onCancel(new Runnable()
+		{
+			@Override public void run()
+			{
+				cancel();
+			}
+		});
+
+		start();
+		return future;
+	}
 }
@@ -0,0 +1,24 @@
+package net.atomcode.bearing.location;
+
+import android.location.Location;
+
+/**
+ * Filter applied to each fix of a recurring location request before it is reported.
+ *
+ * Filters hold per-subscription state, so a single instance should only ever be attached
+ * to one task.
+ */
+public interface LocationFilter
+{
+	/**
+	 * Filter the given fix
+	 * @param location The raw location delivered by the provider
+	 * @return The location to report, or null to drop the fix
+	 */
+	public Location filter(Location location);
+
+	/**
+	 * Clear any state built up from previous fixes
+	 */
+	public void reset();
+}
@@ -14,4 +14,10 @@ public abstract class LocationListener implements BearingListener
 	// Do nothing here, allows for simpler listeners
 	@Override public void onTimeout() {}
 	@Override public void onFailure() {}
+
+	/**
+	 * Called when a sample of a sparse {@link PeriodicLocationTask} ends without a fix, because
+	 * it timed out or failed. Unlike a timeout or failure the task carries on with the next sample.
+	 */
+	public void onMissedSample() {}
 }
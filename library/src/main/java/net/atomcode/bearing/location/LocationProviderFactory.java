@@ -0,0 +1,36 @@
+package net.atomcode.bearing.location;
+
+import android.content.Context;
+
+/**
+ * Supplies a location provider Bearing can choose over the platform's own, e.g. the Play
+ * services provider of the bearing-gms module.
+ *
+ * Factories are registered with {@link net.atomcode.bearing.Bearing#registerLocationProvider(LocationProviderFactory)}
+ * or listed in a {@code META-INF/services/net.atomcode.bearing.location.LocationProviderFactory}
+ * file of their module. They are asked in priority order when a provider is first needed, so a
+ * factory should not load its provider, or anything it depends on, until it is selected.
+ */
+public interface LocationProviderFactory
+{
+	/**
+	 * @return The preference for this provider over others, the highest available is used
+	 */
+	public int getPriority();
+
+	/**
+	 * @return Whether the provider can run on this device
+	 */
+	public boolean isAvailable(Context context);
+
+	/**
+	 * @return The package whose installation, update or removal changes whether the provider is
+	 * available, or null
+	 */
+	public String getPackageName();
+
+	/**
+	 * @return The provider to use, only called once the provider is selected
+	 */
+	public LocationProvider getProvider();
+}
@@ -23,6 +23,12 @@ public class LocationProviderRequest
 	public int fallback = FALLBACK_NONE;
 	public long fallbackTimeout = 10000;
 
+	/*
+	 * Passive
+	 */
+	public boolean passive = false; // Active requests by default
+	public long passiveTimeout = 5 * 60 * 1000; // Escalate after 5 mins without a passive fix
+
 	/*
 	 * Cache
 	 */
@@ -35,5 +41,6 @@ public class LocationProviderRequest
 	public float trackingDisplacement = -1.0f; // No displacement when tracking
 	public long trackingRate = 20 * 60 * 1000; // 20 min tracking default
 	public long trackingFallback = 30 * 60 * 1000; // 30 mins default fallback
+	public LocationFilter trackingFilter = null; // No filtering by default
 
 }
@@ -5,16 +5,14 @@ import android.location.Location;
 import android.os.Handler;
 import android.os.Looper;
 
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.GooglePlayServicesUtil;
-
 import net.atomcode.bearing.Bearing;
 import net.atomcode.bearing.BearingTask;
-import net.atomcode.bearing.location.provider.GMSLocationProvider;
-import net.atomcode.bearing.location.provider.LegacyLocationProvider;
+import net.atomcode.bearing.trace.Tracing;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base location task for acquiring locations
@@ -26,25 +24,38 @@ public abstract class LocationTask implements BearingTask
 
 	protected LocationListener listener;
 
+	/**
+	 * Additional consumers that receive every update before the listener
+	 */
+	protected List<LocationListener> feeds = new ArrayList<>();
+
 	protected boolean running = false;
 
 	protected String taskId;
 
+	/**
+	 * Name the task's power use is reported under
+	 */
+	protected String caller;
+
+	private ScheduledFuture<?> timeoutFuture;
+	private PowerBudget.Grant grant;
+	private PowerBudget grantBudget;
+	private boolean claiming;
+	private boolean released;
+
 	public LocationTask(Context context)
 	{
-		int resultCode = GooglePlayServicesUtil.isGooglePlayServicesAvailable(context);
-		if (resultCode == ConnectionResult.SUCCESS)
-		{
-			locationProvider = GMSLocationProvider.getInstance();
-		}
-		else
-		{
-			locationProvider = LegacyLocationProvider.getInstance();
-		}
-
-		locationProvider.create(context);
+		this(Bearing.with(context).getLocationProvider());
+	}
 
-		request = new LocationProviderRequest();
+	/**
+	 * Create a task using the given, already created, provider
+	 */
+	public LocationTask(LocationProvider locationProvider)
+	{
+		this.locationProvider = locationProvider;
+		reset();
 	}
 
 	public Location getLastLocation()
@@ -56,9 +67,16 @@ public abstract class LocationTask implements BearingTask
 	public BearingTask start()
 	{
 		running = true;
-		if (request.fallbackTimeout > 0)
+		long timeout = getTimeout();
+		if (timeout > 0)
 		{
-			new Timer().schedule(new TimerTask()
+			if (request.passive)
+			{
+				// Allow time for the escalated request
+				timeout += request.passiveTimeout;
+			}
+
+			timeoutFuture = Bearing.getScheduler().schedule(new Runnable()
 			{
 				@Override
 				public void run()
@@ -74,20 +92,86 @@ public abstract class LocationTask implements BearingTask
 						}
 					}
 				}
-			}, request.fallbackTimeout);
+			}, timeout, TimeUnit.MILLISECONDS);
 		}
 
+		requestWithinBudget();
 		return this;
 	}
 
+	/**
+	 * Claim the power budget, if one is set, and make the task's requests at the accuracy it
+	 * grants, giving back any earlier claim first
+	 */
+	protected void requestWithinBudget()
+	{
+		releaseBudget();
+
+		PowerBudget budget = Bearing.getPowerBudget();
+		if (budget == null)
+		{
+			requestUpdates();
+			return;
+		}
+
+		grantBudget = budget;
+		claiming = true;
+		released = false;
+		grant = budget.request(caller != null ? caller : getClass().getSimpleName(), request.accuracy, getExpectedDuration(), new PowerBudget.Client()
+		{
+			@Override public void onBudgetChange(Accuracy accuracy)
+			{
+				if (!isRunning())
+				{
+					return;
+				}
+
+				cancelUpdates();
+				taskId = null;
+
+				if (accuracy != null)
+				{
+					request.accuracy = accuracy;
+					requestUpdates();
+				}
+			}
+		});
+
+		claiming = false;
+
+		if (!running || released)
+		{
+			// Completed as soon as it was granted, e.g. from the cache
+			releaseBudget();
+		}
+	}
+
 	@Override
 	public void cancel()
 	{
 		running = false;
-		if (taskId != null)
+		cancelTimeout();
+		releaseBudget();
+		cancelUpdates();
+	}
+
+	/**
+	 * Return the task to its default configuration so it can be reused for another request.
+	 * A running task is cancelled first.
+	 */
+	public LocationTask reset()
+	{
+		if (running)
 		{
-			locationProvider.cancelUpdates(taskId);
+			cancel();
 		}
+
+		request = new LocationProviderRequest();
+		listener = null;
+		feeds.clear();
+		taskId = null;
+		caller = null;
+		return this;
 	}
 
 	/**
@@ -99,6 +183,17 @@ public abstract class LocationTask implements BearingTask
 		return this;
 	}
 
+	/**
+	 * Also deliver every location update of this task to the given listener, ahead of the
+	 * listener set with {@link #listen(LocationListener)}. Only updates are fed, failures and
+	 * timeouts are reported to the main listener.
+	 */
+	public LocationTask feed(LocationListener feed)
+	{
+		feeds.add(feed);
+		return this;
+	}
+
 	@Override
 	public boolean isRunning()
 	{
@@ -111,6 +206,16 @@ public abstract class LocationTask implements BearingTask
 	 * ==============================================
 	 */
 
+	/**
+	 * Set the name this task's power use is reported under by the
+	 * {@link Bearing#usePowerBudget(PowerBudget) power budget}, the task class by default
+	 */
+	public LocationTask caller(String caller)
+	{
+		this.caller = caller;
+		return this;
+	}
+
 	/**
 	 * Set the accuracy of the location request(s)
 	 * @param accuracy The accuracy to which the location should be gathered
@@ -134,6 +239,19 @@ public abstract class LocationTask implements BearingTask
 		return this;
 	}
 
+	/**
+	 * Only listen for locations that other apps have requested, so no power is used on behalf
+	 * of this task. If no location arrives within the given timeout an active request is made
+	 * at the set accuracy instead.
+	 * @param timeout The time in milliseconds to wait for a passive location
+	 */
+	public LocationTask passive(long timeout)
+	{
+		request.passive = true;
+		request.passiveTimeout = timeout;
+		return this;
+	}
+
 	/**
 	 * Fallback for if the timeout is reached
 	 */
@@ -151,22 +269,114 @@ public abstract class LocationTask implements BearingTask
 	 * ==============================================
 	 */
 
+	/**
+	 * Make the request to the location provider, once any power budget has granted it
+	 */
+	protected abstract void requestUpdates();
+
+	/**
+	 * Cancel the request made with {@link #requestUpdates()}
+	 */
+	protected void cancelUpdates()
+	{
+		if (taskId != null)
+		{
+			locationProvider.cancelUpdates(taskId);
+		}
+	}
+
+	/**
+	 * @return The time in milliseconds after which the whole task times out, 0 if it does not
+	 */
+	protected long getTimeout()
+	{
+		return request.fallbackTimeout;
+	}
+
+	/**
+	 * @return The expected duration of the task in milliseconds for the power budget, 0 if it
+	 * runs until cancelled
+	 */
+	protected long getExpectedDuration()
+	{
+		return 0;
+	}
+
+	/**
+	 * Give back the task's claim on the power budget, e.g. once a single request has completed
+	 */
+	protected void releaseBudget()
+	{
+		if (claiming)
+		{
+			// Given back before the claim returned, release it once it has
+			released = true;
+		}
+		else if (grant != null)
+		{
+			request.accuracy = grant.requested;
+			grantBudget.release(grant);
+			grant = null;
+			grantBudget = null;
+		}
+	}
+
+	/**
+	 * Stop the fallback timeout from firing, e.g. once a single request has completed
+	 */
+	protected void cancelTimeout()
+	{
+		ScheduledFuture<?> future = timeoutFuture;
+		if (future != null)
+		{
+			future.cancel(false);
+			timeoutFuture = null;
+		}
+	}
+
+	/**
+	 * Deliver the given update to the feeds and then the listener
+	 */
+	protected void dispatchUpdate(Location location)
+	{
+		Tracing.begin("dispatch", taskId);
+		try
+		{
+			for (int index = 0; index < feeds.size(); index++)
+			{
+				feeds.get(index).onUpdate(location);
+			}
+
+			if (listener != null)
+			{
+				listener.onUpdate(location);
+			}
+		}
+		finally
+		{
+			Tracing.end("dispatch", taskId);
+		}
+	}
+
 	/**
 	 * Handle the timeout fallback here.
 	 * listener is non-null at this point.
 	 */
 	private void handleTimeoutFallback()
 	{
+		final String requestId = taskId;
+		Tracing.beginAsync("fallback", requestId);
 		new Handler(Looper.getMainLooper()).post(new Runnable()
 		{
 			@Override public void run()
 			{
+				Tracing.endAsync("fallback", requestId);
 				if (request.fallback == LocationProviderRequest.FALLBACK_CACHE)
 				{
 					Location cachedLocation = locationProvider.getLastKnownLocation(request);
 					if (cachedLocation != null)
 					{
-						listener.onUpdate(cachedLocation);
+						dispatchUpdate(cachedLocation);
 					}
 					else
 					{
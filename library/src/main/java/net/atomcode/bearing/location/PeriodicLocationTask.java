@@ -1,16 +1,58 @@
 package net.atomcode.bearing.location;
 
 import android.content.Context;
+import android.location.Location;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.geocoding.GeocodePrefetcher;
+import net.atomcode.bearing.geocoding.TrackingGeocoder;
+import net.atomcode.bearing.geodesy.Geodesy;
+import net.atomcode.bearing.geofence.GeofenceEngine;
+import net.atomcode.bearing.index.NearestQuery;
+import net.atomcode.bearing.location.stream.LocationPublisher;
+import net.atomcode.bearing.location.track.TrackBuffer;
+import net.atomcode.bearing.location.track.TrackWriter;
+import net.atomcode.bearing.trip.TripSegmenter;
 
 /**
  * Gets the users current location over distance using the best available service
  */
 public class PeriodicLocationTask extends LocationTask
 {
+	private static final long DEFAULT_SAMPLE_TIMEOUT = 60 * 1000; // 1 min
+
+	/*
+	 * Sparse sampling, no scheduler when tracking continuously.
+	 * Not initialised here as reset() runs in the super constructor.
+	 */
+	private SampleScheduler sampleScheduler;
+	private long sampleFlex;
+	private Object pendingSample;
+	private Object sampleTimeout;
+	private int samplingCount;
+	private int sampleCount;
+	private boolean sampleOpen;
+	private Location lastReportedLocation;
+	private long lastReportedTime;
+
 	public PeriodicLocationTask(Context context)
 	{
 		super(context);
+	}
+
+	public PeriodicLocationTask(LocationProvider locationProvider)
+	{
+		super(locationProvider);
+	}
+
+	@Override
+	public PeriodicLocationTask reset()
+	{
+		super.reset();
 		request.fallbackTimeout = 0;
+		sampleScheduler = null;
+		sampleFlex = 0;
+		return this;
 	}
 
 	/**
@@ -20,8 +62,94 @@ public class PeriodicLocationTask extends LocationTask
 	@SuppressWarnings("unused")
 	public PeriodicLocationTask start()
 	{
+		if (request.trackingFilter != null)
+		{
+			request.trackingFilter.reset();
+		}
+		lastReportedLocation = null;
+		lastReportedTime = -1;
+
 		super.start();
-		this.taskId = locationProvider.requestRecurringLocationUpdates(request, listener);
+		return this;
+	}
+
+	@Override
+	protected long getTimeout()
+	{
+		// When sampling, the fallback timeout applies to each sample rather than the task
+		return sampleScheduler != null ? 0 : super.getTimeout();
+	}
+
+	@Override
+	protected long getExpectedDuration()
+	{
+		// When sampling, the radio is only needed for each sample rather than until cancelled
+		return sampleScheduler != null ? getSampleTimeout() : super.getExpectedDuration();
+	}
+
+	@Override
+	protected void requestUpdates()
+	{
+		if (sampleScheduler != null)
+		{
+			cancelSampling();
+			sample();
+			return;
+		}
+
+		this.taskId = locationProvider.requestRecurringLocationUpdates(request, new LocationListener()
+		{
+			@Override public void onUpdate(Location location)
+			{
+				dispatchUpdate(location);
+			}
+
+			@Override public void onFailure()
+			{
+				if (listener != null)
+				{
+					listener.onFailure();
+				}
+			}
+
+			@Override public void onTimeout()
+			{
+				if (listener != null)
+				{
+					listener.onTimeout();
+				}
+			}
+		});
+	}
+
+	@Override
+	protected void cancelUpdates()
+	{
+		super.cancelUpdates();
+		cancelSampling();
+	}
+
+	/**
+	 * Take a single fix at each interval set with {@link #rate(long)} instead of keeping a
+	 * subscription open, so nothing is held between samples. Suited to long intervals, where
+	 * the radio would otherwise stay warm between fixes.
+	 *
+	 * Each sample is requested at the task's accuracy and ends at its first fix, or after the
+	 * fallback timeout, by default a minute or the interval if shorter, when the fallback applies
+	 * to that sample. Fixes are filtered and reported by displacement and the tracking fallback
+	 * as in continuous tracking. Under a {@link PowerBudget} each sample claims the budget for
+	 * itself, so nothing is charged between samples. A sample that times out or fails is reported
+	 * with {@link LocationListener#onMissedSample()} rather than as a timeout or failure of the
+	 * task, which keeps sampling.
+	 * @param scheduler Schedules the samples, e.g. an {@link AlarmSampleScheduler}
+	 * @param flex The time in milliseconds each sample may be delayed so the system can batch it
+	 * with other wakeups
+	 */
+	@SuppressWarnings("unused")
+	public PeriodicLocationTask sparse(SampleScheduler scheduler, long flex)
+	{
+		this.sampleScheduler = scheduler;
+		this.sampleFlex = flex;
 		return this;
 	}
 
@@ -58,4 +186,329 @@ public class PeriodicLocationTask extends LocationTask
 		return this;
 	}
 
+	/**
+	 * Record every update of this task into the given track buffer
+	 */
+	@SuppressWarnings("unused")
+	public PeriodicLocationTask record(final TrackBuffer buffer)
+	{
+		feed(new LocationListener()
+		{
+			@Override public void onUpdate(Location location)
+			{
+				buffer.append(location);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Record every update of this task into the given track file writer.
+	 * The writer is not closed when the task is cancelled, and updates arriving after it has
+	 * been closed are dropped.
+	 */
+	@SuppressWarnings("unused")
+	public PeriodicLocationTask record(final TrackWriter writer)
+	{
+		feed(new LocationListener()
+		{
+			@Override public void onUpdate(Location location)
+			{
+				if (!writer.isClosed())
+				{
+					writer.write(location);
+				}
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Evaluate every update of this task against the fences of the given engine
+	 */
+	@SuppressWarnings("unused")
+	public PeriodicLocationTask geofence(final GeofenceEngine engine)
+	{
+		feed(new LocationListener()
+		{
+			@Override public void onUpdate(Location location)
+			{
+				engine.update(location);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Split the updates of this task into trips and stops with the given segmenter
+	 */
+	@SuppressWarnings("unused")
+	public PeriodicLocationTask segment(final TripSegmenter segmenter)
+	{
+		feed(new LocationListener()
+		{
+			@Override public void onUpdate(Location location)
+			{
+				segmenter.update(location);
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Reverse geocode the updates of this task through the given geocoder, which only looks
+	 * up a new address once the user has moved
+	 */
+	@SuppressWarnings("unused")
+	public PeriodicLocationTask geocode(TrackingGeocoder geocoder)
+	{
+		feed(geocoder);
+		return this;
+	}
+
+	/**
+	 * Warm the address cache along the predicted path of this task's updates
+	 */
+	@SuppressWarnings("unused")
+	public PeriodicLocationTask prefetch(GeocodePrefetcher prefetcher)
+	{
+		feed(prefetcher);
+		return this;
+	}
+
+	/**
+	 * Find the points of the given query's index nearest each update of this task
+	 */
+	@SuppressWarnings("unused")
+	public PeriodicLocationTask nearest(NearestQuery query)
+	{
+		feed(query);
+		return this;
+	}
+
+	/**
+	 * Share the updates of this task between subscribers with backpressure. The task is started
+	 * by the first subscriber and cancelled once all have cancelled, so do not call
+	 * {@link #start()} or {@link #listen(LocationListener)} on it.
+	 */
+	@SuppressWarnings("unused")
+	public LocationPublisher publish()
+	{
+		return new LocationPublisher(this);
+	}
+
+	/**
+	 * Filter each update before it is reported, e.g. with a
+	 * {@link net.atomcode.bearing.location.filter.KalmanLocationFilter} to smooth the track and
+	 * drop GPS jumps. Filters are stateful, so use a new instance for each task.
+	 */
+	@SuppressWarnings("unused")
+	public PeriodicLocationTask filter(LocationFilter filter)
+	{
+		request.trackingFilter = filter;
+		return this;
+	}
+
+	/**
+	 * Take the next sample once the power budget, if set, grants it
+	 */
+	private void nextSample()
+	{
+		if (Bearing.getPowerBudget() != null)
+		{
+			// Restarts sampling at the granted accuracy
+			requestWithinBudget();
+		}
+		else
+		{
+			sample();
+		}
+	}
+
+	/**
+	 * Schedule the next sample, then take this one
+	 */
+	private void sample()
+	{
+		final int sampling = samplingCount;
+		final int sample = ++sampleCount;
+		final SampleScheduler scheduler = sampleScheduler;
+
+		pendingSample = scheduler.schedule(new Runnable()
+		{
+			@Override public void run()
+			{
+				if (running && sampling == samplingCount)
+				{
+					nextSample();
+				}
+			}
+		}, request.trackingRate, sampleFlex);
+
+		long timeout = getSampleTimeout();
+		sampleTimeout = scheduler.schedule(new Runnable()
+		{
+			@Override public void run()
+			{
+				if (running && sample == sampleCount)
+				{
+					timeoutSample();
+				}
+			}
+		}, timeout, 0);
+
+		if (sampleOpen && taskId != null)
+		{
+			// The last sample never completed
+			locationProvider.cancelUpdates(taskId);
+		}
+
+		sampleOpen = true;
+		this.taskId = locationProvider.requestSingleLocationUpdate(createSampleRequest(timeout), new LocationListener()
+		{
+			@Override public void onUpdate(Location location)
+			{
+				if (running && sample == sampleCount)
+				{
+					finishSample();
+					reportSample(location);
+				}
+			}
+
+			@Override public void onFailure()
+			{
+				if (running && sample == sampleCount)
+				{
+					finishSample();
+					if (listener != null)
+					{
+						listener.onMissedSample();
+					}
+				}
+			}
+
+			@Override public void onTimeout()
+			{
+				if (running && sample == sampleCount)
+				{
+					timeoutSample();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return The time in milliseconds a sample may take before it times out
+	 */
+	private long getSampleTimeout()
+	{
+		return request.fallbackTimeout > 0 ? request.fallbackTimeout : Math.min(DEFAULT_SAMPLE_TIMEOUT, request.trackingRate);
+	}
+
+	/**
+	 * Give up on the current sample, falling back to the cached location if requested
+	 */
+	private void timeoutSample()
+	{
+		finishSample();
+		if (taskId != null)
+		{
+			locationProvider.cancelUpdates(taskId);
+		}
+
+		if (listener == null)
+		{
+			return;
+		}
+
+		listener.onMissedSample();
+		if (request.fallback == LocationProviderRequest.FALLBACK_CACHE)
+		{
+			Location cachedLocation = locationProvider.getLastKnownLocation(request);
+			if (cachedLocation != null)
+			{
+				reportSample(cachedLocation);
+			}
+		}
+	}
+
+	private void finishSample()
+	{
+		// Late callbacks of the sample are ignored once the count moves on
+		sampleCount++;
+		sampleOpen = false;
+		if (sampleTimeout != null)
+		{
+			sampleScheduler.cancel(sampleTimeout);
+			sampleTimeout = null;
+		}
+
+		// The radio is only claimed while sampling
+		releaseBudget();
+	}
+
+	private void cancelSampling()
+	{
+		samplingCount++;
+		sampleCount++;
+		sampleOpen = false;
+		if (sampleScheduler != null)
+		{
+			if (pendingSample != null)
+			{
+				sampleScheduler.cancel(pendingSample);
+			}
+			if (sampleTimeout != null)
+			{
+				sampleScheduler.cancel(sampleTimeout);
+			}
+		}
+		pendingSample = null;
+		sampleTimeout = null;
+	}
+
+	/**
+	 * Filter the sampled fix and report it if it moved far enough, or the tracking fallback is due
+	 */
+	private void reportSample(Location location)
+	{
+		if (request.trackingFilter != null)
+		{
+			location = request.trackingFilter.filter(location);
+			if (location == null)
+			{
+				return;
+			}
+		}
+
+		long time = location.getTime();
+		if (lastReportedTime == -1
+			|| time - lastReportedTime > request.trackingFallback
+			|| (request.trackingDisplacement != -1 && !Geodesy.isWithin(location.getLatitude(), location.getLongitude(), lastReportedLocation.getLatitude(), lastReportedLocation.getLongitude(), request.trackingDisplacement)))
+		{
+			lastReportedLocation = location;
+			lastReportedTime = time;
+			dispatchUpdate(location);
+		}
+	}
+
+	/**
+	 * @return The request for a single sample expiring after the given timeout, accepting cached
+	 * fixes only from well within the interval and leaving filtering to the task
+	 */
+	private LocationProviderRequest createSampleRequest(long timeout)
+	{
+		LocationProviderRequest sampleRequest = new LocationProviderRequest();
+		sampleRequest.accuracy = request.accuracy;
+		sampleRequest.fallback = request.fallback;
+		sampleRequest.fallbackTimeout = timeout;
+		sampleRequest.passive = request.passive;
+		sampleRequest.passiveTimeout = request.passiveTimeout;
+		sampleRequest.useCache = request.useCache;
+		sampleRequest.cacheExpiry = Math.min(request.cacheExpiry, request.trackingRate / 2);
+		sampleRequest.trackingDisplacement = request.trackingDisplacement;
+		sampleRequest.trackingRate = request.trackingRate;
+		sampleRequest.trackingFallback = request.trackingFallback;
+		return sampleRequest;
+	}
 }
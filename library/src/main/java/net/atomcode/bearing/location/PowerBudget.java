@@ -0,0 +1,590 @@
+package net.atomcode.bearing.location;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.location.provider.VirtualClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Central energy budget shared by all location tasks, so a few features cannot keep the GPS
+ * on between them, see {@link Bearing#usePowerBudget(PowerBudget)}.
+ *
+ * Each accuracy has a cost per second the radio is on for it, by default 1 for
+ * {@link Accuracy#HIGH}, 0.2 for {@link Accuracy#MEDIUM} and 0.05 for {@link Accuracy#LOW}.
+ * Tasks running at the same time share the radio, so only the most accurate running request is
+ * charged, split between the tasks running at that accuracy. Total consumption, and so radio
+ * on time, is bounded by the budget of each window rather than growing with the number of tasks.
+ *
+ * When a task starts it is granted its accuracy if the cost over its expected duration fits in
+ * what is left of the window, downgraded to the most accurate tier that fits, or to the lowest,
+ * or deferred until the next window if the budget is spent. Running tasks are downgraded, and
+ * finally suspended, as the window's budget runs out, and restored at the start of the next
+ * window.
+ */
+public class PowerBudget
+{
+	private static final double DEFAULT_COST_HIGH = 1.0;
+	private static final double DEFAULT_COST_MEDIUM = 0.2;
+	private static final double DEFAULT_COST_LOW = 0.05;
+
+	/**
+	 * What happened to a task's request
+	 */
+	public enum Decision
+	{
+		/**
+		 * Granted at the requested accuracy
+		 */
+		GRANT,
+		/**
+		 * Granted at a lower accuracy than requested
+		 */
+		DOWNGRADE,
+		/**
+		 * Not granted until the next window
+		 */
+		DEFER
+	}
+
+	public interface Listener
+	{
+		/**
+		 * Called when a request is granted, downgraded or deferred, on the main thread
+		 * @param accuracy The granted accuracy, null if deferred
+		 */
+		public void onDecision(String caller, Decision decision, Accuracy accuracy);
+	}
+
+	/**
+	 * Receives the accuracy a task is granted, null while it is deferred
+	 */
+	interface Client
+	{
+		public void onBudgetChange(Accuracy accuracy);
+	}
+
+	/**
+	 * A task's claim on the budget
+	 */
+	static class Grant
+	{
+		final String caller;
+		final Accuracy requested;
+		final long duration;
+		final Client client;
+
+		Accuracy granted;
+		Decision decision;
+
+		Grant(String caller, Accuracy requested, long duration, Client client)
+		{
+			this.caller = caller;
+			this.requested = requested;
+			this.duration = duration;
+			this.client = client;
+		}
+	}
+
+	private final double budget;
+	private final long window;
+	private final double[] costs = {DEFAULT_COST_LOW, DEFAULT_COST_MEDIUM, DEFAULT_COST_HIGH};
+
+	private VirtualClock clock;
+	private Listener listener;
+
+	/**
+	 * Claims in the order they were made, running or deferred
+	 */
+	private final List<Grant> grants = new ArrayList<>();
+
+	private final Map<String, Double> consumption = new HashMap<>();
+	private double totalConsumption = 0;
+	private long radioOnTime = 0;
+
+	private long windowStart = -1;
+	private double windowConsumption = 0;
+	private long lastAccrual = 0;
+
+	private ScheduledFuture<?> checkFuture;
+	private Object checkToken;
+
+	/**
+	 * @param budget The energy allowed per window, e.g. 900 for 15 minutes of high accuracy
+	 * at the default costs
+	 * @param window The length of the window in milliseconds
+	 */
+	public PowerBudget(double budget, long window)
+	{
+		if (budget < 0 || window <= 0)
+		{
+			throw new IllegalArgumentException("Budget and window must be positive");
+		}
+
+		this.budget = budget;
+		this.window = window;
+	}
+
+	/**
+	 * Set the cost per second of the radio being on for the given accuracy. Costs must not
+	 * decrease with accuracy.
+	 */
+	public synchronized PowerBudget cost(Accuracy accuracy, double perSecond)
+	{
+		double[] updated = costs.clone();
+		updated[accuracy.ordinal()] = perSecond;
+		for (int tier = 1; tier < updated.length; tier++)
+		{
+			if (updated[tier] < updated[tier - 1])
+			{
+				throw new IllegalArgumentException("Costs must not decrease with accuracy");
+			}
+		}
+
+		accrue(now());
+		costs[accuracy.ordinal()] = perSecond;
+		return this;
+	}
+
+	/**
+	 * Run on the given virtual clock rather than the device clock, e.g. alongside a
+	 * {@link net.atomcode.bearing.location.provider.SimulatedLocationProvider}
+	 */
+	public synchronized PowerBudget clock(VirtualClock clock)
+	{
+		this.clock = clock;
+		return this;
+	}
+
+	/**
+	 * Listen for the decisions made on requests
+	 */
+	public synchronized PowerBudget listen(Listener listener)
+	{
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * @return The energy consumed by each caller since the budget was created
+	 */
+	public synchronized Map<String, Double> getConsumption()
+	{
+		accrue(now());
+		return new HashMap<>(consumption);
+	}
+
+	/**
+	 * @return The energy consumed by the given caller since the budget was created
+	 */
+	public synchronized double getConsumption(String caller)
+	{
+		accrue(now());
+		Double consumed = consumption.get(caller);
+		return consumed != null ? consumed : 0;
+	}
+
+	/**
+	 * @return The energy consumed by all callers since the budget was created
+	 */
+	public synchronized double getTotalConsumption()
+	{
+		accrue(now());
+		return totalConsumption;
+	}
+
+	/**
+	 * @return The energy left in the current window
+	 */
+	public synchronized double getRemaining()
+	{
+		accrue(now());
+		return Math.max(0, budget - windowConsumption);
+	}
+
+	/**
+	 * @return The time in milliseconds any radio has been on for a task since the budget was created
+	 */
+	public synchronized long getRadioOnTime()
+	{
+		accrue(now());
+		return radioOnTime;
+	}
+
+	/*
+	 * ==============================================
+	 * TASK API
+	 * ==============================================
+	 */
+
+	/**
+	 * Claim the budget for a task. The client is told the granted accuracy on the main thread,
+	 * before this returns if called there, and again whenever it changes.
+	 * @param duration The expected duration of the task in milliseconds, 0 if it runs until cancelled
+	 */
+	Grant request(String caller, Accuracy accuracy, long duration, Client client)
+	{
+		Grant grant = new Grant(caller, accuracy, duration, client);
+		List<Grant> changed = new ArrayList<>();
+
+		synchronized (this)
+		{
+			long now = now();
+			if (accrue(now))
+			{
+				restore(now, changed);
+			}
+
+			grants.add(grant);
+			admit(grant, now);
+			changed.add(grant);
+
+			enforce(now, changed);
+		}
+
+		post(changed);
+		return grant;
+	}
+
+	/**
+	 * Release a task's claim once it has finished or been cancelled
+	 */
+	void release(Grant grant)
+	{
+		List<Grant> changed = new ArrayList<>();
+
+		synchronized (this)
+		{
+			long now = now();
+			boolean rolled = accrue(now);
+
+			grants.remove(grant);
+			if (rolled)
+			{
+				restore(now, changed);
+			}
+			enforce(now, changed);
+		}
+
+		post(changed);
+	}
+
+	/*
+	 * ==============================================
+	 * INTERNAL METHODS
+	 * ==============================================
+	 */
+
+	private long now()
+	{
+		return clock != null ? clock.now() : SystemClock.elapsedRealtime();
+	}
+
+	/**
+	 * Charge the running grants up to the given time, starting a new window if the current one
+	 * has ended
+	 * @return Whether a new window was started
+	 */
+	private boolean accrue(long now)
+	{
+		if (windowStart == -1)
+		{
+			windowStart = now;
+			lastAccrual = now;
+			return false;
+		}
+
+		if (now < windowStart + window)
+		{
+			accrueTo(now);
+			return false;
+		}
+
+		accrueTo(windowStart + window);
+		windowStart += (now - windowStart) / window * window;
+		accrueTo(windowStart);
+		windowConsumption = 0;
+		accrueTo(now);
+		return true;
+	}
+
+	private void accrueTo(long time)
+	{
+		long elapsed = time - lastAccrual;
+		if (elapsed <= 0)
+		{
+			return;
+		}
+		lastAccrual = time;
+
+		int top = topTier(null);
+		if (top == -1)
+		{
+			return;
+		}
+
+		double energy = costs[top] * elapsed / 1000.0;
+		windowConsumption += energy;
+		totalConsumption += energy;
+		radioOnTime += elapsed;
+
+		int sharing = 0;
+		for (int index = 0; index < grants.size(); index++)
+		{
+			if (tierOf(grants.get(index)) == top)
+			{
+				sharing++;
+			}
+		}
+
+		for (int index = 0; index < grants.size(); index++)
+		{
+			Grant grant = grants.get(index);
+			if (tierOf(grant) == top)
+			{
+				Double consumed = consumption.get(grant.caller);
+				consumption.put(grant.caller, (consumed != null ? consumed : 0) + energy / sharing);
+			}
+		}
+	}
+
+	/**
+	 * Grant the most accurate tier up to the requested one whose extra cost over the grant's
+	 * duration fits in the rest of the window, the lowest tier if none fits, or defer the grant
+	 * once the window's budget is spent
+	 */
+	private void admit(Grant grant, long now)
+	{
+		int current = topTier(grant);
+		double rate = current != -1 ? costs[current] : 0;
+
+		long remaining = windowStart + window - now;
+		long duration = grant.duration > 0 ? Math.min(grant.duration, remaining) : remaining;
+
+		for (int tier = grant.requested.ordinal(); tier >= 0; tier--)
+		{
+			double extra = Math.max(0, costs[tier] - rate) * duration / 1000.0;
+			if (windowConsumption + extra <= budget)
+			{
+				grant.granted = Accuracy.values()[tier];
+				grant.decision = tier == grant.requested.ordinal() ? Decision.GRANT : Decision.DOWNGRADE;
+				return;
+			}
+		}
+
+		if (windowConsumption < budget)
+		{
+			// Run at the lowest accuracy until the budget runs out
+			grant.granted = Accuracy.LOW;
+			grant.decision = grant.requested == Accuracy.LOW ? Decision.GRANT : Decision.DOWNGRADE;
+			return;
+		}
+
+		grant.granted = null;
+		grant.decision = Decision.DEFER;
+	}
+
+	/**
+	 * Downgrade the most accurate running grants while what is left of the window cannot cover
+	 * running at their tier, then schedule the next check for when it will not
+	 * @param changed Receives the grants whose accuracy changed
+	 */
+	private void enforce(long now, List<Grant> changed)
+	{
+		long remaining = windowStart + window - now;
+
+		while (true)
+		{
+			int top = topTier(null);
+			if (top == -1)
+			{
+				break;
+			}
+
+			// Time at which switching to the next tier down just uses the rest of the budget
+			double rate = costs[top];
+			double lowerRate = top > 0 ? costs[top - 1] : 0;
+			double switchAt = rate > lowerRate
+				? (budget - windowConsumption - lowerRate * remaining / 1000.0) * 1000.0 / (rate - lowerRate)
+				: Double.POSITIVE_INFINITY;
+
+			if (switchAt >= 1)
+			{
+				schedule((long)Math.ceil(Math.min(switchAt, remaining)));
+				return;
+			}
+
+			for (int index = 0; index < grants.size(); index++)
+			{
+				Grant grant = grants.get(index);
+				if (tierOf(grant) == top)
+				{
+					grant.granted = top > 0 ? Accuracy.values()[top - 1] : null;
+					grant.decision = top > 0 ? Decision.DOWNGRADE : Decision.DEFER;
+					if (!changed.contains(grant))
+					{
+						changed.add(grant);
+					}
+				}
+			}
+		}
+
+		// Only deferred grants left, restore them with the next window
+		schedule(grants.isEmpty() ? -1 : remaining);
+	}
+
+	/**
+	 * Re-admit the grants not running at their requested accuracy, in the order they were made
+	 */
+	private void restore(long now, List<Grant> changed)
+	{
+		for (int index = 0; index < grants.size(); index++)
+		{
+			Grant grant = grants.get(index);
+			if (grant.granted != grant.requested)
+			{
+				Accuracy previous = grant.granted;
+				admit(grant, now);
+				if (grant.granted != previous && !changed.contains(grant))
+				{
+					changed.add(grant);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Schedule the next check after the given delay, replacing any scheduled check
+	 * @param delay The delay in milliseconds, or -1 for no check
+	 */
+	private void schedule(long delay)
+	{
+		if (checkFuture != null)
+		{
+			checkFuture.cancel(false);
+			checkFuture = null;
+		}
+		if (checkToken != null)
+		{
+			clock.cancel(checkToken);
+			checkToken = null;
+		}
+
+		if (delay < 0)
+		{
+			return;
+		}
+
+		Runnable check = new Runnable()
+		{
+			@Override public void run()
+			{
+				check();
+			}
+		};
+
+		if (clock != null)
+		{
+			checkToken = clock.schedule(check, delay);
+		}
+		else
+		{
+			checkFuture = Bearing.getScheduler().schedule(check, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void check()
+	{
+		List<Grant> changed = new ArrayList<>();
+
+		synchronized (this)
+		{
+			long now = now();
+			if (accrue(now))
+			{
+				restore(now, changed);
+			}
+			enforce(now, changed);
+		}
+
+		post(changed);
+	}
+
+	/**
+	 * Dispatch the given grants on the main thread, where clients change their provider requests.
+	 * A task released or timed out on another thread would otherwise restore or downgrade the
+	 * other tasks there.
+	 */
+	private void post(final List<Grant> changed)
+	{
+		if (changed.isEmpty() || Looper.myLooper() == Looper.getMainLooper())
+		{
+			dispatch(changed);
+			return;
+		}
+
+		new Handler(Looper.getMainLooper()).post(new Runnable()
+		{
+			@Override public void run()
+			{
+				dispatch(changed);
+			}
+		});
+	}
+
+	/**
+	 * Tell the clients and listener of the given grants their accuracy, outside the lock. Grants
+	 * released since they changed are skipped.
+	 */
+	private void dispatch(List<Grant> changed)
+	{
+		Listener listener;
+		synchronized (this)
+		{
+			listener = this.listener;
+			changed.retainAll(grants);
+		}
+
+		for (int index = 0; index < changed.size(); index++)
+		{
+			Grant grant = changed.get(index);
+			Bearing.log(grant.caller, "Power budget " + grant.decision + " at " + grant.granted);
+
+			grant.client.onBudgetChange(grant.granted);
+			if (listener != null)
+			{
+				listener.onDecision(grant.caller, grant.decision, grant.granted);
+			}
+		}
+	}
+
+	/**
+	 * @return The most accurate tier granted to a running grant other than the given one, or -1
+	 */
+	private int topTier(Grant excluded)
+	{
+		int top = -1;
+		for (int index = 0; index < grants.size(); index++)
+		{
+			Grant grant = grants.get(index);
+			if (grant != excluded)
+			{
+				top = Math.max(top, tierOf(grant));
+			}
+		}
+		return top;
+	}
+
+	private static int tierOf(Grant grant)
+	{
+		return grant.granted != null ? grant.granted.ordinal() : -1;
+	}
+}
@@ -0,0 +1,23 @@
+package net.atomcode.bearing.location;
+
+/**
+ * Schedules the samples of a sparse tracking task, see
+ * {@link PeriodicLocationTask#sparse(SampleScheduler, long)}
+ */
+public interface SampleScheduler
+{
+	/**
+	 * Run the given action once the given delay has passed, up to the given flex later so the
+	 * system can batch it with other wakeups
+	 * @param delay The delay in milliseconds
+	 * @param flex The time in milliseconds the action may be delayed further
+	 * @return A token to cancel the action with
+	 */
+	public Object schedule(Runnable action, long delay, long flex);
+
+	/**
+	 * Cancel an action that has not yet run
+	 * @param token The token returned when scheduling the action
+	 */
+	public void cancel(Object token);
+}
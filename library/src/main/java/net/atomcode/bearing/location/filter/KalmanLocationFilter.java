@@ -0,0 +1,241 @@
+package net.atomcode.bearing.location.filter;
+
+import android.location.Location;
+
+import net.atomcode.bearing.geodesy.Geodesy;
+import net.atomcode.bearing.location.LocationFilter;
+
+/**
+ * Smooths recurring location updates using a constant velocity Kalman filter.
+ *
+ * Fixes whose implied speed from the current estimate exceeds {@link #maxSpeed(float)} are
+ * treated as outliers and dropped. If too many fixes in a row are rejected the filter assumes
+ * the estimate is wrong (e.g. after leaving a tunnel) and restarts from the latest fix.
+ *
+ * All state is held in primitives. Each accepted fix is reported as a copy with the smoothed
+ * coordinates and accuracy, leaving the delivered location untouched for other listeners.
+ * {@link #update(double, double, float, long)} smooths raw coordinates without allocating.
+ */
+public class KalmanLocationFilter implements LocationFilter
+{
+	/**
+	 * Default process noise, in m^2/s^3. Roughly a pedestrian to urban driving level of acceleration.
+	 */
+	private static final double DEFAULT_PROCESS_NOISE = 3.0;
+
+	/**
+	 * Default maximum plausible speed, in m/s (~250 km/h)
+	 */
+	private static final float DEFAULT_MAX_SPEED = 70.0f;
+
+	private static final int DEFAULT_MAX_REJECTIONS = 3;
+
+	/**
+	 * Accuracy to assume for fixes that do not report one, in metres
+	 */
+	private static final float DEFAULT_ACCURACY = 50.0f;
+
+	private double processNoise = DEFAULT_PROCESS_NOISE;
+	private float maxSpeed = DEFAULT_MAX_SPEED;
+	private int maxRejections = DEFAULT_MAX_REJECTIONS;
+
+	/*
+	 * Filter state. Position is held in degrees, velocity in m/s.
+	 * Both axes share the same noise so share a single covariance matrix.
+	 */
+	private boolean initialised = false;
+	private double latitude;
+	private double longitude;
+	private double velocityNorth;
+	private double velocityEast;
+	private double p00;
+	private double p01;
+	private double p11;
+	private long timestamp;
+
+	private int rejections;
+
+	/**
+	 * Set the process noise of the filter in m^2/s^3. Higher values follow the raw fixes
+	 * more closely, lower values smooth more aggressively.
+	 */
+	public KalmanLocationFilter processNoise(double processNoise)
+	{
+		this.processNoise = processNoise;
+		return this;
+	}
+
+	/**
+	 * Set the maximum plausible speed in m/s. Fixes implying a faster movement are rejected.
+	 */
+	public KalmanLocationFilter maxSpeed(float maxSpeed)
+	{
+		this.maxSpeed = maxSpeed;
+		return this;
+	}
+
+	/**
+	 * Set the number of consecutive rejected fixes after which the filter restarts from the
+	 * latest fix.
+	 */
+	public KalmanLocationFilter maxRejections(int maxRejections)
+	{
+		this.maxRejections = maxRejections;
+		return this;
+	}
+
+	@Override
+	public Location filter(Location location)
+	{
+		float accuracy = location.hasAccuracy() ? location.getAccuracy() : DEFAULT_ACCURACY;
+
+		if (!update(location.getLatitude(), location.getLongitude(), accuracy, location.getTime()))
+		{
+			return null;
+		}
+
+		Location smoothed = new Location(location);
+		smoothed.setLatitude(latitude);
+		smoothed.setLongitude(longitude);
+		smoothed.setAccuracy(getAccuracy());
+		return smoothed;
+	}
+
+	@Override
+	public void reset()
+	{
+		initialised = false;
+		rejections = 0;
+	}
+
+	/**
+	 * Feed a raw fix into the filter.
+	 * @param lat The latitude of the fix in degrees
+	 * @param lng The longitude of the fix in degrees
+	 * @param accuracy The horizontal accuracy of the fix in metres
+	 * @param time The time of the fix in milliseconds
+	 * @return {@code true} if the fix was accepted, {@code false} if it was rejected as an outlier
+	 */
+	public boolean update(double lat, double lng, float accuracy, long time)
+	{
+		if (accuracy <= 0)
+		{
+			accuracy = DEFAULT_ACCURACY;
+		}
+
+		if (!initialised)
+		{
+			restart(lat, lng, accuracy, time);
+			return true;
+		}
+
+		double dt = (time - timestamp) / 1000.0;
+		if (dt < 0)
+		{
+			// Out of order fix, ignore it without counting towards a restart
+			return false;
+		}
+
+		double cosLat = Math.cos(Math.toRadians(latitude));
+		double north = (lat - latitude) * Geodesy.METRES_PER_DEGREE;
+		double east = Geodesy.longitudeDelta(longitude, lng) * Geodesy.METRES_PER_DEGREE * cosLat;
+
+		if (dt > 0)
+		{
+			double distance = Math.sqrt(north * north + east * east);
+			double impliedSpeed = Math.max(0, distance - accuracy) / dt;
+
+			if (impliedSpeed > maxSpeed)
+			{
+				if (++rejections > maxRejections)
+				{
+					restart(lat, lng, accuracy, time);
+					return true;
+				}
+				return false;
+			}
+		}
+
+		rejections = 0;
+
+		// Predict
+		double predictedNorth = velocityNorth * dt;
+		double predictedEast = velocityEast * dt;
+		double q = processNoise;
+		double dt2 = dt * dt;
+		p00 += dt * (2 * p01 + dt * p11) + q * dt2 * dt / 3.0;
+		p01 += dt * p11 + q * dt2 / 2.0;
+		p11 += q * dt;
+
+		// Update
+		double s = p00 + (double)accuracy * accuracy;
+		double k0 = p00 / s;
+		double k1 = p01 / s;
+
+		double innovationNorth = north - predictedNorth;
+		double innovationEast = east - predictedEast;
+
+		double offsetNorth = predictedNorth + k0 * innovationNorth;
+		double offsetEast = predictedEast + k0 * innovationEast;
+		velocityNorth += k1 * innovationNorth;
+		velocityEast += k1 * innovationEast;
+
+		p11 -= k1 * p01;
+		p01 -= k0 * p01;
+		p00 -= k0 * p00;
+
+		latitude += offsetNorth / Geodesy.METRES_PER_DEGREE;
+		longitude = Geodesy.wrapLongitude(longitude + offsetEast / (Geodesy.METRES_PER_DEGREE * Math.max(cosLat, 1e-6)));
+		timestamp = time;
+
+		return true;
+	}
+
+	/**
+	 * @return The current smoothed latitude in degrees
+	 */
+	public double getLatitude()
+	{
+		return latitude;
+	}
+
+	/**
+	 * @return The current smoothed longitude in degrees
+	 */
+	public double getLongitude()
+	{
+		return longitude;
+	}
+
+	/**
+	 * @return The estimated accuracy of the smoothed position in metres
+	 */
+	public float getAccuracy()
+	{
+		return (float)Math.sqrt(p00);
+	}
+
+	/**
+	 * @return The estimated speed in m/s
+	 */
+	public double getSpeed()
+	{
+		return Math.sqrt(velocityNorth * velocityNorth + velocityEast * velocityEast);
+	}
+
+	private void restart(double lat, double lng, float accuracy, long time)
+	{
+		initialised = true;
+		rejections = 0;
+
+		latitude = lat;
+		longitude = Geodesy.wrapLongitude(lng);
+		velocityNorth = 0;
+		velocityEast = 0;
+		timestamp = time;
+
+		p00 = (double)accuracy * accuracy;
+		p01 = 0;
+		p11 = maxSpeed * maxSpeed;
+	}
+}
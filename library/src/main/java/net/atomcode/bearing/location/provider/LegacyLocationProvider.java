@@ -5,12 +5,14 @@ import android.location.Criteria;
 import android.location.Location;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.Looper;
 
 import net.atomcode.bearing.Bearing;
 import net.atomcode.bearing.location.LocationListener;
 import net.atomcode.bearing.location.LocationProvider;
 import net.atomcode.bearing.location.LocationProviderRequest;
+import net.atomcode.bearing.trace.Tracing;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -23,7 +25,7 @@ public class LegacyLocationProvider implements LocationProvider
 {
 	private static LegacyLocationProvider instance;
 
-	public static LegacyLocationProvider getInstance()
+	public static synchronized LegacyLocationProvider getInstance()
 	{
 		if (instance == null)
 		{
@@ -35,6 +37,9 @@ public class LegacyLocationProvider implements LocationProvider
 	private LocationManager locationManager;
 
 	private Map<String, android.location.LocationListener> runningRequests = new HashMap<>();
+	private Map<String, android.location.LocationListener> escalatedRequests = new HashMap<>();
+	private Map<String, Runnable> passiveEscalations = new HashMap<>();
+	private Handler handler = new Handler(Looper.getMainLooper());
 
 	@Override public void create(Context context)
 	{
@@ -49,6 +54,18 @@ public class LegacyLocationProvider implements LocationProvider
 		}
 
 		runningRequests.clear();
+
+		for (android.location.LocationListener escalatedRequest : escalatedRequests.values())
+		{
+			locationManager.removeUpdates(escalatedRequest);
+		}
+		escalatedRequests.clear();
+
+		for (Runnable escalation : passiveEscalations.values())
+		{
+			handler.removeCallbacks(escalation);
+		}
+		passiveEscalations.clear();
 	}
 
 	@Override
@@ -72,12 +89,17 @@ public class LegacyLocationProvider implements LocationProvider
 	}
 
 	@Override
-	public String requestSingleLocationUpdate(LocationProviderRequest request, final LocationListener listener)
+	public String requestSingleLocationUpdate(final LocationProviderRequest request, final LocationListener listener)
 	{
+		final String requestId = UUID.randomUUID().toString();
+
 		if (request.useCache)
 		{
 			Bearing.log("pending", "LEGACY: Checking for cached locations...");
+			Tracing.begin("cache", requestId);
 			Location lastKnownUserLocation = getLastKnownLocation(request);
+			Tracing.end("cache", requestId);
+
 			if (lastKnownUserLocation != null)
 			{
 				if (listener != null)
@@ -89,20 +111,26 @@ public class LegacyLocationProvider implements LocationProvider
 			}
 		}
 
-		final String requestId = UUID.randomUUID().toString();
-
 		runningRequests.put(requestId, new android.location.LocationListener()
 		{
 			@Override public void onLocationChanged(Location location)
 			{
 				Bearing.log(requestId, "LEGACY: Location changed to " + location);
 
-				if (listener != null)
+				Tracing.begin("update", requestId);
+				try
 				{
-					listener.onUpdate(location);
+					if (listener != null)
+					{
+						listener.onUpdate(location);
+					}
+				}
+				finally
+				{
+					Tracing.end("update", requestId);
 				}
 
-				runningRequests.remove(requestId);
+				cancelUpdates(requestId);
 			}
 
 			@Override public void onStatusChanged(String provider, int status, Bundle extras)
@@ -125,9 +153,19 @@ public class LegacyLocationProvider implements LocationProvider
 
 		Bearing.log(requestId, "LEGACY: Request location update using " + criteria + " within " + request.fallbackTimeout + "ms");
 
+		Tracing.beginAsync("request", requestId);
 		try
 		{
-			locationManager.requestSingleUpdate(criteria, runningRequests.get(requestId), Looper.getMainLooper());
+			if (request.passive)
+			{
+				Bearing.log(requestId, "LEGACY: Listen for passive location within " + request.passiveTimeout + "ms");
+				locationManager.requestLocationUpdates(LocationManager.PASSIVE_PROVIDER, 0, 0, runningRequests.get(requestId), Looper.getMainLooper());
+				schedulePassiveEscalation(requestId, request, runningRequests.get(requestId), false);
+			}
+			else
+			{
+				locationManager.requestSingleUpdate(criteria, runningRequests.get(requestId), Looper.getMainLooper());
+			}
 		}
 		catch (Exception ignore)
 		{
@@ -137,6 +175,7 @@ public class LegacyLocationProvider implements LocationProvider
 			// certain devices.
 
 			runningRequests.remove(requestId);
+			Tracing.endAsync("request", requestId);
 
 			if (listener != null)
 			{
@@ -184,6 +223,36 @@ public class LegacyLocationProvider implements LocationProvider
 			@Override public void onLocationChanged(Location location)
 			{
 				Bearing.log(requestId, "LEGACY: Location changed to " + location);
+
+				Tracing.begin("update", requestId);
+				try
+				{
+					handleLocation(location);
+				}
+				finally
+				{
+					Tracing.end("update", requestId);
+				}
+			}
+
+			private void handleLocation(Location location)
+			{
+				if (request.passive)
+				{
+					// Got a fix, push back the escalation
+					schedulePassiveEscalation(requestId, request, this, true);
+				}
+
+				if (request.trackingFilter != null)
+				{
+					location = request.trackingFilter.filter(location);
+					if (location == null)
+					{
+						Bearing.log(requestId, "LEGACY: Location rejected by filter");
+						return;
+					}
+				}
+
 				if (listener != null)
 				{
 					listener.onUpdate(location);
@@ -218,7 +287,7 @@ public class LegacyLocationProvider implements LocationProvider
 				return null;
 			}
 
-			bestProvider = locationManager.getBestProvider(criteria, true);
+			bestProvider = request.passive ? LocationManager.PASSIVE_PROVIDER : locationManager.getBestProvider(criteria, true);
 
 			if (bestProvider == null)
 			{
@@ -227,7 +296,13 @@ public class LegacyLocationProvider implements LocationProvider
 			}
 
 			Bearing.log(requestId, "LEGACY: Request recurring updates from " + bestProvider + " every " + request.trackingRate + "ms");
+			Tracing.beginAsync("request", requestId);
 			locationManager.requestLocationUpdates(bestProvider, request.trackingRate, 0, runningRequests.get(requestId), Looper.getMainLooper());
+
+			if (request.passive)
+			{
+				schedulePassiveEscalation(requestId, request, runningRequests.get(requestId), true);
+			}
 		}
 		catch (Exception ignore)
 		{
@@ -237,6 +312,7 @@ public class LegacyLocationProvider implements LocationProvider
 			// certain devices.
 
 			runningRequests.remove(requestId);
+			Tracing.endAsync("request", requestId);
 
 			if (listener != null)
 			{
@@ -257,7 +333,91 @@ public class LegacyLocationProvider implements LocationProvider
 		{
 			locationManager.removeUpdates(runningRequests.get(requestId));
 			runningRequests.remove(requestId);
+			Tracing.endAsync("request", requestId);
+		}
+
+		if (escalatedRequests.containsKey(requestId))
+		{
+			locationManager.removeUpdates(escalatedRequests.get(requestId));
+			escalatedRequests.remove(requestId);
 		}
+
+		Runnable escalation = passiveEscalations.remove(requestId);
+		if (escalation != null)
+		{
+			handler.removeCallbacks(escalation);
+		}
+	}
+
+	/**
+	 * Make a single active request on behalf of a passive request if no passive location
+	 * arrives within the request's passive timeout. The active location is delivered to
+	 * the passive request's listener.
+	 * @param repeat Whether to keep escalating each time the timeout passes without a location
+	 */
+	private void schedulePassiveEscalation(final String requestId, final LocationProviderRequest request, final android.location.LocationListener target, final boolean repeat)
+	{
+		Runnable previous = passiveEscalations.remove(requestId);
+		if (previous != null)
+		{
+			handler.removeCallbacks(previous);
+		}
+
+		Runnable escalation = new Runnable()
+		{
+			@Override public void run()
+			{
+				passiveEscalations.remove(requestId);
+
+				if (runningRequests.get(requestId) != target)
+				{
+					return;
+				}
+
+				Bearing.log(requestId, "LEGACY: No passive location within " + request.passiveTimeout + "ms, escalating to active request");
+
+				android.location.LocationListener escalatedRequest = new android.location.LocationListener()
+				{
+					@Override public void onLocationChanged(Location location)
+					{
+						escalatedRequests.remove(requestId);
+
+						if (runningRequests.get(requestId) == target)
+						{
+							target.onLocationChanged(location);
+						}
+					}
+
+					@Override public void onStatusChanged(String provider, int status, Bundle extras) {}
+					@Override public void onProviderEnabled(String provider) {}
+					@Override public void onProviderDisabled(String provider) {}
+				};
+
+				android.location.LocationListener previousRequest = escalatedRequests.put(requestId, escalatedRequest);
+				if (previousRequest != null)
+				{
+					locationManager.removeUpdates(previousRequest);
+				}
+
+				try
+				{
+					locationManager.requestSingleUpdate(getCriteriaFromRequest(request), escalatedRequest, Looper.getMainLooper());
+				}
+				catch (Exception ignore)
+				{
+					Bearing.log(requestId, "There was a problem escalating the passive request");
+					escalatedRequests.remove(requestId);
+				}
+
+				if (repeat)
+				{
+					schedulePassiveEscalation(requestId, request, target, true);
+				}
+			}
+		};
+
+		passiveEscalations.put(requestId, escalation);
+		handler.postDelayed(escalation, request.passiveTimeout);
 	}
 
 }
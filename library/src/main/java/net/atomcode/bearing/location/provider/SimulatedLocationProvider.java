@@ -0,0 +1,414 @@
+package net.atomcode.bearing.location.provider;
+
+import android.content.Context;
+import android.location.Location;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.geodesy.Geodesy;
+import net.atomcode.bearing.location.LocationListener;
+import net.atomcode.bearing.location.LocationProvider;
+import net.atomcode.bearing.location.LocationProviderRequest;
+import net.atomcode.bearing.trace.Tracing;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Location provider replaying a recorded {@link SimulatedTrack} on a {@link VirtualClock}, for
+ * load testing and reproducing field problems without a device.
+ *
+ * The track starts playing when the provider is constructed and can be sped up. Latency,
+ * dropped fixes and connection failures can be injected, all driven by a seeded random source
+ * so runs are repeatable. Listeners are called on the thread advancing the clock.
+ *
+ * Select it for all new tasks with {@link Bearing#useLocationProvider(LocationProvider)}.
+ */
+public class SimulatedLocationProvider implements LocationProvider
+{
+	private static final float DEFAULT_ACCURACY = 10.0f;
+
+	private final SimulatedTrack track;
+	private final VirtualClock clock;
+	private final long startTime;
+
+	private double speed = 1.0;
+	private boolean loop = false;
+	private long minLatency = 0;
+	private long maxLatency = 0;
+	private double dropoutRate = 0;
+	private double failureRate = 0;
+	private Random random = new Random(0);
+
+	/**
+	 * Running requests mapped to the token of their next scheduled action
+	 */
+	private final ConcurrentMap<String, Object> runningRequests = new ConcurrentHashMap<>();
+
+	private volatile Location lastLocation;
+
+	private final AtomicLong deliveredCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+
+	public SimulatedLocationProvider(SimulatedTrack track, VirtualClock clock)
+	{
+		this.track = track;
+		this.clock = clock;
+		this.startTime = clock.now();
+	}
+
+	/**
+	 * Play the track back faster than it was recorded
+	 * @param factor The speed up factor, 1 for real time
+	 */
+	public SimulatedLocationProvider speed(double factor)
+	{
+		if (factor <= 0)
+		{
+			throw new IllegalArgumentException("Speed must be positive");
+		}
+		this.speed = factor;
+		return this;
+	}
+
+	/**
+	 * Restart the track from the beginning once it has finished, rather than staying at the last sample
+	 */
+	public SimulatedLocationProvider loop(boolean loop)
+	{
+		this.loop = loop;
+		return this;
+	}
+
+	/**
+	 * Delay each fix by a uniformly random time in the given range
+	 * @param min The minimum latency in milliseconds
+	 * @param max The maximum latency in milliseconds
+	 */
+	public SimulatedLocationProvider latency(long min, long max)
+	{
+		this.minLatency = min;
+		this.maxLatency = Math.max(min, max);
+		return this;
+	}
+
+	/**
+	 * Drop the given fraction of fixes
+	 */
+	public SimulatedLocationProvider dropouts(double rate)
+	{
+		this.dropoutRate = rate;
+		return this;
+	}
+
+	/**
+	 * Fail the given fraction of requests as if the connection to the location service failed
+	 */
+	public SimulatedLocationProvider connectionFailures(double rate)
+	{
+		this.failureRate = rate;
+		return this;
+	}
+
+	/**
+	 * Seed the random source used for latency, dropouts and failures
+	 */
+	public SimulatedLocationProvider seed(long seed)
+	{
+		this.random = new Random(seed);
+		return this;
+	}
+
+	/**
+	 * @return The number of fixes delivered to listeners
+	 */
+	public long getDeliveredCount()
+	{
+		return deliveredCount.get();
+	}
+
+	/**
+	 * @return The number of fixes dropped by injected dropouts
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return The number of requests failed by injected connection failures
+	 */
+	public long getFailedCount()
+	{
+		return failedCount.get();
+	}
+
+	/**
+	 * @return The number of requests currently running
+	 */
+	public int getRunningCount()
+	{
+		return runningRequests.size();
+	}
+
+	@Override
+	public void create(Context context)
+	{
+		// Nothing to connect to
+	}
+
+	@Override
+	public void destroy()
+	{
+		for (Object token : runningRequests.values())
+		{
+			clock.cancel(token);
+		}
+		runningRequests.clear();
+	}
+
+	@Override
+	public Location getLastKnownLocation(LocationProviderRequest request)
+	{
+		return lastLocation;
+	}
+
+	@Override
+	public String requestSingleLocationUpdate(final LocationProviderRequest request, final LocationListener listener)
+	{
+		final String requestId = UUID.randomUUID().toString();
+
+		if (request.useCache)
+		{
+			Tracing.begin("cache", requestId);
+			Location cachedLocation = lastLocation;
+			boolean valid = cachedLocation != null && clock.now() - cachedLocation.getTime() < request.cacheExpiry && cachedLocation.getAccuracy() < request.accuracy.value;
+			Tracing.end("cache", requestId);
+
+			if (valid)
+			{
+				Bearing.log(requestId, "SIMULATED: Got cached location: " + cachedLocation);
+				deliver(requestId, cachedLocation, listener);
+				return requestId;
+			}
+		}
+
+		if (failRequest(requestId, listener))
+		{
+			return requestId;
+		}
+
+		Tracing.beginAsync("request", requestId);
+		runningRequests.put(requestId, clock.schedule(new Runnable()
+		{
+			@Override public void run()
+			{
+				if (runningRequests.remove(requestId) == null)
+				{
+					return;
+				}
+				Tracing.endAsync("request", requestId);
+
+				if (roll(dropoutRate))
+				{
+					Bearing.log(requestId, "SIMULATED: Dropped location");
+					droppedCount.incrementAndGet();
+					return;
+				}
+
+				deliver(requestId, currentLocation(), listener);
+			}
+		}, nextLatency()));
+
+		return requestId;
+	}
+
+	@Override
+	public String requestRecurringLocationUpdates(final LocationProviderRequest request, final LocationListener listener)
+	{
+		final String requestId = UUID.randomUUID().toString();
+
+		if (failRequest(requestId, listener))
+		{
+			return requestId;
+		}
+
+		Runnable tick = new Runnable()
+		{
+			private long lastReportedTimestamp = -1;
+			private Location lastReportedLocation;
+
+			@Override public void run()
+			{
+				Object next = clock.schedule(this, request.trackingRate);
+				if (runningRequests.replace(requestId, next) == null)
+				{
+					// Cancelled
+					clock.cancel(next);
+					return;
+				}
+
+				if (roll(dropoutRate))
+				{
+					Bearing.log(requestId, "SIMULATED: Dropped location");
+					droppedCount.incrementAndGet();
+					return;
+				}
+
+				clock.schedule(new Runnable()
+				{
+					@Override public void run()
+					{
+						if (runningRequests.containsKey(requestId))
+						{
+							report(currentLocation());
+						}
+					}
+				}, nextLatency());
+			}
+
+			private void report(Location location)
+			{
+				if (request.trackingFilter != null)
+				{
+					location = request.trackingFilter.filter(location);
+					if (location == null)
+					{
+						return;
+					}
+				}
+
+				long currentTimestamp = location.getTime();
+				if (lastReportedTimestamp == -1
+					|| currentTimestamp - lastReportedTimestamp > request.trackingFallback
+					|| (request.trackingDisplacement != -1 && !Geodesy.isWithin(location.getLatitude(), location.getLongitude(), lastReportedLocation.getLatitude(), lastReportedLocation.getLongitude(), request.trackingDisplacement)))
+				{
+					lastReportedLocation = location;
+					lastReportedTimestamp = currentTimestamp;
+					deliver(requestId, location, listener);
+				}
+			}
+		};
+
+		Tracing.beginAsync("request", requestId);
+		runningRequests.put(requestId, clock.schedule(tick, nextLatency()));
+		return requestId;
+	}
+
+	@Override
+	public void cancelUpdates(String requestId)
+	{
+		Object token = runningRequests.remove(requestId);
+		if (token != null)
+		{
+			clock.cancel(token);
+			Tracing.endAsync("request", requestId);
+		}
+	}
+
+	/**
+	 * Get the position on the track at the current clock time
+	 */
+	private Location currentLocation()
+	{
+		long trackTime = (long)((clock.now() - startTime) * speed);
+		if (loop && track.getDuration() > 0)
+		{
+			trackTime %= track.getDuration();
+		}
+
+		int index = track.indexAt(trackTime);
+
+		Location location = new Location("simulated");
+		location.setLatitude(track.latitudeAt(trackTime));
+		location.setLongitude(track.longitudeAt(trackTime));
+		location.setTime(clock.now());
+
+		float accuracy = track.getAccuracy(index);
+		location.setAccuracy(Float.isNaN(accuracy) ? DEFAULT_ACCURACY : accuracy);
+
+		if (!Float.isNaN(track.getSpeed(index)))
+		{
+			location.setSpeed(track.getSpeed(index));
+		}
+
+		if (!Float.isNaN(track.getBearing(index)))
+		{
+			location.setBearing(track.getBearing(index));
+		}
+
+		return location;
+	}
+
+	private void deliver(String requestId, Location location, LocationListener listener)
+	{
+		lastLocation = location;
+		deliveredCount.incrementAndGet();
+
+		Tracing.begin("update", requestId);
+		try
+		{
+			if (listener != null)
+			{
+				listener.onUpdate(location);
+			}
+		}
+		finally
+		{
+			Tracing.end("update", requestId);
+		}
+	}
+
+	private boolean failRequest(final String requestId, final LocationListener listener)
+	{
+		if (!roll(failureRate))
+		{
+			return false;
+		}
+
+		Bearing.log(requestId, "SIMULATED: Connection failed");
+		failedCount.incrementAndGet();
+
+		clock.schedule(new Runnable()
+		{
+			@Override public void run()
+			{
+				if (listener != null)
+				{
+					listener.onFailure();
+				}
+			}
+		}, nextLatency());
+
+		return true;
+	}
+
+	private long nextLatency()
+	{
+		if (maxLatency == minLatency)
+		{
+			return minLatency;
+		}
+
+		synchronized (this)
+		{
+			return minLatency + (long)(random.nextDouble() * (maxLatency - minLatency));
+		}
+	}
+
+	private boolean roll(double rate)
+	{
+		if (rate <= 0)
+		{
+			return false;
+		}
+
+		synchronized (this)
+		{
+			return random.nextDouble() < rate;
+		}
+	}
+}
@@ -0,0 +1,373 @@
+package net.atomcode.bearing.location.provider;
+
+import net.atomcode.bearing.location.track.TrackReader;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Recorded track replayed by a {@link SimulatedLocationProvider}.
+ *
+ * Samples are held in primitive arrays with times relative to the first sample, and the
+ * position at any point in time is interpolated between the surrounding samples.
+ */
+public class SimulatedTrack
+{
+	private double[] latitudes = new double[64];
+	private double[] longitudes = new double[64];
+	private long[] times = new long[64];
+	private float[] accuracies = new float[64];
+	private float[] speeds = new float[64];
+	private float[] bearings = new float[64];
+	private int size = 0;
+
+	SimulatedTrack() {}
+
+	/**
+	 * Load a track from CSV with the columns {@code time,latitude,longitude[,accuracy[,speed[,bearing]]]},
+	 * time being in milliseconds. Blank lines, lines starting with # and a header line are skipped.
+	 */
+	public static SimulatedTrack fromCsv(Reader reader) throws IOException
+	{
+		SimulatedTrack track = new SimulatedTrack();
+		BufferedReader lines = new BufferedReader(reader);
+
+		String line;
+		int lineNumber = 0;
+		while ((line = lines.readLine()) != null)
+		{
+			lineNumber++;
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#"))
+			{
+				continue;
+			}
+
+			String[] columns = line.split(",");
+			try
+			{
+				if (columns.length < 3)
+				{
+					throw new NumberFormatException();
+				}
+
+				track.add(
+					Double.parseDouble(columns[1].trim()),
+					Double.parseDouble(columns[2].trim()),
+					Long.parseLong(columns[0].trim()),
+					columns.length > 3 ? parseFloat(columns[3]) : Float.NaN,
+					columns.length > 4 ? parseFloat(columns[4]) : Float.NaN,
+					columns.length > 5 ? parseFloat(columns[5]) : Float.NaN
+				);
+			}
+			catch (NumberFormatException ex)
+			{
+				if (track.size == 0 && lineNumber == 1)
+				{
+					// Header
+					continue;
+				}
+				throw new IOException("Invalid track sample on line " + lineNumber + ": " + line);
+			}
+		}
+
+		return track.normalise();
+	}
+
+	/**
+	 * Load the track points of a GPX file. Points without a time are spaced one second apart.
+	 * External entities and DTDs are never loaded, so a file cannot read other files or the
+	 * network through them.
+	 */
+	public static SimulatedTrack fromGpx(InputStream stream) throws IOException
+	{
+		final SimulatedTrack track = new SimulatedTrack();
+
+		try
+		{
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+			factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+
+			factory.newSAXParser().parse(stream, new DefaultHandler()
+			{
+				private final StringBuilder text = new StringBuilder();
+				private boolean inPoint = false;
+				private double latitude;
+				private double longitude;
+				private long time;
+
+				@Override public InputSource resolveEntity(String publicId, String systemId)
+				{
+					// Not all parsers have a feature for the external DTD, so resolve it and any entity to nothing
+					return new InputSource(new StringReader(""));
+				}
+
+				@Override public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+				{
+					String name = name(localName, qName);
+					text.setLength(0);
+
+					if ("trkpt".equals(name) || "rtept".equals(name))
+					{
+						inPoint = true;
+						latitude = Double.parseDouble(attributes.getValue("lat"));
+						longitude = Double.parseDouble(attributes.getValue("lon"));
+						time = track.size * 1000L;
+					}
+				}
+
+				@Override public void characters(char[] ch, int start, int length)
+				{
+					text.append(ch, start, length);
+				}
+
+				@Override public void endElement(String uri, String localName, String qName) throws SAXException
+				{
+					String name = name(localName, qName);
+
+					if (inPoint && "time".equals(name))
+					{
+						try
+						{
+							time = parseIsoTime(text.toString().trim());
+						}
+						catch (ParseException ex)
+						{
+							throw new SAXException("Invalid GPX time: " + text);
+						}
+					}
+					else if ("trkpt".equals(name) || "rtept".equals(name))
+					{
+						inPoint = false;
+						track.add(latitude, longitude, time, Float.NaN, Float.NaN, Float.NaN);
+					}
+				}
+
+				private String name(String localName, String qName)
+				{
+					String name = localName == null || localName.length() == 0 ? qName : localName;
+					int prefix = name.indexOf(':');
+					return prefix == -1 ? name : name.substring(prefix + 1);
+				}
+			});
+		}
+		catch (SAXException | ParserConfigurationException ex)
+		{
+			throw new IOException("Unable to parse GPX: " + ex.getMessage());
+		}
+
+		return track.normalise();
+	}
+
+	/**
+	 * Load all samples of a Bearing track file
+	 */
+	public static SimulatedTrack fromTrackFile(TrackReader reader)
+	{
+		SimulatedTrack track = new SimulatedTrack();
+		TrackReader.Cursor cursor = reader.cursor();
+		while (cursor.moveToNext())
+		{
+			track.add(cursor.getLatitude(), cursor.getLongitude(), cursor.getTime(), cursor.getAccuracy(), cursor.getSpeed(), cursor.getBearing());
+		}
+		return track.normalise();
+	}
+
+	/**
+	 * @return The number of samples in the track
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The time between the first and last samples in milliseconds
+	 */
+	public long getDuration()
+	{
+		return size == 0 ? 0 : times[size - 1];
+	}
+
+	/**
+	 * Get the index of the last sample at or before the given track time
+	 */
+	int indexAt(long time)
+	{
+		int low = 0;
+		int high = size - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (times[mid] <= time)
+			{
+				low = mid;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Interpolate the latitude at the given track time
+	 */
+	double latitudeAt(long time)
+	{
+		int index = indexAt(time);
+		return interpolate(latitudes, index, time);
+	}
+
+	/**
+	 * Interpolate the longitude at the given track time
+	 */
+	double longitudeAt(long time)
+	{
+		int index = indexAt(time);
+		return interpolate(longitudes, index, time);
+	}
+
+	float getAccuracy(int index)
+	{
+		return accuracies[index];
+	}
+
+	float getSpeed(int index)
+	{
+		return speeds[index];
+	}
+
+	float getBearing(int index)
+	{
+		return bearings[index];
+	}
+
+	private double interpolate(double[] values, int index, long time)
+	{
+		if (index >= size - 1 || time <= times[index])
+		{
+			return values[index];
+		}
+
+		double fraction = (double)(time - times[index]) / (times[index + 1] - times[index]);
+		return values[index] + (values[index + 1] - values[index]) * fraction;
+	}
+
+	void add(double latitude, double longitude, long time, float accuracy, float speed, float bearing)
+	{
+		if (size == times.length)
+		{
+			int capacity = size * 2;
+			latitudes = grow(latitudes, capacity);
+			longitudes = grow(longitudes, capacity);
+			times = grow(times, capacity);
+			accuracies = grow(accuracies, capacity);
+			speeds = grow(speeds, capacity);
+			bearings = grow(bearings, capacity);
+		}
+
+		latitudes[size] = latitude;
+		longitudes[size] = longitude;
+		times[size] = time;
+		accuracies[size] = accuracy;
+		speeds[size] = speed;
+		bearings[size] = bearing;
+		size++;
+	}
+
+	/**
+	 * Make times relative to the first sample
+	 */
+	private SimulatedTrack normalise()
+	{
+		if (size == 0)
+		{
+			throw new IllegalArgumentException("Track contains no samples");
+		}
+
+		long start = times[0];
+		for (int index = 0; index < size; index++)
+		{
+			times[index] -= start;
+			if (index > 0 && times[index] < times[index - 1])
+			{
+				throw new IllegalArgumentException("Track samples must be in time order");
+			}
+		}
+		return this;
+	}
+
+	private static float parseFloat(String value)
+	{
+		value = value.trim();
+		return value.length() == 0 ? Float.NaN : Float.parseFloat(value);
+	}
+
+	private static long parseIsoTime(String value) throws ParseException
+	{
+		String pattern = value.indexOf('.') != -1 ? "yyyy-MM-dd'T'HH:mm:ss.SSS" : "yyyy-MM-dd'T'HH:mm:ss";
+		long offset = 0;
+
+		if (value.endsWith("Z"))
+		{
+			value = value.substring(0, value.length() - 1);
+		}
+		else if (value.length() > 6 && (value.charAt(value.length() - 6) == '+' || value.charAt(value.length() - 6) == '-'))
+		{
+			String zone = value.substring(value.length() - 6);
+			int sign = zone.charAt(0) == '-' ? -1 : 1;
+			offset = sign * (Integer.parseInt(zone.substring(1, 3)) * 60 + Integer.parseInt(zone.substring(4, 6))) * 60 * 1000L;
+			value = value.substring(0, value.length() - 6);
+		}
+
+		// Trim or pad fractional seconds to milliseconds
+		int fraction = value.indexOf('.');
+		if (fraction != -1)
+		{
+			value = (value + "000").substring(0, fraction + 4);
+		}
+
+		SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.parse(value).getTime() - offset;
+	}
+
+	private static double[] grow(double[] array, int capacity)
+	{
+		double[] grown = new double[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	private static long[] grow(long[] array, int capacity)
+	{
+		long[] grown = new long[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	private static float[] grow(float[] array, int capacity)
+	{
+		float[] grown = new float[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
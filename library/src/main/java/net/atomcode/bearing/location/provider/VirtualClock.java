@@ -0,0 +1,148 @@
+package net.atomcode.bearing.location.provider;
+
+import net.atomcode.bearing.location.SampleScheduler;
+
+import java.util.PriorityQueue;
+
+/**
+ * Manually advanced clock used to drive a {@link SimulatedLocationProvider} deterministically.
+ *
+ * Scheduled actions only run when the clock is advanced, on the advancing thread, in time
+ * order. Actions scheduled for the same time run in the order they were scheduled.
+ *
+ * Also schedules the samples of sparse tracking tasks in simulation, running each at its
+ * earliest time.
+ */
+public class VirtualClock implements SampleScheduler
+{
+	private final PriorityQueue<Event> events = new PriorityQueue<>();
+
+	private long now;
+	private long sequence = 0;
+
+	public VirtualClock()
+	{
+		this(0);
+	}
+
+	/**
+	 * @param start The initial time of the clock in milliseconds
+	 */
+	public VirtualClock(long start)
+	{
+		this.now = start;
+	}
+
+	/**
+	 * @return The current time of the clock in milliseconds
+	 */
+	public synchronized long now()
+	{
+		return now;
+	}
+
+	/**
+	 * Run the given action once the clock has advanced by the given delay
+	 * @return A token to cancel the action with
+	 */
+	public synchronized Object schedule(Runnable action, long delay)
+	{
+		Event event = new Event(now + Math.max(0, delay), sequence++, action);
+		events.add(event);
+		return event;
+	}
+
+	@Override public Object schedule(Runnable action, long delay, long flex)
+	{
+		return schedule(action, delay);
+	}
+
+	/**
+	 * Cancel an action that has not yet run
+	 * @param token The token returned when scheduling the action
+	 */
+	@Override public synchronized void cancel(Object token)
+	{
+		if (token instanceof Event)
+		{
+			((Event)token).cancelled = true;
+		}
+	}
+
+	/**
+	 * @return The number of scheduled actions that have not yet run
+	 */
+	public synchronized int pending()
+	{
+		int count = 0;
+		for (Event event : events)
+		{
+			if (!event.cancelled)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Advance the clock by the given time, running all actions that become due
+	 */
+	public void advance(long time)
+	{
+		runUntil(now() + time);
+	}
+
+	/**
+	 * Advance the clock to the given time, running all actions that become due, including any
+	 * scheduled by those actions
+	 */
+	public void runUntil(long time)
+	{
+		while (true)
+		{
+			Event event;
+			synchronized (this)
+			{
+				event = events.peek();
+				if (event == null || event.time > time)
+				{
+					now = Math.max(now, time);
+					return;
+				}
+
+				events.poll();
+				now = event.time;
+			}
+
+			if (!event.cancelled)
+			{
+				event.action.run();
+			}
+		}
+	}
+
+	private static class Event implements Comparable<Event>
+	{
+		final long time;
+		final long sequence;
+		final Runnable action;
+		volatile boolean cancelled = false;
+
+		Event(long time, long sequence, Runnable action)
+		{
+			this.time = time;
+			this.sequence = sequence;
+			this.action = action;
+		}
+
+		@Override public int compareTo(Event other)
+		{
+			if (time != other.time)
+			{
+				return time < other.time ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,368 @@
+package net.atomcode.bearing.location.stream;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.location.LocationListener;
+import net.atomcode.bearing.location.PeriodicLocationTask;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares the updates of one {@link PeriodicLocationTask} with any number of subscribers, each
+ * receiving only as many locations as it requests.
+ *
+ * The task is started on the main thread once the first subscriber subscribes, and cancelled
+ * there once the last one cancels. Updates arriving faster than a subscriber requests them are
+ * queued for that subscriber according to its {@link Overflow} strategy, so a slow subscriber
+ * never holds up the delivery thread or the other subscribers.
+ */
+public class LocationPublisher
+{
+	/**
+	 * What to do with updates a subscriber has not yet requested
+	 */
+	public enum Overflow
+	{
+		/**
+		 * Queue up to the set capacity, dropping the oldest queued update when full
+		 */
+		DROP_OLDEST,
+		/**
+		 * Only keep the most recent update
+		 */
+		LATEST,
+		/**
+		 * Queue every update
+		 */
+		BUFFER
+	}
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final PeriodicLocationTask task;
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Whether the task was started for the current subscribers. Only accessed on the main thread.
+	 */
+	private boolean started = false;
+
+	/**
+	 * Starts or cancels the task to match the subscribers, on the main thread like all other
+	 * calls to the provider
+	 */
+	private final Runnable updateTask = new Runnable()
+	{
+		@Override public void run()
+		{
+			boolean subscribed = !subscriptions.isEmpty();
+			if (subscribed && !started)
+			{
+				started = true;
+				task.start();
+			}
+			else if (!subscribed && started)
+			{
+				started = false;
+				task.cancel();
+			}
+		}
+	};
+
+	/**
+	 * Create a publisher for the given task. The task's listener is replaced by the publisher.
+	 */
+	public LocationPublisher(PeriodicLocationTask task)
+	{
+		this.task = task;
+		task.listen(new LocationListener()
+		{
+			@Override public void onUpdate(Location location)
+			{
+				for (Subscription subscription : subscriptions)
+				{
+					subscription.offer(location);
+				}
+			}
+
+			@Override public void onFailure()
+			{
+				fail(new IllegalStateException("Location updates failed"));
+			}
+
+			@Override public void onTimeout()
+			{
+				fail(new IllegalStateException("Location updates timed out"));
+			}
+		});
+	}
+
+	/**
+	 * Subscribe with the latest only strategy, delivering on Bearing's worker threads
+	 */
+	public void subscribe(LocationSubscriber subscriber)
+	{
+		subscribe(subscriber, Bearing.getExecutor(), Overflow.LATEST, 1);
+	}
+
+	/**
+	 * Subscribe to the updates of the task
+	 * @param subscriber The subscriber to deliver to
+	 * @param executor The executor to make all subscriber calls on
+	 * @param overflow What to do with updates that have not been requested yet
+	 * @param capacity The maximum number of queued updates for {@link Overflow#DROP_OLDEST}
+	 */
+	public void subscribe(LocationSubscriber subscriber, Executor executor, Overflow overflow, int capacity)
+	{
+		if (overflow == Overflow.DROP_OLDEST && capacity <= 0)
+		{
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+
+		Subscription subscription = new Subscription(subscriber, executor, overflow, overflow == Overflow.DROP_OLDEST ? capacity : DEFAULT_CAPACITY);
+
+		subscriptions.add(subscription);
+		handler.post(updateTask);
+		subscription.signal();
+	}
+
+	/**
+	 * Complete every subscriber once it has received its queued updates, which stops the task
+	 */
+	public void close()
+	{
+		for (Subscription subscription : subscriptions)
+		{
+			subscription.terminate(null);
+		}
+	}
+
+	/**
+	 * @return The number of current subscribers
+	 */
+	public int getSubscriberCount()
+	{
+		return subscriptions.size();
+	}
+
+	private void remove(Subscription subscription)
+	{
+		if (subscriptions.remove(subscription))
+		{
+			handler.post(updateTask);
+		}
+	}
+
+	private void fail(Throwable error)
+	{
+		for (Subscription subscription : subscriptions)
+		{
+			subscription.terminate(error);
+		}
+	}
+
+	/**
+	 * Per subscriber queue, demand and serial delivery
+	 */
+	private class Subscription implements LocationSubscription, Runnable
+	{
+		private final LocationSubscriber subscriber;
+		private final Executor executor;
+		private final Overflow overflow;
+		private final int capacity;
+
+		private final AtomicInteger work = new AtomicInteger();
+
+		/*
+		 * Guarded by this
+		 */
+		private final ArrayDeque<Location> queue = new ArrayDeque<>();
+		private long requested = 0;
+		private boolean cancelled = false;
+		private Throwable error;
+		private boolean terminated = false;
+
+		/*
+		 * Only accessed on the drain
+		 */
+		private boolean subscribed = false;
+		private boolean done = false;
+
+		Subscription(LocationSubscriber subscriber, Executor executor, Overflow overflow, int capacity)
+		{
+			this.subscriber = subscriber;
+			this.executor = executor;
+			this.overflow = overflow;
+			this.capacity = capacity;
+		}
+
+		@Override public void request(long count)
+		{
+			if (count <= 0)
+			{
+				terminate(new IllegalArgumentException("Request count must be positive"));
+				return;
+			}
+
+			synchronized (this)
+			{
+				requested += count;
+				if (requested < 0)
+				{
+					requested = Long.MAX_VALUE;
+				}
+			}
+			signal();
+		}
+
+		@Override public void cancel()
+		{
+			synchronized (this)
+			{
+				cancelled = true;
+				queue.clear();
+			}
+			remove(this);
+		}
+
+		void offer(Location location)
+		{
+			synchronized (this)
+			{
+				if (cancelled || terminated)
+				{
+					return;
+				}
+
+				if (overflow == Overflow.LATEST)
+				{
+					queue.clear();
+				}
+				else if (overflow == Overflow.DROP_OLDEST && queue.size() >= capacity)
+				{
+					queue.poll();
+				}
+				queue.add(location);
+			}
+			signal();
+		}
+
+		void terminate(Throwable error)
+		{
+			synchronized (this)
+			{
+				if (terminated || cancelled)
+				{
+					return;
+				}
+				this.error = error;
+				terminated = true;
+			}
+			remove(this);
+			signal();
+		}
+
+		void signal()
+		{
+			if (work.getAndIncrement() == 0)
+			{
+				try
+				{
+					executor.execute(this);
+				}
+				catch (RejectedExecutionException ex)
+				{
+					// e.g. after Bearing.shutdown(), so nothing more can be delivered
+					work.set(0);
+					synchronized (this)
+					{
+						cancelled = true;
+						queue.clear();
+					}
+					remove(this);
+				}
+			}
+		}
+
+		/**
+		 * Drain the queue up to the requested count. Only ever runs on one thread at a time.
+		 */
+		@Override public void run()
+		{
+			int missed = 1;
+			do
+			{
+				if (!subscribed)
+				{
+					subscribed = true;
+					subscriber.onSubscribe(this);
+				}
+
+				while (!done)
+				{
+					Location next;
+					Throwable failure = null;
+					boolean complete = false;
+
+					synchronized (this)
+					{
+						if (cancelled)
+						{
+							done = true;
+							break;
+						}
+
+						if (requested > 0 && !queue.isEmpty())
+						{
+							next = queue.poll();
+							if (requested != Long.MAX_VALUE)
+							{
+								requested--;
+							}
+						}
+						else
+						{
+							next = null;
+							if (terminated && (queue.isEmpty() || error != null))
+							{
+								failure = error;
+								complete = error == null;
+							}
+						}
+					}
+
+					if (next != null)
+					{
+						subscriber.onNext(next);
+					}
+					else
+					{
+						if (failure != null)
+						{
+							done = true;
+							subscriber.onError(failure);
+						}
+						else if (complete)
+						{
+							done = true;
+							subscriber.onComplete();
+						}
+						break;
+					}
+				}
+
+				missed = work.addAndGet(-missed);
+			}
+			while (missed != 0);
+		}
+	}
+}
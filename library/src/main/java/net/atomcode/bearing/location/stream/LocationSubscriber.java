@@ -0,0 +1,34 @@
+package net.atomcode.bearing.location.stream;
+
+import android.location.Location;
+
+/**
+ * Receiver of a stream of locations from a {@link LocationPublisher}, following the semantics
+ * of {@code java.util.concurrent.Flow.Subscriber}.
+ *
+ * Calls are made one at a time, in order, on the executor the subscriber was subscribed with.
+ * No locations are delivered until they are requested through the subscription.
+ */
+public interface LocationSubscriber
+{
+	/**
+	 * Called once before any other call
+	 * @param subscription The subscription to request locations or cancel with
+	 */
+	public void onSubscribe(LocationSubscription subscription);
+
+	/**
+	 * The next requested location
+	 */
+	public void onNext(Location location);
+
+	/**
+	 * The stream failed, no further calls will be made
+	 */
+	public void onError(Throwable error);
+
+	/**
+	 * The stream completed, no further calls will be made
+	 */
+	public void onComplete();
+}
@@ -0,0 +1,19 @@
+package net.atomcode.bearing.location.stream;
+
+/**
+ * Link between a {@link LocationPublisher} and one {@link LocationSubscriber}, following the
+ * semantics of {@code java.util.concurrent.Flow.Subscription}
+ */
+public interface LocationSubscription
+{
+	/**
+	 * Request up to the given number of further locations
+	 * @param count The number of locations, must be positive
+	 */
+	public void request(long count);
+
+	/**
+	 * Stop receiving locations. Locations already queued are discarded.
+	 */
+	public void cancel();
+}
@@ -0,0 +1,302 @@
+package net.atomcode.bearing.location.track;
+
+import android.location.Location;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Fixed capacity ring of location samples held in primitive arrays.
+ *
+ * Samples are appended without allocation and read back through a reusable {@link Cursor}.
+ * Once the ring is full the oldest sample is overwritten, or moved to a memory mapped
+ * {@link TrackSpillFile} if one has been attached with {@link #spill(File)}, so the whole
+ * session stays readable without growing the heap.
+ *
+ * Missing accuracy, speed and bearing values are stored as {@link Float#NaN}.
+ *
+ * The buffer is not thread safe and should be used from the thread delivering updates.
+ */
+public class TrackBuffer
+{
+	private final int capacity;
+
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final long[] times;
+	private final float[] accuracies;
+	private final float[] speeds;
+	private final float[] bearings;
+
+	/**
+	 * Index of the oldest sample in the ring
+	 */
+	private int head = 0;
+	private int size = 0;
+
+	private TrackSpillFile spillFile;
+
+	public TrackBuffer(int capacity)
+	{
+		if (capacity <= 0)
+		{
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+
+		this.capacity = capacity;
+
+		latitudes = new double[capacity];
+		longitudes = new double[capacity];
+		times = new long[capacity];
+		accuracies = new float[capacity];
+		speeds = new float[capacity];
+		bearings = new float[capacity];
+	}
+
+	/**
+	 * Move samples evicted from the ring into a memory mapped file instead of discarding them.
+	 * Any existing content of the file is replaced.
+	 * @param file The file to spill into
+	 */
+	public TrackBuffer spill(File file) throws IOException
+	{
+		if (spillFile != null)
+		{
+			spillFile.close();
+		}
+
+		spillFile = new TrackSpillFile(file);
+		return this;
+	}
+
+	/**
+	 * Append the given location to the buffer
+	 */
+	public void append(Location location)
+	{
+		append(
+			location.getLatitude(),
+			location.getLongitude(),
+			location.getTime(),
+			location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+			location.hasSpeed() ? location.getSpeed() : Float.NaN,
+			location.hasBearing() ? location.getBearing() : Float.NaN
+		);
+	}
+
+	/**
+	 * Append a sample to the buffer, evicting the oldest sample if the buffer is full
+	 */
+	public void append(double latitude, double longitude, long time, float accuracy, float speed, float bearing)
+	{
+		int index;
+		if (size < capacity)
+		{
+			index = (head + size) % capacity;
+			size++;
+		}
+		else
+		{
+			index = head;
+			if (spillFile != null)
+			{
+				spillFile.append(latitudes[index], longitudes[index], times[index], accuracies[index], speeds[index], bearings[index]);
+			}
+			head = (head + 1) % capacity;
+		}
+
+		latitudes[index] = latitude;
+		longitudes[index] = longitude;
+		times[index] = time;
+		accuracies[index] = accuracy;
+		speeds[index] = speed;
+		bearings[index] = bearing;
+	}
+
+	/**
+	 * Remove all samples from the ring. Spilled samples are kept.
+	 */
+	public void clear()
+	{
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * Release the spill file, if any. The ring remains usable.
+	 */
+	public void close() throws IOException
+	{
+		if (spillFile != null)
+		{
+			spillFile.close();
+			spillFile = null;
+		}
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @return The number of samples currently held in the ring
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The number of samples that have been moved into the spill file
+	 */
+	public long getSpilledCount()
+	{
+		return spillFile == null ? 0 : spillFile.size();
+	}
+
+	/*
+	 * Random access to the ring, index 0 is the oldest sample
+	 */
+
+	public double getLatitude(int index)
+	{
+		return latitudes[slot(index)];
+	}
+
+	public double getLongitude(int index)
+	{
+		return longitudes[slot(index)];
+	}
+
+	public long getTime(int index)
+	{
+		return times[slot(index)];
+	}
+
+	public float getAccuracy(int index)
+	{
+		return accuracies[slot(index)];
+	}
+
+	public float getSpeed(int index)
+	{
+		return speeds[slot(index)];
+	}
+
+	public float getBearing(int index)
+	{
+		return bearings[slot(index)];
+	}
+
+	/**
+	 * Create a cursor over the whole session, spilled samples first. The cursor can be
+	 * {@link Cursor#reset() reset} and reused to iterate without allocating.
+	 */
+	public Cursor cursor()
+	{
+		return new Cursor();
+	}
+
+	private int slot(int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index " + index + " out of range for size " + size);
+		}
+		return (head + index) % capacity;
+	}
+
+	/**
+	 * Forward only cursor over the samples in a {@link TrackBuffer}
+	 */
+	public class Cursor
+	{
+		private long position = -1;
+
+		private double latitude;
+		private double longitude;
+		private long time;
+		private float accuracy;
+		private float speed;
+		private float bearing;
+
+		Cursor() {}
+
+		/**
+		 * Move back to before the first sample
+		 */
+		public Cursor reset()
+		{
+			position = -1;
+			return this;
+		}
+
+		/**
+		 * Move to the next sample
+		 * @return {@code false} if there are no more samples
+		 */
+		public boolean moveToNext()
+		{
+			long spilled = getSpilledCount();
+			if (position + 1 >= spilled + size)
+			{
+				return false;
+			}
+
+			position++;
+
+			if (position < spilled)
+			{
+				latitude = spillFile.getLatitude(position);
+				longitude = spillFile.getLongitude(position);
+				time = spillFile.getTime(position);
+				accuracy = spillFile.getAccuracy(position);
+				speed = spillFile.getSpeed(position);
+				bearing = spillFile.getBearing(position);
+			}
+			else
+			{
+				int slot = (head + (int)(position - spilled)) % capacity;
+				latitude = latitudes[slot];
+				longitude = longitudes[slot];
+				time = times[slot];
+				accuracy = accuracies[slot];
+				speed = speeds[slot];
+				bearing = bearings[slot];
+			}
+
+			return true;
+		}
+
+		public double getLatitude()
+		{
+			return latitude;
+		}
+
+		public double getLongitude()
+		{
+			return longitude;
+		}
+
+		public long getTime()
+		{
+			return time;
+		}
+
+		public float getAccuracy()
+		{
+			return accuracy;
+		}
+
+		public float getSpeed()
+		{
+			return speed;
+		}
+
+		public float getBearing()
+		{
+			return bearing;
+		}
+	}
+}
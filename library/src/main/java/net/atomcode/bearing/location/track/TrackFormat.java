@@ -0,0 +1,115 @@
+package net.atomcode.bearing.location.track;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Constants and encoding helpers for the Bearing track file format.
+ *
+ * Layout
+ * =====
+ * A file starts with an 8 byte header: the magic {@code BTRK} and a version short, followed
+ * by a sequence of self contained blocks. Each block is
+ *
+ *   payload length (int), record count (int), first time (long), last time (long), CRC32 of payload (int)
+ *
+ * followed by the payload. Within a block each record is stored as the difference from the
+ * previous record (the first record from zero), as zigzag varints:
+ *
+ *   latitude (1e-7 degrees), longitude (1e-7 degrees), time (ms)
+ *
+ * followed by unsigned varints of accuracy (decimetres), speed (cm/s) and bearing (0.1 degrees),
+ * each offset by one so that zero marks a missing value.
+ *
+ * Blocks are written whole and checksummed, so a torn write after a crash only ever loses the
+ * last, partially written, block.
+ */
+final class TrackFormat
+{
+	static final int MAGIC = 0x4254524B; // BTRK
+	static final short VERSION = 1;
+
+	static final int FILE_HEADER_SIZE = 8;
+	static final int BLOCK_HEADER_SIZE = 28;
+
+	/**
+	 * Worst case encoded size of a single record
+	 */
+	static final int MAX_RECORD_SIZE = 3 * 10 + 3 * 5;
+
+	/**
+	 * Largest quantised value, so each fits the 5 bytes allowed for it above
+	 */
+	private static final long MAX_QUANTISED = Integer.MAX_VALUE;
+
+	private TrackFormat() {}
+
+	static long toE7(double degrees)
+	{
+		return Math.round(degrees * 1e7);
+	}
+
+	static double fromE7(long value)
+	{
+		return value / 1e7;
+	}
+
+	static long quantise(float value, float scale)
+	{
+		if (Float.isNaN(value) || value < 0)
+		{
+			return 0;
+		}
+		// Rounded as a double, so huge and infinite values clamp rather than overflow
+		return Math.min(Math.round((double)value * scale), MAX_QUANTISED - 1) + 1;
+	}
+
+	static float dequantise(long value, float scale)
+	{
+		return value == 0 ? Float.NaN : (value - 1) / scale;
+	}
+
+	static void writeVarLong(ByteBuffer buffer, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte)value);
+	}
+
+	static void writeSignedVarLong(ByteBuffer buffer, long value)
+	{
+		writeVarLong(buffer, (value << 1) ^ (value >> 63));
+	}
+
+	static long readVarLong(ByteBuffer buffer)
+	{
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			b = buffer.get();
+			value |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	static long readSignedVarLong(ByteBuffer buffer)
+	{
+		long value = readVarLong(buffer);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static int checksum(byte[] data, int offset, int length)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		return (int)crc.getValue();
+	}
+}
@@ -0,0 +1,329 @@
+package net.atomcode.bearing.location.track;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a Bearing track file written by {@link TrackWriter}.
+ *
+ * The file is memory mapped and its block headers indexed on open, so seeking to a point in
+ * time is a binary search over the blocks followed by decoding at most one block. The reader
+ * sees the file as it was when opened, and stops at the first incomplete or corrupt block.
+ */
+public class TrackReader implements Closeable
+{
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+
+	private int blockCount;
+	private int[] blockOffsets;
+	private int[] blockCounts;
+	private long[] blockFirstTimes;
+	private long[] blockLastTimes;
+
+	private long size;
+	private int validLength;
+
+	public TrackReader(File file) throws IOException
+	{
+		this.file = new RandomAccessFile(file, "r");
+
+		try
+		{
+			FileChannel channel = this.file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Track file too large: " + channel.size());
+			}
+
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.limit() < TrackFormat.FILE_HEADER_SIZE || buffer.getInt(0) != TrackFormat.MAGIC)
+			{
+				throw new IOException("Not a Bearing track file: " + file);
+			}
+
+			if (buffer.getShort(4) > TrackFormat.VERSION)
+			{
+				throw new IOException("Unsupported track file version " + buffer.getShort(4));
+			}
+
+			index();
+		}
+		catch (IOException ex)
+		{
+			this.file.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Get the length of the intact part of the given track file
+	 */
+	static long validLength(File file) throws IOException
+	{
+		TrackReader reader = new TrackReader(file);
+		try
+		{
+			return reader.validLength;
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return The number of samples in the file
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return The time of the first sample, or -1 if the file is empty
+	 */
+	public long getStartTime()
+	{
+		return blockCount == 0 ? -1 : blockFirstTimes[0];
+	}
+
+	/**
+	 * @return The time of the last sample, or -1 if the file is empty
+	 */
+	public long getEndTime()
+	{
+		return blockCount == 0 ? -1 : blockLastTimes[blockCount - 1];
+	}
+
+	/**
+	 * Create a new cursor positioned before the first sample
+	 */
+	public Cursor cursor()
+	{
+		return new Cursor();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+
+	private void index()
+	{
+		int capacity = 16;
+		blockOffsets = new int[capacity];
+		blockCounts = new int[capacity];
+		blockFirstTimes = new long[capacity];
+		blockLastTimes = new long[capacity];
+
+		byte[] scratch = new byte[0];
+		int offset = TrackFormat.FILE_HEADER_SIZE;
+		int limit = buffer.limit();
+
+		while (offset + TrackFormat.BLOCK_HEADER_SIZE <= limit)
+		{
+			int payloadLength = buffer.getInt(offset);
+			int count = buffer.getInt(offset + 4);
+
+			if (payloadLength <= 0 || count <= 0 || payloadLength > limit - offset - TrackFormat.BLOCK_HEADER_SIZE)
+			{
+				break;
+			}
+
+			if (scratch.length < payloadLength)
+			{
+				scratch = new byte[payloadLength];
+			}
+
+			ByteBuffer payload = buffer.duplicate();
+			payload.position(offset + TrackFormat.BLOCK_HEADER_SIZE);
+			payload.get(scratch, 0, payloadLength);
+
+			if (TrackFormat.checksum(scratch, 0, payloadLength) != buffer.getInt(offset + 24))
+			{
+				break;
+			}
+
+			if (blockCount == capacity)
+			{
+				capacity *= 2;
+				blockOffsets = grow(blockOffsets, capacity);
+				blockCounts = grow(blockCounts, capacity);
+				blockFirstTimes = grow(blockFirstTimes, capacity);
+				blockLastTimes = grow(blockLastTimes, capacity);
+			}
+
+			blockOffsets[blockCount] = offset;
+			blockCounts[blockCount] = count;
+			blockFirstTimes[blockCount] = buffer.getLong(offset + 8);
+			blockLastTimes[blockCount] = buffer.getLong(offset + 16);
+			blockCount++;
+
+			size += count;
+			offset += TrackFormat.BLOCK_HEADER_SIZE + payloadLength;
+		}
+
+		validLength = offset;
+	}
+
+	private static int[] grow(int[] array, int capacity)
+	{
+		int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	private static long[] grow(long[] array, int capacity)
+	{
+		long[] grown = new long[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	/**
+	 * Forward only cursor over the samples of a track file. Reading does not allocate.
+	 */
+	public class Cursor
+	{
+		private final ByteBuffer data = buffer.duplicate();
+
+		private int block = -1;
+		private int remaining = 0;
+
+		private long rawLatitude;
+		private long rawLongitude;
+		private long time;
+		private float accuracy;
+		private float speed;
+		private float bearing;
+
+		Cursor() {}
+
+		/**
+		 * Move back to before the first sample
+		 */
+		public Cursor reset()
+		{
+			block = -1;
+			remaining = 0;
+			return this;
+		}
+
+		/**
+		 * Move to the first sample at or after the given time
+		 * @return {@code false} if there is no such sample, the cursor is then exhausted
+		 */
+		public boolean seek(long time)
+		{
+			int low = 0;
+			int high = blockCount - 1;
+			int found = blockCount;
+
+			while (low <= high)
+			{
+				int mid = (low + high) >>> 1;
+				if (blockLastTimes[mid] >= time)
+				{
+					found = mid;
+					high = mid - 1;
+				}
+				else
+				{
+					low = mid + 1;
+				}
+			}
+
+			if (found == blockCount)
+			{
+				block = blockCount;
+				remaining = 0;
+				return false;
+			}
+
+			enterBlock(found);
+			while (moveToNext())
+			{
+				if (this.time >= time)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Move to the next sample
+		 * @return {@code false} if there are no more samples
+		 */
+		public boolean moveToNext()
+		{
+			if (remaining == 0)
+			{
+				if (block + 1 >= blockCount)
+				{
+					return false;
+				}
+				enterBlock(block + 1);
+			}
+
+			rawLatitude += TrackFormat.readSignedVarLong(data);
+			rawLongitude += TrackFormat.readSignedVarLong(data);
+			time += TrackFormat.readSignedVarLong(data);
+			accuracy = TrackFormat.dequantise(TrackFormat.readVarLong(data), 10f);
+			speed = TrackFormat.dequantise(TrackFormat.readVarLong(data), 100f);
+			bearing = TrackFormat.dequantise(TrackFormat.readVarLong(data), 10f);
+			remaining--;
+
+			return true;
+		}
+
+		public double getLatitude()
+		{
+			return TrackFormat.fromE7(rawLatitude);
+		}
+
+		public double getLongitude()
+		{
+			return TrackFormat.fromE7(rawLongitude);
+		}
+
+		public long getTime()
+		{
+			return time;
+		}
+
+		public float getAccuracy()
+		{
+			return accuracy;
+		}
+
+		public float getSpeed()
+		{
+			return speed;
+		}
+
+		public float getBearing()
+		{
+			return bearing;
+		}
+
+		private void enterBlock(int index)
+		{
+			block = index;
+			remaining = blockCounts[index];
+			data.position(blockOffsets[index] + TrackFormat.BLOCK_HEADER_SIZE);
+
+			rawLatitude = 0;
+			rawLongitude = 0;
+			time = 0;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package net.atomcode.bearing.location.track;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append only store of fixed size samples in a memory mapped file.
+ *
+ * The file is mapped in segments as it grows, so the data lives in the page cache
+ * rather than on the heap and only a segment mapping is allocated per
+ * {@link #SEGMENT_RECORDS} samples.
+ */
+class TrackSpillFile
+{
+	/**
+	 * lat (8), lng (8), time (8), accuracy (4), speed (4), bearing (4)
+	 */
+	static final int RECORD_SIZE = 36;
+
+	static final int SEGMENT_RECORDS = 32 * 1024;
+
+	private static final long SEGMENT_SIZE = (long)RECORD_SIZE * SEGMENT_RECORDS;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+	private long size = 0;
+
+	TrackSpillFile(File file) throws IOException
+	{
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		this.channel = this.file.getChannel();
+	}
+
+	void append(double latitude, double longitude, long time, float accuracy, float speed, float bearing)
+	{
+		int segmentIndex = (int)(size / SEGMENT_RECORDS);
+		if (segmentIndex == segments.size())
+		{
+			try
+			{
+				segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segmentIndex * SEGMENT_SIZE, SEGMENT_SIZE));
+			}
+			catch (IOException ex)
+			{
+				Log.w("Bearing", "Unable to grow track spill file, dropping sample", ex);
+				return;
+			}
+		}
+
+		MappedByteBuffer segment = segments.get(segmentIndex);
+		int offset = offset(size);
+		segment.putDouble(offset, latitude);
+		segment.putDouble(offset + 8, longitude);
+		segment.putLong(offset + 16, time);
+		segment.putFloat(offset + 24, accuracy);
+		segment.putFloat(offset + 28, speed);
+		segment.putFloat(offset + 32, bearing);
+
+		size++;
+	}
+
+	long size()
+	{
+		return size;
+	}
+
+	double getLatitude(long index)
+	{
+		return segment(index).getDouble(offset(index));
+	}
+
+	double getLongitude(long index)
+	{
+		return segment(index).getDouble(offset(index) + 8);
+	}
+
+	long getTime(long index)
+	{
+		return segment(index).getLong(offset(index) + 16);
+	}
+
+	float getAccuracy(long index)
+	{
+		return segment(index).getFloat(offset(index) + 24);
+	}
+
+	float getSpeed(long index)
+	{
+		return segment(index).getFloat(offset(index) + 28);
+	}
+
+	float getBearing(long index)
+	{
+		return segment(index).getFloat(offset(index) + 32);
+	}
+
+	void close() throws IOException
+	{
+		segments.clear();
+		channel.close();
+		file.close();
+	}
+
+	private MappedByteBuffer segment(long index)
+	{
+		return segments.get((int)(index / SEGMENT_RECORDS));
+	}
+
+	private static int offset(long index)
+	{
+		return (int)(index % SEGMENT_RECORDS) * RECORD_SIZE;
+	}
+}
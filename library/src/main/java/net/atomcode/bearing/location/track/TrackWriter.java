@@ -0,0 +1,279 @@
+package net.atomcode.bearing.location.track;
+
+import android.location.Location;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams location samples into a Bearing track file, see {@link TrackFormat} for the layout.
+ *
+ * Samples are encoded into an in memory block on the calling thread, which is cheap enough to
+ * do on the delivery thread. Full blocks are handed to a background thread which writes them
+ * to the file and forces them to disk, so each block is a crash safe checkpoint.
+ *
+ * Opening an existing file appends to it, discarding any partially written block at its end.
+ *
+ * The writer is not thread safe and should be used from the thread delivering updates.
+ */
+public class TrackWriter implements Closeable
+{
+	private static final int DEFAULT_BLOCK_RECORDS = 256;
+	private static final long DEFAULT_CHECKPOINT_INTERVAL = 5 * 60 * 1000; // 5 mins of samples
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final ExecutorService executor;
+
+	private int blockRecords = DEFAULT_BLOCK_RECORDS;
+	private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+	private ByteBuffer block;
+	private int count;
+	private long firstTime;
+	private long lastTime;
+	private long previousLatitude;
+	private long previousLongitude;
+	private long previousTime;
+
+	private volatile IOException error;
+	private volatile boolean closed = false;
+
+	public TrackWriter(File file) throws IOException
+	{
+		long validLength = file.exists() && file.length() > 0 ? TrackReader.validLength(file) : 0;
+
+		this.file = new RandomAccessFile(file, "rw");
+		this.channel = this.file.getChannel();
+
+		if (validLength == 0)
+		{
+			ByteBuffer header = ByteBuffer.allocate(TrackFormat.FILE_HEADER_SIZE);
+			header.putInt(TrackFormat.MAGIC);
+			header.putShort(TrackFormat.VERSION);
+			header.putShort((short)0);
+			header.flip();
+
+			channel.truncate(0);
+			channel.position(0);
+			while (header.hasRemaining())
+			{
+				channel.write(header);
+			}
+		}
+		else
+		{
+			channel.truncate(validLength);
+			channel.position(validLength);
+		}
+
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Bearing-TrackWriter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Set the maximum number of samples per block. Smaller blocks checkpoint more often at the
+	 * cost of a slightly larger file.
+	 */
+	public TrackWriter blockSize(int records)
+	{
+		if (records <= 0)
+		{
+			throw new IllegalArgumentException("Block size must be positive");
+		}
+
+		// The current block was sized for the old block size
+		flush();
+		block = null;
+		this.blockRecords = records;
+		return this;
+	}
+
+	/**
+	 * Set the maximum span of sample time covered by a block before it is checkpointed to disk
+	 * @param interval The interval in milliseconds
+	 */
+	public TrackWriter checkpoint(long interval)
+	{
+		this.checkpointInterval = interval;
+		return this;
+	}
+
+	/**
+	 * Append the given location to the track
+	 */
+	public void write(Location location)
+	{
+		write(
+			location.getLatitude(),
+			location.getLongitude(),
+			location.getTime(),
+			location.hasAccuracy() ? location.getAccuracy() : Float.NaN,
+			location.hasSpeed() ? location.getSpeed() : Float.NaN,
+			location.hasBearing() ? location.getBearing() : Float.NaN
+		);
+	}
+
+	/**
+	 * Append a sample to the track. Missing values should be passed as {@link Float#NaN}.
+	 */
+	public void write(double latitude, double longitude, long time, float accuracy, float speed, float bearing)
+	{
+		if (closed)
+		{
+			throw new IllegalStateException("Track writer has been closed");
+		}
+
+		if (count > 0 && (count >= blockRecords || time - firstTime >= checkpointInterval))
+		{
+			seal();
+		}
+
+		if (block == null)
+		{
+			block = ByteBuffer.allocate(TrackFormat.BLOCK_HEADER_SIZE + blockRecords * TrackFormat.MAX_RECORD_SIZE);
+			block.position(TrackFormat.BLOCK_HEADER_SIZE);
+		}
+
+		if (count == 0)
+		{
+			firstTime = time;
+			previousLatitude = 0;
+			previousLongitude = 0;
+			previousTime = 0;
+		}
+
+		long lat = TrackFormat.toE7(latitude);
+		long lng = TrackFormat.toE7(longitude);
+
+		TrackFormat.writeSignedVarLong(block, lat - previousLatitude);
+		TrackFormat.writeSignedVarLong(block, lng - previousLongitude);
+		TrackFormat.writeSignedVarLong(block, time - previousTime);
+		TrackFormat.writeVarLong(block, TrackFormat.quantise(accuracy, 10f));
+		TrackFormat.writeVarLong(block, TrackFormat.quantise(speed, 100f));
+		TrackFormat.writeVarLong(block, TrackFormat.quantise(bearing, 10f));
+
+		previousLatitude = lat;
+		previousLongitude = lng;
+		previousTime = time;
+		lastTime = time;
+		count++;
+	}
+
+	/**
+	 * Checkpoint any buffered samples to disk. The write happens in the background.
+	 */
+	public void flush()
+	{
+		if (count > 0)
+		{
+			seal();
+		}
+	}
+
+	/**
+	 * @return True once the writer has been closed, after which samples can no longer be written
+	 */
+	public boolean isClosed()
+	{
+		return closed;
+	}
+
+	/**
+	 * @return The last error raised while writing in the background, or null
+	 */
+	public IOException getError()
+	{
+		return error;
+	}
+
+	/**
+	 * Checkpoint any buffered samples and wait for all pending writes to complete before
+	 * closing the file.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+		{
+			return;
+		}
+
+		flush();
+		closed = true;
+
+		executor.shutdown();
+		try
+		{
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		channel.close();
+		file.close();
+
+		if (error != null)
+		{
+			throw error;
+		}
+	}
+
+	private void seal()
+	{
+		final ByteBuffer sealed = block;
+		int payloadLength = sealed.position() - TrackFormat.BLOCK_HEADER_SIZE;
+
+		sealed.putInt(0, payloadLength);
+		sealed.putInt(4, count);
+		sealed.putLong(8, firstTime);
+		sealed.putLong(16, lastTime);
+		sealed.putInt(24, TrackFormat.checksum(sealed.array(), TrackFormat.BLOCK_HEADER_SIZE, payloadLength));
+		sealed.flip();
+
+		block = null;
+		count = 0;
+
+		executor.execute(new Runnable()
+		{
+			@Override public void run()
+			{
+				if (error != null)
+				{
+					// Don't write blocks after a gap
+					return;
+				}
+
+				try
+				{
+					while (sealed.hasRemaining())
+					{
+						channel.write(sealed);
+					}
+					channel.force(false);
+				}
+				catch (IOException ex)
+				{
+					error = ex;
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,100 @@
+package net.atomcode.bearing.region;
+
+import android.location.Address;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * An administrative region of a {@link RegionIndex}, with its country and time zone
+ */
+public final class Region
+{
+	private final String countryCode;
+	private final String countryName;
+	private final String adminArea;
+	private final String timeZoneId;
+
+	/**
+	 * @param countryCode The ISO 3166-1 alpha-2 code of the country
+	 * @param countryName The name of the country, or null
+	 * @param adminArea The name of the region within the country, e.g. a state, or null
+	 * @param timeZoneId The id of the region's time zone, e.g. "Europe/London", or null
+	 */
+	public Region(String countryCode, String countryName, String adminArea, String timeZoneId)
+	{
+		if (countryCode == null)
+		{
+			throw new IllegalArgumentException("A region needs a country code");
+		}
+
+		this.countryCode = countryCode;
+		this.countryName = countryName;
+		this.adminArea = adminArea;
+		this.timeZoneId = timeZoneId;
+	}
+
+	public String getCountryCode()
+	{
+		return countryCode;
+	}
+
+	public String getCountryName()
+	{
+		return countryName;
+	}
+
+	public String getAdminArea()
+	{
+		return adminArea;
+	}
+
+	public String getTimeZoneId()
+	{
+		return timeZoneId;
+	}
+
+	/**
+	 * @return The region's time zone, or null if it has none
+	 */
+	public TimeZone getTimeZone()
+	{
+		return timeZoneId != null ? TimeZone.getTimeZone(timeZoneId) : null;
+	}
+
+	/**
+	 * Fill in the country and admin area of the given address where they are missing
+	 */
+	public void fill(Address address)
+	{
+		if (address.getCountryCode() == null)
+		{
+			address.setCountryCode(countryCode);
+		}
+		if (address.getCountryName() == null)
+		{
+			address.setCountryName(countryName);
+		}
+		if (address.getAdminArea() == null)
+		{
+			address.setAdminArea(adminArea);
+		}
+	}
+
+	/**
+	 * @return An address at the given coordinate holding only the region's fields
+	 */
+	public Address toAddress(Locale locale, double latitude, double longitude)
+	{
+		Address address = new Address(locale);
+		address.setLatitude(latitude);
+		address.setLongitude(longitude);
+		fill(address);
+		return address;
+	}
+
+	@Override public String toString()
+	{
+		return adminArea != null ? adminArea + ", " + countryCode : countryCode;
+	}
+}
@@ -0,0 +1,716 @@
+package net.atomcode.bearing.region;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Offline lookup of the country, admin region and time zone of a coordinate from simplified
+ * boundary polygons, without the geocoder or a network, see
+ * {@link net.atomcode.bearing.Bearing#useRegionIndex(RegionIndex, boolean)}.
+ *
+ * Boundaries are stored as rings of vertices in 1e-7 degrees, with the rings of a region
+ * tested together by the even-odd rule so holes and islands need no special handling. A sparse
+ * grid maps each cell the regions touch to the regions whose boundary crosses it, or to the
+ * single region covering it, so most lookups resolve from the grid alone and the rest only
+ * test the few regions crossing the cell. Edges are straight lines in latitude/longitude
+ * space, and regions crossing the antimeridian must be split in two.
+ *
+ * An index is built with a {@link Builder}, and can be written to a file to be memory mapped,
+ * or loaded from a stream, e.g. an asset. It is immutable and so thread safe.
+ */
+public final class RegionIndex
+{
+	private static final int MAGIC = 0x42524547; // BREG
+	private static final short VERSION = 1;
+	private static final int HEADER_SIZE = 36;
+
+	private static final double DEFAULT_CELL_SIZE = 1.0;
+
+	/**
+	 * Smallest cell size whose cells can all be numbered with an int, 18000 by 36000 cells
+	 */
+	private static final double MIN_CELL_SIZE = 0.01;
+	private static final double MAX_CELL_SIZE = 90;
+	private static final double SCALE = 1e7;
+	private static final int NO_STRING = 0xffff;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buffer;
+	private final double cellSize;
+	private final int latitudeCells;
+	private final int longitudeCells;
+	private final Region[] regions;
+
+	/*
+	 * Region rings, ring vertices and bounds, grid keys and values and cell candidates, as
+	 * offsets into the int data
+	 */
+	private final IntBuffer data;
+	private final int ringBase;
+	private final int vertexBase;
+	private final int keyBase;
+	private final int valueBase;
+	private final int candidateBase;
+	private final int cellCount;
+
+	private RegionIndex(ByteBuffer buffer) throws IOException
+	{
+		this.buffer = buffer;
+
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION)
+		{
+			throw new IOException("Not a Bearing region index");
+		}
+
+		cellSize = buffer.getDouble(8);
+		int regionCount = buffer.getInt(16);
+		int ringCount = buffer.getInt(20);
+		int vertexCount = buffer.getInt(24);
+		cellCount = buffer.getInt(28);
+		int candidateCount = buffer.getInt(32);
+
+		if (!(cellSize >= MIN_CELL_SIZE && cellSize <= MAX_CELL_SIZE) || regionCount < 0 || ringCount < 0 || vertexCount < 0 || cellCount < 0 || candidateCount < 0)
+		{
+			throw new IOException("Corrupt region index");
+		}
+
+		latitudeCells = (int)Math.ceil(180 / cellSize);
+		longitudeCells = (int)Math.ceil(360 / cellSize);
+
+		ByteBuffer strings = buffer.duplicate();
+		strings.position(HEADER_SIZE);
+		regions = new Region[regionCount];
+		try
+		{
+			for (int index = 0; index < regionCount; index++)
+			{
+				regions[index] = new Region(readString(strings), readString(strings), readString(strings), readString(strings));
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			throw new IOException("Truncated region index");
+		}
+
+		ringBase = regionCount * 2;
+		vertexBase = ringBase + ringCount * 6;
+		keyBase = vertexBase + vertexCount * 2;
+		valueBase = keyBase + cellCount;
+		candidateBase = valueBase + cellCount;
+
+		data = strings.slice().asIntBuffer();
+		if (data.limit() < candidateBase + (long)candidateCount)
+		{
+			throw new IOException("Truncated region index");
+		}
+	}
+
+	/**
+	 * Collects region boundaries to build an index from
+	 */
+	public static class Builder
+	{
+		private double cellSize = DEFAULT_CELL_SIZE;
+		private final List<Region> regions = new ArrayList<>();
+		private final List<int[][]> rings = new ArrayList<>();
+
+		/**
+		 * Set the size of the grid cells in degrees, 1 by default and at least 0.01. Smaller
+		 * cells resolve more lookups from the grid alone, at the cost of a larger file.
+		 */
+		public Builder cellSize(double cellSize)
+		{
+			if (!(cellSize >= MIN_CELL_SIZE && cellSize <= MAX_CELL_SIZE))
+			{
+				throw new IllegalArgumentException("Cell size must be between " + MIN_CELL_SIZE + " and " + MAX_CELL_SIZE + " degrees");
+			}
+
+			this.cellSize = cellSize;
+			return this;
+		}
+
+		/**
+		 * Add a region bounded by a single ring
+		 */
+		public Builder add(Region region, double[] latitudes, double[] longitudes)
+		{
+			return add(region, new double[][]{latitudes}, new double[][]{longitudes});
+		}
+
+		/**
+		 * Add a region bounded by the given rings, e.g. its islands and the holes of enclaves
+		 */
+		public Builder add(Region region, double[][] latitudes, double[][] longitudes)
+		{
+			if (latitudes.length != longitudes.length || latitudes.length == 0)
+			{
+				throw new IllegalArgumentException("A region needs at least one ring with matching latitudes and longitudes");
+			}
+
+			int[][] regionRings = new int[latitudes.length][];
+			for (int ring = 0; ring < latitudes.length; ring++)
+			{
+				if (latitudes[ring].length != longitudes[ring].length || latitudes[ring].length < 3)
+				{
+					throw new IllegalArgumentException("A ring needs at least 3 vertices with matching latitudes and longitudes");
+				}
+
+				int[] vertices = new int[latitudes[ring].length * 2];
+				for (int index = 0; index < latitudes[ring].length; index++)
+				{
+					vertices[index * 2] = (int)Math.round(latitudes[ring][index] * SCALE);
+					vertices[index * 2 + 1] = (int)Math.round(longitudes[ring][index] * SCALE);
+				}
+				regionRings[ring] = vertices;
+			}
+
+			regions.add(region);
+			rings.add(regionRings);
+			return this;
+		}
+
+		public RegionIndex build()
+		{
+			try
+			{
+				// Classify the cells with the boundaries alone, then add the grid
+				RegionIndex boundaries = new RegionIndex(encode(cellSize, regions, rings, new TreeMap<Integer, int[]>()));
+				return new RegionIndex(encode(cellSize, regions, rings, boundaries.classifyCells(rings)));
+			}
+			catch (IOException ex)
+			{
+				throw new IllegalStateException(ex);
+			}
+		}
+	}
+
+	/**
+	 * Memory map an index written with {@link #write(File)}
+	 */
+	public static RegionIndex map(File file) throws IOException
+	{
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try
+		{
+			if (input.length() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Region index too large to map: " + file);
+			}
+
+			// The mapping stays valid once the file is closed
+			return new RegionIndex(input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length()));
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+
+	/**
+	 * Load an index from the given stream onto the heap, e.g. from a compressed asset. The
+	 * stream is not closed.
+	 */
+	public static RegionIndex load(InputStream input) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int read;
+		while ((read = input.read(chunk)) != -1)
+		{
+			bytes.write(chunk, 0, read);
+		}
+		return new RegionIndex(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	/**
+	 * Write the index to the given file, to be mapped with {@link #map(File)}
+	 */
+	public void write(File file) throws IOException
+	{
+		FileOutputStream output = new FileOutputStream(file);
+		try
+		{
+			ByteBuffer contents = buffer.duplicate();
+			contents.position(0);
+			FileChannel channel = output.getChannel();
+			while (contents.hasRemaining())
+			{
+				channel.write(contents);
+			}
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+
+	/**
+	 * @return The number of regions in the index
+	 */
+	public int size()
+	{
+		return regions.length;
+	}
+
+	/**
+	 * Find the region containing the given coordinate
+	 * @return The region, or null if the coordinate is in none, e.g. at sea
+	 */
+	public Region resolve(double latitude, double longitude)
+	{
+		if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180))
+		{
+			return null;
+		}
+
+		int slot = findCell(cellOf(latitude, longitude));
+		if (slot < 0)
+		{
+			return null;
+		}
+
+		int value = data.get(valueBase + slot);
+		if (value < 0)
+		{
+			return regions[-value - 1];
+		}
+
+		double y = latitude * SCALE;
+		double x = longitude * SCALE;
+		int offset = candidateBase + value;
+		int count = data.get(offset);
+		for (int index = 1; index <= count; index++)
+		{
+			int candidate = data.get(offset + index);
+			if (candidate < 0)
+			{
+				return regions[-candidate - 1];
+			}
+			if (contains(candidate, y, x))
+			{
+				return regions[candidate];
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Test the given point, in 1e-7 degrees, against the rings of the given region
+	 */
+	private boolean contains(int region, double y, double x)
+	{
+		int firstRing = data.get(region * 2);
+		int ringCount = data.get(region * 2 + 1);
+
+		boolean inside = false;
+		for (int ring = firstRing; ring < firstRing + ringCount; ring++)
+		{
+			int bounds = ringBase + ring * 6;
+			if (y < data.get(bounds + 2) || y > data.get(bounds + 3) || x < data.get(bounds + 4) || x > data.get(bounds + 5))
+			{
+				// Crosses a ray from outside the bounds an even number of times, if at all
+				continue;
+			}
+
+			int first = vertexBase + data.get(bounds) * 2;
+			int count = data.get(bounds + 1);
+
+			double previousY = data.get(first + (count - 1) * 2);
+			double previousX = data.get(first + (count - 1) * 2 + 1);
+			for (int index = 0; index < count; index++)
+			{
+				double vertexY = data.get(first + index * 2);
+				double vertexX = data.get(first + index * 2 + 1);
+				if ((vertexY > y) != (previousY > y)
+					&& x < (previousX - vertexX) * (y - vertexY) / (previousY - vertexY) + vertexX)
+				{
+					inside = !inside;
+				}
+				previousY = vertexY;
+				previousX = vertexX;
+			}
+		}
+
+		return inside;
+	}
+
+	private int cellOf(double latitude, double longitude)
+	{
+		int latitudeCell = Math.min(latitudeCells - 1, (int)Math.floor((latitude + 90) / cellSize));
+		int longitudeCell = Math.min(longitudeCells - 1, (int)Math.floor((longitude + 180) / cellSize));
+		return latitudeCell * longitudeCells + longitudeCell;
+	}
+
+	/**
+	 * @return The slot of the given cell in the grid, or -1 if no region touches it
+	 */
+	private int findCell(int key)
+	{
+		int low = 0;
+		int high = cellCount - 1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int middleKey = data.get(keyBase + middle);
+			if (middleKey < key)
+			{
+				low = middle + 1;
+			}
+			else if (middleKey > key)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Find, for each cell a region touches, the regions whose boundary crosses it and the
+	 * regions covering it
+	 * @return The candidates of each cell, covering regions encoded as -(region + 1)
+	 */
+	private TreeMap<Integer, int[]> classifyCells(List<int[][]> rings)
+	{
+		Map<Integer, List<Integer>> crossing = new TreeMap<>();
+		Map<Integer, List<Integer>> covering = new TreeMap<>();
+
+		for (int region = 0; region < regions.length; region++)
+		{
+			Set<Integer> boundaryCells = new HashSet<>();
+			int minLatitudeCell = Integer.MAX_VALUE;
+			int maxLatitudeCell = Integer.MIN_VALUE;
+			int minLongitudeCell = Integer.MAX_VALUE;
+			int maxLongitudeCell = Integer.MIN_VALUE;
+
+			for (int[] ring : rings.get(region))
+			{
+				int count = ring.length / 2;
+				for (int index = 0, previous = count - 1; index < count; previous = index++)
+				{
+					double y0 = ring[previous * 2] / SCALE;
+					double x0 = ring[previous * 2 + 1] / SCALE;
+					double y1 = ring[index * 2] / SCALE;
+					double x1 = ring[index * 2 + 1] / SCALE;
+
+					int fromLatitudeCell = latitudeCell(Math.min(y0, y1));
+					int toLatitudeCell = latitudeCell(Math.max(y0, y1));
+					int fromLongitudeCell = longitudeCell(Math.min(x0, x1));
+					int toLongitudeCell = longitudeCell(Math.max(x0, x1));
+
+					minLatitudeCell = Math.min(minLatitudeCell, fromLatitudeCell);
+					maxLatitudeCell = Math.max(maxLatitudeCell, toLatitudeCell);
+					minLongitudeCell = Math.min(minLongitudeCell, fromLongitudeCell);
+					maxLongitudeCell = Math.max(maxLongitudeCell, toLongitudeCell);
+
+					for (int latitudeCell = fromLatitudeCell; latitudeCell <= toLatitudeCell; latitudeCell++)
+					{
+						for (int longitudeCell = fromLongitudeCell; longitudeCell <= toLongitudeCell; longitudeCell++)
+						{
+							double minY = latitudeCell * cellSize - 90;
+							double minX = longitudeCell * cellSize - 180;
+							if (crosses(y0, x0, y1, x1, minY, minX, minY + cellSize, minX + cellSize))
+							{
+								boundaryCells.add(latitudeCell * longitudeCells + longitudeCell);
+							}
+						}
+					}
+				}
+			}
+
+			for (int latitudeCell = minLatitudeCell; latitudeCell <= maxLatitudeCell; latitudeCell++)
+			{
+				for (int longitudeCell = minLongitudeCell; longitudeCell <= maxLongitudeCell; longitudeCell++)
+				{
+					int key = latitudeCell * longitudeCells + longitudeCell;
+					if (boundaryCells.contains(key))
+					{
+						add(crossing, key, region);
+					}
+					else if (contains(region, ((latitudeCell + 0.5) * cellSize - 90) * SCALE, ((longitudeCell + 0.5) * cellSize - 180) * SCALE))
+					{
+						// No boundary in the cell, so the centre decides for all of it
+						add(covering, key, region);
+					}
+				}
+			}
+		}
+
+		TreeMap<Integer, int[]> cells = new TreeMap<>();
+		Set<Integer> keys = new HashSet<>(crossing.keySet());
+		keys.addAll(covering.keySet());
+		for (Integer key : keys)
+		{
+			List<Integer> covers = covering.get(key);
+			List<Integer> crosses = crossing.get(key);
+
+			int size = (covers != null ? covers.size() : 0) + (crosses != null ? crosses.size() : 0);
+			int[] candidates = new int[size];
+			int index = 0;
+			if (covers != null)
+			{
+				for (Integer region : covers)
+				{
+					candidates[index++] = -region - 1;
+				}
+			}
+			if (crosses != null)
+			{
+				for (Integer region : crosses)
+				{
+					candidates[index++] = region;
+				}
+			}
+			cells.put(key, candidates);
+		}
+
+		return cells;
+	}
+
+	private int latitudeCell(double latitude)
+	{
+		return Math.max(0, Math.min(latitudeCells - 1, (int)Math.floor((latitude + 90) / cellSize)));
+	}
+
+	private int longitudeCell(double longitude)
+	{
+		return Math.max(0, Math.min(longitudeCells - 1, (int)Math.floor((longitude + 180) / cellSize)));
+	}
+
+	private static void add(Map<Integer, List<Integer>> cells, int key, int region)
+	{
+		List<Integer> regions = cells.get(key);
+		if (regions == null)
+		{
+			regions = new ArrayList<>(2);
+			cells.put(key, regions);
+		}
+		regions.add(region);
+	}
+
+	/**
+	 * Clip the given segment to the given rectangle
+	 * @return Whether any of the segment lies in the rectangle
+	 */
+	private static boolean crosses(double y0, double x0, double y1, double x1, double minY, double minX, double maxY, double maxX)
+	{
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double[] directions = {-dx, dx, -dy, dy};
+		double[] distances = {x0 - minX, maxX - x0, y0 - minY, maxY - y0};
+
+		double enter = 0;
+		double exit = 1;
+		for (int side = 0; side < 4; side++)
+		{
+			if (directions[side] == 0)
+			{
+				if (distances[side] < 0)
+				{
+					return false;
+				}
+			}
+			else
+			{
+				double t = distances[side] / directions[side];
+				if (directions[side] < 0)
+				{
+					enter = Math.max(enter, t);
+				}
+				else
+				{
+					exit = Math.min(exit, t);
+				}
+				if (enter > exit)
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static ByteBuffer encode(double cellSize, List<Region> regions, List<int[][]> rings, TreeMap<Integer, int[]> cells)
+	{
+		ByteArrayOutputStream strings = new ByteArrayOutputStream();
+		for (Region region : regions)
+		{
+			writeString(strings, region.getCountryCode());
+			writeString(strings, region.getCountryName());
+			writeString(strings, region.getAdminArea());
+			writeString(strings, region.getTimeZoneId());
+		}
+
+		int ringCount = 0;
+		int vertexCount = 0;
+		for (int[][] regionRings : rings)
+		{
+			ringCount += regionRings.length;
+			for (int[] ring : regionRings)
+			{
+				vertexCount += ring.length / 2;
+			}
+		}
+
+		int candidateCount = 0;
+		for (int[] candidates : cells.values())
+		{
+			if (!isCovered(candidates))
+			{
+				candidateCount += 1 + candidates.length;
+			}
+		}
+
+		int ints = regions.size() * 2 + ringCount * 6 + vertexCount * 2 + cells.size() * 2 + candidateCount;
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + strings.size() + ints * 4);
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.putShort((short)0);
+		buffer.putDouble(cellSize);
+		buffer.putInt(regions.size());
+		buffer.putInt(ringCount);
+		buffer.putInt(vertexCount);
+		buffer.putInt(cells.size());
+		buffer.putInt(candidateCount);
+		buffer.put(strings.toByteArray());
+
+		int ring = 0;
+		for (int[][] regionRings : rings)
+		{
+			buffer.putInt(ring);
+			buffer.putInt(regionRings.length);
+			ring += regionRings.length;
+		}
+
+		int vertex = 0;
+		for (int[][] regionRings : rings)
+		{
+			for (int[] vertices : regionRings)
+			{
+				int minY = Integer.MAX_VALUE;
+				int maxY = Integer.MIN_VALUE;
+				int minX = Integer.MAX_VALUE;
+				int maxX = Integer.MIN_VALUE;
+				for (int index = 0; index < vertices.length; index += 2)
+				{
+					minY = Math.min(minY, vertices[index]);
+					maxY = Math.max(maxY, vertices[index]);
+					minX = Math.min(minX, vertices[index + 1]);
+					maxX = Math.max(maxX, vertices[index + 1]);
+				}
+
+				buffer.putInt(vertex);
+				buffer.putInt(vertices.length / 2);
+				buffer.putInt(minY);
+				buffer.putInt(maxY);
+				buffer.putInt(minX);
+				buffer.putInt(maxX);
+				vertex += vertices.length / 2;
+			}
+		}
+
+		for (int[][] regionRings : rings)
+		{
+			for (int[] vertices : regionRings)
+			{
+				for (int coordinate : vertices)
+				{
+					buffer.putInt(coordinate);
+				}
+			}
+		}
+
+		for (Integer key : cells.keySet())
+		{
+			buffer.putInt(key);
+		}
+
+		// Cells covered by a single region resolve from the grid value alone
+		int offset = 0;
+		for (int[] candidates : cells.values())
+		{
+			if (isCovered(candidates))
+			{
+				buffer.putInt(candidates[0]);
+			}
+			else
+			{
+				buffer.putInt(offset);
+				offset += 1 + candidates.length;
+			}
+		}
+
+		for (int[] candidates : cells.values())
+		{
+			if (!isCovered(candidates))
+			{
+				buffer.putInt(candidates.length);
+				for (int candidate : candidates)
+				{
+					buffer.putInt(candidate);
+				}
+			}
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * @return Whether the cell is covered by a single region and crossed by no boundary
+	 */
+	private static boolean isCovered(int[] candidates)
+	{
+		return candidates.length == 1 && candidates[0] < 0;
+	}
+
+	private static void writeString(ByteArrayOutputStream output, String value)
+	{
+		if (value == null)
+		{
+			output.write(NO_STRING >>> 8);
+			output.write(NO_STRING & 0xff);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(UTF_8);
+		if (bytes.length >= NO_STRING)
+		{
+			throw new IllegalArgumentException("Region name too long: " + value);
+		}
+		output.write(bytes.length >>> 8);
+		output.write(bytes.length & 0xff);
+		output.write(bytes, 0, bytes.length);
+	}
+
+	private static String readString(ByteBuffer input)
+	{
+		int length = input.getShort() & 0xffff;
+		if (length == NO_STRING)
+		{
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		input.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+}
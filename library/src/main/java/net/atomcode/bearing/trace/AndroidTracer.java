@@ -0,0 +1,91 @@
+package net.atomcode.bearing.trace;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+import java.lang.reflect.Method;
+
+/**
+ * Tracer writing to the platform trace, to be captured with systrace or Perfetto. Sections are
+ * named "Bearing:stage request id".
+ *
+ * Sections need API 18. Async sections need API 29, and are skipped below it.
+ */
+public class AndroidTracer implements Tracer
+{
+	private static final int MAX_NAME_LENGTH = 127;
+
+	private final boolean sections = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+	private Method beginAsync;
+	private Method endAsync;
+
+	public AndroidTracer()
+	{
+		if (Build.VERSION.SDK_INT >= 29)
+		{
+			try
+			{
+				beginAsync = Trace.class.getMethod("beginAsyncSection", String.class, int.class);
+				endAsync = Trace.class.getMethod("endAsyncSection", String.class, int.class);
+			}
+			catch (NoSuchMethodException ex)
+			{
+				beginAsync = null;
+				endAsync = null;
+			}
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	@Override public void beginSection(String stage, String requestId)
+	{
+		if (sections)
+		{
+			Trace.beginSection(name(stage, requestId));
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+	@Override public void endSection(String stage, String requestId)
+	{
+		if (sections)
+		{
+			Trace.endSection();
+		}
+	}
+
+	@Override public void beginAsyncSection(String stage, String requestId)
+	{
+		invoke(beginAsync, stage, requestId);
+	}
+
+	@Override public void endAsyncSection(String stage, String requestId)
+	{
+		invoke(endAsync, stage, requestId);
+	}
+
+	private static void invoke(Method method, String stage, String requestId)
+	{
+		if (method == null)
+		{
+			return;
+		}
+
+		try
+		{
+			method.invoke(null, name(stage, requestId), requestId != null ? requestId.hashCode() : 0);
+		}
+		catch (Exception ex)
+		{
+			// Tracing is best effort
+		}
+	}
+
+	private static String name(String stage, String requestId)
+	{
+		String name = requestId != null ? "Bearing:" + stage + " " + requestId : "Bearing:" + stage;
+		return name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name;
+	}
+}
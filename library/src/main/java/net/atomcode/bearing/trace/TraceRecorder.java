@@ -0,0 +1,220 @@
+package net.atomcode.bearing.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracer recording trace points in memory on a plain JVM, so the stages of requests can be
+ * measured in unit tests and benchmarks. Recorded slices can be written in the Chrome trace
+ * event JSON format, which Perfetto and chrome://tracing open.
+ *
+ * The recorder is thread safe.
+ */
+public class TraceRecorder implements Tracer
+{
+	/**
+	 * A completed section
+	 */
+	public static class Slice
+	{
+		public final String stage;
+		public final String requestId;
+		public final String thread;
+		public final boolean async;
+
+		/**
+		 * Start time and duration in nanoseconds
+		 */
+		public final long start;
+		public final long duration;
+
+		Slice(String stage, String requestId, String thread, boolean async, long start, long duration)
+		{
+			this.stage = stage;
+			this.requestId = requestId;
+			this.thread = thread;
+			this.async = async;
+			this.start = start;
+			this.duration = duration;
+		}
+
+		@Override public String toString()
+		{
+			return stage + " [" + requestId + "] " + (duration / 1000) + "us";
+		}
+	}
+
+	private final List<Slice> slices = new ArrayList<>();
+
+	/**
+	 * Open sections of each thread, innermost last
+	 */
+	private final ThreadLocal<Deque<long[]>> openSections = new ThreadLocal<Deque<long[]>>()
+	{
+		@Override protected Deque<long[]> initialValue()
+		{
+			return new ArrayDeque<>();
+		}
+	};
+
+	/**
+	 * Start times of open async sections, by stage and request id
+	 */
+	private final Map<String, Long> openAsyncSections = new HashMap<>();
+
+	@Override public void beginSection(String stage, String requestId)
+	{
+		openSections.get().push(new long[]{System.nanoTime()});
+	}
+
+	@Override public void endSection(String stage, String requestId)
+	{
+		long end = System.nanoTime();
+		long[] start = openSections.get().poll();
+		if (start != null)
+		{
+			record(new Slice(stage, requestId, Thread.currentThread().getName(), false, start[0], end - start[0]));
+		}
+	}
+
+	@Override public void beginAsyncSection(String stage, String requestId)
+	{
+		synchronized (openAsyncSections)
+		{
+			openAsyncSections.put(stage + " " + requestId, System.nanoTime());
+		}
+	}
+
+	@Override public void endAsyncSection(String stage, String requestId)
+	{
+		long end = System.nanoTime();
+		Long start;
+		synchronized (openAsyncSections)
+		{
+			start = openAsyncSections.remove(stage + " " + requestId);
+		}
+
+		if (start != null)
+		{
+			record(new Slice(stage, requestId, Thread.currentThread().getName(), true, start, end - start));
+		}
+	}
+
+	/**
+	 * @return The completed slices, in the order they ended
+	 */
+	public synchronized List<Slice> getSlices()
+	{
+		return new ArrayList<>(slices);
+	}
+
+	/**
+	 * @return The completed slices of the given stage, in the order they ended
+	 */
+	public synchronized List<Slice> getSlices(String stage)
+	{
+		List<Slice> matching = new ArrayList<>();
+		for (int index = 0; index < slices.size(); index++)
+		{
+			if (slices.get(index).stage.equals(stage))
+			{
+				matching.add(slices.get(index));
+			}
+		}
+		return matching;
+	}
+
+	/**
+	 * @return The total time in nanoseconds spent in the given stage
+	 */
+	public synchronized long getTotalDuration(String stage)
+	{
+		long total = 0;
+		for (int index = 0; index < slices.size(); index++)
+		{
+			if (slices.get(index).stage.equals(stage))
+			{
+				total += slices.get(index).duration;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * @return The number of async sections begun and not yet ended
+	 */
+	public int getOpenAsyncCount()
+	{
+		synchronized (openAsyncSections)
+		{
+			return openAsyncSections.size();
+		}
+	}
+
+	public synchronized void clear()
+	{
+		slices.clear();
+		synchronized (openAsyncSections)
+		{
+			openAsyncSections.clear();
+		}
+	}
+
+	/**
+	 * Write the completed slices in the Chrome trace event JSON format
+	 */
+	public synchronized void writeJson(Writer writer) throws IOException
+	{
+		writer.write("{\"traceEvents\":[");
+		for (int index = 0; index < slices.size(); index++)
+		{
+			Slice slice = slices.get(index);
+			if (index > 0)
+			{
+				writer.write(',');
+			}
+
+			writer.write("{\"name\":\"");
+			writeEscaped(writer, slice.stage);
+			writer.write("\",\"cat\":\"bearing\",\"ph\":\"X\",\"pid\":1,\"tid\":\"");
+			writeEscaped(writer, slice.async ? "async " + slice.stage : slice.thread);
+			writer.write("\",\"ts\":" + slice.start / 1000.0 + ",\"dur\":" + slice.duration / 1000.0 + ",\"args\":{\"request\":\"");
+			writeEscaped(writer, String.valueOf(slice.requestId));
+			writer.write("\"}}");
+		}
+		writer.write("]}");
+		writer.flush();
+	}
+
+	private synchronized void record(Slice slice)
+	{
+		slices.add(slice);
+	}
+
+	private static void writeEscaped(Writer writer, String value) throws IOException
+	{
+		for (int index = 0; index < value.length(); index++)
+		{
+			char character = value.charAt(index);
+			if (character == '"' || character == '\\')
+			{
+				writer.write('\\');
+				writer.write(character);
+			}
+			else if (character < 0x20)
+			{
+				writer.write(String.format("\\u%04x", (int)character));
+			}
+			else
+			{
+				writer.write(character);
+			}
+		}
+	}
+}
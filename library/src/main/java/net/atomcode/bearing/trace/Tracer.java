@@ -0,0 +1,16 @@
+package net.atomcode.bearing.trace;
+
+/**
+ * Receives the stages of location and geocoding requests, see {@link Tracing}.
+ *
+ * Sections are nested on the thread that begins them. Async sections may end on another thread,
+ * and are matched by stage and request id.
+ */
+public interface Tracer
+{
+	public void beginSection(String stage, String requestId);
+	public void endSection(String stage, String requestId);
+
+	public void beginAsyncSection(String stage, String requestId);
+	public void endAsyncSection(String stage, String requestId);
+}
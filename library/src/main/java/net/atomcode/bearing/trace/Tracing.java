@@ -0,0 +1,73 @@
+package net.atomcode.bearing.trace;
+
+/**
+ * Trace points placed along the lifecycle of location and geocoding requests, reported to the
+ * tracer set with {@link #use(Tracer)}. With no tracer set each point is a single volatile read.
+ *
+ * Stages are named after the work they cover, e.g. "connect" while waiting for the location
+ * service, "request" while waiting for the platform, and are tagged with the request id.
+ */
+public final class Tracing
+{
+	private static volatile Tracer tracer = null;
+
+	private Tracing() {}
+
+	/**
+	 * Report trace points to the given tracer, e.g. an {@link AndroidTracer} for systrace and
+	 * Perfetto, or a {@link TraceRecorder} in tests and benchmarks
+	 * @param tracer The tracer, or null to stop tracing
+	 */
+	public static void use(Tracer tracer)
+	{
+		Tracing.tracer = tracer;
+	}
+
+	public static boolean isEnabled()
+	{
+		return tracer != null;
+	}
+
+	/**
+	 * Begin a section of work on the current thread, ended with {@link #end(String, String)}
+	 * on the same thread
+	 */
+	public static void begin(String stage, String requestId)
+	{
+		Tracer current = tracer;
+		if (current != null)
+		{
+			current.beginSection(stage, requestId);
+		}
+	}
+
+	public static void end(String stage, String requestId)
+	{
+		Tracer current = tracer;
+		if (current != null)
+		{
+			current.endSection(stage, requestId);
+		}
+	}
+
+	/**
+	 * Begin a stage that may end on another thread, e.g. waiting for a callback
+	 */
+	public static void beginAsync(String stage, String requestId)
+	{
+		Tracer current = tracer;
+		if (current != null)
+		{
+			current.beginAsyncSection(stage, requestId);
+		}
+	}
+
+	public static void endAsync(String stage, String requestId)
+	{
+		Tracer current = tracer;
+		if (current != null)
+		{
+			current.endAsyncSection(stage, requestId);
+		}
+	}
+}
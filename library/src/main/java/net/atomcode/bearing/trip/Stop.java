@@ -0,0 +1,81 @@
+package net.atomcode.bearing.trip;
+
+/**
+ * A place the user stayed at, found by a {@link TripSegmenter}
+ */
+public final class Stop
+{
+	private final int track;
+	private final long startTime;
+	long endTime = -1;
+	double latitude;
+	double longitude;
+	int pointCount;
+
+	Stop(int track, long startTime)
+	{
+		this.track = track;
+		this.startTime = startTime;
+	}
+
+	/**
+	 * @return The index of the track in the set segmented, 0 for a live stream
+	 */
+	public int getTrack()
+	{
+		return track;
+	}
+
+	/**
+	 * @return The time of the first update at the stop
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	/**
+	 * @return The time of the last update at the stop, or -1 while the user is still there
+	 */
+	public long getEndTime()
+	{
+		return endTime;
+	}
+
+	/**
+	 * @return The time spent at the stop in milliseconds, or -1 while the user is still there
+	 */
+	public long getDuration()
+	{
+		return endTime != -1 ? endTime - startTime : -1;
+	}
+
+	/**
+	 * @return The latitude of the centre of the updates at the stop
+	 */
+	public double getLatitude()
+	{
+		return latitude;
+	}
+
+	/**
+	 * @return The longitude of the centre of the updates at the stop
+	 */
+	public double getLongitude()
+	{
+		return longitude;
+	}
+
+	/**
+	 * @return The number of updates at the stop
+	 */
+	public int getPointCount()
+	{
+		return pointCount;
+	}
+
+	@Override public String toString()
+	{
+		return "Stop[" + latitude + "," + longitude + " " + startTime + "-" + endTime + "]";
+	}
+}
@@ -0,0 +1,105 @@
+package net.atomcode.bearing.trip;
+
+/**
+ * A journey between two stops, found by a {@link TripSegmenter}
+ */
+public final class Trip
+{
+	private final int track;
+	private final long startTime;
+	private final long endTime;
+	private final double startLatitude;
+	private final double startLongitude;
+	private final double endLatitude;
+	private final double endLongitude;
+	private final double distance;
+	private final int pointCount;
+
+	Trip(int track, long startTime, double startLatitude, double startLongitude, long endTime, double endLatitude, double endLongitude, double distance, int pointCount)
+	{
+		this.track = track;
+		this.startTime = startTime;
+		this.startLatitude = startLatitude;
+		this.startLongitude = startLongitude;
+		this.endTime = endTime;
+		this.endLatitude = endLatitude;
+		this.endLongitude = endLongitude;
+		this.distance = distance;
+		this.pointCount = pointCount;
+	}
+
+	/**
+	 * @return The index of the track in the set segmented, 0 for a live stream
+	 */
+	public int getTrack()
+	{
+		return track;
+	}
+
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	public long getEndTime()
+	{
+		return endTime;
+	}
+
+	/**
+	 * @return The length of the trip in milliseconds
+	 */
+	public long getDuration()
+	{
+		return endTime - startTime;
+	}
+
+	public double getStartLatitude()
+	{
+		return startLatitude;
+	}
+
+	public double getStartLongitude()
+	{
+		return startLongitude;
+	}
+
+	public double getEndLatitude()
+	{
+		return endLatitude;
+	}
+
+	public double getEndLongitude()
+	{
+		return endLongitude;
+	}
+
+	/**
+	 * @return The distance travelled along the updates in metres
+	 */
+	public double getDistance()
+	{
+		return distance;
+	}
+
+	/**
+	 * @return The average speed in metres per second
+	 */
+	public double getAverageSpeed()
+	{
+		return endTime > startTime ? distance * 1000 / (endTime - startTime) : 0;
+	}
+
+	/**
+	 * @return The number of updates during the trip
+	 */
+	public int getPointCount()
+	{
+		return pointCount;
+	}
+
+	@Override public String toString()
+	{
+		return "Trip[" + startTime + "-" + endTime + " " + Math.round(distance) + "m]";
+	}
+}
@@ -0,0 +1,24 @@
+package net.atomcode.bearing.trip;
+
+/**
+ * Listener for the trips and stops found by a {@link TripSegmenter}
+ */
+public abstract class TripListener
+{
+	/**
+	 * The user has stayed within the stop radius for the stop duration. The stop is still open,
+	 * and starts from the first update within the radius.
+	 */
+	public void onStopStart(Stop stop) {}
+
+	/**
+	 * The user has left the given stop, or the track ended there
+	 */
+	public void onStopEnd(Stop stop) {}
+
+	/**
+	 * The user has travelled from one stop, or the start of the track, to the next stop or the
+	 * end of the track
+	 */
+	public void onTrip(Trip trip) {}
+}
@@ -0,0 +1,441 @@
+package net.atomcode.bearing.trip;
+
+import android.location.Location;
+
+import net.atomcode.bearing.geodesy.Geodesy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a stream of location updates into stops and the trips between them.
+ *
+ * A stop starts once the user stays within the stop radius of an update for the stop duration,
+ * and ends at the first update further than the radius from the centre of the stop. Everything
+ * between stops is a trip, with its distance summed along the updates in steps of at least the
+ * minimum step. Updates are segmented as they arrive in constant memory, so a live stream can be
+ * segmented for as long as it runs.
+ *
+ * Sets of recorded tracks can be segmented in parallel with
+ * {@link #segment(double[][], double[][], long[][], ExecutorService, int)}.
+ *
+ * The segmenter is not thread safe and should be used from the thread delivering updates.
+ */
+public class TripSegmenter
+{
+	private static final double DEFAULT_STOP_RADIUS = 100.0;
+	private static final long DEFAULT_STOP_DURATION = 5 * 60 * 1000; // 5 mins
+	private static final float DEFAULT_MAX_ACCURACY = 100.0f;
+	private static final double DEFAULT_MIN_STEP = 50.0;
+
+	/**
+	 * Tracks of a set are handed out to the executor in roughly this many chunks per thread, so
+	 * threads given short tracks move on to the remaining ones
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private double stopRadius = DEFAULT_STOP_RADIUS;
+	private long stopDuration = DEFAULT_STOP_DURATION;
+	private float maxAccuracy = DEFAULT_MAX_ACCURACY;
+	private double minStep = DEFAULT_MIN_STEP;
+	private TripListener listener;
+
+	private int track = 0;
+	private TripSummary summary = new TripSummary();
+
+	/*
+	 * Last accepted update
+	 */
+	private boolean started;
+	private double lastLatitude;
+	private double lastLongitude;
+	private long lastTime;
+
+	/*
+	 * The open trip, from the last stop or the start of the track
+	 */
+	private double tripLatitude;
+	private double tripLongitude;
+	private long tripTime;
+	private double tripDistance;
+	private int tripPoints;
+
+	/*
+	 * The position the trip distance was last measured to
+	 */
+	private double stepLatitude;
+	private double stepLongitude;
+
+	/*
+	 * The update a stop may start at, and the centre of the updates within the radius since
+	 */
+	private double anchorLatitude;
+	private double anchorLongitude;
+	private long anchorTime;
+	private double anchorDistance;
+	private int anchorPoints;
+	private double latitudeSum;
+	private double longitudeSum;
+	private int candidatePoints;
+
+	/**
+	 * The stop the user is at, or null while travelling
+	 */
+	private Stop stop;
+
+	/**
+	 * Set the distance in metres the user must stay within to be stopped
+	 */
+	public TripSegmenter radius(double metres)
+	{
+		this.stopRadius = metres;
+		return this;
+	}
+
+	/**
+	 * Set the time in milliseconds the user must stay within the radius to be stopped
+	 */
+	public TripSegmenter duration(long time)
+	{
+		this.stopDuration = time;
+		return this;
+	}
+
+	/**
+	 * Set the accuracy in metres updates must have to be segmented, coarser updates are dropped
+	 */
+	public TripSegmenter accuracy(float metres)
+	{
+		this.maxAccuracy = metres;
+		return this;
+	}
+
+	/**
+	 * Set the distance in metres trip distances are measured in steps of at least, so GPS noise
+	 * between close updates does not add to them
+	 */
+	public TripSegmenter step(double metres)
+	{
+		this.minStep = metres;
+		return this;
+	}
+
+	/**
+	 * Set the listener for trips and stops
+	 */
+	public TripSegmenter listen(TripListener listener)
+	{
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * @return The totals of the trips and stops completed so far
+	 */
+	public TripSummary getSummary()
+	{
+		return summary;
+	}
+
+	/**
+	 * @return The stop the user is at, or null while travelling
+	 */
+	public Stop getStop()
+	{
+		return stop;
+	}
+
+	/**
+	 * Segment the given location update
+	 */
+	public void update(Location location)
+	{
+		update(location.getLatitude(), location.getLongitude(), location.getTime(), location.hasAccuracy() ? location.getAccuracy() : 0);
+	}
+
+	/**
+	 * Segment the given location update. Updates must be in time order, earlier ones are dropped.
+	 * @param accuracy The accuracy of the update in metres, 0 if unknown
+	 */
+	public void update(double latitude, double longitude, long time, float accuracy)
+	{
+		if (accuracy > maxAccuracy || (started && time <= lastTime))
+		{
+			return;
+		}
+		summary.pointCount++;
+
+		if (!started)
+		{
+			started = true;
+			startTrip(latitude, longitude, time);
+			anchor(latitude, longitude, time);
+		}
+		else if (stop != null)
+		{
+			if (Geodesy.isWithin(latitude, longitude, stop.latitude, stop.longitude, stopRadius))
+			{
+				stop.pointCount++;
+				stop.latitude += (latitude - stop.latitude) / stop.pointCount;
+				stop.longitude += (longitude - stop.longitude) / stop.pointCount;
+			}
+			else
+			{
+				endStop();
+				startTrip(stop.latitude, stop.longitude, stop.endTime);
+				advance(latitude, longitude);
+				anchor(latitude, longitude, time);
+				stop = null;
+			}
+		}
+		else
+		{
+			advance(latitude, longitude);
+
+			if (Geodesy.isWithin(latitude, longitude, anchorLatitude, anchorLongitude, stopRadius))
+			{
+				latitudeSum += latitude;
+				longitudeSum += longitude;
+				candidatePoints++;
+
+				if (time - anchorTime >= stopDuration)
+				{
+					startStop();
+				}
+			}
+			else
+			{
+				anchor(latitude, longitude, time);
+			}
+		}
+
+		lastLatitude = latitude;
+		lastLongitude = longitude;
+		lastTime = time;
+	}
+
+	/**
+	 * End the track, reporting the open trip or stop, and start again
+	 */
+	public void finish()
+	{
+		if (started)
+		{
+			if (stop != null)
+			{
+				endStop();
+			}
+			else if (lastTime > tripTime)
+			{
+				endTrip(lastLatitude, lastLongitude, lastTime, distanceTo(lastLatitude, lastLongitude), tripPoints);
+			}
+		}
+
+		started = false;
+		stop = null;
+	}
+
+	/**
+	 * Forget the open trip or stop and the totals, without reporting them
+	 */
+	public void reset()
+	{
+		started = false;
+		stop = null;
+		summary = new TripSummary();
+	}
+
+	/**
+	 * Segment a recorded track, as a whole
+	 * @return The totals of the track's trips and stops
+	 */
+	public TripSummary segment(double[] latitudes, double[] longitudes, long[] times, int count)
+	{
+		reset();
+		for (int index = 0; index < count; index++)
+		{
+			update(latitudes[index], longitudes[index], times[index], 0);
+		}
+		finish();
+		return summary;
+	}
+
+	/**
+	 * Segment each of the given recorded tracks on the given executor, with this segmenter's
+	 * settings. Blocks until all are done.
+	 *
+	 * The tracks are split into chunks of similar size across the executor's threads, and each
+	 * chunk is segmented by its own segmenter. The listener, if any, receives each track's trips
+	 * and stops in order, but from several threads at once, and must be thread safe.
+	 * @param parallelism The number of threads of the executor the tracks may run on at once
+	 * @return The totals of each track's trips and stops
+	 */
+	public TripSummary[] segment(final double[][] latitudes, final double[][] longitudes, final long[][] times, ExecutorService executor, int parallelism) throws InterruptedException
+	{
+		final TripSummary[] summaries = new TripSummary[times.length];
+
+		long points = 0;
+		for (long[] trackTimes : times)
+		{
+			points += trackTimes.length;
+		}
+		long chunkSize = Math.max(1, points / (Math.max(1, parallelism) * CHUNKS_PER_THREAD));
+
+		List<Callable<Void>> chunks = new ArrayList<>();
+		int start = 0;
+		long chunkPoints = 0;
+		for (int index = 0; index < times.length; index++)
+		{
+			chunkPoints += times[index].length;
+			if (chunkPoints >= chunkSize || index == times.length - 1)
+			{
+				final int first = start;
+				final int end = index + 1;
+				chunks.add(new Callable<Void>()
+				{
+					@Override public Void call()
+					{
+						TripSegmenter segmenter = copy();
+						for (int track = first; track < end; track++)
+						{
+							segmenter.track = track;
+							summaries[track] = segmenter.segment(latitudes[track], longitudes[track], times[track], times[track].length);
+						}
+						return null;
+					}
+				});
+				start = end;
+				chunkPoints = 0;
+			}
+		}
+
+		for (Future<Void> chunk : executor.invokeAll(chunks))
+		{
+			try
+			{
+				chunk.get();
+			}
+			catch (ExecutionException ex)
+			{
+				throw new IllegalStateException("Unable to segment tracks", ex.getCause());
+			}
+		}
+
+		return summaries;
+	}
+
+	/**
+	 * @return A new segmenter with the settings and listener of this one
+	 */
+	private TripSegmenter copy()
+	{
+		return new TripSegmenter()
+			.radius(stopRadius)
+			.duration(stopDuration)
+			.accuracy(maxAccuracy)
+			.step(minStep)
+			.listen(listener);
+	}
+
+	/**
+	 * Start a trip at the given position, before its first update
+	 */
+	private void startTrip(double latitude, double longitude, long time)
+	{
+		tripLatitude = latitude;
+		tripLongitude = longitude;
+		tripTime = time;
+		tripDistance = 0;
+		tripPoints = 1;
+		stepLatitude = latitude;
+		stepLongitude = longitude;
+	}
+
+	/**
+	 * Add the given update to the trip, measuring its distance once it is a step away
+	 */
+	private void advance(double latitude, double longitude)
+	{
+		double step = Geodesy.equirectangular(stepLatitude, stepLongitude, latitude, longitude);
+		if (step >= minStep)
+		{
+			tripDistance += step;
+			stepLatitude = latitude;
+			stepLongitude = longitude;
+		}
+		tripPoints++;
+	}
+
+	/**
+	 * @return The distance of the trip so far, up to the given position
+	 */
+	private double distanceTo(double latitude, double longitude)
+	{
+		return tripDistance + Geodesy.equirectangular(stepLatitude, stepLongitude, latitude, longitude);
+	}
+
+	/**
+	 * Start looking for a stop at the given update
+	 */
+	private void anchor(double latitude, double longitude, long time)
+	{
+		anchorLatitude = latitude;
+		anchorLongitude = longitude;
+		anchorTime = time;
+		anchorDistance = distanceTo(latitude, longitude);
+		anchorPoints = tripPoints;
+		latitudeSum = latitude;
+		longitudeSum = longitude;
+		candidatePoints = 1;
+	}
+
+	/**
+	 * The user stayed near the anchor for the stop duration, so the trip ended at it
+	 */
+	private void startStop()
+	{
+		if (anchorTime > tripTime)
+		{
+			endTrip(anchorLatitude, anchorLongitude, anchorTime, anchorDistance, anchorPoints);
+		}
+
+		stop = new Stop(track, anchorTime);
+		stop.latitude = latitudeSum / candidatePoints;
+		stop.longitude = longitudeSum / candidatePoints;
+		stop.pointCount = candidatePoints;
+
+		if (listener != null)
+		{
+			listener.onStopStart(stop);
+		}
+	}
+
+	/**
+	 * The user left the stop after the last update
+	 */
+	private void endStop()
+	{
+		stop.endTime = lastTime;
+		summary.add(stop);
+
+		if (listener != null)
+		{
+			listener.onStopEnd(stop);
+		}
+	}
+
+	private void endTrip(double latitude, double longitude, long time, double distance, int points)
+	{
+		Trip trip = new Trip(track, tripTime, tripLatitude, tripLongitude, time, latitude, longitude, distance, points);
+		summary.add(trip);
+
+		if (listener != null)
+		{
+			listener.onTrip(trip);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package net.atomcode.bearing.trip;
+
+/**
+ * Totals of the trips and stops of one or more tracks
+ */
+public final class TripSummary
+{
+	int tripCount;
+	int stopCount;
+	double distance;
+	long tripTime;
+	long stopTime;
+	long pointCount;
+
+	public TripSummary()
+	{
+	}
+
+	/**
+	 * @return The number of completed trips
+	 */
+	public int getTripCount()
+	{
+		return tripCount;
+	}
+
+	/**
+	 * @return The number of completed stops
+	 */
+	public int getStopCount()
+	{
+		return stopCount;
+	}
+
+	/**
+	 * @return The distance travelled over all trips in metres
+	 */
+	public double getDistance()
+	{
+		return distance;
+	}
+
+	/**
+	 * @return The time spent travelling in milliseconds
+	 */
+	public long getTripTime()
+	{
+		return tripTime;
+	}
+
+	/**
+	 * @return The time spent at stops in milliseconds
+	 */
+	public long getStopTime()
+	{
+		return stopTime;
+	}
+
+	/**
+	 * @return The number of updates segmented, not counting those dropped for their accuracy
+	 */
+	public long getPointCount()
+	{
+		return pointCount;
+	}
+
+	/**
+	 * Add the totals of the given summary to this one
+	 */
+	public TripSummary merge(TripSummary summary)
+	{
+		tripCount += summary.tripCount;
+		stopCount += summary.stopCount;
+		distance += summary.distance;
+		tripTime += summary.tripTime;
+		stopTime += summary.stopTime;
+		pointCount += summary.pointCount;
+		return this;
+	}
+
+	void add(Trip trip)
+	{
+		tripCount++;
+		distance += trip.getDistance();
+		tripTime += trip.getDuration();
+	}
+
+	void add(Stop stop)
+	{
+		stopCount++;
+		stopTime += stop.getDuration();
+	}
+
+	@Override public String toString()
+	{
+		return "TripSummary[" + tripCount + " trips, " + Math.round(distance) + "m, " + stopCount + " stops]";
+	}
+}
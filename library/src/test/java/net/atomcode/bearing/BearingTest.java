@@ -0,0 +1,135 @@
+package net.atomcode.bearing;
+
+import android.content.Context;
+
+import net.atomcode.bearing.location.LocationProvider;
+import net.atomcode.bearing.location.LocationProviderFactory;
+import net.atomcode.bearing.location.provider.SimulatedLocationProvider;
+import net.atomcode.bearing.location.provider.SimulatedTrack;
+import net.atomcode.bearing.location.provider.VirtualClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class BearingTest
+{
+	private Factory preferred;
+	private Factory fallback;
+	private Bearing bearing;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		SimulatedTrack track = SimulatedTrack.fromCsv(new StringReader("0,51.0,-2.0\n"));
+		VirtualClock clock = new VirtualClock();
+
+		preferred = new Factory(1000, new CountingProvider(track, clock));
+		fallback = new Factory(999, new CountingProvider(track, clock));
+		preferred.available = false;
+
+		Bearing.registerLocationProvider(preferred);
+		Bearing.registerLocationProvider(fallback);
+		bearing = Bearing.with(RuntimeEnvironment.application);
+	}
+
+	@After
+	public void tearDown()
+	{
+		// Registered factories cannot be removed, so keep them out of later selections
+		preferred.available = false;
+		fallback.available = false;
+		bearing.shutdown();
+	}
+
+	@Test
+	public void providerIsKeptWhileStillTheBest()
+	{
+		assertSame(fallback.provider, bearing.getLocationProvider());
+
+		bearing.invalidateLocationProvider();
+		assertSame(fallback.provider, bearing.getLocationProvider());
+
+		assertEquals(1, fallback.provider.created);
+		assertEquals(0, fallback.provider.destroyed);
+	}
+
+	@Test
+	public void replacedProviderIsDestroyed()
+	{
+		assertSame(fallback.provider, bearing.getLocationProvider());
+
+		preferred.available = true;
+		bearing.invalidateLocationProvider();
+		assertEquals(0, fallback.provider.destroyed);
+
+		assertSame(preferred.provider, bearing.getLocationProvider());
+		assertEquals(1, fallback.provider.destroyed);
+		assertEquals(1, preferred.provider.created);
+	}
+
+	private static class Factory implements LocationProviderFactory
+	{
+		final int priority;
+		final CountingProvider provider;
+		volatile boolean available = true;
+
+		Factory(int priority, CountingProvider provider)
+		{
+			this.priority = priority;
+			this.provider = provider;
+		}
+
+		@Override public int getPriority()
+		{
+			return priority;
+		}
+
+		@Override public boolean isAvailable(Context context)
+		{
+			return available;
+		}
+
+		@Override public String getPackageName()
+		{
+			return null;
+		}
+
+		@Override public LocationProvider getProvider()
+		{
+			return provider;
+		}
+	}
+
+	private static class CountingProvider extends SimulatedLocationProvider
+	{
+		int created;
+		int destroyed;
+
+		CountingProvider(SimulatedTrack track, VirtualClock clock)
+		{
+			super(track, clock);
+		}
+
+		@Override public void create(Context context)
+		{
+			created++;
+		}
+
+		@Override public void destroy()
+		{
+			destroyed++;
+			super.destroy();
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package net.atomcode.bearing.geocoding;
+
+import android.location.Address;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.BearingFuture;
+import net.atomcode.bearing.trace.Tracer;
+import net.atomcode.bearing.trace.Tracing;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class GeocodingTaskTest
+{
+	private static final Executor DIRECT = new Executor()
+	{
+		@Override public void execute(Runnable command)
+		{
+			command.run();
+		}
+	};
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown()
+	{
+		Bearing.useGeocodingLimiter(new GeocodingLimiter());
+		Tracing.use(null);
+	}
+
+	@Test
+	public void throttledLookupFailsWithTheRejection() throws Exception
+	{
+		GeocodingLimiter limiter = new GeocodingLimiter();
+		while (limiter.getInFlight() < limiter.getLimit())
+		{
+			limiter.acquire(0);
+		}
+		Bearing.useGeocodingLimiter(limiter);
+
+		BearingFuture<List<Address>> future = new QueryGeocodingTask(RuntimeEnvironment.application, new String[]{"Bristol"})
+			.deadline(0)
+			.startAsync(DIRECT);
+
+		try
+		{
+			future.get();
+			fail("Lookup should have been rejected");
+		}
+		catch (ExecutionException ex)
+		{
+			assertTrue(ex.getCause() instanceof GeocodingLimiter.RejectedException);
+		}
+		assertEquals(1, limiter.getRejectedCount());
+	}
+
+	@Test
+	public void cancellingARunningLookupEndsItsTraceOnce() throws Exception
+	{
+		final AtomicInteger ended = new AtomicInteger();
+		Tracing.use(new Tracer()
+		{
+			@Override public void beginSection(String stage, String requestId) {}
+			@Override public void endSection(String stage, String requestId) {}
+			@Override public void beginAsyncSection(String stage, String requestId) {}
+
+			@Override public void endAsyncSection(String stage, String requestId)
+			{
+				if (stage.equals("geocode"))
+				{
+					ended.incrementAndGet();
+				}
+			}
+		});
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		BearingFuture<List<Address>> future = new ReverseGeocodingTask(RuntimeEnvironment.application, new Double[]{51.4545, -2.5879})
+		{
+			@Override protected List<Address> doInBackground(Double... params)
+			{
+				started.countDown();
+				while (true)
+				{
+					try
+					{
+						// A geocoder call that does not notice the interrupt
+						release.await();
+						return Collections.emptyList();
+					}
+					catch (InterruptedException ex)
+					{
+						// Keep waiting
+					}
+				}
+			}
+		}.startAsync(executor);
+
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		future.cancel(true);
+		release.countDown();
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(1, ended.get());
+	}
+
+	@Test
+	public void storedCellWithoutAddressSkipsTheGeocoder() throws Exception
+	{
+		final AddressStore store = new AddressStore(new File(folder.getRoot(), "addresses"));
+		store.put(51.4545, -2.5879, null);
+
+		final boolean[] geocoded = {false};
+		List<Address> addresses = new ReverseGeocodingTask(RuntimeEnvironment.application, new Double[]{51.4545, -2.5879})
+		{
+			@Override protected AddressStore getAddressStore()
+			{
+				return store;
+			}
+
+			@Override protected boolean deviceHasNativeGeocoding()
+			{
+				geocoded[0] = true;
+				return false;
+			}
+		}.startAsync(DIRECT).get();
+
+		assertTrue(addresses.isEmpty());
+		assertFalse(geocoded[0]);
+		store.close();
+	}
+}
@@ -0,0 +1,92 @@
+package net.atomcode.bearing.geocoding;
+
+import net.atomcode.bearing.Bearing;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RegionDownloadTest
+{
+	private static final long TIMEOUT = 5000;
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown()
+	{
+		Bearing.useGeocodingLimiter(new GeocodingLimiter());
+	}
+
+	@Test
+	public void cancelStopsASweepWaitingOnTheLimiter() throws Exception
+	{
+		GeocodingLimiter limiter = new GeocodingLimiter();
+		List<GeocodingLimiter.Permit> held = new ArrayList<>();
+		while (limiter.getInFlight() < limiter.getLimit())
+		{
+			held.add(limiter.acquire(0));
+		}
+		Bearing.useGeocodingLimiter(limiter);
+
+		AddressStore store = new AddressStore(new File(folder.getRoot(), "addresses"), 0.1, Locale.UK);
+		RegionDownload download = new RegionDownload(RuntimeEnvironment.application, store, 51.0, -2.0, 51.15, -1.85)
+			.interval(0)
+			.start();
+
+		assertTrue(waitFor(limiter, 1));
+
+		download.cancel();
+		assertTrue("Cancelled sweep still waiting on the limiter", waitFor(limiter, 0));
+		assertEquals(0, limiter.getDroppedCount());
+		assertEquals(0, store.size());
+
+		// A new sweep is not held up behind the cancelled one
+		for (GeocodingLimiter.Permit permit : held)
+		{
+			permit.release();
+		}
+		download.start();
+
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (download.isRunning() && System.currentTimeMillis() < end)
+		{
+			Thread.sleep(10);
+		}
+		assertFalse(download.isRunning());
+		assertEquals(4, store.size());
+		assertEquals(4, download.getLookupCount());
+		store.close();
+	}
+
+	/**
+	 * Wait for the given number of lookups to be queued on the limiter
+	 */
+	private static boolean waitFor(GeocodingLimiter limiter, int queued) throws InterruptedException
+	{
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (limiter.getQueued() != queued)
+		{
+			if (System.currentTimeMillis() > end)
+			{
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,94 @@
+package net.atomcode.bearing.geocoding;
+
+import android.location.Address;
+import android.location.Location;
+
+import net.atomcode.bearing.Bearing;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class TrackingGeocoderTest
+{
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<Location> locations = new ArrayList<>();
+	private final List<Address> addresses = new ArrayList<>();
+
+	private final TrackingGeocoder.Listener listener = new TrackingGeocoder.Listener()
+	{
+		@Override public void onUpdate(Location location, Address address)
+		{
+			locations.add(location);
+			addresses.add(address);
+		}
+	};
+
+	@After
+	public void tearDown()
+	{
+		Bearing.with(RuntimeEnvironment.application).useAddressStore(null);
+	}
+
+	@Test
+	public void areaWithoutAnAddressClearsThePreviousOne() throws Exception
+	{
+		Location home = location(51.4545, -2.5879);
+		Location field = location(51.4645, -2.5879);
+
+		Address homeAddress = new Address(Locale.UK);
+		homeAddress.setLocality("Bristol");
+		AddressCache cache = new AddressCache();
+		cache.put(home.getLatitude(), home.getLongitude(), homeAddress);
+
+		// The field was looked up before and has no address
+		AddressStore store = new AddressStore(new File(folder.getRoot(), "addresses"));
+		store.put(field.getLatitude(), field.getLongitude(), null);
+		Bearing.with(RuntimeEnvironment.application).useAddressStore(store);
+
+		TrackingGeocoder geocoder = new TrackingGeocoder(RuntimeEnvironment.application, listener).cache(cache);
+		geocoder.onUpdate(home);
+		geocoder.onUpdate(field);
+		assertSame(homeAddress, addresses.get(1));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (addresses.size() < 3 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+			ShadowLooper.runUiThreadTasks();
+		}
+
+		assertEquals(3, addresses.size());
+		assertSame(field, locations.get(2));
+		assertNull(addresses.get(2));
+
+		geocoder.onUpdate(field);
+		assertNull(addresses.get(3));
+		assertEquals(1, geocoder.getGeocodeCount());
+		store.close();
+	}
+
+	private static Location location(double latitude, double longitude)
+	{
+		Location location = new Location("test");
+		location.setLatitude(latitude);
+		location.setLongitude(longitude);
+		return location;
+	}
+}
@@ -0,0 +1,64 @@
+package net.atomcode.bearing.geofence;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class GeofenceEngineTest
+{
+	@Test
+	public void fenceAcrossTheAntimeridianIsEnteredFromEitherSide()
+	{
+		GeofenceEngine engine = new GeofenceEngine()
+			.add(new CircularGeofence("east", -16.5, 179.999, 1000))
+			.add(new CircularGeofence("west", -16.5, -179.999, 1000));
+
+		engine.update(-16.5, -179.9995, 0);
+		assertTrue(engine.isInside("east"));
+		assertTrue(engine.isInside("west"));
+
+		engine.update(-16.5, 179.9995, 1000);
+		assertTrue(engine.isInside("east"));
+		assertTrue(engine.isInside("west"));
+	}
+
+	@Test
+	public void replacedFencesAreEvaluatedInTheirReusedSlots()
+	{
+		final List<String> entered = new ArrayList<>();
+		GeofenceEngine engine = new GeofenceEngine().listen(new GeofenceListener()
+		{
+			@Override public void onEnter(Geofence fence, long time)
+			{
+				entered.add(fence.getId());
+			}
+		});
+
+		engine.add(new CircularGeofence("home", 51.4545, -2.5879, 100));
+		engine.update(51.4545, -2.5879, 0);
+
+		// Each fence takes the slot the last one left, in a different place
+		for (int index = 0; index < 100; index++)
+		{
+			engine.remove(index == 0 ? "home" : "fence" + (index - 1));
+			engine.add(new CircularGeofence("fence" + index, 52 + index * 0.1, -2.5879, 100));
+		}
+
+		engine.update(51.4545, -2.5879, 1000);
+		engine.update(61.9, -2.5879, 2000);
+
+		assertEquals(1, engine.size());
+		assertFalse(engine.isInside("home"));
+		assertTrue(engine.isInside("fence99"));
+		assertEquals(2, entered.size());
+		assertEquals("fence99", entered.get(1));
+	}
+}
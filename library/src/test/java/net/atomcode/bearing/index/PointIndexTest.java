@@ -0,0 +1,170 @@
+package net.atomcode.bearing.index;
+
+import net.atomcode.bearing.geodesy.Geodesy;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PointIndexTest
+{
+	private static final int POINTS = 3000;
+	private static final int QUERIES = 300;
+	private static final int COUNT = 10;
+	private static final double[] RADII = {0, 500, 25000, 2000000};
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private final double[] latitudes = new double[POINTS];
+	private final double[] longitudes = new double[POINTS];
+	private final double[] queryLatitudes = new double[QUERIES];
+	private final double[] queryLongitudes = new double[QUERIES];
+
+	private PointIndex index;
+
+	@Before
+	public void setUp()
+	{
+		Random random = new Random(42);
+		for (int point = 0; point < POINTS; point++)
+		{
+			if (point % 10 == 9)
+			{
+				// Same place as an earlier point
+				int earlier = random.nextInt(point);
+				latitudes[point] = latitudes[earlier];
+				longitudes[point] = longitudes[earlier];
+			}
+			else
+			{
+				place(random, latitudes, longitudes, point);
+			}
+		}
+
+		for (int query = 0; query < QUERIES; query++)
+		{
+			if (query % 5 == 4)
+			{
+				// On a point, which may have duplicates
+				int point = random.nextInt(POINTS);
+				queryLatitudes[query] = latitudes[point];
+				queryLongitudes[query] = longitudes[point];
+			}
+			else
+			{
+				place(random, queryLatitudes, queryLongitudes, query);
+			}
+		}
+
+		index = new PointIndex.Builder().addAll(latitudes, longitudes).build();
+	}
+
+	@Test
+	public void heapIndexMatchesAScan()
+	{
+		assertMatchesScan(index);
+	}
+
+	@Test
+	public void mappedIndexMatchesAScan() throws Exception
+	{
+		File file = new File(folder.getRoot(), "points");
+		index.write(file);
+
+		PointIndex mapped = PointIndex.map(file);
+		assertEquals(POINTS, mapped.size());
+		assertMatchesScan(mapped);
+	}
+
+	private void assertMatchesScan(PointIndex index)
+	{
+		Neighbours results = new Neighbours();
+		double[] distances = new double[POINTS];
+		double[] sorted = new double[POINTS];
+
+		for (int query = 0; query < QUERIES; query++)
+		{
+			double latitude = queryLatitudes[query];
+			double longitude = queryLongitudes[query];
+			for (int point = 0; point < POINTS; point++)
+			{
+				distances[point] = Geodesy.haversine(latitude, longitude, latitudes[point], longitudes[point]);
+			}
+			System.arraycopy(distances, 0, sorted, 0, POINTS);
+			Arrays.sort(sorted);
+
+			// Ties between duplicates may come back in any order, so compare distances
+			index.nearest(latitude, longitude, COUNT, results);
+			assertEquals(COUNT, results.size());
+			for (int result = 0; result < COUNT; result++)
+			{
+				String at = "Query " + query + " at " + latitude + "," + longitude + ", result " + result;
+				assertEquals(at, sorted[result], results.getDistance(result), tolerance(sorted[result]));
+				assertEquals(at, distances[results.getId(result)], results.getDistance(result), tolerance(sorted[result]));
+			}
+
+			for (double radius : RADII)
+			{
+				index.within(latitude, longitude, radius, results);
+
+				boolean[] found = new boolean[POINTS];
+				for (int result = 0; result < results.size(); result++)
+				{
+					int id = results.getId(result);
+					found[id] = true;
+					assertTrue(distances[id] <= radius + tolerance(radius));
+					assertTrue(result == 0 || results.getDistance(result - 1) <= results.getDistance(result));
+				}
+
+				for (int point = 0; point < POINTS; point++)
+				{
+					if (distances[point] < radius - tolerance(radius))
+					{
+						assertTrue("Query " + query + " missed point " + point + " within " + radius + "m", found[point]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Place a point anywhere, or in a cluster around a pole or the antimeridian
+	 */
+	private static void place(Random random, double[] latitudes, double[] longitudes, int index)
+	{
+		switch (random.nextInt(4))
+		{
+			case 0:
+				latitudes[index] = (random.nextBoolean() ? 1 : -1) * (90 - random.nextDouble() * 0.5);
+				longitudes[index] = random.nextDouble() * 360 - 180;
+				break;
+			case 1:
+				latitudes[index] = random.nextDouble() * 170 - 85;
+				longitudes[index] = random.nextBoolean() ? 180 - random.nextDouble() * 0.5 : -180 + random.nextDouble() * 0.5;
+				break;
+			default:
+				latitudes[index] = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+				longitudes[index] = random.nextDouble() * 360 - 180;
+				break;
+		}
+	}
+
+	/**
+	 * Chord and haversine distances may differ in the last bits
+	 */
+	private static double tolerance(double metres)
+	{
+		return 1e-3 + metres * 1e-9;
+	}
+}
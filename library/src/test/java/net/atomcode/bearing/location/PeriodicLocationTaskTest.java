@@ -0,0 +1,219 @@
+package net.atomcode.bearing.location;
+
+import android.location.Location;
+
+import net.atomcode.bearing.Bearing;
+import net.atomcode.bearing.location.provider.SimulatedLocationProvider;
+import net.atomcode.bearing.location.provider.SimulatedTrack;
+import net.atomcode.bearing.location.provider.VirtualClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PeriodicLocationTaskTest
+{
+	private static final long MINUTE = 60 * 1000;
+	private static final long RATE = 10 * MINUTE;
+
+	private VirtualClock clock;
+	private RecordingProvider provider;
+
+	private final List<Location> updates = new ArrayList<>();
+	private int timeouts;
+	private int failures;
+	private int missedSamples;
+
+	private final LocationListener listener = new LocationListener()
+	{
+		@Override public void onUpdate(Location location)
+		{
+			updates.add(location);
+		}
+
+		@Override public void onTimeout()
+		{
+			timeouts++;
+		}
+
+		@Override public void onFailure()
+		{
+			failures++;
+		}
+
+		@Override public void onMissedSample()
+		{
+			missedSamples++;
+		}
+	};
+
+	@Before
+	public void setUp() throws IOException
+	{
+		// Heading north at roughly 10 m/s for 2 hours
+		SimulatedTrack track = SimulatedTrack.fromCsv(new StringReader(
+			"0,51.0,-2.0\n" +
+			"7200000,51.65,-2.0\n"
+		));
+
+		clock = new VirtualClock();
+		provider = new RecordingProvider(track, clock);
+	}
+
+	@After
+	public void tearDown()
+	{
+		Bearing.usePowerBudget(null);
+	}
+
+	@Test
+	public void sparseSamplingDeliversAFixEachInterval()
+	{
+		PeriodicLocationTask task = new PeriodicLocationTask(provider);
+		task.rate(RATE).displacement(100).sparse(clock, 0).listen(listener);
+		task.start();
+
+		clock.runUntil(60 * MINUTE);
+
+		assertEquals(7, updates.size());
+		for (int index = 0; index < updates.size(); index++)
+		{
+			assertEquals(index * RATE, updates.get(index).getTime());
+		}
+		assertEquals(0, timeouts);
+
+		// Nothing is held open between samples
+		assertEquals(0, provider.getRunningCount());
+
+		task.cancel();
+		clock.runUntil(120 * MINUTE);
+		assertEquals(7, updates.size());
+	}
+
+	@Test
+	public void sampleRequestsExpireAfterTheSampleTimeout()
+	{
+		PeriodicLocationTask task = new PeriodicLocationTask(provider);
+		task.rate(RATE).sparse(clock, 0).listen(listener);
+		task.start();
+		clock.runUntil(RATE);
+		task.cancel();
+
+		assertEquals(2, provider.timeouts.size());
+		for (long timeout : provider.timeouts)
+		{
+			assertEquals(MINUTE, (long)timeout);
+		}
+
+		provider.timeouts.clear();
+		task = new PeriodicLocationTask(provider);
+		task.rate(RATE).sparse(clock, 0).fallback(LocationProviderRequest.FALLBACK_NONE, 30 * 1000);
+		task.start();
+		task.cancel();
+
+		assertEquals(1, provider.timeouts.size());
+		assertEquals(30 * 1000, (long)provider.timeouts.get(0));
+	}
+
+	@Test
+	public void timedOutSampleFallsBackToTheCachedLocation()
+	{
+		// Warm the cache with a fix at the start of the track
+		LocationProviderRequest warmup = new LocationProviderRequest();
+		warmup.useCache = false;
+		provider.requestSingleLocationUpdate(warmup, null);
+		clock.runUntil(0);
+		Location cached = provider.getLastKnownLocation(warmup);
+
+		clock.runUntil(5 * MINUTE);
+		provider.dropouts(1.0);
+
+		PeriodicLocationTask task = new PeriodicLocationTask(provider);
+		task.rate(RATE).sparse(clock, 0).fallback(LocationProviderRequest.FALLBACK_CACHE, 30 * 1000).listen(listener);
+		task.start();
+
+		clock.runUntil(5 * MINUTE + 29 * 1000);
+		assertEquals(0, missedSamples);
+		assertTrue(updates.isEmpty());
+
+		clock.runUntil(5 * MINUTE + 30 * 1000);
+		assertEquals(1, missedSamples);
+		assertEquals(1, updates.size());
+		assertEquals(cached.getLatitude(), updates.get(0).getLatitude(), 0);
+		assertEquals(0, timeouts);
+		assertEquals(0, failures);
+
+		// The next sample times out as well, but the same cached fix is not reported again
+		clock.runUntil(5 * MINUTE + RATE + 30 * 1000);
+		assertEquals(2, missedSamples);
+		assertEquals(1, updates.size());
+		assertEquals(0, timeouts);
+
+		task.cancel();
+	}
+
+	@Test
+	public void sparseSamplingIsOnlyChargedWhileSampling()
+	{
+		// Enough for a sample at high accuracy, but not for keeping the radio on all window
+		final List<PowerBudget.Decision> decisions = new ArrayList<>();
+		PowerBudget budget = new PowerBudget(300, 15 * MINUTE).clock(clock).listen(new PowerBudget.Listener()
+		{
+			@Override public void onDecision(String caller, PowerBudget.Decision decision, Accuracy accuracy)
+			{
+				decisions.add(decision);
+			}
+		});
+		Bearing.usePowerBudget(budget);
+
+		// Each sample takes 5 seconds
+		provider.latency(5000, 5000);
+
+		PeriodicLocationTask task = new PeriodicLocationTask(provider);
+		task.rate(RATE).displacement(100).sparse(clock, 0).accuracy(Accuracy.HIGH);
+		task.listen(listener);
+		task.start();
+		clock.runUntil(60 * MINUTE + 5000);
+		task.cancel();
+
+		assertEquals(7, updates.size());
+		assertEquals(7, decisions.size());
+		for (PowerBudget.Decision decision : decisions)
+		{
+			assertEquals(PowerBudget.Decision.GRANT, decision);
+		}
+		assertEquals(7 * 5.0, budget.getTotalConsumption(), 0.001);
+		assertEquals(7 * 5000, budget.getRadioOnTime());
+	}
+
+	/**
+	 * Records the timeout of each single request made
+	 */
+	private static class RecordingProvider extends SimulatedLocationProvider
+	{
+		final List<Long> timeouts = new ArrayList<>();
+
+		RecordingProvider(SimulatedTrack track, VirtualClock clock)
+		{
+			super(track, clock);
+		}
+
+		@Override
+		public String requestSingleLocationUpdate(LocationProviderRequest request, LocationListener listener)
+		{
+			timeouts.add(request.fallbackTimeout);
+			return super.requestSingleLocationUpdate(request, listener);
+		}
+	}
+}
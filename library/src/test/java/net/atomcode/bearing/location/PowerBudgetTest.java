@@ -0,0 +1,181 @@
+package net.atomcode.bearing.location;
+
+import net.atomcode.bearing.location.provider.VirtualClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PowerBudgetTest
+{
+	private static final long SECOND = 1000;
+	private static final long WINDOW = 15 * 60 * SECOND;
+
+	private VirtualClock clock;
+	private final List<String> decisions = new ArrayList<>();
+
+	private final PowerBudget.Listener listener = new PowerBudget.Listener()
+	{
+		@Override public void onDecision(String caller, PowerBudget.Decision decision, Accuracy accuracy)
+		{
+			decisions.add(caller + " " + decision + " " + accuracy);
+		}
+	};
+
+	@Before
+	public void setUp()
+	{
+		clock = new VirtualClock();
+	}
+
+	@Test
+	public void requestThatFitsTheWindowIsGranted()
+	{
+		PowerBudget budget = new PowerBudget(900, WINDOW).clock(clock).listen(listener);
+		Client client = new Client();
+
+		budget.request("a", Accuracy.HIGH, 0, client);
+
+		assertEquals(Accuracy.HIGH, client.accuracy);
+		assertEquals("a GRANT HIGH", decisions.get(0));
+	}
+
+	@Test
+	public void requestIsDowngradedToTheMostAccurateTierThatFits()
+	{
+		// High for the whole window costs 900, medium 180
+		PowerBudget budget = new PowerBudget(300, WINDOW).clock(clock).listen(listener);
+		Client client = new Client();
+
+		budget.request("a", Accuracy.HIGH, 0, client);
+		assertEquals(Accuracy.MEDIUM, client.accuracy);
+		assertEquals("a DOWNGRADE MEDIUM", decisions.get(0));
+
+		// A short request still fits at high accuracy
+		Client shortClient = new Client();
+		budget.request("b", Accuracy.HIGH, 60 * SECOND, shortClient);
+		assertEquals(Accuracy.HIGH, shortClient.accuracy);
+	}
+
+	@Test
+	public void runningGrantIsDowngradedAsTheBudgetRunsOut()
+	{
+		PowerBudget budget = new PowerBudget(500, WINDOW).clock(clock).listen(listener);
+		Client low = new Client();
+		Client high = new Client();
+
+		budget.request("low", Accuracy.LOW, 0, low);
+		budget.request("high", Accuracy.HIGH, 100 * SECOND, high);
+		assertEquals(Accuracy.HIGH, high.accuracy);
+
+		// Medium for the rest of the window costs 180, so high runs for 400 seconds
+		clock.runUntil(400 * SECOND - 1);
+		assertEquals(Accuracy.HIGH, high.accuracy);
+		clock.runUntil(400 * SECOND);
+		assertEquals(Accuracy.MEDIUM, high.accuracy);
+		assertEquals(Accuracy.LOW, low.accuracy);
+
+		// Only the most accurate request is charged
+		assertEquals(400.0, budget.getConsumption("high"), 0.001);
+		assertEquals(0.0, budget.getConsumption("low"), 0.001);
+		assertEquals(100.0, budget.getRemaining(), 0.001);
+	}
+
+	@Test
+	public void spentBudgetDefersUntilTheNextWindow()
+	{
+		// Low for the whole window costs 45, so the budget is spent after 600 seconds
+		PowerBudget budget = new PowerBudget(30, WINDOW).clock(clock).listen(listener);
+		Client first = new Client();
+		Client second = new Client();
+
+		budget.request("first", Accuracy.LOW, 0, first);
+		assertEquals(Accuracy.LOW, first.accuracy);
+
+		clock.runUntil(600 * SECOND);
+		assertNull(first.accuracy);
+		assertEquals("first DEFER null", decisions.get(decisions.size() - 1));
+		assertEquals(30.0, budget.getTotalConsumption(), 0.001);
+		assertEquals(600 * SECOND, budget.getRadioOnTime());
+
+		clock.runUntil(700 * SECOND);
+		budget.request("second", Accuracy.HIGH, 0, second);
+		assertNull(second.accuracy);
+		assertEquals("second DEFER null", decisions.get(decisions.size() - 1));
+
+		// Both are restored in the order they were made once the window rolls over
+		clock.runUntil(WINDOW);
+		assertEquals(Accuracy.LOW, first.accuracy);
+		assertEquals(Accuracy.LOW, second.accuracy);
+		assertEquals("first GRANT LOW", decisions.get(decisions.size() - 2));
+		assertEquals("second DOWNGRADE LOW", decisions.get(decisions.size() - 1));
+		assertEquals(30.0, budget.getRemaining(), 0.001);
+	}
+
+	@Test
+	public void requestsAtTheSameAccuracyShareTheCharge()
+	{
+		PowerBudget budget = new PowerBudget(1800, WINDOW).clock(clock);
+		PowerBudget.Grant a = budget.request("a", Accuracy.HIGH, 0, new Client());
+		PowerBudget.Grant b = budget.request("b", Accuracy.HIGH, 0, new Client());
+		assertEquals(Accuracy.HIGH, a.granted);
+		assertEquals(Accuracy.HIGH, b.granted);
+
+		clock.runUntil(100 * SECOND);
+		budget.release(b);
+		clock.runUntil(200 * SECOND);
+		budget.release(a);
+		clock.runUntil(300 * SECOND);
+
+		assertEquals(150.0, budget.getConsumption("a"), 0.001);
+		assertEquals(50.0, budget.getConsumption("b"), 0.001);
+		assertEquals(200.0, budget.getTotalConsumption(), 0.001);
+		assertEquals(200 * SECOND, budget.getRadioOnTime());
+	}
+
+	@Test
+	public void decisionsAreDispatchedOnTheMainThread() throws InterruptedException
+	{
+		final PowerBudget budget = new PowerBudget(900, WINDOW).clock(clock);
+		final Client client = new Client();
+
+		ShadowLooper.pauseMainLooper();
+		Thread worker = new Thread(new Runnable()
+		{
+			@Override public void run()
+			{
+				budget.request("a", Accuracy.HIGH, 0, client);
+			}
+		});
+		worker.start();
+		worker.join();
+		assertTrue(client.threads.isEmpty());
+
+		ShadowLooper.runUiThreadTasks();
+		assertEquals(Accuracy.HIGH, client.accuracy);
+		assertSame(Thread.currentThread(), client.threads.get(0));
+	}
+
+	private static class Client implements PowerBudget.Client
+	{
+		Accuracy accuracy;
+		final List<Thread> threads = new ArrayList<>();
+
+		@Override public void onBudgetChange(Accuracy accuracy)
+		{
+			this.accuracy = accuracy;
+			threads.add(Thread.currentThread());
+		}
+	}
+}
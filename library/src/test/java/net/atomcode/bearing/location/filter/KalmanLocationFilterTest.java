@@ -0,0 +1,151 @@
+package net.atomcode.bearing.location.filter;
+
+import android.location.Location;
+
+import net.atomcode.bearing.geodesy.Geodesy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class KalmanLocationFilterTest
+{
+	private static final int FIXES = 600;
+	private static final int JUMP_EVERY = 50;
+	private static final float ACCURACY = 15;
+
+	/*
+	 * Replayed drive, one fix a second, with the true positions it was recorded along
+	 */
+	private final double[] trueLatitudes = new double[FIXES];
+	private final double[] trueLongitudes = new double[FIXES];
+	private final Location[] fixes = new Location[FIXES];
+
+	private KalmanLocationFilter filter;
+
+	@Before
+	public void setUp()
+	{
+		filter = new KalmanLocationFilter();
+	}
+
+	@Test
+	public void deliveredLocationIsLeftUntouched()
+	{
+		replay(false, 51.4545, -2.5879, 45);
+
+		Location first = filter.filter(fixes[0]);
+		Location second = filter.filter(fixes[1]);
+
+		assertNotSame(fixes[1], second);
+		assertNotNull(first);
+		assertEquals(ACCURACY, fixes[1].getAccuracy(), 0);
+		assertTrue(second.getLatitude() != fixes[1].getLatitude() || second.getLongitude() != fixes[1].getLongitude());
+		assertEquals(fixes[1].getTime(), second.getTime());
+	}
+
+	@Test
+	public void jumpsAreDropped()
+	{
+		replay(true, 51.4545, -2.5879, 45);
+
+		for (int index = 0; index < FIXES; index++)
+		{
+			Location filtered = filter.filter(fixes[index]);
+			if (index > 0 && index % JUMP_EVERY == 0)
+			{
+				assertNull("Jump at fix " + index + " was reported", filtered);
+			}
+			else
+			{
+				assertNotNull("Fix " + index + " was dropped", filtered);
+			}
+		}
+	}
+
+	@Test
+	public void smoothedTrackIsCloserToTheTruth()
+	{
+		replay(false, 51.4545, -2.5879, 45);
+
+		double rawError = 0;
+		double smoothedError = 0;
+		for (int index = 0; index < FIXES; index++)
+		{
+			Location filtered = filter.filter(fixes[index]);
+			rawError += error(fixes[index], index);
+			smoothedError += error(filtered, index);
+		}
+
+		// Measured at 0.54 on this track
+		assertTrue("Smoothed error " + smoothedError / FIXES + "m against raw " + rawError / FIXES + "m", smoothedError < 0.7 * rawError);
+	}
+
+	@Test
+	public void trackAcrossTheAntimeridianIsSmoothed()
+	{
+		// Fiji, heading east across 180 about a third of the way in
+		replay(false, -16.5, 179.97, 90);
+
+		double rawError = 0;
+		double smoothedError = 0;
+		for (int index = 0; index < FIXES; index++)
+		{
+			Location filtered = filter.filter(fixes[index]);
+			assertNotNull("Fix " + index + " was dropped", filtered);
+			assertTrue(filtered.getLongitude() >= -180 && filtered.getLongitude() <= 180);
+			rawError += error(fixes[index], index);
+			smoothedError += error(filtered, index);
+		}
+
+		assertTrue(fixes[0].getLongitude() > 0 && fixes[FIXES - 1].getLongitude() < 0);
+		assertTrue("Smoothed error " + smoothedError / FIXES + "m against raw " + rawError / FIXES + "m", smoothedError < 0.7 * rawError);
+	}
+
+	private double error(Location location, int index)
+	{
+		return Geodesy.equirectangular(location.getLatitude(), location.getLongitude(), trueLatitudes[index], trueLongitudes[index]);
+	}
+
+	/**
+	 * Drive at 10 to 20 m/s with gentle turns, recording fixes with GPS noise and, if asked, a
+	 * fix a kilometre off every so often
+	 */
+	private void replay(boolean jumps, double latitude, double longitude, double heading)
+	{
+		Random random = new Random(42);
+
+		for (int index = 0; index < FIXES; index++)
+		{
+			heading += random.nextGaussian() * 2;
+			double speed = 15 + 5 * Math.sin(index / 60.0);
+			latitude += speed * Math.cos(Math.toRadians(heading)) / Geodesy.METRES_PER_DEGREE;
+			longitude = Geodesy.wrapLongitude(longitude + speed * Math.sin(Math.toRadians(heading)) / (Geodesy.METRES_PER_DEGREE * Math.cos(Math.toRadians(latitude))));
+			trueLatitudes[index] = latitude;
+			trueLongitudes[index] = longitude;
+
+			double noise = ACCURACY / Geodesy.METRES_PER_DEGREE;
+			Location fix = new Location("gps");
+			fix.setLatitude(latitude + random.nextGaussian() * noise);
+			fix.setLongitude(Geodesy.wrapLongitude(longitude + random.nextGaussian() * noise));
+			fix.setAccuracy(ACCURACY);
+			fix.setTime(index * 1000L);
+
+			if (jumps && index > 0 && index % JUMP_EVERY == 0)
+			{
+				fix.setLatitude(fix.getLatitude() + 0.01);
+			}
+			fixes[index] = fix;
+		}
+	}
+}
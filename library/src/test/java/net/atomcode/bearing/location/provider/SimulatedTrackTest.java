@@ -0,0 +1,36 @@
+package net.atomcode.bearing.location.provider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class SimulatedTrackTest
+{
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void gpxNeverLoadsExternalEntities() throws Exception
+	{
+		// Neither file exists, so loading either fails the parse
+		String missing = new File(folder.getRoot(), "missing").toURI().toString();
+		String gpx = "<?xml version=\"1.0\"?>\n"
+			+ "<!DOCTYPE gpx SYSTEM \"" + missing + ".dtd\" [<!ENTITY secret SYSTEM \"" + missing + ".txt\">]>\n"
+			+ "<gpx><trk><name>&secret;</name><trkseg>"
+			+ "<trkpt lat=\"51.4545\" lon=\"-2.5879\"><time>2018-06-01T09:00:00Z</time></trkpt>"
+			+ "<trkpt lat=\"51.4546\" lon=\"-2.5880\"><time>2018-06-01T09:00:05Z</time></trkpt>"
+			+ "</trkseg></trk></gpx>";
+
+		SimulatedTrack track = SimulatedTrack.fromGpx(new ByteArrayInputStream(gpx.getBytes("UTF-8")));
+
+		assertEquals(2, track.size());
+		assertEquals(5000, track.getDuration());
+	}
+}
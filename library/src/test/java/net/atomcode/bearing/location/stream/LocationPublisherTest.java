@@ -0,0 +1,165 @@
+package net.atomcode.bearing.location.stream;
+
+import android.location.Location;
+
+import net.atomcode.bearing.location.PeriodicLocationTask;
+import net.atomcode.bearing.location.provider.SimulatedLocationProvider;
+import net.atomcode.bearing.location.provider.SimulatedTrack;
+import net.atomcode.bearing.location.provider.VirtualClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class LocationPublisherTest
+{
+	private static final Executor DIRECT = new Executor()
+	{
+		@Override public void execute(Runnable command)
+		{
+			command.run();
+		}
+	};
+
+	private static final Executor SHUT_DOWN = new Executor()
+	{
+		@Override public void execute(Runnable command)
+		{
+			throw new RejectedExecutionException();
+		}
+	};
+
+	private static final long MINUTE = 60 * 1000;
+
+	private VirtualClock clock;
+	private SimulatedLocationProvider provider;
+	private LocationPublisher publisher;
+	private Subscriber subscriber;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		SimulatedTrack track = SimulatedTrack.fromCsv(new StringReader(
+			"0,51.0,-2.0\n" +
+			"7200000,51.65,-2.0\n"
+		));
+
+		clock = new VirtualClock();
+		provider = new SimulatedLocationProvider(track, clock);
+		publisher = new LocationPublisher(new PeriodicLocationTask(provider));
+		subscriber = new Subscriber();
+	}
+
+	@Test
+	public void taskIsStartedAndCancelledOnTheMainThread() throws InterruptedException
+	{
+		ShadowLooper.pauseMainLooper();
+
+		onWorker(new Runnable()
+		{
+			@Override public void run()
+			{
+				publisher.subscribe(subscriber, DIRECT, LocationPublisher.Overflow.LATEST, 1);
+			}
+		});
+		assertEquals(0, provider.getRunningCount());
+
+		ShadowLooper.runUiThreadTasks();
+		assertEquals(1, provider.getRunningCount());
+
+		onWorker(new Runnable()
+		{
+			@Override public void run()
+			{
+				subscriber.subscription.cancel();
+			}
+		});
+		assertEquals(1, provider.getRunningCount());
+
+		ShadowLooper.runUiThreadTasks();
+		assertEquals(0, provider.getRunningCount());
+	}
+
+	@Test
+	public void rejectedDeliveryDropsTheSubscriber()
+	{
+		publisher.subscribe(subscriber, SHUT_DOWN, LocationPublisher.Overflow.LATEST, 1);
+		ShadowLooper.runUiThreadTasks();
+
+		assertEquals(0, publisher.getSubscriberCount());
+		assertEquals(0, provider.getRunningCount());
+		assertFalse(subscriber.subscribed);
+	}
+
+	@Test
+	public void missedSampleDoesNotEndTheStream()
+	{
+		provider.dropouts(1.0);
+
+		PeriodicLocationTask task = new PeriodicLocationTask(provider);
+		task.rate(10 * MINUTE).sparse(clock, 0);
+		publisher = new LocationPublisher(task);
+		publisher.subscribe(subscriber, DIRECT, LocationPublisher.Overflow.LATEST, 1);
+		ShadowLooper.runUiThreadTasks();
+
+		// The first sample times out after a minute
+		clock.runUntil(MINUTE);
+		assertNull(subscriber.error);
+		assertEquals(1, publisher.getSubscriberCount());
+
+		provider.dropouts(0);
+		clock.runUntil(10 * MINUTE);
+		assertEquals(1, subscriber.received);
+		assertNull(subscriber.error);
+
+		subscriber.subscription.cancel();
+		ShadowLooper.runUiThreadTasks();
+		assertEquals(0, provider.getRunningCount());
+	}
+
+	private static void onWorker(Runnable action) throws InterruptedException
+	{
+		Thread worker = new Thread(action);
+		worker.start();
+		worker.join();
+	}
+
+	private static class Subscriber implements LocationSubscriber
+	{
+		volatile LocationSubscription subscription;
+		volatile boolean subscribed = false;
+		volatile int received = 0;
+		volatile Throwable error;
+
+		@Override public void onSubscribe(LocationSubscription subscription)
+		{
+			this.subscription = subscription;
+			subscribed = true;
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override public void onNext(Location location)
+		{
+			received++;
+		}
+
+		@Override public void onError(Throwable error)
+		{
+			this.error = error;
+		}
+
+		@Override public void onComplete() {}
+	}
+}
@@ -0,0 +1,242 @@
+package net.atomcode.bearing.location.track;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TrackWriterTest
+{
+	private static final int SAMPLES = 100;
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private final double[] latitudes = new double[SAMPLES];
+	private final double[] longitudes = new double[SAMPLES];
+	private final long[] times = new long[SAMPLES];
+	private final float[] accuracies = new float[SAMPLES];
+	private final float[] speeds = new float[SAMPLES];
+	private final float[] bearings = new float[SAMPLES];
+
+	@Test
+	public void samplesRoundTripAcrossBlocks() throws IOException
+	{
+		generate(new Random(42));
+		File file = write(0, SAMPLES, 16);
+
+		TrackReader reader = new TrackReader(file);
+		try
+		{
+			assertEquals(SAMPLES, reader.size());
+			assertEquals(times[0], reader.getStartTime());
+			assertEquals(times[SAMPLES - 1], reader.getEndTime());
+
+			TrackReader.Cursor cursor = reader.cursor();
+			for (int index = 0; index < SAMPLES; index++)
+			{
+				assertTrue(cursor.moveToNext());
+				assertSample(index, cursor);
+			}
+			assertFalse(cursor.moveToNext());
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	@Test
+	public void missingAndOutOfRangeValuesAreStoredWithinTheRecordSize() throws IOException
+	{
+		File file = new File(folder.getRoot(), "track");
+		TrackWriter writer = new TrackWriter(file).blockSize(4);
+		writer.write(51.4545, -2.5879, 1000, Float.NaN, Float.NaN, Float.NaN);
+		writer.write(51.4546, -2.5880, 2000, Float.POSITIVE_INFINITY, 1e30f, -1f);
+		writer.write(51.4547, -2.5881, 3000, 5f, 1.5f, 90f);
+		writer.close();
+
+		TrackReader reader = new TrackReader(file);
+		try
+		{
+			TrackReader.Cursor cursor = reader.cursor();
+
+			assertTrue(cursor.moveToNext());
+			assertTrue(Float.isNaN(cursor.getAccuracy()));
+			assertTrue(Float.isNaN(cursor.getSpeed()));
+			assertTrue(Float.isNaN(cursor.getBearing()));
+
+			// Huge values clamp, negative ones are missing
+			assertTrue(cursor.moveToNext());
+			assertTrue(cursor.getAccuracy() > 1e8f);
+			assertTrue(cursor.getSpeed() > 1e7f);
+			assertTrue(Float.isNaN(cursor.getBearing()));
+
+			// The next record decodes from where the clamped one ended
+			assertTrue(cursor.moveToNext());
+			assertEquals(51.4547, cursor.getLatitude(), 1e-7);
+			assertEquals(3000, cursor.getTime());
+			assertEquals(5f, cursor.getAccuracy(), 0.05f);
+			assertEquals(1.5f, cursor.getSpeed(), 0.005f);
+			assertEquals(90f, cursor.getBearing(), 0.05f);
+			assertFalse(cursor.moveToNext());
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	@Test
+	public void seekFindsTheFirstSampleAtOrAfterATime() throws IOException
+	{
+		generate(new Random(7));
+		File file = write(0, SAMPLES, 16);
+
+		TrackReader reader = new TrackReader(file);
+		try
+		{
+			TrackReader.Cursor cursor = reader.cursor();
+			for (int index = 0; index < SAMPLES; index += 13)
+			{
+				// Exactly at a sample, and just after the one before it
+				assertTrue(cursor.seek(times[index]));
+				assertSample(index, cursor);
+
+				if (index > 0)
+				{
+					assertTrue(cursor.seek(times[index - 1] + 1));
+					assertSample(index, cursor);
+				}
+			}
+
+			assertTrue(cursor.seek(Long.MIN_VALUE));
+			assertSample(0, cursor);
+			assertFalse(cursor.seek(times[SAMPLES - 1] + 1));
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	@Test
+	public void tornTrailingBlockIsDiscardedAndAppendedOver() throws IOException
+	{
+		generate(new Random(3));
+		File file = write(0, 32, 16);
+		long intact = file.length();
+
+		// A third block, cut off part way through its payload
+		write(file, 32, 48, 16);
+		RandomAccessFile torn = new RandomAccessFile(file, "rw");
+		torn.setLength(intact + (file.length() - intact) / 2);
+		torn.close();
+
+		TrackReader reader = new TrackReader(file);
+		assertEquals(32, reader.size());
+		assertEquals(times[31], reader.getEndTime());
+		reader.close();
+
+		write(file, 48, SAMPLES, 16);
+		reader = new TrackReader(file);
+		try
+		{
+			assertEquals(32 + SAMPLES - 48, reader.size());
+			TrackReader.Cursor cursor = reader.cursor();
+			for (int index = 0; index < SAMPLES; index++)
+			{
+				if (index >= 32 && index < 48)
+				{
+					continue;
+				}
+				assertTrue(cursor.moveToNext());
+				assertSample(index, cursor);
+			}
+			assertFalse(cursor.moveToNext());
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * A wandering track with jumps across the antimeridian and between hemispheres, so deltas
+	 * are large and of both signs, and some values missing
+	 */
+	private void generate(Random random)
+	{
+		double latitude = 51.4545;
+		double longitude = 179.99;
+		long time = 1500000000000L;
+
+		for (int index = 0; index < SAMPLES; index++)
+		{
+			if (index % 25 == 24)
+			{
+				latitude = -latitude;
+				longitude = -longitude;
+			}
+			latitude += (random.nextDouble() - 0.5) * 0.001;
+			longitude += (random.nextDouble() - 0.5) * 0.001;
+			time += 1 + random.nextInt(5000);
+
+			latitudes[index] = latitude;
+			longitudes[index] = longitude;
+			times[index] = time;
+			accuracies[index] = index % 7 == 0 ? Float.NaN : random.nextFloat() * 50;
+			speeds[index] = index % 5 == 0 ? Float.NaN : random.nextFloat() * 30;
+			bearings[index] = index % 3 == 0 ? Float.NaN : random.nextFloat() * 360;
+		}
+	}
+
+	private File write(int from, int to, int blockSize) throws IOException
+	{
+		File file = new File(folder.getRoot(), "track");
+		write(file, from, to, blockSize);
+		return file;
+	}
+
+	private void write(File file, int from, int to, int blockSize) throws IOException
+	{
+		TrackWriter writer = new TrackWriter(file).blockSize(blockSize);
+		for (int index = from; index < to; index++)
+		{
+			writer.write(latitudes[index], longitudes[index], times[index], accuracies[index], speeds[index], bearings[index]);
+		}
+		writer.close();
+	}
+
+	private void assertSample(int index, TrackReader.Cursor cursor)
+	{
+		assertEquals(latitudes[index], cursor.getLatitude(), 1e-7);
+		assertEquals(longitudes[index], cursor.getLongitude(), 1e-7);
+		assertEquals(times[index], cursor.getTime());
+		assertValue(accuracies[index], cursor.getAccuracy(), 0.05f);
+		assertValue(speeds[index], cursor.getSpeed(), 0.005f);
+		assertValue(bearings[index], cursor.getBearing(), 0.05f);
+	}
+
+	private static void assertValue(float expected, float actual, float delta)
+	{
+		if (Float.isNaN(expected))
+		{
+			assertTrue(Float.isNaN(actual));
+		}
+		else
+		{
+			assertEquals(expected, actual, delta);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package net.atomcode.bearing.region;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class RegionIndexTest
+{
+	@Test
+	public void cellsTooSmallToNumberAreRejected()
+	{
+		try
+		{
+			new RegionIndex.Builder().cellSize(0.005);
+			fail("Cell size should have been rejected");
+		}
+		catch (IllegalArgumentException ex)
+		{
+			// Expected
+		}
+	}
+
+	@Test
+	public void smallestCellsResolveAtTheEdgeOfTheGrid()
+	{
+		Region region = new Region("XX", "Corner", null, null);
+		RegionIndex index = new RegionIndex.Builder()
+			.cellSize(0.01)
+			.add(region, new double[]{89.9, 89.9, 90, 90}, new double[]{179.9, 180, 180, 179.9})
+			.build();
+
+		assertEquals("XX", index.resolve(89.995, 179.995).getCountryCode());
+		assertNull(index.resolve(89.995, -179.995));
+	}
+}
@@ -0,0 +1,86 @@
+package net.atomcode.bearing.trip;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class TripSegmenterTest
+{
+	private static final long MINUTE = 60 * 1000;
+
+	@Test
+	public void tripFromAStopCountsTheUpdateLeavingIt()
+	{
+		final List<Trip> trips = new ArrayList<>();
+		TripSegmenter segmenter = new TripSegmenter().listen(new TripListener()
+		{
+			@Override public void onTrip(Trip trip)
+			{
+				trips.add(trip);
+			}
+		});
+
+		long time = 0;
+		for (int index = 0; index <= 10; index++, time += MINUTE)
+		{
+			segmenter.update(51.4545, -2.5879, time, 10);
+		}
+		for (int index = 1; index <= 5; index++, time += MINUTE)
+		{
+			segmenter.update(51.4545, -2.5879 + index * 0.01, time, 10);
+		}
+		segmenter.finish();
+
+		// The centre of the stop, then the five updates after it
+		assertEquals(1, trips.size());
+		assertEquals(6, trips.get(0).getPointCount());
+	}
+
+	@Test
+	public void parallelSegmentingMatchesEachTrack() throws Exception
+	{
+		int tracks = 5;
+		double[][] latitudes = new double[tracks][];
+		double[][] longitudes = new double[tracks][];
+		long[][] times = new long[tracks][];
+		for (int track = 0; track < tracks; track++)
+		{
+			int count = 100 * (track + 1);
+			latitudes[track] = new double[count];
+			longitudes[track] = new double[count];
+			times[track] = new long[count];
+			for (int index = 0; index < count; index++)
+			{
+				// Drive for ten minutes, then stop for ten
+				boolean moving = (index / 10) % 2 == 0;
+				latitudes[track][index] = 51.4545 + track * 0.1;
+				longitudes[track][index] = -2.5879 + (moving ? index : (index / 10) * 10) * 0.005;
+				times[track][index] = index * MINUTE;
+			}
+		}
+
+		TripSegmenter segmenter = new TripSegmenter();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try
+		{
+			TripSummary[] summaries = segmenter.segment(latitudes, longitudes, times, executor, 2);
+			for (int track = 0; track < tracks; track++)
+			{
+				TripSummary expected = new TripSegmenter().segment(latitudes[track], longitudes[track], times[track], times[track].length);
+				assertEquals(expected.toString(), summaries[track].toString());
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+}